@@ -15,6 +15,8 @@
 
 package no.rutebanken.anshar.config;
 
+import no.rutebanken.anshar.data.ChangeTrackerType;
+import no.rutebanken.anshar.data.hashing.HasherType;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
@@ -44,6 +46,15 @@ public class AnsharConfiguration {
     @Value("${anshar.incoming.logdirectory}")
     private String incomingLogDirectory = "/tmp";
 
+    @Value("${anshar.incoming.streaming.enabled:false}")
+    private boolean streamingIngestEnabled;
+
+    @Value("${anshar.incoming.streaming.batch.size:500}")
+    private int streamingIngestBatchSize;
+
+    @Value("${anshar.incoming.binary.enabled:false}")
+    private boolean binaryIngestEnabled;
+
     @Value("${anshar.inbound.pattern}")
     private String incomingPathPattern;
 
@@ -104,10 +115,22 @@ public class AnsharConfiguration {
     @Value("${anshar.validation.data.persist.hours:6}")
     private int numberOfHoursToKeepValidation;
 
+    @Value("${anshar.validation.sample.rate:1}")
+    private int validationSampleRate;
+
+    @Value("${anshar.validation.sample.max.per.minute:0}")
+    private int validationMaxPerMinute;
+
 
     @Value("${anshar.tracking.data.buffer.commit.frequency.seconds:2}")
     private int changeBufferCommitFrequency;
 
+    @Value("${anshar.tracking.data.checksum.hasher:STRUCTURAL}")
+    private HasherType checksumHasherType;
+
+    @Value("${anshar.tracking.data.engine:SET}")
+    private ChangeTrackerType changeTrackerType;
+
     @Value("${anshar.message.queue.camel.route.prefix}")
     private String messageQueueCamelRoutePrefix;
 
@@ -221,10 +244,38 @@ public class AnsharConfiguration {
         return numberOfHoursToKeepValidation;
     }
 
+    public int getValidationSampleRate() {
+        return validationSampleRate;
+    }
+
+    public int getValidationMaxPerMinute() {
+        return validationMaxPerMinute;
+    }
+
     public int getChangeBufferCommitFrequency() {
         return changeBufferCommitFrequency;
     }
 
+    public HasherType getChecksumHasherType() {
+        return checksumHasherType;
+    }
+
+    public ChangeTrackerType getChangeTrackerType() {
+        return changeTrackerType;
+    }
+
+    public boolean isStreamingIngestEnabled() {
+        return streamingIngestEnabled;
+    }
+
+    public int getStreamingIngestBatchSize() {
+        return streamingIngestBatchSize;
+    }
+
+    public boolean isBinaryIngestEnabled() {
+        return binaryIngestEnabled;
+    }
+
     public String getMessageQueueCamelRoutePrefix() {
         return messageQueueCamelRoutePrefix;
     }
@@ -0,0 +1,103 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Batch of changed keys published by the member that wrote the data. Only keys and versions are sent - receiving
+ * members read the changed values from the map, and apply them to their local cache.
+ *
+ * Keys of values that should no longer be cached are marked as not cached, and are removed from the cache.
+ */
+public class CacheUpdate implements DataSerializable {
+
+    private List<SiriObjectStorageKey> keys;
+    private List<Long> versions;
+    private List<Boolean> cached;
+
+    public CacheUpdate() {
+        // Used when deserializing
+    }
+
+    CacheUpdate(int expectedSize) {
+        this.keys = new ArrayList<>(expectedSize);
+        this.versions = new ArrayList<>(expectedSize);
+        this.cached = new ArrayList<>(expectedSize);
+    }
+
+    void add(SiriObjectStorageKey key, long version, boolean isCached) {
+        keys.add(key);
+        versions.add(version);
+        cached.add(isCached);
+    }
+
+    int size() {
+        return keys.size();
+    }
+
+    SiriObjectStorageKey getKey(int index) {
+        return keys.get(index);
+    }
+
+    /**
+     * @return Version of the written value - see {@link VersionedCache}
+     */
+    long getVersion(int index) {
+        return versions.get(index);
+    }
+
+    /**
+     * @return false when key should be removed from cache
+     */
+    boolean isCached(int index) {
+        return cached.get(index);
+    }
+
+    boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            out.writeObject(keys.get(i));
+            out.writeLong(versions.get(i));
+            out.writeBoolean(cached.get(i));
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        final int size = in.readInt();
+        keys = new ArrayList<>(size);
+        versions = new ArrayList<>(size);
+        cached = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(in.readObject());
+            versions.add(in.readLong());
+            cached.add(in.readBoolean());
+        }
+    }
+}
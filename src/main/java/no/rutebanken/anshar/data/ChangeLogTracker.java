@@ -0,0 +1,153 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.data;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.hazelcast.map.IMap;
+import com.hazelcast.ringbuffer.ReadResultSet;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * All committed changes are appended once to a shared, sequence-numbered change-log. Every requestor has a
+ * cursor pointing to the last sequence returned, and a - usually empty - Set of changes that were not returned
+ * because of size-limits.
+ *
+ * Polling reads the log from the cursor, and advances the cursor to the last sequence read. If the log has been
+ * overwritten since the last poll, the requestor is treated as untracked and will get a full resync.
+ */
+class ChangeLogTracker implements ChangeTracker {
+
+    private final Logger logger = LoggerFactory.getLogger(ChangeLogTracker.class);
+
+    // Max number of items read from Ringbuffer per call
+    private static final int MAX_READ_BATCH_SIZE = 1000;
+
+    private final IMap<String, Set<SiriObjectStorageKey>> pendingChanges;
+    private final Ringbuffer<Set<SiriObjectStorageKey>> changeLog;
+    private final IMap<String, Long> cursors;
+
+    /**
+     * Last sequence read by getChanges - used as new cursor when requestor is updated
+     */
+    private final Cache<String, Long> readSequences = CacheBuilder.newBuilder()
+            .expireAfterWrite(10, TimeUnit.MINUTES)
+            .build();
+
+    ChangeLogTracker(IMap<String, Set<SiriObjectStorageKey>> pendingChanges, Ringbuffer<Set<SiriObjectStorageKey>> changeLog, IMap<String, Long> cursors) {
+        this.pendingChanges = pendingChanges;
+        this.changeLog = changeLog;
+        this.cursors = cursors;
+    }
+
+    @Override
+    public void commit(Set<SiriObjectStorageKey> changes) {
+        long t1 = System.currentTimeMillis();
+        final long sequence = changeLog.add(new HashSet<>(changes));
+        logger.info("Appended {} changes to {} with sequence {}, took {} ms", changes.size(), changeLog.getName(), sequence, (System.currentTimeMillis() - t1));
+    }
+
+    @Override
+    public Set<SiriObjectStorageKey> getChanges(String requestorId) {
+        final Long cursor = cursors.get(requestorId);
+        final Set<SiriObjectStorageKey> pending = pendingChanges.get(requestorId);
+
+        if (cursor == null || pending == null) {
+            readSequences.put(requestorId, changeLog.tailSequence());
+            return null;
+        }
+
+        if (cursor + 1 < changeLog.headSequence()) {
+            logger.warn("Changes for requestor {} have been removed from {} - full resync required", requestorId, changeLog.getName());
+            readSequences.put(requestorId, changeLog.tailSequence());
+            return null;
+        }
+
+        Set<SiriObjectStorageKey> changes = new HashSet<>(pending);
+        long sequence = cursor + 1;
+        try {
+            while (sequence <= changeLog.tailSequence()) {
+                ReadResultSet<Set<SiriObjectStorageKey>> result = changeLog
+                        .readManyAsync(sequence, 0, MAX_READ_BATCH_SIZE, null)
+                        .toCompletableFuture()
+                        .get();
+                if (result.readCount() == 0) {
+                    break;
+                }
+                for (Set<SiriObjectStorageKey> committedChanges : result) {
+                    changes.addAll(committedChanges);
+                }
+                sequence = result.getNextSequenceToReadFrom();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading " + changeLog.getName(), e);
+        } catch (ExecutionException e) {
+            // Typically StaleSequenceException - log was overwritten while reading
+            logger.warn("Unable to read changes for requestor {} from {} - full resync required", requestorId, changeLog.getName(), e.getCause());
+            readSequences.put(requestorId, changeLog.tailSequence());
+            return null;
+        }
+
+        readSequences.put(requestorId, sequence - 1);
+        return changes;
+    }
+
+    @Override
+    public void update(String requestorId, Set<SiriObjectStorageKey> remainingChanges, int trackingPeriod, TimeUnit timeUnit) {
+        Long readSequence = readSequences.getIfPresent(requestorId);
+        readSequences.invalidate(requestorId);
+        if (readSequence == null) {
+            // Changes were read on another member, or too long ago - keep existing cursor so that no changes are skipped
+            readSequence = cursors.get(requestorId);
+            if (readSequence == null) {
+                // Requestor stays untracked, and will get a full resync
+                pendingChanges.delete(requestorId);
+                return;
+            }
+        }
+
+        pendingChanges.set(requestorId, remainingChanges, trackingPeriod, timeUnit);
+        cursors.set(requestorId, readSequence, trackingPeriod, timeUnit);
+    }
+
+    @Override
+    public void remove(SiriObjectStorageKey key) {
+        // Removed entries are ignored when changes are fetched - no need to update every requestor
+    }
+
+    @Override
+    public void removeRequestor(String requestorId) {
+        readSequences.invalidate(requestorId);
+        pendingChanges.delete(requestorId);
+        cursors.delete(requestorId);
+    }
+
+    @Override
+    public void clear() {
+        pendingChanges.clear();
+        cursors.clear();
+        readSequences.invalidateAll();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.data;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of which changes have not yet been returned to each polling requestor.
+ */
+interface ChangeTracker {
+
+    /**
+     * Makes committed changes available to all tracked requestors
+     * @param changes
+     */
+    void commit(Set<SiriObjectStorageKey> changes);
+
+    /**
+     * @param requestorId
+     * @return All changes not yet returned to requestor, or null if requestor is not tracked. Returned Set may be modified.
+     */
+    Set<SiriObjectStorageKey> getChanges(String requestorId);
+
+    /**
+     * Starts/continues tracking changes for requestor. Changes returned by the previous call to
+     * getChanges are considered delivered, except for the provided remaining changes.
+     *
+     * @param requestorId
+     * @param remainingChanges changes that still have not been returned to requestor
+     * @param trackingPeriod
+     * @param timeUnit
+     */
+    void update(String requestorId, Set<SiriObjectStorageKey> remainingChanges, int trackingPeriod, TimeUnit timeUnit);
+
+    /**
+     * Called when an entry is removed/expired
+     * @param key
+     */
+    void remove(SiriObjectStorageKey key);
+
+    /**
+     * Stops tracking changes for requestor
+     * @param requestorId
+     */
+    void removeRequestor(String requestorId);
+
+    void clear();
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.map.IMap;
+import com.hazelcast.ringbuffer.Ringbuffer;
+
+import java.time.Instant;
+import java.util.Set;
+
+public enum ChangeTrackerType {
+    /**
+     * Every requestor has a Set of all changes, committed changes are appended to every Set
+     */
+    SET,
+    /**
+     * Committed changes are appended once to a shared change-log, every requestor has a cursor in the log
+     */
+    CHANGELOG;
+
+    ChangeTracker create(IMap<String, Set<SiriObjectStorageKey>> changesMap, IMap<String, Instant> lastUpdateRequested,
+                         Ringbuffer<Set<SiriObjectStorageKey>> changeLog, IMap<String, Long> changeLogCursors) {
+        switch (this) {
+            case CHANGELOG:
+                return new ChangeLogTracker(changesMap, changeLog, changeLogCursors);
+            case SET:
+            default:
+                return new SetChangeTracker(changesMap, lastUpdateRequested);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+import com.hazelcast.query.Predicate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Matches entries by key only - filtered by datasetId the same way as
+ * {@link SiriRepository#filterIdsByDataset(Set, List, String)}. Evaluated on the members owning the entries.
+ */
+public class DatasetKeyPredicate<V> implements Predicate<SiriObjectStorageKey, V>, DataSerializable {
+
+    private String datasetId;
+
+    private List<String> excludedDatasetIds;
+
+    public DatasetKeyPredicate() {
+    }
+
+    /**
+     * @param datasetId Only match keys with this datasetId - ignored when excludedDatasetIds is set
+     * @param excludedDatasetIds Match all keys except these datasetIds
+     */
+    public DatasetKeyPredicate(String datasetId, List<String> excludedDatasetIds) {
+        this.datasetId = datasetId;
+        this.excludedDatasetIds = excludedDatasetIds;
+    }
+
+    @Override
+    public boolean apply(Map.Entry<SiriObjectStorageKey, V> entry) {
+        final SiriObjectStorageKey key = entry.getKey();
+        if (excludedDatasetIds != null && !excludedDatasetIds.isEmpty()) {
+            return !excludedDatasetIds.contains(key.getCodespaceId());
+        }
+        if (datasetId != null && !datasetId.isEmpty()) {
+            return datasetId.equals(key.getCodespaceId());
+        }
+        return true;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeString(datasetId);
+        if (excludedDatasetIds == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(excludedDatasetIds.size());
+            for (String excludedDatasetId : excludedDatasetIds) {
+                out.writeString(excludedDatasetId);
+            }
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        datasetId = in.readString();
+        int excludedCount = in.readInt();
+        if (excludedCount >= 0) {
+            excludedDatasetIds = new ArrayList<>(excludedCount);
+            for (int i = 0; i < excludedCount; i++) {
+                excludedDatasetIds.add(in.readString());
+            }
+        }
+    }
+}
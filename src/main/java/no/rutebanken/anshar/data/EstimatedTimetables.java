@@ -16,9 +16,18 @@
 package no.rutebanken.anshar.data;
 
 import com.hazelcast.map.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
 import com.hazelcast.query.Predicates;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import com.hazelcast.topic.ITopic;
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
+import no.rutebanken.anshar.data.hashing.ChangeDetectionHasher;
 import no.rutebanken.anshar.data.util.TimingTracer;
 import no.rutebanken.anshar.metrics.SiriContent;
 import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
@@ -54,8 +63,6 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static no.rutebanken.anshar.routes.siri.transformer.impl.OutboundIdAdapter.getMappedId;
@@ -68,9 +75,13 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
     @Autowired
     private IMap<SiriObjectStorageKey, EstimatedVehicleJourney> timetableDeliveries;
 
+    @Autowired
+    @Qualifier("getEstimatedTimetableCacheUpdates")
+    private ITopic<CacheUpdate> cacheUpdates;
+
     @Autowired
     @Qualifier("getEtChecksumMap")
-    private IMap<SiriObjectStorageKey,String> checksumCache;
+    private IMap<SiriObjectStorageKey,Long> checksumCache;
 
     @Autowired
     @Qualifier("getIdForPatternChangesMap")
@@ -78,12 +89,26 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
 
     @Autowired
     @Qualifier("getIdStartTimeMap")
-    private IMap<SiriObjectStorageKey, ZonedDateTime> idStartTimeMap;
+    private IMap<SiriObjectStorageKey, Long> idStartTimeMap;
+
+    @Autowired
+    @Qualifier("getEtRecordedAtMap")
+    private IMap<SiriObjectStorageKey, Long> recordedAtMap;
+
+    final StartTimeIndex startTimeIndex = new StartTimeIndex();
 
     @Autowired
     @Qualifier("getEstimatedTimetableChangesMap")
     private IMap<String, Set<SiriObjectStorageKey>> changesMap;
 
+    @Autowired
+    @Qualifier("getEstimatedTimetableChangeLog")
+    private Ringbuffer<Set<SiriObjectStorageKey>> changeLog;
+
+    @Autowired
+    @Qualifier("getEstimatedTimetableChangeLogCursors")
+    private IMap<String, Long> changeLogCursors;
+
     @Autowired
     @Qualifier("getLastEtUpdateRequest")
     private IMap<String, Instant> lastUpdateRequested;
@@ -97,20 +122,78 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
     @Autowired
     ExtendedHazelcastService hazelcastService;
 
+    private ChangeDetectionHasher changeDetectionHasher;
+
     protected EstimatedTimetables() {
         super(SiriDataType.ESTIMATED_TIMETABLE);
     }
 
     @PostConstruct
     private void initializeUpdateCommitter() {
-        super.initBufferCommitter(hazelcastService, lastUpdateRequested, changesMap, configuration.getChangeBufferCommitFrequency());
-        enableCache(timetableDeliveries,
+        // Checksum is calculated without "RecordedAtTime" - thus ignoring "fake" updates
+        changeDetectionHasher = configuration.getChecksumHasherType().create("recordedAtTime");
+
+        ChangeTracker changeTracker = configuration.getChangeTrackerType().create(changesMap, lastUpdateRequested, changeLog, changeLogCursors);
+        super.initBufferCommitter(hazelcastService, lastUpdateRequested, changeTracker, configuration.getChangeBufferCommitFrequency());
+        enableCache(timetableDeliveries, cacheUpdates,
             // Only cache monitored/cancelled/extra trips
             value -> (Boolean.TRUE.equals(value.isMonitored()) |
                 Boolean.TRUE.equals(value.isCancellation()) |
                 Boolean.TRUE.equals(value.isExtraJourney()))
         );
-        linkEntriesTtl(timetableDeliveries, changesMap, checksumCache, idStartTimeMap);
+        linkEntriesTtl(timetableDeliveries, checksumCache, idStartTimeMap, recordedAtMap);
+        enableKeyIndex(timetableDeliveries);
+        enableStartTimeIndex();
+    }
+
+    /**
+     * Maintains local index of start times and pattern changes, used when filtering on previewInterval
+     */
+    private void enableStartTimeIndex() {
+        idStartTimeMap.addEntryListener((EntryAddedListener<SiriObjectStorageKey, Long>) entryEvent -> {
+            startTimeIndex.put(entryEvent.getKey(), entryEvent.getValue());
+        }, true);
+        idStartTimeMap.addEntryListener((EntryUpdatedListener<SiriObjectStorageKey, Long>) entryEvent -> {
+            startTimeIndex.put(entryEvent.getKey(), entryEvent.getValue());
+        }, true);
+        idStartTimeMap.addEntryListener((EntryExpiredListener<SiriObjectStorageKey, Long>) entryEvent -> {
+            startTimeIndex.remove(entryEvent.getKey());
+        }, false);
+        idStartTimeMap.addEntryListener((EntryEvictedListener<SiriObjectStorageKey, Long>) entryEvent -> {
+            startTimeIndex.remove(entryEvent.getKey());
+        }, false);
+        idStartTimeMap.addEntryListener((EntryRemovedListener<SiriObjectStorageKey, Long>) entryEvent -> {
+            startTimeIndex.remove(entryEvent.getKey());
+        }, false);
+        idStartTimeMap.addEntryListener((MapClearedListener) mapEvent -> {
+            startTimeIndex.clearStartTimes();
+        }, false);
+
+        idForPatternChanges.addEntryListener((EntryAddedListener<SiriObjectStorageKey, String>) entryEvent -> {
+            startTimeIndex.addPatternChange(entryEvent.getKey());
+        }, false);
+        idForPatternChanges.addEntryListener((EntryExpiredListener<SiriObjectStorageKey, String>) entryEvent -> {
+            startTimeIndex.removePatternChange(entryEvent.getKey());
+        }, false);
+        idForPatternChanges.addEntryListener((EntryEvictedListener<SiriObjectStorageKey, String>) entryEvent -> {
+            startTimeIndex.removePatternChange(entryEvent.getKey());
+        }, false);
+        idForPatternChanges.addEntryListener((EntryRemovedListener<SiriObjectStorageKey, String>) entryEvent -> {
+            startTimeIndex.removePatternChange(entryEvent.getKey());
+        }, false);
+        idForPatternChanges.addEntryListener((MapClearedListener) mapEvent -> {
+            startTimeIndex.clearPatternChanges();
+        }, false);
+
+        // Initialize index
+        long t1 = System.currentTimeMillis();
+
+        for (Map.Entry<SiriObjectStorageKey, Long> entry : idStartTimeMap.entrySet()) {
+            startTimeIndex.put(entry.getKey(), entry.getValue());
+        }
+        startTimeIndex.addPatternChanges(idForPatternChanges.keySet());
+
+        logger.info("Start time-index initialized with {} keys in {} ms", startTimeIndex.size(), (System.currentTimeMillis()-t1));
     }
 
     /**
@@ -180,28 +263,36 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
     @Override
     public void clearAllByDatasetId(String datasetId) {
 
-        Set<SiriObjectStorageKey> idsToRemove = timetableDeliveries.keySet(createCodespacePredicate(datasetId));
+        Set<SiriObjectStorageKey> idsToRemove = getKeysByDatasetId(datasetId);
 
         logger.warn("Removing all data ({} ids) for {}", idsToRemove.size(), datasetId);
 
         for (SiriObjectStorageKey id : idsToRemove) {
             timetableDeliveries.delete(id);
+            keyIndex.remove(id);
 
             checksumCache.remove(id);
             idStartTimeMap.remove(id);
+            recordedAtMap.remove(id);
             idForPatternChanges.remove(id);
+            startTimeIndex.remove(id);
+            startTimeIndex.removePatternChange(id);
         }
     }
 
     public void clearAll() {
         logger.error("Deleting all data - should only be used in test!!!");
         timetableDeliveries.clear();
+        keyIndex.clear();
         checksumCache.clear();
         idStartTimeMap.clear();
+        recordedAtMap.clear();
         idForPatternChanges.clear();
-        changesMap.clear();
+        startTimeIndex.clearStartTimes();
+        startTimeIndex.clearPatternChanges();
+        clearChangeTrackers();
         lastUpdateRequested.clear();
-        cache.clear();
+        clearCache();
     }
 
     public Siri createServiceDelivery(final String lineRef) {
@@ -213,7 +304,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
             return o1_firstTimestamp.compareTo(o2_firstTimestamp);
         });
 
-        final Set<SiriObjectStorageKey> lineRefKeys = timetableDeliveries.keySet(createLineRefPredicate(lineRef));
+        final Set<SiriObjectStorageKey> lineRefKeys = getKeysByLineRef(lineRef);
 
         matchingEstimatedVehicleJourneys.addAll(timetableDeliveries.getAll(lineRefKeys).values());
 
@@ -243,68 +334,67 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
         }
 
         // Get all relevant ids
-        Set<SiriObjectStorageKey> allIds = new HashSet<>();
-        Set<SiriObjectStorageKey> idSet = changesMap.getOrDefault(requestorId, allIds);
-
-        if (idSet == allIds) {
-            idSet.addAll(timetableDeliveries
-                    .keySet(entry -> datasetId == null || ((SiriObjectStorageKey) entry.getKey()).getCodespaceId().equals(datasetId))
-            );
-        }
+        Set<SiriObjectStorageKey> idSet = getChanges(requestorId);
 
-        //Filter by datasetId
-        Set<SiriObjectStorageKey> requestedIds = filterIdsByDataset(idSet, excludedDatasetIds, datasetId);
+        // Keys to fetch - null when no change set or preview interval limits the request
+        Set<SiriObjectStorageKey> candidateIds = idSet;
 
-        final ZonedDateTime previewExpiry = ZonedDateTime.now().plusSeconds(previewInterval / 1000);
-
-        Set<SiriObjectStorageKey> startTimes = new HashSet<>();
+        if (idSet == null) {
+            idSet = new HashSet<>(datasetId == null ? timetableDeliveries.keySet() : getKeysByDatasetId(datasetId));
+        }
 
         if (previewInterval >= 0) {
-            long t1 = System.currentTimeMillis();
-            startTimes.addAll(idStartTimeMap
-                        .entrySet().stream()
-                        .filter(entry -> entry.getValue().isBefore(previewExpiry))
-                        .map(Map.Entry::getKey)
-                        .collect(Collectors.toSet()));
+            final long previewExpiry = ZonedDateTime.now().plusSeconds(previewInterval / 1000).toEpochSecond();
 
-            logger.info("Found {} ids starting within {} ms in {} ms", startTimes.size(), previewInterval, (System.currentTimeMillis()-t1));
-        }
+            long t1 = System.currentTimeMillis();
+            Set<SiriObjectStorageKey> startTimes = startTimeIndex.getStartingBeforeOrWithPatternChanges(previewExpiry);
 
-        final AtomicInteger previewIntervalInclusionCounter = new AtomicInteger();
-        final AtomicInteger previewIntervalExclusionCounter = new AtomicInteger();
-        Predicate<SiriObjectStorageKey> previewIntervalFilter =  id -> {
+            logger.info("Found {} ids starting within {} ms or with pattern changes in {} ms", startTimes.size(),
+                previewInterval, (System.currentTimeMillis()-t1));
 
-            if (idForPatternChanges.containsKey(id) || startTimes.contains(id)) {
-                // Is valid in requested previewInterval
-                previewIntervalInclusionCounter.incrementAndGet();
-                return true;
+            if (candidateIds == null) {
+                candidateIds = startTimes;
+            } else {
+                candidateIds = new HashSet<>(candidateIds);
+                candidateIds.retainAll(startTimes);
             }
-
-            previewIntervalExclusionCounter.incrementAndGet();
-            return false;
-        };
+        }
 
         long t1 = System.currentTimeMillis();
-        Set<SiriObjectStorageKey> sizeLimitedIds = requestedIds
-                .stream()
-                .filter(id -> previewInterval < 0 || previewIntervalFilter.test(id))
+        final Set<SiriObjectStorageKey> requestedIds;
+        final Set<SiriObjectStorageKey> sizeLimitedIds;
+        final boolean isMoreData;
+        if (candidateIds != null) {
+            // Filter by datasetId on keys only, and fetch values for the size-limited ids
+            requestedIds = filterIdsByDataset(candidateIds, excludedDatasetIds, datasetId);
+            sizeLimitedIds = requestedIds.stream()
                 .limit(maxSize)
                 .collect(Collectors.toSet());
-
-        long t2 = System.currentTimeMillis();
-        //Remove collected objects
-        sizeLimitedIds.forEach(idSet::remove);
-
-        long t3 = System.currentTimeMillis();
-
-        logger.info("Filter by startTime: {}, limiting size: {} ms", (t2 - t1), (t3 - t2));
+            isMoreData = requestedIds.size() > sizeLimitedIds.size();
+        } else {
+            // Filter by datasetId on the owning members - only size-limited keys are returned
+            final LimitedKeysAggregator.Result<SiriObjectStorageKey> result = timetableDeliveries.aggregate(
+                new LimitedKeysAggregator<>(maxSize),
+                new DatasetKeyPredicate<>(datasetId, excludedDatasetIds)
+            );
+            requestedIds = null;
+            sizeLimitedIds = result.getKeys();
+            isMoreData = result.getMatchCount() > sizeLimitedIds.size();
+        }
+        logger.info("Filtering and limiting size: {} ms", (System.currentTimeMillis()-t1));
 
         t1 = System.currentTimeMillis();
+        final Map<SiriObjectStorageKey, EstimatedVehicleJourney> sizeLimited = timetableDeliveries.getAll(sizeLimitedIds);
+        logger.info("Fetching data: {} ms", (System.currentTimeMillis()-t1));
 
-        Boolean isMoreData = (previewIntervalExclusionCounter.get() + sizeLimitedIds.size()) < requestedIds.size();
+        //Remove collected objects
+        idSet.removeAll(sizeLimitedIds);
+        if (!isMoreData && requestedIds != null) {
+            // All requested objects have been returned - remaining requested ids no longer exist
+            idSet.removeAll(requestedIds);
+        }
 
-        Collection<EstimatedVehicleJourney> values = timetableDeliveries.getAll(sizeLimitedIds).values();
-        logger.info("Fetching data: {} ms", (System.currentTimeMillis()-t1));
+        Collection<EstimatedVehicleJourney> values = sizeLimited.values();
         t1 = System.currentTimeMillis();
 
         Siri siri = siriObjectFactory.createETServiceDelivery(values);
@@ -313,7 +403,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
         siri.getServiceDelivery().setMoreData(isMoreData);
 
         if (isAdHocRequest) {
-            logger.info("Returning {}, no requestorRef is set", sizeLimitedIds.size());
+            logger.info("Returning {}, no requestorRef is set", sizeLimited.size());
         } else {
 
             MessageRefStructure msgRef = new MessageRefStructure();
@@ -321,9 +411,9 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
             siri.getServiceDelivery().setRequestMessageRef(msgRef);
 
             //Update change-tracker
-            updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, idSet, trackingPeriodMinutes, TimeUnit.MINUTES);
+            updateChangeTrackers(requestorId, idSet, trackingPeriodMinutes, TimeUnit.MINUTES);
 
-            logger.info("Returning {}, {} left for requestorRef {}", sizeLimitedIds.size(), idSet.size(), requestorId);
+            logger.info("Returning {}, {} left for requestorRef {}", sizeLimited.size(), idSet.size(), requestorId);
         }
 
         return siri;
@@ -463,7 +553,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
     public Collection<EstimatedVehicleJourney> getAllUpdates(String requestorId, String datasetId) {
         if (requestorId != null) {
 
-            Set<SiriObjectStorageKey> idSet = changesMap.get(requestorId);
+            Set<SiriObjectStorageKey> idSet = getChanges(requestorId);
             lastUpdateRequested.put(requestorId, Instant.now(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
 
             if (idSet != null) {
@@ -477,21 +567,21 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
 
                 Collection<EstimatedVehicleJourney> changes = timetableDeliveries.getAll(datasetFilteredIdSet).values();
 
-                Set<SiriObjectStorageKey> existingSet = changesMap.get(requestorId);
+                Set<SiriObjectStorageKey> existingSet = getChanges(requestorId);
                 if (existingSet == null) {
                     existingSet = new HashSet<>();
                 }
                 //Remove returned ids
                 existingSet.removeAll(idSet);
 
-                updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, existingSet, configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
+                updateChangeTrackers(requestorId, existingSet, configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
 
                 logger.info("Returning {} changes to requestorRef {}", changes.size(), requestorId);
                 return changes;
             } else {
 
                 logger.info("Returning all to requestorRef {}", requestorId);
-                updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, new HashSet<>(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
+                updateChangeTrackers(requestorId, new HashSet<>(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
             }
         }
 
@@ -538,6 +628,11 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
         return ZonedDateTime.now();
     }
 
+    @Override
+    long getCacheVersion(EstimatedVehicleJourney vehicleJourney) {
+        return toRecordedAtMillis(vehicleJourney.getRecordedAtTime());
+    }
+
     public long getExpiration(EstimatedVehicleJourney vehicleJourney) {
         ZonedDateTime expiryTimestamp = getLatestArrivalTime(vehicleJourney);
 
@@ -600,39 +695,57 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
 
         Map<SiriObjectStorageKey, EstimatedVehicleJourney> changes = new HashMap();
 
-        Map<SiriObjectStorageKey, String> checksumCacheTmp = new HashMap<>();
-        Map<SiriObjectStorageKey, ZonedDateTime> idStartTimeMapTmp = new HashMap<>();
+        Map<SiriObjectStorageKey, Long> checksumCacheTmp = new HashMap<>();
+        Map<SiriObjectStorageKey, Long> idStartTimeMapTmp = new HashMap<>();
+        Map<SiriObjectStorageKey, Long> recordedAtTmp = new HashMap<>();
         Map<SiriObjectStorageKey, Long> expirationMap = new HashMap<>();
+        Map<SiriObjectStorageKey, String> patternChangesTmp = new HashMap<>();
 
-        Counter outdatedCounter = new CounterImpl(0);
-        Counter notUpdatedCounter = new CounterImpl(0);
-        etList.forEach(et -> {
-            TimingTracer timingTracer = new TimingTracer("single-et");
-            SiriObjectStorageKey key = createKey(datasetId, et);
-
-            timingTracer.mark("createKey");
+        TimingTracer batchTimingTracer = new TimingTracer("batch-et [" + etList.size() + " elements]");
 
-            String currentChecksum = null;
-            ZonedDateTime recordedAtTime = et.getRecordedAtTime();
+        // Keys and checksums for the whole batch - existing data is fetched with one operation per map
+        List<SiriObjectStorageKey> keys = new ArrayList<>(etList.size());
+        List<Long> checksums = new ArrayList<>(etList.size());
+        for (EstimatedVehicleJourney et : etList) {
+            keys.add(createKey(datasetId, et));
+            Long checksum = null;
             try {
-                // Calculate checksum without "RecordedTime" - thus ignoring "fake" updates
-                et.setRecordedAtTime(null);
-                currentChecksum = getChecksum(et);
-                timingTracer.mark("getChecksum");
+                checksum = changeDetectionHasher.hash(et);
             } catch (Exception e) {
                 //Ignore - data will be updated
-            } finally {
-                //Set original RecordedTime back
-                et.setRecordedAtTime(recordedAtTime);
             }
+            checksums.add(checksum);
+        }
+        batchTimingTracer.mark("createKeysAndChecksums");
+
+        final Map<SiriObjectStorageKey, Long> existingChecksums = checksumCache.getAll(new HashSet<>(keys));
+        batchTimingTracer.mark("checksumCache.getAll");
+
+        // RecordedAtTime of existing data is only needed for changed elements
+        Set<SiriObjectStorageKey> changedKeys = new HashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Long existingChecksum = existingChecksums.get(keys.get(i));
+            if (existingChecksum == null || !existingChecksum.equals(checksums.get(i))) {
+                changedKeys.add(keys.get(i));
+            }
+        }
+        final Map<SiriObjectStorageKey, Long> existingRecordedAtTimes = getRecordedAtTimes(recordedAtMap, changedKeys);
+        batchTimingTracer.mark("recordedAtMap.getAll");
 
-            String existingChecksum = checksumCache.get(key);
-            timingTracer.mark("checksumCache.get");
+        Counter outdatedCounter = new CounterImpl(0);
+        Counter notUpdatedCounter = new CounterImpl(0);
+        for (int i = 0; i < etList.size(); i++) {
+            final EstimatedVehicleJourney et = etList.get(i);
+            TimingTracer timingTracer = new TimingTracer("single-et");
+            SiriObjectStorageKey key = keys.get(i);
+            Long currentChecksum = checksums.get(i);
+
+            Long existingChecksum = existingChecksums.get(key);
             boolean updated;
 //            if (existingChecksum != null && timetableDeliveries.containsKey(key)) {
             if (existingChecksum != null) {
                 //Exists - compare values
-                updated =  !(currentChecksum.equals(existingChecksum));
+                updated =  !(existingChecksum.equals(currentChecksum));
                 if (updated && et.isMonitored() == null) {
                     et.setMonitored(true);
                 }
@@ -644,17 +757,14 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
 
             boolean keep = false;
 
-            EstimatedVehicleJourney existing = null;
             if (updated) {
 
-                existing = timetableDeliveries.get(key);
+                Long existingRecordedAt = existingRecordedAtTimes.get(key);
 
-                timingTracer.mark("getExisting");
+                if (existingRecordedAt != null &&
+                        (et.getRecordedAtTime() != null && existingRecordedAt != NO_RECORDED_AT_TIME)) {
 
-                if (existing != null &&
-                        (et.getRecordedAtTime() != null && existing.getRecordedAtTime() != null)) {
-
-                    if (et.getRecordedAtTime().isAfter(existing.getRecordedAtTime()) || et.getRecordedAtTime().equals(existing.getRecordedAtTime()) ) {
+                    if (toRecordedAtMillis(et.getRecordedAtTime()) >= existingRecordedAt) {
                         keep = true;
                     } else {
                         logger.info("Newer data has already been processed - ignoring ET-element");
@@ -682,8 +792,7 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
                     if (hasPatternChanges) {
 
                         // Keep track of all valid ET with pattern-changes
-                        idForPatternChanges.put(key, key.getKey(), expiration, TimeUnit.MILLISECONDS);
-                        timingTracer.mark("idForPatternChanges.put");
+                        patternChangesTmp.put(key, key.getKey());
 
                         if (et.isMonitored() == null) {
                             et.setMonitored(true);
@@ -696,9 +805,11 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
                     checksumCacheTmp.put(key, currentChecksum);
                     timingTracer.mark("checksumCache.put");
 
-                    idStartTimeMapTmp.put(key, getFirstAimedTime(et));
+                    idStartTimeMapTmp.put(key, getFirstAimedTime(et).toEpochSecond());
                     timingTracer.mark("idStartTimeMap.put");
 
+                    recordedAtTmp.put(key, toRecordedAtMillis(et.getRecordedAtTime()));
+
                     expirationMap.put(key, expiration);
 
                 } else {
@@ -711,23 +822,37 @@ public class EstimatedTimetables  extends SiriRepository<EstimatedVehicleJourney
             if (elapsed > 500) {
                 logger.info("Adding ET-object with key {} took {} ms: {}", key, elapsed, timingTracer);
             }
-
-        });
+        }
+        if (batchTimingTracer.getTotalTime() > 3000) {
+            logger.info(batchTimingTracer.toString());
+        }
 
         logger.info("Updated {} (of {}), {} outdated, {} without changes", changes.size(), etList.size(), outdatedCounter.getValue(), notUpdatedCounter.getValue());
 
         markDataReceived(SiriDataType.ESTIMATED_TIMETABLE, datasetId, etList.size(), changes.size(), outdatedCounter.getValue(), notUpdatedCounter.getValue());
         TimingTracer timingTracer = new TimingTracer("all-et [" + changes.size() + " changes]");
 
-        // TTL is set in EntryListener when objects are added to main map
-        checksumCache.setAll(checksumCacheTmp);
-        timingTracer.mark("checksumCache.setAll");
+        // Same TTL is set on all maps as part of the write
+        new TtlWriteBatch(hazelcastService.getHazelcastInstance().getPartitionService(), expirationMap)
+            .setAll(checksumCache, checksumCacheTmp)
+            .setAll(idStartTimeMap, idStartTimeMapTmp)
+            .setAll(recordedAtMap, recordedAtTmp)
+            .setAll(idForPatternChanges, patternChangesTmp)
+            .setAll(timetableDeliveries, changes)
+            .await();
+        timingTracer.mark("timetableDeliveries.setAll");
 
-        idStartTimeMap.setAll(idStartTimeMapTmp);
-        timingTracer.mark("idStartTimeMap.setAll");
+        publishCacheUpdates(changes);
+        timingTracer.mark("publishCacheUpdates");
 
-        timetableDeliveries.setAll(changes);
-        timingTracer.mark("timetableDeliveries.setAll");
+        keyIndex.addAll(changes.keySet());
+        timingTracer.mark("keyIndex.addAll");
+
+        startTimeIndex.putAll(idStartTimeMapTmp);
+        timingTracer.mark("startTimeIndex.putAll");
+
+        startTimeIndex.addPatternChanges(patternChangesTmp.keySet());
+        timingTracer.mark("startTimeIndex.addPatternChanges");
 
         markIdsAsUpdated(changes.keySet());
         timingTracer.mark("markIdsAsUpdated");
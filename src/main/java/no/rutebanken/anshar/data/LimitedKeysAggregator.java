@@ -0,0 +1,121 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.aggregation.Aggregator;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects at most maxSize matching keys on each member, and counts all matches. Only keys are read and returned to
+ * the calling member, where the results from all members are combined and limited to maxSize - values are fetched
+ * separately for the limited keys.
+ */
+public class LimitedKeysAggregator<K, V> extends Aggregator<Map.Entry<K, V>, LimitedKeysAggregator.Result<K>>
+    implements DataSerializable {
+
+    private int maxSize;
+
+    private long matchCount;
+
+    private Set<K> keys = new HashSet<>();
+
+    public LimitedKeysAggregator() {
+    }
+
+    public LimitedKeysAggregator(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void accumulate(Map.Entry<K, V> entry) {
+        matchCount++;
+        if (keys.size() < maxSize) {
+            keys.add(entry.getKey());
+        }
+    }
+
+    @Override
+    public void combine(Aggregator aggregator) {
+        LimitedKeysAggregator<K, V> other = (LimitedKeysAggregator<K, V>) aggregator;
+        matchCount += other.matchCount;
+        for (K key : other.keys) {
+            if (keys.size() >= maxSize) {
+                break;
+            }
+            keys.add(key);
+        }
+    }
+
+    @Override
+    public Result<K> aggregate() {
+        return new Result<>(keys, matchCount);
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(maxSize);
+        out.writeLong(matchCount);
+        out.writeInt(keys.size());
+        for (K key : keys) {
+            out.writeObject(key);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        maxSize = in.readInt();
+        matchCount = in.readLong();
+        int size = in.readInt();
+        keys = new HashSet<>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(in.readObject());
+        }
+    }
+
+    public static class Result<K> {
+
+        private final Set<K> keys;
+
+        private final long matchCount;
+
+        Result(Set<K> keys, long matchCount) {
+            this.keys = keys;
+            this.matchCount = matchCount;
+        }
+
+        /**
+         * @return At most maxSize of the matching keys
+         */
+        public Set<K> getKeys() {
+            return keys;
+        }
+
+        /**
+         * @return Total number of matching keys, including those not returned
+         */
+        public long getMatchCount() {
+            return matchCount;
+        }
+    }
+}
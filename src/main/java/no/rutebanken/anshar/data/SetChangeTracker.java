@@ -0,0 +1,86 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.map.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every requestor has a Set of changes in a distributed map, and every commit is appended to all Sets.
+ */
+class SetChangeTracker implements ChangeTracker {
+
+    private final Logger logger = LoggerFactory.getLogger(SetChangeTracker.class);
+
+    private final IMap<String, Set<SiriObjectStorageKey>> changesMap;
+    private final IMap<String, Instant> lastUpdateRequested;
+
+    SetChangeTracker(IMap<String, Set<SiriObjectStorageKey>> changesMap, IMap<String, Instant> lastUpdateRequested) {
+        this.changesMap = changesMap;
+        this.lastUpdateRequested = lastUpdateRequested;
+    }
+
+    @Override
+    public void commit(Set<SiriObjectStorageKey> changes) {
+        long t1 = System.currentTimeMillis();
+
+        changesMap.keySet().forEach(key -> {
+            if (!lastUpdateRequested.containsKey(key)) {
+                changesMap.delete(key);
+            }
+        });
+
+        if (!changesMap.isEmpty()) {
+            changesMap.executeOnEntries(new AppendChangesToSetEntryProcessor(changes));
+            logger.info("Updating changes for {} requestors ({}), committed {} changes, update took {} ms",
+                    changesMap.size(), changesMap.getName(), changes.size(), (System.currentTimeMillis() - t1));
+        }
+    }
+
+    @Override
+    public Set<SiriObjectStorageKey> getChanges(String requestorId) {
+        return changesMap.get(requestorId);
+    }
+
+    @Override
+    public void update(String requestorId, Set<SiriObjectStorageKey> remainingChanges, int trackingPeriod, TimeUnit timeUnit) {
+        changesMap.executeOnKey(requestorId, new ReplaceSetEntryProcessor(remainingChanges));
+        changesMap.setTtl(requestorId, trackingPeriod, timeUnit);
+    }
+
+    @Override
+    public void remove(SiriObjectStorageKey key) {
+        for (Set<SiriObjectStorageKey> changes : changesMap.values()) {
+            changes.remove(key);
+        }
+    }
+
+    @Override
+    public void removeRequestor(String requestorId) {
+        changesMap.delete(requestorId);
+    }
+
+    @Override
+    public void clear() {
+        changesMap.clear();
+    }
+}
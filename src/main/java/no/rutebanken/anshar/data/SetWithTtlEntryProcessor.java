@@ -0,0 +1,80 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.ExtendedMapEntry;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sets the value for each key with its own TTL. Carries the values and TTLs for all keys it is submitted for, so that
+ * a batch is written with one operation per member instead of one per key.
+ */
+public class SetWithTtlEntryProcessor<V> implements EntryProcessor<SiriObjectStorageKey, V, Void>, DataSerializable {
+
+    private Map<SiriObjectStorageKey, V> values;
+
+    private Map<SiriObjectStorageKey, Long> ttls;
+
+    public SetWithTtlEntryProcessor() {
+    }
+
+    /**
+     * @param ttls TTL in milliseconds per key
+     */
+    public SetWithTtlEntryProcessor(Map<SiriObjectStorageKey, V> values, Map<SiriObjectStorageKey, Long> ttls) {
+        this.values = values;
+        this.ttls = ttls;
+    }
+
+    @Override
+    public Void process(Map.Entry<SiriObjectStorageKey, V> entry) {
+        final SiriObjectStorageKey key = entry.getKey();
+        ((ExtendedMapEntry<SiriObjectStorageKey, V>) entry).setValue(values.get(key), ttls.get(key), TimeUnit.MILLISECONDS);
+        return null;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(values.size());
+        for (Map.Entry<SiriObjectStorageKey, V> entry : values.entrySet()) {
+            out.writeObject(entry.getKey());
+            out.writeObject(entry.getValue());
+            out.writeLong(ttls.get(entry.getKey()));
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        int size = in.readInt();
+        values = new HashMap<>(size);
+        ttls = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            SiriObjectStorageKey key = in.readObject();
+            values.put(key, in.readObject());
+            ttls.put(key, in.readLong());
+        }
+    }
+}
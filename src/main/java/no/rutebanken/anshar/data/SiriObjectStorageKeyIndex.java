@@ -0,0 +1,147 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static no.rutebanken.anshar.routes.siri.transformer.SiriValueTransformer.SEPARATOR;
+
+/**
+ * Local inverted index of all keys in a distributed map, grouped by codespaceId and lineRef.
+ *
+ * Lookups by dataset or line are resolved from the index instead of evaluating a predicate
+ * on every entry in the cluster. The index is kept current by EntryListeners registered
+ * in {@link SiriRepository#enableKeyIndex}, and is therefore eventually consistent with the map.
+ */
+class SiriObjectStorageKeyIndex {
+
+    private final Map<String, Set<SiriObjectStorageKey>> codespaceIndex = new ConcurrentHashMap<>();
+
+    /**
+     * All keys indexed by every value they may be looked up by - i.e. the lower-cased lineRef, and
+     * the parts before and after each SEPARATOR when the lineRef is mapped.
+     */
+    private final Map<String, Set<SiriObjectStorageKey>> lineRefIndex = new ConcurrentHashMap<>();
+
+    void add(SiriObjectStorageKey key) {
+        if (key.getCodespaceId() != null) {
+            addToIndex(codespaceIndex, key.getCodespaceId(), key);
+        }
+        for (String token : resolveLineRefTokens(key.getLineRef())) {
+            addToIndex(lineRefIndex, token, key);
+        }
+    }
+
+    void addAll(Collection<SiriObjectStorageKey> keys) {
+        keys.forEach(this::add);
+    }
+
+    void remove(SiriObjectStorageKey key) {
+        if (key.getCodespaceId() != null) {
+            removeFromIndex(codespaceIndex, key.getCodespaceId(), key);
+        }
+        for (String token : resolveLineRefTokens(key.getLineRef())) {
+            removeFromIndex(lineRefIndex, token, key);
+        }
+    }
+
+    void clear() {
+        codespaceIndex.clear();
+        lineRefIndex.clear();
+    }
+
+    /**
+     * @return All keys with the given codespaceId
+     */
+    Set<SiriObjectStorageKey> getByCodespaceId(String codespaceId) {
+        final Set<SiriObjectStorageKey> keys = codespaceIndex.get(codespaceId);
+        if (keys == null) {
+            return new HashSet<>();
+        }
+        return new HashSet<>(keys);
+    }
+
+    /**
+     * @param lineRef decoded lineRef, either original or mapped id
+     * @return All keys matching the given lineRef
+     */
+    Set<SiriObjectStorageKey> getByLineRef(String lineRef) {
+        Set<SiriObjectStorageKey> candidates = new HashSet<>();
+
+        final Set<SiriObjectStorageKey> exactMatches = lineRefIndex.get(lineRef);
+        if (exactMatches != null) {
+            candidates.addAll(exactMatches);
+        }
+        final Set<SiriObjectStorageKey> caseInsensitiveMatches = lineRefIndex.get(lineRef.toLowerCase(Locale.ROOT));
+        if (caseInsensitiveMatches != null) {
+            candidates.addAll(caseInsensitiveMatches);
+        }
+
+        // Tokens are shared between prefix, suffix and lower-cased values - verify actual match
+        candidates.removeIf(key -> !matchesLineRef(key.getLineRef(), lineRef));
+        return candidates;
+    }
+
+    /**
+     * Matches the stored lineRef against requested line - with or without mapping-prefix
+     */
+    static boolean matchesLineRef(String ref, String decodedLine) {
+        if (ref == null) {
+            return false;
+        }
+        return ref.startsWith(decodedLine + SEPARATOR) ||
+                ref.endsWith(SEPARATOR + decodedLine) ||
+                ref.equalsIgnoreCase(decodedLine);
+    }
+
+    private static Set<String> resolveLineRefTokens(String lineRef) {
+        Set<String> tokens = new HashSet<>();
+        if (lineRef == null) {
+            return tokens;
+        }
+        tokens.add(lineRef.toLowerCase(Locale.ROOT));
+
+        int separatorIndex = lineRef.indexOf(SEPARATOR);
+        while (separatorIndex >= 0) {
+            tokens.add(lineRef.substring(0, separatorIndex));
+            tokens.add(lineRef.substring(separatorIndex + SEPARATOR.length()));
+            separatorIndex = lineRef.indexOf(SEPARATOR, separatorIndex + SEPARATOR.length());
+        }
+        return tokens;
+    }
+
+    private static void addToIndex(Map<String, Set<SiriObjectStorageKey>> index, String token, SiriObjectStorageKey key) {
+        index.compute(token, (t, keys) -> {
+            if (keys == null) {
+                keys = ConcurrentHashMap.newKeySet();
+            }
+            keys.add(key);
+            return keys;
+        });
+    }
+
+    private static void removeFromIndex(Map<String, Set<SiriObjectStorageKey>> index, String token, SiriObjectStorageKey key) {
+        index.computeIfPresent(token, (t, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+}
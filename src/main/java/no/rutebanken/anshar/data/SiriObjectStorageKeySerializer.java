@@ -0,0 +1,65 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes SiriObjectStorageKey as three length-prefixed strings, without the class-descriptors
+ * added by Java-serialization.
+ *
+ * The key is used in all data-maps, and in all change-sets, so codespaceId and lineRef are
+ * interned when read to avoid keeping one copy of each for every deserialized key.
+ */
+public class SiriObjectStorageKeySerializer implements StreamSerializer<SiriObjectStorageKey> {
+
+    private static final Interner<String> interner = Interners.newWeakInterner();
+
+    @Override
+    public void write(ObjectDataOutput out, SiriObjectStorageKey key) throws IOException {
+        out.writeString(key.getCodespaceId());
+        out.writeString(key.getLineRef());
+        out.writeString(key.getKey());
+    }
+
+    @Override
+    public SiriObjectStorageKey read(ObjectDataInput in) throws IOException {
+        String codespaceId = intern(in.readString());
+        String lineRef = intern(in.readString());
+        String key = in.readString();
+        return new SiriObjectStorageKey(codespaceId, lineRef, key);
+    }
+
+    private static String intern(String value) {
+        return value != null ? interner.intern(value) : null;
+    }
+
+    @Override
+    public int getTypeId() {
+        return 2;
+    }
+
+    @Override
+    public void destroy() {
+        //Ignore
+    }
+}
@@ -22,25 +22,22 @@ import com.hazelcast.map.listener.EntryAddedListener;
 import com.hazelcast.map.listener.EntryEvictedListener;
 import com.hazelcast.map.listener.EntryExpiredListener;
 import com.hazelcast.map.listener.EntryRemovedListener;
-import com.hazelcast.map.listener.EntryUpdatedListener;
-import com.hazelcast.query.Predicate;
+import com.hazelcast.map.listener.MapClearedListener;
+import com.hazelcast.topic.ITopic;
 import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
 import no.rutebanken.anshar.metrics.PrometheusMetricsService;
 import no.rutebanken.anshar.routes.siri.transformer.ApplicationContextHolder;
 import no.rutebanken.anshar.subscription.SiriDataType;
+import no.rutebanken.anshar.util.ExecutorPool;
+import no.rutebanken.anshar.util.ManagedExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.util.SerializationUtils;
 
-import javax.xml.bind.DatatypeConverter;
-import java.io.Serializable;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -48,18 +45,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
-import static no.rutebanken.anshar.routes.siri.transformer.SiriValueTransformer.SEPARATOR;
-
 abstract class SiriRepository<T> {
 
     private IMap<String, Instant> lastUpdateRequested;
-    private IMap<String, Set<SiriObjectStorageKey>> changesMap;
+    private ChangeTracker changeTracker;
 
     private final SiriDataType SIRI_DATA_TYPE;
 
@@ -79,6 +74,11 @@ abstract class SiriRepository<T> {
 
     abstract long getExpiration(T s);
 
+    /**
+     * @return Version used to order cache updates for the same key - {@link VersionedCache#NO_VERSION} if unknown
+     */
+    abstract long getCacheVersion(T s);
+
     private final Logger logger = LoggerFactory.getLogger(SiriRepository.class);
 
     protected PrometheusMetricsService metrics;
@@ -90,114 +90,256 @@ abstract class SiriRepository<T> {
     @Autowired
     protected RequestorRefRepository requestorRefRepository;
 
+    @Autowired
+    private ManagedExecutors executors;
+
     Map<SiriObjectStorageKey, T> cache = Maps.newConcurrentMap();
 
-    protected SiriRepository (SiriDataType siriDataType) {
-        this.SIRI_DATA_TYPE = siriDataType;
-    }
+    /**
+     * Keeps version of each cached value - used to ignore outdated or reordered cache updates
+     */
+    private final VersionedCache<T> versionedCache = new VersionedCache<>(cache);
 
-    protected void enableCache(IMap<SiriObjectStorageKey, T> map) {
-        enableCache(map, null);
-    }
+    private IMap<SiriObjectStorageKey, T> cachedMap;
 
-    protected void enableCache(IMap<SiriObjectStorageKey, T> map, java.util.function.Predicate<T> includeInCachePredicate) {
+    private ITopic<CacheUpdate> cacheUpdates;
 
-        // Entry added - new data
-        map.addEntryListener((EntryAddedListener<SiriObjectStorageKey, T>) entryEvent -> {
+    private java.util.function.Predicate<T> includeInCachePredicate;
 
-            if (includeInCachePredicate == null || includeInCachePredicate.test(entryEvent.getValue())) {
-                cache.put(entryEvent.getKey(), entryEvent.getValue());
-            }
-        }, true);
+    /**
+     * Incremented whenever local cache or data is changed - used to detect when precomputed responses are outdated
+     */
+    private final AtomicLong dataVersion = new AtomicLong();
+
+    final SiriObjectStorageKeyIndex keyIndex = new SiriObjectStorageKeyIndex();
+
+    /**
+     * Value stored in recordedAt-maps for elements without RecordedAtTime
+     */
+    static final long NO_RECORDED_AT_TIME = Long.MIN_VALUE;
+
+    protected SiriRepository (SiriDataType siriDataType) {
+        this.SIRI_DATA_TYPE = siriDataType;
+    }
 
-        // Entry updated - new version
-        map.addEntryListener((EntryUpdatedListener<SiriObjectStorageKey, T>) entryEvent -> {
+    protected void enableCache(IMap<SiriObjectStorageKey, T> map, ITopic<CacheUpdate> cacheUpdates) {
+        enableCache(map, cacheUpdates, null);
+    }
 
-            if (includeInCachePredicate == null || includeInCachePredicate.test(entryEvent.getValue())) {
-                cache.put(entryEvent.getKey(), entryEvent.getValue());
+    /**
+     * Local cache is updated from compact change notifications published by the writing member - see
+     * {@link #publishCacheUpdates(Map)} - instead of EntryListeners that ship every value to every member.
+     */
+    protected void enableCache(IMap<SiriObjectStorageKey, T> map, ITopic<CacheUpdate> cacheUpdates, java.util.function.Predicate<T> includeInCachePredicate) {
+        this.cachedMap = map;
+        this.cacheUpdates = cacheUpdates;
+        this.includeInCachePredicate = includeInCachePredicate;
+
+        // New data or new version - published by writing member
+        cacheUpdates.addMessageListener(message -> {
+            if (message.getPublishingMember() != null && message.getPublishingMember().localMember()) {
+                // Already applied by the writing member
+                return;
             }
-        }, true);
+            // Values are read from the map - not on the event thread
+            executors.execute(ExecutorPool.CACHE_UPDATE, () -> applyCacheUpdate(message.getMessageObject()));
+        });
 
         //Entry expired by TTL
         map.addEntryListener((EntryExpiredListener<SiriObjectStorageKey, T>) entryEvent -> {
 
-            cache.remove(entryEvent.getKey());
+            if (versionedCache.remove(entryEvent.getKey())) {
+                dataVersion.incrementAndGet();
+            }
         }, false);
 
         // Entry evicted
         map.addEntryListener((EntryEvictedListener<SiriObjectStorageKey, T>) entryEvent -> {
 
-            cache.remove(entryEvent.getKey());
+            if (versionedCache.remove(entryEvent.getKey())) {
+                dataVersion.incrementAndGet();
+            }
         }, false);
 
         // Entry removed - e.g. "delete all for codespace"
         map.addEntryListener((EntryRemovedListener<SiriObjectStorageKey, T>) entryEvent -> {
 
-            cache.remove(entryEvent.getKey());
+            if (versionedCache.remove(entryEvent.getKey())) {
+                dataVersion.incrementAndGet();
+            }
         }, false);
 
         // Initialize cache
         long t1 = System.currentTimeMillis();
 
         final Map<SiriObjectStorageKey, T> allAsMap = getAllAsMap();
-        if (includeInCachePredicate != null) {
-            for (Map.Entry<SiriObjectStorageKey, T> entry : allAsMap.entrySet()) {
-                if (includeInCachePredicate.test(entry.getValue())) {
-                    cache.put(entry.getKey(), entry.getValue());
-                }
+        for (Map.Entry<SiriObjectStorageKey, T> entry : allAsMap.entrySet()) {
+            if (isIncludedInCache(entry.getValue())) {
+                versionedCache.put(entry.getKey(), getCacheVersion(entry.getValue()), entry.getValue());
             }
-        } else {
-            cache.putAll(allAsMap);
         }
         logger.info("Cache initialized with {} elements in {} ms", cache.size(), (System.currentTimeMillis()-t1));
     }
 
+    /**
+     * Applies written values to the local cache, and publishes the changed keys to all other members. Values that
+     * should not be cached are only included as a removal when currently cached.
+     */
+    void publishCacheUpdates(Map<SiriObjectStorageKey, T> changes) {
+        if (cacheUpdates == null || changes.isEmpty()) {
+            return;
+        }
+        boolean cacheChanged = false;
+        CacheUpdate update = new CacheUpdate(changes.size());
+        for (Map.Entry<SiriObjectStorageKey, T> entry : changes.entrySet()) {
+            final long version = getCacheVersion(entry.getValue());
+            if (isIncludedInCache(entry.getValue())) {
+                update.add(entry.getKey(), version, true);
+                cacheChanged |= versionedCache.put(entry.getKey(), version, entry.getValue());
+            } else if (cache.containsKey(entry.getKey())) {
+                update.add(entry.getKey(), version, false);
+                cacheChanged |= versionedCache.remove(entry.getKey(), version);
+            }
+        }
+        if (cacheChanged) {
+            dataVersion.incrementAndGet();
+        }
+        if (!update.isEmpty()) {
+            cacheUpdates.publish(update);
+        }
+    }
+
+    /**
+     * Applies cache update published by another member. Only keys that are not outdated are read from the map, and
+     * the version of the value that is read is used - it may be newer than the published version.
+     */
+    void applyCacheUpdate(CacheUpdate update) {
+        boolean cacheChanged = false;
+        Set<SiriObjectStorageKey> keysToRead = new HashSet<>();
+        for (int i = 0; i < update.size(); i++) {
+            final SiriObjectStorageKey key = update.getKey(i);
+            if (!update.isCached(i)) {
+                cacheChanged |= versionedCache.remove(key, update.getVersion(i));
+            } else if (!versionedCache.isOutdated(key, update.getVersion(i))) {
+                keysToRead.add(key);
+            }
+        }
+
+        if (!keysToRead.isEmpty()) {
+            // Keys no longer in the map have been removed, and are handled by the EntryListeners
+            for (Map.Entry<SiriObjectStorageKey, T> entry : cachedMap.getAll(keysToRead).entrySet()) {
+                final long version = getCacheVersion(entry.getValue());
+                if (isIncludedInCache(entry.getValue())) {
+                    cacheChanged |= versionedCache.put(entry.getKey(), version, entry.getValue());
+                } else {
+                    cacheChanged |= versionedCache.remove(entry.getKey(), version);
+                }
+            }
+        }
+
+        if (cacheChanged) {
+            dataVersion.incrementAndGet();
+        }
+    }
+
+    private boolean isIncludedInCache(T value) {
+        return includeInCachePredicate == null || includeInCachePredicate.test(value);
+    }
+
+    /**
+     * RecordedAtTime of existing elements, read from a map linked to the main map - see {@link #toRecordedAtMillis(ZonedDateTime)}.
+     * Used to decide whether incoming data is newer without transferring and deserializing the existing elements.
+     *
+     * @return RecordedAtTime as epoch-millis for existing elements, {@link #NO_RECORDED_AT_TIME} for existing
+     * elements without RecordedAtTime. Keys without existing element are not included.
+     */
+    Map<SiriObjectStorageKey, Long> getRecordedAtTimes(IMap<SiriObjectStorageKey, Long> recordedAtMap, Set<SiriObjectStorageKey> keys) {
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return recordedAtMap.getAll(keys);
+    }
+
+    static long toRecordedAtMillis(ZonedDateTime recordedAtTime) {
+        return recordedAtTime != null ? recordedAtTime.toInstant().toEpochMilli() : NO_RECORDED_AT_TIME;
+    }
+
+    /**
+     * Maintains local index of all keys in the provided map, used to look up keys by codespace or lineRef
+     * without scanning the entire map.
+     *
+     * @param map
+     */
+    protected void enableKeyIndex(IMap<SiriObjectStorageKey, T> map) {
+
+        // Entry added - new data. Updates does not change the key, and are ignored
+        map.addEntryListener((EntryAddedListener<SiriObjectStorageKey, T>) entryEvent -> {
+            keyIndex.add(entryEvent.getKey());
+        }, false);
+
+        //Entry expired by TTL
+        map.addEntryListener((EntryExpiredListener<SiriObjectStorageKey, T>) entryEvent -> {
+            keyIndex.remove(entryEvent.getKey());
+        }, false);
+
+        // Entry evicted
+        map.addEntryListener((EntryEvictedListener<SiriObjectStorageKey, T>) entryEvent -> {
+            keyIndex.remove(entryEvent.getKey());
+        }, false);
+
+        // Entry removed - e.g. "delete all for codespace"
+        map.addEntryListener((EntryRemovedListener<SiriObjectStorageKey, T>) entryEvent -> {
+            keyIndex.remove(entryEvent.getKey());
+        }, false);
+
+        // All entries removed
+        map.addEntryListener((MapClearedListener) mapEvent -> {
+            keyIndex.clear();
+        }, false);
+
+        // Initialize index
+        long t1 = System.currentTimeMillis();
+
+        final Set<SiriObjectStorageKey> keys = map.keySet();
+        keyIndex.addAll(keys);
+
+        logger.info("Key-index initialized with {} keys in {} ms", keys.size(), (System.currentTimeMillis()-t1));
+    }
+
     /**
      * Links entries across provided Maps.
      *
-     * TTL is set on main map, other maps are linked using EntryListeners:
+     * TTL is set on all maps when written - see {@link TtlWriteBatch}, and removals are linked using EntryListeners:
      *   When an object is removed/expired from the main map, it is also removed from the linked maps
      *
      * @param map
      * @param linkedMaps
      */
-    void linkEntriesTtl(IMap<SiriObjectStorageKey, T> map,  IMap<String, Set<SiriObjectStorageKey>> linkedChangeMap, Map<SiriObjectStorageKey, ? extends Object>... linkedMaps) {
+    void linkEntriesTtl(IMap<SiriObjectStorageKey, T> map, Map<SiriObjectStorageKey, ? extends Object>... linkedMaps) {
         {
 
-            // Entry added - new data
-            map.addEntryListener((EntryAddedListener<SiriObjectStorageKey, T>) entryEvent -> {
-                map.setTtl(entryEvent.getKey(), getExpiration(entryEvent.getValue()), TimeUnit.MILLISECONDS);
-            }, true);
-
-            // Entry updated - new version
-            map.addEntryListener((EntryUpdatedListener<SiriObjectStorageKey, T>) entryEvent -> {
-                map.setTtl(entryEvent.getKey(), getExpiration(entryEvent.getValue()), TimeUnit.MILLISECONDS);
-            }, true);
-
             //Entry expired by TTL
             map.addEntryListener((EntryExpiredListener<SiriObjectStorageKey, T>) entryEvent -> {
-                removeFromLinked(linkedChangeMap, entryEvent, linkedMaps);
+                removeFromLinked(entryEvent, linkedMaps);
             }, false);
 
             // Entry evicted
             map.addEntryListener((EntryEvictedListener<SiriObjectStorageKey, T>) entryEvent -> {
-                removeFromLinked(linkedChangeMap, entryEvent, linkedMaps);
+                removeFromLinked(entryEvent, linkedMaps);
             }, false);
 
             // Entry removed - e.g. "delete all for codespace"
             map.addEntryListener((EntryRemovedListener<SiriObjectStorageKey, T>) entryEvent -> {
-                removeFromLinked(linkedChangeMap, entryEvent, linkedMaps);
+                removeFromLinked(entryEvent, linkedMaps);
             }, false);
         }
     }
 
-    private void removeFromLinked(IMap<String, Set<SiriObjectStorageKey>> linkedChangeMap, EntryEvent<SiriObjectStorageKey, T> entryEvent, Map<SiriObjectStorageKey, ?>[] linkedMaps) {
+    private void removeFromLinked(EntryEvent<SiriObjectStorageKey, T> entryEvent, Map<SiriObjectStorageKey, ?>[] linkedMaps) {
         for (Map<SiriObjectStorageKey, ?> linkedMap : linkedMaps) {
             linkedMap.remove(entryEvent.getKey());
         }
-        for (Set<SiriObjectStorageKey> changes : linkedChangeMap.values()) {
-            changes.remove(entryEvent.getKey());
-        }
+        changeTracker.remove(entryEvent.getKey());
     }
 
     public Collection<T> getAllCachedUpdates(
@@ -220,8 +362,8 @@ abstract class SiriRepository<T> {
                     SIRI_DATA_TYPE
                 );
 
-                if (changesMap.containsKey(requestorId)) {
-                    Set<SiriObjectStorageKey> changes = changesMap.get(requestorId);
+                Set<SiriObjectStorageKey> changes = changeTracker.getChanges(requestorId);
+                if (changes != null) {
 
                     changes = changes.stream()
                         .filter((k) -> datasetId == null || k.getCodespaceId().equals(datasetId))
@@ -238,9 +380,7 @@ abstract class SiriRepository<T> {
                     return updates;
                 }
             } finally {
-                updateChangeTrackers(lastUpdateRequested,
-                    changesMap,
-                    requestorId,
+                updateChangeTrackers(requestorId,
                     new HashSet<>(),
                     2,
                     TimeUnit.MINUTES
@@ -258,9 +398,9 @@ abstract class SiriRepository<T> {
             .collect(Collectors.toList());
     }
 
-    void initBufferCommitter(ExtendedHazelcastService hazelcastService, IMap<String, Instant> lastUpdateRequested, IMap<String, Set<SiriObjectStorageKey>> changesMap, int commitFrequency) {
+    void initBufferCommitter(ExtendedHazelcastService hazelcastService, IMap<String, Instant> lastUpdateRequested, ChangeTracker changeTracker, int commitFrequency) {
         this.lastUpdateRequested = lastUpdateRequested;
-        this.changesMap = changesMap;
+        this.changeTracker = changeTracker;
 
         if (singleThreadScheduledExecutor == null) {
             singleThreadScheduledExecutor = Executors.newSingleThreadScheduledExecutor();
@@ -285,22 +425,10 @@ abstract class SiriRepository<T> {
         try {
             if (!dirtyChanges.isEmpty()) {
 
-                long t1 = System.currentTimeMillis();
-
                 final Set<SiriObjectStorageKey> bufferedChanges = new HashSet<>(dirtyChanges);
                 dirtyChanges.clear();
 
-                changesMap.keySet().forEach(key -> {
-                    if (!lastUpdateRequested.containsKey(key)) {
-                        changesMap.delete(key);
-                    }
-                });
-
-                if (!changesMap.isEmpty()) {
-                    changesMap.executeOnEntries(new AppendChangesToSetEntryProcessor(bufferedChanges));
-                    logger.info("Updating changes for {} requestors ({}), committed {} changes, update took {} ms",
-                            changesMap.size(), this.getClass().getSimpleName(), bufferedChanges.size(), (System.currentTimeMillis() - t1));
-                }
+                changeTracker.commit(bufferedChanges);
             } else {
                 logger.debug("No changes - ignoring commit ({})", this.getClass().getSimpleName());
             }
@@ -317,11 +445,24 @@ abstract class SiriRepository<T> {
      */
     void markIdsAsUpdated(Set<SiriObjectStorageKey> changes) {
         if (!changes.isEmpty()) {
+            dataVersion.incrementAndGet();
             dirtyChanges.addAll(changes);
             logger.info("Added {} updates to {} dirty-buffer, now has {} pending updates", changes.size(), this.getClass().getSimpleName(), dirtyChanges.size());
         }
     }
 
+    void clearCache() {
+        versionedCache.clear();
+        dataVersion.incrementAndGet();
+    }
+
+    /**
+     * @return Version that changes whenever data in this repository changes
+     */
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+
     void markDataReceived(SiriDataType dataType, String datasetId, long totalSize, long updatedSize, long expiredSize, long ignoredSize) {
         prepareMetrics();
         metrics.registerIncomingData(dataType, datasetId, totalSize, updatedSize, expiredSize, ignoredSize);
@@ -333,31 +474,48 @@ abstract class SiriRepository<T> {
         }
     }
 
-    void updateChangeTrackers(IMap<String, Instant> lastUpdateRequested, IMap<String, Set<SiriObjectStorageKey>> changesMap,
-                              String key, Set<SiriObjectStorageKey> changes, int trackingPeriodMinutes, TimeUnit timeUnit) {
-        final String breadcrumbId = MDC.get("camel.breadcrumbId");
+    /**
+     * @param requestorId
+     * @return All changes not yet returned to requestor, or null if requestor is not tracked
+     */
+    Set<SiriObjectStorageKey> getChanges(String requestorId) {
+        return changeTracker.getChanges(requestorId);
+    }
 
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        executorService.execute(() -> {
-            try {
-                MDC.put("camel.breadcrumbId", breadcrumbId);
+    void clearChangeTrackers() {
+        changeTracker.clear();
+    }
 
-                long t1 = System.currentTimeMillis();
+    void updateChangeTrackers(String key, Set<SiriObjectStorageKey> changes, int trackingPeriodMinutes, TimeUnit timeUnit) {
 
-                changesMap.executeOnKey(key, new ReplaceSetEntryProcessor(changes));
-                changesMap.setTtl(key, trackingPeriodMinutes, timeUnit);
+        // Only the latest update for each requestor is relevant
+        executors.executeCoalesced(ExecutorPool.CHANGE_TRACKER, SIRI_DATA_TYPE + ":" + key, () -> {
+            long t1 = System.currentTimeMillis();
 
-                lastUpdateRequested.set(key, Instant.now(), trackingPeriodMinutes, timeUnit);
+            changeTracker.update(key, changes, trackingPeriodMinutes, timeUnit);
 
-                logger.info("Replacing changes for requestor async {} took {} ms. ({})",
-                    key,(System.currentTimeMillis() - t1),this.getClass().getSimpleName());
-            } finally {
-                MDC.remove("camel.breadcrumbId");
-            }
+            lastUpdateRequested.set(key, Instant.now(), trackingPeriodMinutes, timeUnit);
+
+            logger.info("Replacing changes for requestor async {} took {} ms. ({})",
+                key,(System.currentTimeMillis() - t1),this.getClass().getSimpleName());
         });
         logger.info("Changetracker-update submitted");
     }
 
+    /**
+     * Stops tracking changes for requestor. Replaces any pending change-tracker update for the requestor, so that
+     * the requestor is not tracked again when that update is executed.
+     *
+     * @param requestorId
+     */
+    public void removeChangeTracker(String requestorId) {
+        executors.executeCoalesced(ExecutorPool.CHANGE_TRACKER, SIRI_DATA_TYPE + ":" + requestorId, () -> {
+            changeTracker.removeRequestor(requestorId);
+            lastUpdateRequested.delete(requestorId);
+            logger.info("Removed change-tracker for requestor {} ({})", requestorId, this.getClass().getSimpleName());
+        });
+    }
+
     /**
      * Helper method to retrieve multiple values by ids
      * @param collection
@@ -383,11 +541,29 @@ abstract class SiriRepository<T> {
      */
     Collection<T> getValuesByDatasetId(IMap<SiriObjectStorageKey, T> collection, String datasetId) {
 
-        final Set<SiriObjectStorageKey> codespaceKeys = collection.keySet(createCodespacePredicate(datasetId));
+        final Set<SiriObjectStorageKey> codespaceKeys = keyIndex.getByCodespaceId(datasetId);
 
         return collection.getAll(codespaceKeys).values();
     }
 
+    /**
+     * Returns keys where codespaceId matches provided datasetId
+     * @param datasetId
+     * @return
+     */
+    Set<SiriObjectStorageKey> getKeysByDatasetId(String datasetId) {
+        return keyIndex.getByCodespaceId(datasetId);
+    }
+
+    /**
+     * Returns keys where lineRef matches provided - possibly URL-encoded - lineRef
+     * @param lineRef
+     * @return
+     */
+    Set<SiriObjectStorageKey> getKeysByLineRef(String lineRef) {
+        return keyIndex.getByLineRef(URLDecoder.decode(lineRef, StandardCharsets.UTF_8));
+    }
+
     Set<SiriObjectStorageKey> filterIdsByDataset(final Set<SiriObjectStorageKey> idSet, List<String> excludedDatasetIds, String datasetId) {
 
         Set<SiriObjectStorageKey> requestedIds = new HashSet<>();
@@ -416,55 +592,4 @@ abstract class SiriRepository<T> {
     }
 
     abstract void clearAllByDatasetId(String datasetId);
-
-
-    Predicate<SiriObjectStorageKey, T> createCodespacePredicate(String datasetId) {
-        return entry -> {
-            if (entry.getKey().getCodespaceId() != null) {
-                final String codespaceId = entry.getKey().getCodespaceId();
-                return codespaceId.equals(datasetId);
-            }
-            return false;
-        };
-    }
-
-    Predicate<SiriObjectStorageKey, T> createLineRefPredicate(String lineRef) {
-        return entry -> {
-            String decodedLine = URLDecoder.decode(lineRef, StandardCharsets.UTF_8);
-            if (entry.getKey().getLineRef() != null) {
-                final String ref = entry.getKey().getLineRef();
-
-                return ref.startsWith(decodedLine + SEPARATOR) ||
-                        ref.endsWith(SEPARATOR + decodedLine) ||
-                        ref.equalsIgnoreCase(decodedLine);
-            }
-            return false;
-        };
-    }
-
-    /**
-     * Compares object-equality by calculating and comparing MD5-checksum
-     * @param existing
-     * @param updated
-     * @return
-     */
-    static boolean isEqual(Serializable existing, Serializable updated) {
-        try {
-            String checksumExisting = getChecksum(existing);
-            String checksumUpdated = getChecksum(updated);
-
-            return checksumExisting.equals(checksumUpdated);
-
-        } catch (Exception e) {
-            //ignore - data will be updated
-        }
-        return false;
-    }
-
-    static String getChecksum(Serializable object) throws NoSuchAlgorithmException {
-        byte[] bytes = SerializationUtils.serialize(object);
-        MessageDigest md = MessageDigest.getInstance("MD5");
-        return DatatypeConverter.printHexBinary(md.digest(bytes));
-
-    }
 }
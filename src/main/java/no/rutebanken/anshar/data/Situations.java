@@ -16,8 +16,11 @@
 package no.rutebanken.anshar.data;
 
 import com.hazelcast.map.IMap;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import com.hazelcast.topic.ITopic;
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
+import no.rutebanken.anshar.data.hashing.ChangeDetectionHasher;
 import no.rutebanken.anshar.data.util.TimingTracer;
 import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
 import no.rutebanken.anshar.subscription.SiriDataType;
@@ -56,14 +59,26 @@ public class Situations extends SiriRepository<PtSituationElement> {
     @Autowired
     private IMap<SiriObjectStorageKey , PtSituationElement>  situationElements;
 
+    @Autowired
+    @Qualifier("getSituationCacheUpdates")
+    private ITopic<CacheUpdate> cacheUpdates;
+
     @Autowired
     @Qualifier("getSxChecksumMap")
-    private IMap<SiriObjectStorageKey,String> checksumCache;
+    private IMap<SiriObjectStorageKey,Long> checksumCache;
 
     @Autowired
     @Qualifier("getSituationChangesMap")
     private IMap<String, Set<SiriObjectStorageKey>> changesMap;
 
+    @Autowired
+    @Qualifier("getSituationChangeLog")
+    private Ringbuffer<Set<SiriObjectStorageKey>> changeLog;
+
+    @Autowired
+    @Qualifier("getSituationChangeLogCursors")
+    private IMap<String, Long> changeLogCursors;
+
 
     @Autowired
     @Qualifier("getLastSxUpdateRequest")
@@ -78,17 +93,23 @@ public class Situations extends SiriRepository<PtSituationElement> {
     @Autowired
     ExtendedHazelcastService hazelcastService;
 
+    private ChangeDetectionHasher changeDetectionHasher;
+
     protected Situations() {
         super(SiriDataType.SITUATION_EXCHANGE);
     }
 
     @PostConstruct
     private void initializeUpdateCommitter() {
-        super.initBufferCommitter(hazelcastService, lastUpdateRequested, changesMap, configuration.getChangeBufferCommitFrequency());
+        changeDetectionHasher = configuration.getChecksumHasherType().create();
 
-        enableCache(situationElements);
+        ChangeTracker changeTracker = configuration.getChangeTrackerType().create(changesMap, lastUpdateRequested, changeLog, changeLogCursors);
+        super.initBufferCommitter(hazelcastService, lastUpdateRequested, changeTracker, configuration.getChangeBufferCommitFrequency());
 
-        linkEntriesTtl(situationElements, changesMap, checksumCache);
+        enableCache(situationElements, cacheUpdates);
+
+        linkEntriesTtl(situationElements, checksumCache);
+        enableKeyIndex(situationElements);
     }
 
     /**
@@ -144,12 +165,13 @@ public class Situations extends SiriRepository<PtSituationElement> {
     @Override
     public void clearAllByDatasetId(String datasetId) {
 
-        Set<SiriObjectStorageKey> idsToRemove = situationElements.keySet(createCodespacePredicate(datasetId));
+        Set<SiriObjectStorageKey> idsToRemove = getKeysByDatasetId(datasetId);
 
         logger.warn("Removing all data ({} ids) for {}", idsToRemove.size(), datasetId);
 
         for (SiriObjectStorageKey id : idsToRemove) {
             situationElements.remove(id);
+            keyIndex.remove(id);
             checksumCache.remove(id);
         }
     }
@@ -157,8 +179,9 @@ public class Situations extends SiriRepository<PtSituationElement> {
     public void clearAll() {
         logger.error("Deleting all data - should only be used in test!!!");
         situationElements.clear();
+        keyIndex.clear();
         checksumCache.clear();
-        cache.clear();
+        clearCache();
     }
 
     public Siri createServiceDelivery(String requestorId, String datasetId, String clientName, int maxSize) {
@@ -175,11 +198,10 @@ public class Situations extends SiriRepository<PtSituationElement> {
         }
 
         // Get all relevant ids
-        Set<SiriObjectStorageKey> allIds = new HashSet<>();
-        Set<SiriObjectStorageKey> idSet = changesMap.getOrDefault(requestorId, allIds);
+        Set<SiriObjectStorageKey> idSet = getChanges(requestorId);
 
-        if (idSet == allIds) {
-            idSet.addAll(situationElements.keySet());
+        if (idSet == null) {
+            idSet = new HashSet<>(situationElements.keySet());
         }
 
         //Filter by datasetId
@@ -217,7 +239,7 @@ public class Situations extends SiriRepository<PtSituationElement> {
             siri.getServiceDelivery().setRequestMessageRef(msgRef);
 
             //Update change-tracker
-            updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, idSet, trackingPeriodMinutes, TimeUnit.MINUTES);
+            updateChangeTrackers(requestorId, idSet, trackingPeriodMinutes, TimeUnit.MINUTES);
 
             logger.info("Returning {}, {} left for requestorRef {}", sizeLimitedIds.size(), idSet.size(), requestorId);
         }
@@ -242,7 +264,7 @@ public class Situations extends SiriRepository<PtSituationElement> {
     public Collection<PtSituationElement> getAllUpdates(String requestorId, String datasetId) {
         if (requestorId != null) {
 
-            Set<SiriObjectStorageKey> idSet = changesMap.get(requestorId);
+            Set<SiriObjectStorageKey> idSet = getChanges(requestorId);
             lastUpdateRequested.set(requestorId, Instant.now(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
             if (idSet != null) {
                 Set<SiriObjectStorageKey> datasetFilteredIdSet = new HashSet<>();
@@ -255,14 +277,14 @@ public class Situations extends SiriRepository<PtSituationElement> {
                 Collection<PtSituationElement> changes = situationElements.getAll(datasetFilteredIdSet).values();
 
                 // Data may have been updated
-                Set<SiriObjectStorageKey> existingSet = changesMap.get(requestorId);
+                Set<SiriObjectStorageKey> existingSet = getChanges(requestorId);
                 if (existingSet == null) {
                     existingSet = new HashSet<>();
                 }
                 //Remove returned ids
                 existingSet.removeAll(idSet);
 
-                updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, existingSet, configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
+                updateChangeTrackers(requestorId, existingSet, configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
 
                 logger.info("Returning {} changes to requestorRef {}", changes.size(), requestorId);
                 return changes;
@@ -270,13 +292,21 @@ public class Situations extends SiriRepository<PtSituationElement> {
                 logger.info("Returning all to requestorRef {}", requestorId);
             }
 
-            updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, new HashSet<>(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
+            updateChangeTrackers(requestorId, new HashSet<>(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
 
         }
 
         return getAll(datasetId);
     }
 
+    @Override
+    long getCacheVersion(PtSituationElement situationElement) {
+        if (situationElement.getVersion() != null && situationElement.getVersion().getValue() != null) {
+            return situationElement.getVersion().getValue().longValue();
+        }
+        return VersionedCache.NO_VERSION;
+    }
+
     public long getExpiration(PtSituationElement situationElement) {
         List<HalfOpenTimestampOutputRangeStructure> validityPeriods = situationElement.getValidityPeriods();
 
@@ -304,45 +334,56 @@ public class Situations extends SiriRepository<PtSituationElement> {
 
     public Collection<PtSituationElement> addAll(String datasetId, List<PtSituationElement> sxList) {
         Map<SiriObjectStorageKey, PtSituationElement> changes = new HashMap<>();
-        Map<SiriObjectStorageKey, String> checksumTmp = new HashMap<>();
+        Map<SiriObjectStorageKey, Long> checksumTmp = new HashMap<>();
+        Map<SiriObjectStorageKey, Long> expirationMap = new HashMap<>();
+
+        // Keys and checksums for the whole batch - existing data is fetched with one operation per map
+        List<SiriObjectStorageKey> keys = new ArrayList<>(sxList.size());
+        List<Long> checksums = new ArrayList<>(sxList.size());
+        for (PtSituationElement situation : sxList) {
+            keys.add(createKey(datasetId, situation));
+            Long checksum = null;
+            try {
+                checksum = changeDetectionHasher.hash(situation);
+            } catch (Exception e) {
+                //Ignore - data will be updated
+            }
+            checksums.add(checksum);
+        }
+
+        final Map<SiriObjectStorageKey, Long> existingChecksums = checksumCache.getAll(new HashSet<>(keys));
+
+        // Existence of the actual situation is checked for all elements with checksum
+        final Map<SiriObjectStorageKey, PtSituationElement> existingElements = situationElements.getAll(existingChecksums.keySet());
 
         Counter alreadyExpiredCounter = new CounterImpl(0);
         Counter ignoredCounter = new CounterImpl(0);
-        sxList.forEach(situation -> {
+        for (int i = 0; i < sxList.size(); i++) {
+            final PtSituationElement situation = sxList.get(i);
             TimingTracer timingTracer = new TimingTracer("single-sx");
 
-            SiriObjectStorageKey key = createKey(datasetId, situation);
-            timingTracer.mark("createKey");
-            String currentChecksum = null;
-            try {
-                currentChecksum = getChecksum(situation);
-                timingTracer.mark("getChecksum");
-            } catch (Exception e) {
-                //Ignore - data will be updated
-            }
+            SiriObjectStorageKey key = keys.get(i);
+            Long currentChecksum = checksums.get(i);
 
-            String existingChecksum = checksumCache.get(key);
-            timingTracer.mark("checksumCache.get");
+            Long existingChecksum = existingChecksums.get(key);
+            final PtSituationElement existing = existingElements.get(key);
             boolean updated;
-            if (existingChecksum != null && situationElements.containsKey(key)) { // Checksum not compared if actual situation does not exist
+            if (existingChecksum != null && existing != null) { // Checksum not compared if actual situation does not exist
                 //Exists - compare values
-                updated =  !(currentChecksum.equals(existingChecksum));
+                updated =  !(existingChecksum.equals(currentChecksum));
 
                 if (updated) { // Ignore if data is unchanged
                     // Compare "Version" - if it exists
                     // If received version is equal or higher - keep updated-flag
                     if (situation.getVersion() != null) {
                         SituationVersion newVersion = situation.getVersion();
-                        if (situationElements.containsKey(key)) {
-                            PtSituationElement existing = situationElements.get(key);
-                            if (existing != null && existing.getVersion() != null) {
-                                int currentVersion = existing.getVersion().getValue().intValue();
-                                int updatedVersion = newVersion.getValue().intValue();
-
-                                if (updatedVersion < currentVersion) {
-                                    // We already have a newer version - ignore this update
-                                    updated = false;
-                                }
+                        if (existing.getVersion() != null) {
+                            int currentVersion = existing.getVersion().getValue().intValue();
+                            int updatedVersion = newVersion.getValue().intValue();
+
+                            if (updatedVersion < currentVersion) {
+                                // We already have a newer version - ignore this update
+                                updated = false;
                             }
                         }
                     }
@@ -360,7 +401,8 @@ public class Situations extends SiriRepository<PtSituationElement> {
                 if (expiration > 0) { //expiration < 0 => already expired
                     changes.put(key, situation);
                     checksumTmp.put(key, currentChecksum);
-                } else if (situationElements.containsKey(key)) {
+                    expirationMap.put(key, expiration);
+                } else if (existing != null) {
                     // Situation is no longer valid
                     situationElements.delete(key);
                     timingTracer.mark("situationElements.delete");
@@ -378,15 +420,20 @@ public class Situations extends SiriRepository<PtSituationElement> {
             if (elapsed > 500) {
                 logger.info("Adding SX-object with key {} took {} ms: {}", key, elapsed, timingTracer);
             }
-        });
+        }
         TimingTracer timingTracer = new TimingTracer("all-sx [" + changes.size() + " changes]");
 
         logger.info("Updated {} (of {}) :: Already expired: {}, Unchanged: {}", changes.size(), sxList.size(), alreadyExpiredCounter.getValue(), ignoredCounter.getValue());
 
-        checksumCache.setAll(checksumTmp);
-        timingTracer.mark("checksumCache.setAll");
-        situationElements.setAll(changes);
-        timingTracer.mark("monitoredVehicles.setAll");
+        new TtlWriteBatch(hazelcastService.getHazelcastInstance().getPartitionService(), expirationMap)
+            .setAll(checksumCache, checksumTmp)
+            .setAll(situationElements, changes)
+            .await();
+        timingTracer.mark("situationElements.setAll");
+        publishCacheUpdates(changes);
+        timingTracer.mark("publishCacheUpdates");
+        keyIndex.addAll(changes.keySet());
+        timingTracer.mark("keyIndex.addAll");
 
         markDataReceived(SiriDataType.SITUATION_EXCHANGE, datasetId, sxList.size(), changes.size(), alreadyExpiredCounter.getValue(), ignoredCounter.getValue());
         timingTracer.mark("markDataReceived");
@@ -0,0 +1,163 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Local index of first aimed departure per key, bucketed by minute, and the set of keys with pattern changes.
+ *
+ * Used to resolve "all journeys starting within the next N minutes, or with pattern changes" as a range read
+ * instead of scanning the distributed map. The index is kept current by EntryListeners registered in
+ * {@link EstimatedTimetables}, and is therefore eventually consistent with the maps.
+ *
+ * Start times and minute-buckets are guarded by one read-write lock, so they are always updated together.
+ */
+class StartTimeIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final NavigableMap<Long, Set<SiriObjectStorageKey>> minuteBuckets = new TreeMap<>();
+
+    private final Map<SiriObjectStorageKey, Long> startTimes = new HashMap<>();
+
+    private final Set<SiriObjectStorageKey> patternChanges = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param startTimeEpochSeconds first aimed departure in epoch seconds
+     */
+    void put(SiriObjectStorageKey key, long startTimeEpochSeconds) {
+        lock.writeLock().lock();
+        try {
+            final Long previous = startTimes.put(key, startTimeEpochSeconds);
+            if (previous != null) {
+                removeFromBucket(toMinute(previous), key);
+            }
+            addToBucket(toMinute(startTimeEpochSeconds), key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putAll(Map<SiriObjectStorageKey, Long> startTimes) {
+        startTimes.forEach(this::put);
+    }
+
+    void remove(SiriObjectStorageKey key) {
+        lock.writeLock().lock();
+        try {
+            final Long previous = startTimes.remove(key);
+            if (previous != null) {
+                removeFromBucket(toMinute(previous), key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void addPatternChange(SiriObjectStorageKey key) {
+        patternChanges.add(key);
+    }
+
+    void addPatternChanges(Set<SiriObjectStorageKey> keys) {
+        patternChanges.addAll(keys);
+    }
+
+    void removePatternChange(SiriObjectStorageKey key) {
+        patternChanges.remove(key);
+    }
+
+    void clearStartTimes() {
+        lock.writeLock().lock();
+        try {
+            startTimes.clear();
+            minuteBuckets.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void clearPatternChanges() {
+        patternChanges.clear();
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return startTimes.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return All keys starting before the given time, and all keys with pattern changes
+     */
+    Set<SiriObjectStorageKey> getStartingBeforeOrWithPatternChanges(long epochSeconds) {
+        final long lastMinute = toMinute(epochSeconds);
+
+        Set<SiriObjectStorageKey> keys = new HashSet<>(patternChanges);
+        lock.readLock().lock();
+        try {
+            for (Set<SiriObjectStorageKey> bucket : minuteBuckets.headMap(lastMinute, false).values()) {
+                keys.addAll(bucket);
+            }
+
+            // Last bucket is only partially included
+            final Set<SiriObjectStorageKey> lastBucket = minuteBuckets.get(lastMinute);
+            if (lastBucket != null) {
+                for (SiriObjectStorageKey key : lastBucket) {
+                    final Long startTime = startTimes.get(key);
+                    if (startTime != null && startTime < epochSeconds) {
+                        keys.add(key);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return keys;
+    }
+
+    // Must be called with write-lock held
+    private void addToBucket(long minute, SiriObjectStorageKey key) {
+        minuteBuckets.computeIfAbsent(minute, m -> new HashSet<>()).add(key);
+    }
+
+    // Must be called with write-lock held
+    private void removeFromBucket(long minute, SiriObjectStorageKey key) {
+        final Set<SiriObjectStorageKey> keys = minuteBuckets.get(minute);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                minuteBuckets.remove(minute);
+            }
+        }
+    }
+
+    private static long toMinute(long epochSeconds) {
+        return Math.floorDiv(epochSeconds, 60);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.cluster.Member;
+import com.hazelcast.map.IMap;
+import com.hazelcast.partition.PartitionService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes values to one or more maps with per-entry TTL set as part of the write. Entries are grouped by the member
+ * owning their partition, and each group is written with one {@link SetWithTtlEntryProcessor} - i.e. one operation
+ * per member and map instead of one per entry. All writes are sent asynchronously, and {@link #await()} waits until
+ * all maps are updated.
+ *
+ * Linked maps (checksums, start times etc.) are written with the same TTL as the main map, so that no entry
+ * exists without expiry.
+ */
+class TtlWriteBatch {
+
+    private final PartitionService partitionService;
+
+    private final Map<SiriObjectStorageKey, Long> expirations;
+
+    private final List<CompletableFuture<?>> pending = new ArrayList<>();
+
+    /**
+     * @param expirations TTL in milliseconds per key
+     */
+    TtlWriteBatch(PartitionService partitionService, Map<SiriObjectStorageKey, Long> expirations) {
+        this.partitionService = partitionService;
+        this.expirations = expirations;
+    }
+
+    /**
+     * @throws IllegalArgumentException if any of the keys has no expiration - nothing is written to the map
+     */
+    <V> TtlWriteBatch setAll(IMap<SiriObjectStorageKey, V> map, Map<SiriObjectStorageKey, V> values) {
+        for (SiriObjectStorageKey key : values.keySet()) {
+            if (!expirations.containsKey(key)) {
+                throw new IllegalArgumentException("No expiration provided for key " + key);
+            }
+        }
+
+        // Owner may be unknown during migration - those entries are written as one group, and routed by Hazelcast
+        Map<Member, Map<SiriObjectStorageKey, V>> valuesByOwner = new HashMap<>();
+        for (Map.Entry<SiriObjectStorageKey, V> entry : values.entrySet()) {
+            final Member owner = partitionService.getPartition(entry.getKey()).getOwner();
+            valuesByOwner.computeIfAbsent(owner, m -> new HashMap<>()).put(entry.getKey(), entry.getValue());
+        }
+
+        for (Map<SiriObjectStorageKey, V> ownerValues : valuesByOwner.values()) {
+            Map<SiriObjectStorageKey, Long> ttls = new HashMap<>();
+            for (SiriObjectStorageKey key : ownerValues.keySet()) {
+                ttls.put(key, expirations.get(key));
+            }
+            pending.add(map.submitToKeys(ownerValues.keySet(), new SetWithTtlEntryProcessor<>(ownerValues, ttls))
+                .toCompletableFuture());
+        }
+        return this;
+    }
+
+    void await() {
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+        pending.clear();
+    }
+}
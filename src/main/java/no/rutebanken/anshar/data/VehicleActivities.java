@@ -16,8 +16,11 @@
 package no.rutebanken.anshar.data;
 
 import com.hazelcast.map.IMap;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import com.hazelcast.topic.ITopic;
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
+import no.rutebanken.anshar.data.hashing.ChangeDetectionHasher;
 import no.rutebanken.anshar.data.util.TimingTracer;
 import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
 import no.rutebanken.anshar.subscription.SiriDataType;
@@ -64,13 +67,29 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
     @Autowired
     private IMap<SiriObjectStorageKey, VehicleActivityStructure> monitoredVehicles;
 
+    @Autowired
+    @Qualifier("getVehicleCacheUpdates")
+    private ITopic<CacheUpdate> cacheUpdates;
+
     @Autowired
     @Qualifier("getVehicleChangesMap")
     private IMap<String, Set<SiriObjectStorageKey>> changesMap;
 
+    @Autowired
+    @Qualifier("getVehicleChangeLog")
+    private Ringbuffer<Set<SiriObjectStorageKey>> changeLog;
+
+    @Autowired
+    @Qualifier("getVehicleChangeLogCursors")
+    private IMap<String, Long> changeLogCursors;
+
     @Autowired
     @Qualifier("getVmChecksumMap")
-    private IMap<SiriObjectStorageKey,String> checksumCache;
+    private IMap<SiriObjectStorageKey,Long> checksumCache;
+
+    @Autowired
+    @Qualifier("getVmRecordedAtMap")
+    private IMap<SiriObjectStorageKey, Long> recordedAtMap;
 
     @Autowired
     @Qualifier("getLastVmUpdateRequest")
@@ -85,16 +104,23 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
     @Autowired
     ExtendedHazelcastService hazelcastService;
 
+    private ChangeDetectionHasher changeDetectionHasher;
+
     protected VehicleActivities() {
         super(SiriDataType.VEHICLE_MONITORING);
     }
 
     @PostConstruct
     private void initializeUpdateCommitter() {
-        super.initBufferCommitter(hazelcastService, lastUpdateRequested, changesMap, configuration.getChangeBufferCommitFrequency());
+        // Checksum is calculated without "ValidUntilTime" - thus ignoring "fake" updates where only validity is updated
+        changeDetectionHasher = configuration.getChecksumHasherType().create("validUntilTime");
+
+        ChangeTracker changeTracker = configuration.getChangeTrackerType().create(changesMap, lastUpdateRequested, changeLog, changeLogCursors);
+        super.initBufferCommitter(hazelcastService, lastUpdateRequested, changeTracker, configuration.getChangeBufferCommitFrequency());
 
-        enableCache(monitoredVehicles);
-        linkEntriesTtl(monitoredVehicles, changesMap, checksumCache);
+        enableCache(monitoredVehicles, cacheUpdates);
+        linkEntriesTtl(monitoredVehicles, checksumCache, recordedAtMap);
+        enableKeyIndex(monitoredVehicles);
     }
 
     /**
@@ -148,20 +174,24 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
     @Override
     public void clearAllByDatasetId(String datasetId) {
 
-        Set<SiriObjectStorageKey> idsToRemove = monitoredVehicles.keySet(createCodespacePredicate(datasetId));
+        Set<SiriObjectStorageKey> idsToRemove = getKeysByDatasetId(datasetId);
 
         logger.warn("Removing all data ({} ids) for {}", idsToRemove.size(), datasetId);
 
         for (SiriObjectStorageKey id : idsToRemove) {
             monitoredVehicles.delete(id);
+            keyIndex.remove(id);
             checksumCache.remove(id);
+            recordedAtMap.remove(id);
         }
     }
 
     public void clearAll() {
         logger.error("Deleting all data - should only be used in test!!!");
         monitoredVehicles.clear();
-        cache.clear();
+        keyIndex.clear();
+        recordedAtMap.clear();
+        clearCache();
     }
 
     /**
@@ -181,7 +211,7 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
     public Collection<VehicleActivityStructure> getAllUpdates(String requestorId, String datasetId) {
         if (requestorId != null) {
 
-            Set<SiriObjectStorageKey> idSet = changesMap.get(requestorId);
+            Set<SiriObjectStorageKey> idSet = getChanges(requestorId);
             lastUpdateRequested.set(requestorId, Instant.now(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
             if (idSet != null) {
                 Set<SiriObjectStorageKey> datasetFilteredIdSet = new HashSet<>();
@@ -194,7 +224,7 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
 
                 Collection<VehicleActivityStructure> changes = monitoredVehicles.getAll(datasetFilteredIdSet).values();
 
-                Set<SiriObjectStorageKey> existingSet = changesMap.get(requestorId);
+                Set<SiriObjectStorageKey> existingSet = getChanges(requestorId);
                 if (existingSet == null) {
                     existingSet = new HashSet<>();
                 }
@@ -202,14 +232,14 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
                 //Remove returned ids
                 existingSet.removeAll(idSet);
 
-                updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, existingSet, configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
+                updateChangeTrackers(requestorId, existingSet, configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
 
                 logger.info("Returning {} changes to requestorRef {}", changes.size(), requestorId);
                 return changes;
             } else {
 
                 logger.info("Returning all to requestorRef {}", requestorId);
-                updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, new HashSet<>(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
+                updateChangeTrackers(requestorId, new HashSet<>(), configuration.getTrackingPeriodMinutes(), TimeUnit.MINUTES);
 
             }
         }
@@ -221,7 +251,7 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
     public Siri createServiceDelivery(final String lineRef) {
         SortedSet<VehicleActivityStructure> vehicleActivityStructures = new TreeSet<>(Comparator.comparing(AbstractItemStructure::getRecordedAtTime));
 
-        final Set<SiriObjectStorageKey> lineRefKeys = monitoredVehicles.keySet(createLineRefPredicate(lineRef));
+        final Set<SiriObjectStorageKey> lineRefKeys = getKeysByLineRef(lineRef);
 
         vehicleActivityStructures.addAll(monitoredVehicles.getAll(lineRefKeys).values());
 
@@ -243,11 +273,10 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
         }
 
         // Get all relevant ids
-        Set<SiriObjectStorageKey> allIds = new HashSet<>();
-        Set<SiriObjectStorageKey> idSet = changesMap.getOrDefault(requestorId, allIds);
+        Set<SiriObjectStorageKey> idSet = getChanges(requestorId);
 
-        if (idSet == allIds) {
-            idSet.addAll(monitoredVehicles.keySet());
+        if (idSet == null) {
+            idSet = new HashSet<>(monitoredVehicles.keySet());
         }
 
         Set<SiriObjectStorageKey> requestedIds = filterIdsByDataset(idSet, excludedDatasetIds, datasetId);
@@ -271,7 +300,7 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
 
 
             //Update change-tracker
-            updateChangeTrackers(lastUpdateRequested, changesMap, requestorId, idSet, trackingPeriodMinutes, TimeUnit.MINUTES);
+            updateChangeTrackers(requestorId, idSet, trackingPeriodMinutes, TimeUnit.MINUTES);
 
 
             MessageRefStructure msgRef = new MessageRefStructure();
@@ -284,6 +313,11 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
         return siri;
     }
 
+    @Override
+    long getCacheVersion(VehicleActivityStructure a) {
+        return toRecordedAtMillis(a.getRecordedAtTime());
+    }
+
     public long getExpiration(VehicleActivityStructure a) {
 
         ZonedDateTime validUntil = a.getValidUntilTime();
@@ -297,103 +331,128 @@ public class VehicleActivities extends SiriRepository<VehicleActivityStructure>
     public Collection<VehicleActivityStructure> addAll(String datasetId, List<VehicleActivityStructure> vmList) {
 
         Map<SiriObjectStorageKey, VehicleActivityStructure> changes = new HashMap<>();
-        Map<SiriObjectStorageKey, String> checksumCacheTmp = new HashMap<>();
+        Map<SiriObjectStorageKey, Long> checksumCacheTmp = new HashMap<>();
+        Map<SiriObjectStorageKey, Long> recordedAtTmp = new HashMap<>();
+        Map<SiriObjectStorageKey, Long> expirationMap = new HashMap<>();
 
         Counter invalidLocationCounter = new CounterImpl(0);
         Counter notMeaningfulCounter = new CounterImpl(0);
         Counter outdatedCounter = new CounterImpl(0);
         Counter notUpdatedCounter = new CounterImpl(0);
 
-        vmList.stream()
+        final List<VehicleActivityStructure> validActivities = vmList.stream()
                 .filter(activity -> activity.getMonitoredVehicleJourney() != null)
                 .filter(activity -> activity.getMonitoredVehicleJourney().getVehicleRef() != null)
                 .filter(activity -> activity.getMonitoredVehicleJourney().getFramedVehicleJourneyRef() == null ||
                         ( activity.getMonitoredVehicleJourney().getFramedVehicleJourneyRef() != null &&
                                 activity.getMonitoredVehicleJourney().getFramedVehicleJourneyRef().getDatedVehicleJourneyRef() != null)
                 )
-                .forEach(activity -> {
-                    TimingTracer timingTracer = new TimingTracer("single-vm");
-                    SiriObjectStorageKey key = createKey(datasetId, activity.getMonitoredVehicleJourney());
-                    timingTracer.mark("createKey");
-                    String currentChecksum = null;
-                    ZonedDateTime validUntilTime = activity.getValidUntilTime();
-                    try {
-                        // Calculate checksum without "ValidUntilTime" - thus ignoring "fake" updates where only validity is updated
-                        activity.setValidUntilTime(null);
-                        currentChecksum = getChecksum(activity);
-                        timingTracer.mark("getChecksum");
-                    } catch (Exception e) {
-                        //Ignore - data will be updated
-                    } finally {
-                        //Set original ValidUntilTime back
-                        activity.setValidUntilTime(validUntilTime);
-                    }
+                .collect(Collectors.toList());
+
+        // Keys and checksums for the whole batch - existing data is fetched with one operation per map
+        List<SiriObjectStorageKey> keys = new ArrayList<>(validActivities.size());
+        List<Long> checksums = new ArrayList<>(validActivities.size());
+        for (VehicleActivityStructure activity : validActivities) {
+            keys.add(createKey(datasetId, activity.getMonitoredVehicleJourney()));
+            Long checksum = null;
+            try {
+                checksum = changeDetectionHasher.hash(activity);
+            } catch (Exception e) {
+                //Ignore - data will be updated
+            }
+            checksums.add(checksum);
+        }
 
-                    String existingChecksum = checksumCache.get(key);
-                    timingTracer.mark("checksumCache.get");
-
-                    boolean updated;
-//                    if (existingChecksum != null && monitoredVehicles.containsKey(key)) {
-                    if (existingChecksum != null) {
-                        //Exists - compare values
-                        updated =  !(currentChecksum.equals(existingChecksum));
-                    } else {
-                        //Does not exist
-                        updated = true;
-                    }
-                    timingTracer.mark("compareChecksum");
+        final Map<SiriObjectStorageKey, Long> existingChecksums = checksumCache.getAll(new HashSet<>(keys));
 
-                    if (updated) {
+        // RecordedAtTime of existing data is only needed for changed elements
+        Set<SiriObjectStorageKey> changedKeys = new HashSet<>();
+        for (int i = 0; i < keys.size(); i++) {
+            Long existingChecksum = existingChecksums.get(keys.get(i));
+            if (existingChecksum == null || !existingChecksum.equals(checksums.get(i))) {
+                changedKeys.add(keys.get(i));
+            }
+        }
+        final Map<SiriObjectStorageKey, Long> existingRecordedAtTimes = getRecordedAtTimes(recordedAtMap, changedKeys);
 
-                        VehicleActivityStructure existing = monitoredVehicles.get(key);
-                        timingTracer.mark("getExisting");
+        for (int i = 0; i < validActivities.size(); i++) {
+            final VehicleActivityStructure activity = validActivities.get(i);
+            TimingTracer timingTracer = new TimingTracer("single-vm");
+            SiriObjectStorageKey key = keys.get(i);
+            Long currentChecksum = checksums.get(i);
 
-                        boolean keep = (existing == null); //No existing data i.e. keep
+            Long existingChecksum = existingChecksums.get(key);
 
-                        if (existing != null &&
-                                (activity.getRecordedAtTime() != null && existing.getRecordedAtTime() != null)) {
-                            //Newer data has already been processed
-                            keep = activity.getRecordedAtTime().isAfter(existing.getRecordedAtTime());
-                        }
+            boolean updated;
+//            if (existingChecksum != null && monitoredVehicles.containsKey(key)) {
+            if (existingChecksum != null) {
+                //Exists - compare values
+                updated =  !(existingChecksum.equals(currentChecksum));
+            } else {
+                //Does not exist
+                updated = true;
+            }
+            timingTracer.mark("compareChecksum");
 
-                        long expiration = getExpiration(activity);
-                        timingTracer.mark("getExpiration");
+            if (updated) {
 
-                        if (expiration > 0 && keep) {
-                            changes.put(key, activity);
-                            checksumCacheTmp.put(key, currentChecksum);
-                        } else {
-                            outdatedCounter.increment();
+                Long existingRecordedAt = existingRecordedAtTimes.get(key);
 
-                            //Keeping all checksums for at least 5 minutes to avoid stale data
-                            checksumCache.set(key, currentChecksum, 5, TimeUnit.MINUTES);
-                            timingTracer.mark("checksumCache.set");
+                boolean keep = (existingRecordedAt == null); //No existing data i.e. keep
 
-                        }
+                if (existingRecordedAt != null &&
+                        (activity.getRecordedAtTime() != null && existingRecordedAt != NO_RECORDED_AT_TIME)) {
+                    //Newer data has already been processed
+                    keep = toRecordedAtMillis(activity.getRecordedAtTime()) > existingRecordedAt;
+                }
 
-                        if (!isLocationValid(activity)) {invalidLocationCounter.increment();}
-                        timingTracer.mark("isLocationValid");
+                long expiration = getExpiration(activity);
+                timingTracer.mark("getExpiration");
 
-                        // Skip this check for now
-//                        if (!isActivityMeaningful(activity)) {notMeaningfulCounter.increment();}
-//                        timingTracer.mark("isActivityMeaningful");
+                if (expiration > 0 && keep) {
+                    changes.put(key, activity);
+                    checksumCacheTmp.put(key, currentChecksum);
+                    recordedAtTmp.put(key, toRecordedAtMillis(activity.getRecordedAtTime()));
+                    expirationMap.put(key, expiration);
+                } else {
+                    outdatedCounter.increment();
 
-                    } else {
-                        notUpdatedCounter.increment();
+                    //Keeping all checksums for at least 5 minutes to avoid stale data
+                    if (!changes.containsKey(key)) {
+                        checksumCacheTmp.put(key, currentChecksum);
+                        expirationMap.put(key, TimeUnit.MINUTES.toMillis(5));
                     }
 
-                    long elapsed = timingTracer.getTotalTime();
-                    if (elapsed > 500) {
-                        logger.info("Adding VM-object with key {} took {} ms: {}", key, elapsed, timingTracer);
-                    }
+                }
+
+                if (!isLocationValid(activity)) {invalidLocationCounter.increment();}
+                timingTracer.mark("isLocationValid");
+
+                // Skip this check for now
+//                if (!isActivityMeaningful(activity)) {notMeaningfulCounter.increment();}
+//                timingTracer.mark("isActivityMeaningful");
+
+            } else {
+                notUpdatedCounter.increment();
+            }
 
-                });
+            long elapsed = timingTracer.getTotalTime();
+            if (elapsed > 500) {
+                logger.info("Adding VM-object with key {} took {} ms: {}", key, elapsed, timingTracer);
+            }
+        }
         TimingTracer timingTracer = new TimingTracer("all-vm [" + changes.size() + " changes]");
 
-        checksumCache.setAll(checksumCacheTmp);
-        timingTracer.mark("checksumCache.setAll");
-        monitoredVehicles.setAll(changes);
+        new TtlWriteBatch(hazelcastService.getHazelcastInstance().getPartitionService(), expirationMap)
+            .setAll(checksumCache, checksumCacheTmp)
+            .setAll(recordedAtMap, recordedAtTmp)
+            .setAll(monitoredVehicles, changes)
+            .await();
         timingTracer.mark("monitoredVehicles.setAll");
+        publishCacheUpdates(changes);
+        timingTracer.mark("publishCacheUpdates");
+        keyIndex.addAll(changes.keySet());
+        timingTracer.mark("keyIndex.addAll");
 
         logger.info("Updated {} (of {}) :: Ignored elements - Missing location:{}, Missing values: {}, Expired: {}, Not updated: {}", changes.size(), vmList.size(), invalidLocationCounter.getValue(), notMeaningfulCounter.getValue(), outdatedCounter.getValue(), notUpdatedCounter.getValue());
 
@@ -0,0 +1,157 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.data;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local cache where each value is stored with a per-key version - e.g. RecordedAtTime - so that cache updates
+ * arriving out of order do not replace newer values.
+ *
+ * Removed keys are kept as tombstones with the last known version for a limited time, so that a delayed update
+ * for a removed key does not bring the old value back. A key removed at a given version rejects that version and
+ * older, while a key removed without version - e.g. expired or deleted - only rejects older versions, so that the
+ * same version may be added again.
+ *
+ * Values without version ({@link #NO_VERSION}) can not be ordered, and are always applied.
+ */
+class VersionedCache<T> {
+
+    static final long NO_VERSION = SiriRepository.NO_RECORDED_AT_TIME;
+
+    private static final int TOMBSTONE_RETENTION_MINUTES = 10;
+
+    private final Map<SiriObjectStorageKey, T> values;
+
+    private final Map<SiriObjectStorageKey, Long> versions = Maps.newConcurrentMap();
+
+    private final Cache<SiriObjectStorageKey, Tombstone> tombstones = CacheBuilder.newBuilder()
+        .expireAfterWrite(TOMBSTONE_RETENTION_MINUTES, TimeUnit.MINUTES)
+        .build();
+
+    /**
+     * @param values Map holding the cached values - read directly by the owner
+     */
+    VersionedCache(Map<SiriObjectStorageKey, T> values) {
+        this.values = values;
+    }
+
+    /**
+     * @return true if a newer version is cached, or the key has been removed at the same or a newer version
+     */
+    boolean isOutdated(SiriObjectStorageKey key, long version) {
+        final Long current = versions.get(key);
+        if (current != null) {
+            return isOlder(version, current, false);
+        }
+        final Tombstone removed = tombstones.getIfPresent(key);
+        return removed != null && removed.rejects(version);
+    }
+
+    /**
+     * Caches value unless a newer version is already known.
+     *
+     * @return true if cache was changed
+     */
+    boolean put(SiriObjectStorageKey key, long version, T value) {
+        final boolean[] applied = {false};
+        versions.compute(key, (k, current) -> {
+            if (current != null) {
+                if (isOlder(version, current, false)) {
+                    return current;
+                }
+            } else {
+                final Tombstone removed = tombstones.getIfPresent(k);
+                if (removed != null && removed.rejects(version)) {
+                    return null;
+                }
+            }
+            values.put(k, value);
+            tombstones.invalidate(k);
+            applied[0] = true;
+            return version;
+        });
+        return applied[0];
+    }
+
+    /**
+     * Removes value from cache unless a newer version is cached, and keeps a tombstone for the removed version.
+     *
+     * @return true if a cached value was removed
+     */
+    boolean remove(SiriObjectStorageKey key, long version) {
+        final boolean[] removed = {false};
+        versions.compute(key, (k, current) -> {
+            if (current != null && isOlder(version, current, false)) {
+                return current;
+            }
+            final long removedVersion = current != null ? Math.max(version, current) : version;
+            if (removedVersion != NO_VERSION) {
+                tombstones.put(k, new Tombstone(removedVersion, version != NO_VERSION));
+            }
+            removed[0] = values.remove(k) != null;
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * Removes value regardless of version - e.g. when expired - and keeps a tombstone for the cached version. Only
+     * older versions are rejected, so that the element may be added again with the same version.
+     *
+     * @return true if a cached value was removed
+     */
+    boolean remove(SiriObjectStorageKey key) {
+        return remove(key, NO_VERSION);
+    }
+
+    void clear() {
+        versions.clear();
+        tombstones.invalidateAll();
+        values.clear();
+    }
+
+    private static boolean isOlder(long version, long knownVersion, boolean inclusive) {
+        if (version == NO_VERSION || knownVersion == NO_VERSION) {
+            return false;
+        }
+        return inclusive ? version <= knownVersion : version < knownVersion;
+    }
+
+    private static class Tombstone {
+        private final long version;
+
+        /**
+         * Removed at this version - not only removed while this version was cached
+         */
+        private final boolean removedAtVersion;
+
+        private Tombstone(long version, boolean removedAtVersion) {
+            this.version = version;
+            this.removedAtVersion = removedAtVersion;
+        }
+
+        private boolean rejects(long otherVersion) {
+            return isOlder(otherVersion, version, removedAtVersion);
+        }
+    }
+}
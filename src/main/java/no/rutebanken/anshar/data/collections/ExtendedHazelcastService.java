@@ -20,15 +20,27 @@ import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.hazelcast.cluster.Cluster;
 import com.hazelcast.cluster.Member;
 import com.hazelcast.collection.ISet;
+import com.hazelcast.config.EvictionConfig;
+import com.hazelcast.config.EvictionPolicy;
+import com.hazelcast.config.InMemoryFormat;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MaxSizePolicy;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.config.RingbufferConfig;
 import com.hazelcast.config.SerializerConfig;
 import com.hazelcast.core.DistributedObject;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.LifecycleEvent;
 import com.hazelcast.map.IMap;
 import com.hazelcast.replicatedmap.ReplicatedMap;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import com.hazelcast.topic.ITopic;
+import no.rutebanken.anshar.data.CacheUpdate;
 import no.rutebanken.anshar.data.RequestorRefStats;
 import no.rutebanken.anshar.data.SiriObjectStorageKey;
+import no.rutebanken.anshar.data.SiriObjectStorageKeySerializer;
 import no.rutebanken.anshar.routes.outbound.OutboundSubscriptionSetup;
+import no.rutebanken.anshar.routes.validation.ValidationReports;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import no.rutebanken.anshar.subscription.SubscriptionSetup;
 import org.json.simple.JSONArray;
@@ -41,6 +53,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 import uk.org.siri.siri20.EstimatedVehicleJourney;
 import uk.org.siri.siri20.PtSituationElement;
@@ -49,7 +62,6 @@ import uk.org.siri.siri20.VehicleActivityStructure;
 import javax.annotation.PreDestroy;
 import java.math.BigInteger;
 import java.time.Instant;
-import java.time.ZonedDateTime;
 import java.util.*;
 
 @Service
@@ -58,10 +70,40 @@ public class ExtendedHazelcastService extends HazelCastService {
 
     private Logger logger = LoggerFactory.getLogger(ExtendedHazelcastService.class);
 
+    private final KryoSerializerMode etSerializerMode;
+    private final KryoSerializerMode vmSerializerMode;
+    private final KryoSerializerMode sxSerializerMode;
+    private final KryoSerializerMode jsonSerializerMode;
+
+    @Value("${anshar.tracking.data.changelog.capacity:10000}")
+    private int changeLogCapacity;
+
+    @Value("${anshar.outbound.polling.tracking.period.minutes:30}")
+    private int trackingPeriodMinutes;
+
+    /**
+     * Maps read on the request/ingest hot paths that are configured with a near cache. Each map may be configured with
+     *   anshar.hazelcast.nearcache.[map-name].max.size
+     *   anshar.hazelcast.nearcache.[map-name].in.memory.format
+     */
+    @Value("${anshar.hazelcast.nearcache.maps:anshar.et.checksum.cache,anshar.vm.checksum.cache,anshar.sx.checksum.cache}")
+    private List<String> nearCachedMaps = new ArrayList<>();
+
+    @Autowired
+    private Environment environment;
+
     public ExtendedHazelcastService(@Autowired KubernetesService kubernetesService,
-                                    @Value("${entur.hazelcast.backup.count.sync:2}") int backupCountSync) {
+                                    @Value("${entur.hazelcast.backup.count.sync:2}") int backupCountSync,
+                                    @Value("${anshar.hazelcast.serializer.et:LZ4}") KryoSerializerMode etSerializerMode,
+                                    @Value("${anshar.hazelcast.serializer.vm:LZ4}") KryoSerializerMode vmSerializerMode,
+                                    @Value("${anshar.hazelcast.serializer.sx:LZ4}") KryoSerializerMode sxSerializerMode,
+                                    @Value("${anshar.hazelcast.serializer.json:DEFLATE}") KryoSerializerMode jsonSerializerMode) {
         super(kubernetesService);
         setBackupCount(backupCountSync);
+        this.etSerializerMode = etSerializerMode;
+        this.vmSerializerMode = vmSerializerMode;
+        this.sxSerializerMode = sxSerializerMode;
+        this.jsonSerializerMode = jsonSerializerMode;
     }
 
     public void addBeforeShuttingDownHook(Runnable destroyFunction) {
@@ -89,79 +131,196 @@ public class ExtendedHazelcastService extends HazelCastService {
         return hazelcast;
     }
 
+    /**
+     * All KryoSerializers share typeId, and are able to read values written in any mode - so mode may be
+     * changed per map without breaking existing data.
+     *
+     * SiriObjectStorageKey was previously Java-serialized. Keys are compared and partitioned by their serialized form,
+     * so all maps with SiriObjectStorageKey as key or in the value are versioned - members with the previous key format
+     * never see keys in the new format. Data written by members of the previous version is not visible to upgraded
+     * members, so a full cluster restart is required when upgrading.
+     */
     @Override
     public List<SerializerConfig> getSerializerConfigs() {
 
         return Arrays.asList(
+                new SerializerConfig()
+                    .setTypeClass(SiriObjectStorageKey.class)
+                    .setImplementation(new SiriObjectStorageKeySerializer()),
                 new SerializerConfig()
                     .setTypeClass(EstimatedVehicleJourney.class)
-                    .setImplementation(new KryoSerializer()),
+                    .setImplementation(new KryoSerializer(etSerializerMode)),
                 new SerializerConfig()
                     .setTypeClass(PtSituationElement.class)
-                    .setImplementation(new KryoSerializer()),
+                    .setImplementation(new KryoSerializer(sxSerializerMode)),
                 new SerializerConfig()
                     .setTypeClass(VehicleActivityStructure.class)
-                    .setImplementation(new KryoSerializer()),
+                    .setImplementation(new KryoSerializer(vmSerializerMode)),
                 new SerializerConfig()
                     .setTypeClass(JSONObject.class)
-                    .setImplementation(new KryoSerializer())
+                    .setImplementation(new KryoSerializer(jsonSerializerMode))
 
         );
     }
 
     @Bean
     public IMap<SiriObjectStorageKey, PtSituationElement> getSituationsMap(){
-        return hazelcast.getMap("anshar.sx");
+        return getConfiguredMap("anshar.sx.v2");
     }
 
     @Bean
     public IMap<String, Set<SiriObjectStorageKey>> getSituationChangesMap() {
-        return hazelcast.getMap("anshar.sx.changes");
+        return getConfiguredMap("anshar.sx.changes.v2");
     }
 
     @Bean
     public IMap<SiriObjectStorageKey, EstimatedVehicleJourney> getEstimatedTimetablesMap(){
-        return hazelcast.getMap("anshar.et");
+        return getConfiguredMap("anshar.et.v2");
     }
 
     @Bean
     public IMap<String, Set<SiriObjectStorageKey>> getEstimatedTimetableChangesMap() {
-        return hazelcast.getMap("anshar.et.changes");
+        return getConfiguredMap("anshar.et.changes.v2");
+    }
+
+    @Bean
+    public Ringbuffer<Set<SiriObjectStorageKey>> getEstimatedTimetableChangeLog() {
+        return getChangeLog("anshar.et.changelog");
+    }
+
+    @Bean
+    public IMap<String, Long> getEstimatedTimetableChangeLogCursors() {
+        return getConfiguredMap("anshar.et.changelog.cursors");
     }
 
     @Bean
     public IMap<SiriObjectStorageKey, String> getIdForPatternChangesMap() {
-        return hazelcast.getMap("anshar.et.index.pattern");
+        return getConfiguredMap("anshar.et.index.pattern.v2");
     }
 
     @Bean
-    public IMap<SiriObjectStorageKey, String> getSxChecksumMap() {
-        return hazelcast.getMap("anshar.sx.checksum.cache");
+    public Ringbuffer<Set<SiriObjectStorageKey>> getSituationChangeLog() {
+        return getChangeLog("anshar.sx.changelog");
     }
 
     @Bean
-    public IMap<SiriObjectStorageKey, String> getEtChecksumMap() {
-        return hazelcast.getMap("anshar.et.checksum.cache");
+    public IMap<String, Long> getSituationChangeLogCursors() {
+        return getConfiguredMap("anshar.sx.changelog.cursors");
+    }
+
+    /*
+     * Checksum and start-time maps are also versioned, as the value types have changed - from MD5 hex String and
+     * ZonedDateTime to Long - so members of different versions never read each other's values during a rolling
+     * deploy. Previous maps are no longer used by upgraded members, and are removed when the cluster is restarted.
+     */
+
+    @Bean
+    public IMap<SiriObjectStorageKey, Long> getSxChecksumMap() {
+        return getConfiguredMap("anshar.sx.checksum.cache.v2");
     }
 
     @Bean
-    public IMap<SiriObjectStorageKey, String> getVmChecksumMap() {
-        return hazelcast.getMap("anshar.vm.checksum.cache");
+    public IMap<SiriObjectStorageKey, Long> getEtChecksumMap() {
+        return getConfiguredMap("anshar.et.checksum.cache.v2");
     }
 
     @Bean
-    public IMap<SiriObjectStorageKey, ZonedDateTime> getIdStartTimeMap() {
-        return hazelcast.getMap("anshar.et.index.startTime");
+    public IMap<SiriObjectStorageKey, Long> getVmChecksumMap() {
+        return getConfiguredMap("anshar.vm.checksum.cache.v2");
+    }
+
+    @Bean
+    public IMap<SiriObjectStorageKey, Long> getIdStartTimeMap() {
+        return getConfiguredMap("anshar.et.index.startTime.v2");
+    }
+
+    @Bean
+    public IMap<SiriObjectStorageKey, Long> getEtRecordedAtMap() {
+        return getConfiguredMap("anshar.et.index.recordedAt");
+    }
+
+    @Bean
+    public IMap<SiriObjectStorageKey, Long> getVmRecordedAtMap() {
+        return getConfiguredMap("anshar.vm.index.recordedAt");
     }
 
     @Bean
     public IMap<SiriObjectStorageKey, VehicleActivityStructure> getVehiclesMap(){
-        return hazelcast.getMap("anshar.vm");
+        return getConfiguredMap("anshar.vm.v2");
     }
 
     @Bean
     public IMap<String, Set<SiriObjectStorageKey>> getVehicleChangesMap() {
-        return hazelcast.getMap("anshar.vm.changes");
+        return getConfiguredMap("anshar.vm.changes.v2");
+    }
+
+    @Bean
+    public Ringbuffer<Set<SiriObjectStorageKey>> getVehicleChangeLog() {
+        return getChangeLog("anshar.vm.changelog");
+    }
+
+    @Bean
+    public IMap<String, Long> getVehicleChangeLogCursors() {
+        return getConfiguredMap("anshar.vm.changelog.cursors");
+    }
+
+    @Bean
+    public ITopic<CacheUpdate> getEstimatedTimetableCacheUpdates() {
+        return hazelcast.getTopic("anshar.et.cache.updates");
+    }
+
+    @Bean
+    public ITopic<CacheUpdate> getVehicleCacheUpdates() {
+        return hazelcast.getTopic("anshar.vm.cache.updates");
+    }
+
+    @Bean
+    public ITopic<CacheUpdate> getSituationCacheUpdates() {
+        return hazelcast.getTopic("anshar.sx.cache.updates");
+    }
+
+    /**
+     * Returns distributed map, with near cache added to the configuration when enabled for the map.
+     */
+    private <K, V> IMap<K, V> getConfiguredMap(String name) {
+        if (nearCachedMaps.contains(name)) {
+            final int maxSize = environment.getProperty("anshar.hazelcast.nearcache." + name + ".max.size", Integer.class, 100000);
+            final InMemoryFormat inMemoryFormat = environment.getProperty("anshar.hazelcast.nearcache." + name + ".in.memory.format",
+                InMemoryFormat.class, InMemoryFormat.BINARY);
+
+            // Based on existing config - e.g. backup-count from default config
+            MapConfig mapConfig = new MapConfig(hazelcast.getConfig().findMapConfig(name))
+                .setName(name)
+                .setNearCacheConfig(new NearCacheConfig(name)
+                    .setInMemoryFormat(inMemoryFormat)
+                    .setInvalidateOnChange(true)
+                    .setEvictionConfig(new EvictionConfig()
+                        .setEvictionPolicy(EvictionPolicy.LRU)
+                        .setMaxSizePolicy(MaxSizePolicy.ENTRY_COUNT)
+                        .setSize(maxSize)
+                    )
+                );
+            hazelcast.getConfig().addMapConfig(mapConfig);
+
+            logger.info("Near cache enabled for {} with max size {}, format {}", name, maxSize, inMemoryFormat);
+        }
+        return hazelcast.getMap(name);
+    }
+
+    public List<String> getNearCachedMaps() {
+        return nearCachedMaps;
+    }
+
+    /**
+     * Changes older than the tracking period are never read, since the cursor of the requestor has then expired
+     */
+    private Ringbuffer<Set<SiriObjectStorageKey>> getChangeLog(String name) {
+        hazelcast.getConfig().addRingBufferConfig(
+                new RingbufferConfig(name)
+                        .setCapacity(changeLogCapacity)
+                        .setTimeToLiveSeconds(trackingPeriodMinutes * 60)
+        );
+        return hazelcast.getRingbuffer(name);
     }
 
     @Bean
@@ -174,6 +333,16 @@ public class ExtendedHazelcastService extends HazelCastService {
         return hazelcast.getReplicatedMap("anshar.validation.filter");
     }
 
+    @Bean
+    public ReplicatedMap<String, String> getPollingFailoverMap() {
+        return hazelcast.getReplicatedMap("anshar.polling.failover");
+    }
+
+    @Bean
+    public ReplicatedMap<String, Instant> getTracedSubscriptionsMap() {
+        return hazelcast.getReplicatedMap("anshar.tracing.subscriptions");
+    }
+
     @Bean
     public ReplicatedMap<String, Instant> getLastActivityMap() {
         return hazelcast.getReplicatedMap("anshar.activity.last");
@@ -187,63 +356,63 @@ public class ExtendedHazelcastService extends HazelCastService {
 
     @Bean
     public IMap<String, Long> getReceivedBytesMap() {
-        return hazelcast.getMap("anshar.subscriptions.data.received.bytes");
+        return getConfiguredMap("anshar.subscriptions.data.received.bytes");
     }
 
 
     @Bean
     public IMap<String, Instant> getLastEtUpdateRequest() {
-        return hazelcast.getMap("anshar.activity.last.et.update.request");
+        return getConfiguredMap("anshar.activity.last.et.update.request");
     }
 
     @Bean
     public IMap<String, Instant> getLastSxUpdateRequest() {
-        return hazelcast.getMap("anshar.activity.last.sx.update.request");
+        return getConfiguredMap("anshar.activity.last.sx.update.request");
     }
 
     @Bean
     public IMap<String, Instant> getLastVmUpdateRequest() {
-        return hazelcast.getMap("anshar.activity.last.vm.update.request");
+        return getConfiguredMap("anshar.activity.last.vm.update.request");
     }
 
     @Bean
     public IMap<String, Instant> getActivatedTimestampMap() {
-        return hazelcast.getMap("anshar.activity.activated");
+        return getConfiguredMap("anshar.activity.activated");
     }
 
     @Bean
     public IMap<String, Integer> getHitcountMap() {
-        return hazelcast.getMap("anshar.activity.hitcount");
+        return getConfiguredMap("anshar.activity.hitcount");
     }
 
     @Bean
     public IMap<String, String> getForceRestartMap() {
-        return hazelcast.getMap("anshar.subscriptions.restart");
+        return getConfiguredMap("anshar.subscriptions.restart");
     }
 
     @Bean
     public IMap<String, Instant> getFailTrackerMap() {
-        return hazelcast.getMap("anshar.activity.failtracker");
+        return getConfiguredMap("anshar.activity.failtracker");
     }
 
     @Bean
     public IMap<String, Instant> getLockMap() {
-        return hazelcast.getMap("anshar.locks");
+        return getConfiguredMap("anshar.locks");
     }
 
     @Bean
     public IMap<Enum<HealthCheckKey>, Instant> getHealthCheckMap() {
-        return hazelcast.getMap("anshar.admin.health");
+        return getConfiguredMap("anshar.admin.health");
     }
 
     @Bean
     public IMap<String, OutboundSubscriptionSetup> getOutboundSubscriptionMap() {
-        return hazelcast.getMap("anshar.subscriptions.outbound");
+        return getConfiguredMap("anshar.subscriptions.outbound");
     }
 
     @Bean
     public IMap<String, Instant> getHeartbeatTimestampMap() {
-        return hazelcast.getMap("anshar.subscriptions.outbound.heartbeat");
+        return getConfiguredMap("anshar.subscriptions.outbound.heartbeat");
     }
 
     @Bean
@@ -253,33 +422,21 @@ public class ExtendedHazelcastService extends HazelCastService {
 
     @Bean
     public IMap<String, Map<SiriDataType, Set<String>>> getUnmappedIds() {
-        return hazelcast.getMap("anshar.mapping.unmapped");
+        return getConfiguredMap("anshar.mapping.unmapped");
     }
 
     @Bean
-    public IMap<String, List<String>> getValidationResultRefMap() {
-        return hazelcast.getMap("anshar.validation.results.ref");
-    }
-    @Bean
-    public IMap<String, byte[]> getValidationResultSiriMap() {
-        return hazelcast.getMap("anshar.validation.results.siri");
-    }
-    @Bean
-    public IMap<String, JSONObject> getValidationResultJsonMap() {
-        return hazelcast.getMap("anshar.validation.results.json");
-    }
-    @Bean
-    public IMap<String, Long> getValidationSizeTracker() {
-        return hazelcast.getMap("anshar.validation.results.size");
+    public IMap<String, ValidationReports> getValidationReportMap() {
+        return getConfiguredMap("anshar.validation.reports");
     }
 
     @Bean
     public IMap<String,BigInteger> getObjectCounterMap() {
-        return hazelcast.getMap("anshar.activity.objectcount");
+        return getConfiguredMap("anshar.activity.objectcount");
     }
     @Bean
     public IMap<String[], RequestorRefStats> getRequestorRefs() {
-        return hazelcast.getMap("anshar.activity.requestorref");
+        return getConfiguredMap("anshar.activity.requestorref");
     }
 
     public String listNodes(boolean includeStats) {
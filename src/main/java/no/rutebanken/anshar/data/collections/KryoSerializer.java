@@ -21,17 +21,70 @@ import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.KryoFactory;
 import com.esotericsoftware.kryo.pool.KryoPool;
 import com.hazelcast.nio.serialization.ByteArraySerializer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.util.ClassUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 public class KryoSerializer implements ByteArraySerializer {
 
+    private static final Logger logger = LoggerFactory.getLogger(KryoSerializer.class);
+
+    private static final String SIRI_PACKAGE = "uk.org.siri.siri20";
+
     private static final KryoPool kryoPool;
 
+    /**
+     * Kryo-instances with all SIRI-classes registered - registration-order must be identical on all cluster-members
+     */
+    private static final KryoPool registeredKryoPool;
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Output-buffers grown beyond this size are discarded after use, so that each thread does not keep the largest
+     * buffer it has ever needed
+     */
+    static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<Output> outputBuffer = ThreadLocal.withInitial(() -> new Output(INITIAL_BUFFER_SIZE, -1));
+    private static final ThreadLocal<Input> inputBuffer = ThreadLocal.withInitial(Input::new);
+    private static final ThreadLocal<Deflater> deflater = ThreadLocal.withInitial(Deflater::new);
+    private static final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(Inflater::new);
+    private static final ThreadLocal<byte[]> compressionBuffer = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+
+    private static final LZ4Compressor lz4Compressor = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor lz4Decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
     static {
         KryoFactory factory = () -> {
             Kryo kryo = new Kryo();
@@ -42,10 +95,63 @@ public class KryoSerializer implements ByteArraySerializer {
         };
 
         kryoPool = new KryoPool.Builder(factory).softReferences().build();
+
+        final List<Class<?>> registeredClasses = resolveRegisteredClasses();
+        KryoFactory registeredFactory = () -> {
+            Kryo kryo = new Kryo();
+            kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+            for (Class<?> registeredClass : registeredClasses) {
+                kryo.register(registeredClass);
+            }
+            return kryo;
+        };
+
+        registeredKryoPool = new KryoPool.Builder(registeredFactory).softReferences().build();
+    }
+
+    private final KryoSerializerMode mode;
+
+    public KryoSerializer() {
+        this(KryoSerializerMode.LEGACY);
+    }
+
+    public KryoSerializer(KryoSerializerMode mode) {
+        this.mode = mode;
     }
 
     @Override
     public byte[] write(Object o) {
+        if (mode == KryoSerializerMode.LEGACY) {
+            return writeLegacy(o);
+        }
+
+        Kryo kryo = registeredKryoPool.borrow();
+        Output output = outputBuffer.get();
+        try {
+            output.clear();
+            kryo.writeClassAndObject(output, o);
+
+            switch (mode) {
+                case LZ4:
+                    return compressLz4(output.getBuffer(), output.position());
+                case DEFLATE:
+                    return compressDeflate(output.getBuffer(), output.position());
+                case NONE:
+                default:
+                    byte[] bytes = new byte[output.position() + 1];
+                    bytes[0] = mode.getMarker();
+                    System.arraycopy(output.getBuffer(), 0, bytes, 1, output.position());
+                    return bytes;
+            }
+        } finally {
+            if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) {
+                outputBuffer.remove();
+            }
+            registeredKryoPool.release(kryo);
+        }
+    }
+
+    private byte[] writeLegacy(Object o) {
         Kryo kryo = kryoPool.borrow();
         try {
                 ByteArrayOutputStream byteArrayOutputStream =
@@ -64,6 +170,37 @@ public class KryoSerializer implements ByteArraySerializer {
 
     @Override
     public Object read(byte[] bytes) {
+        final KryoSerializerMode writtenMode = KryoSerializerMode.fromMarker(bytes[0]);
+        if (writtenMode == KryoSerializerMode.LEGACY) {
+            return readLegacy(bytes);
+        }
+
+        Kryo kryo = registeredKryoPool.borrow();
+        try {
+            Input input = inputBuffer.get();
+            switch (writtenMode) {
+                case LZ4:
+                    input.setBuffer(decompressLz4(bytes));
+                    break;
+                case DEFLATE:
+                    input.setBuffer(decompressDeflate(bytes));
+                    break;
+                case NONE:
+                default:
+                    input.setBuffer(bytes, 1, bytes.length - 1);
+            }
+            try {
+                return kryo.readClassAndObject(input);
+            } finally {
+                // Do not keep reference to data
+                input.setBuffer(new byte[0]);
+            }
+        } finally {
+            registeredKryoPool.release(kryo);
+        }
+    }
+
+    private Object readLegacy(byte[] bytes) {
         Kryo kryo = kryoPool.borrow();
 
         try {
@@ -77,6 +214,116 @@ public class KryoSerializer implements ByteArraySerializer {
         }
     }
 
+    /**
+     * Layout: [marker][uncompressed length][LZ4-compressed data]
+     */
+    private byte[] compressLz4(byte[] data, int length) {
+        byte[] compressed = new byte[5 + lz4Compressor.maxCompressedLength(length)];
+        compressed[0] = KryoSerializerMode.LZ4.getMarker();
+        ByteBuffer.wrap(compressed, 1, 4).putInt(length);
+
+        int compressedLength = lz4Compressor.compress(data, 0, length, compressed, 5);
+        return Arrays.copyOf(compressed, 5 + compressedLength);
+    }
+
+    private byte[] decompressLz4(byte[] bytes) {
+        int length = ByteBuffer.wrap(bytes, 1, 4).getInt();
+        byte[] decompressed = new byte[length];
+        lz4Decompressor.decompress(bytes, 5, decompressed, 0, length);
+        return decompressed;
+    }
+
+    /**
+     * Layout: [marker][uncompressed length][deflated data]
+     */
+    private byte[] compressDeflate(byte[] data, int length) {
+        Deflater compressor = deflater.get();
+        compressor.reset();
+        compressor.setInput(data, 0, length);
+        compressor.finish();
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(length / 2 + 5);
+        result.write(KryoSerializerMode.DEFLATE.getMarker());
+        result.write(length >>> 24);
+        result.write(length >>> 16);
+        result.write(length >>> 8);
+        result.write(length);
+
+        byte[] buffer = compressionBuffer.get();
+        while (!compressor.finished()) {
+            int count = compressor.deflate(buffer);
+            result.write(buffer, 0, count);
+        }
+        return result.toByteArray();
+    }
+
+    private byte[] decompressDeflate(byte[] bytes) {
+        int length = ByteBuffer.wrap(bytes, 1, 4).getInt();
+        byte[] decompressed = new byte[length];
+
+        Inflater decompressor = inflater.get();
+        decompressor.reset();
+        decompressor.setInput(bytes, 5, bytes.length - 5);
+        try {
+            int offset = 0;
+            while (offset < length && !decompressor.finished()) {
+                offset += decompressor.inflate(decompressed, offset, length - offset);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Unable to inflate value", e);
+        }
+        return decompressed;
+    }
+
+    /**
+     * @return All classes that should be registered - sorted by name to ensure identical registration on all instances
+     */
+    private static List<Class<?>> resolveRegisteredClasses() {
+        long t1 = System.currentTimeMillis();
+
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition beanDefinition) {
+                // Include enums, and nested classes
+                return !beanDefinition.getMetadata().isInterface();
+            }
+        };
+        scanner.addIncludeFilter(new AssignableTypeFilter(Object.class));
+
+        Set<String> classNames = new TreeSet<>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(SIRI_PACKAGE)) {
+            classNames.add(candidate.getBeanClassName());
+        }
+
+        List<Class<?>> classes = new ArrayList<>();
+        classes.add(ArrayList.class);
+        classes.add(HashMap.class);
+        classes.add(HashSet.class);
+        classes.add(BigInteger.class);
+        classes.add(BigDecimal.class);
+        classes.add(ZonedDateTime.class);
+        classes.add(Duration.class);
+        classes.add(JSONObject.class);
+        classes.add(JSONArray.class);
+
+        for (String className : classNames) {
+            try {
+                classes.add(ClassUtils.forName(className, KryoSerializer.class.getClassLoader()));
+            } catch (ClassNotFoundException | LinkageError e) {
+                throw new IllegalStateException("Unable to register class " + className, e);
+            }
+        }
+        logger.info("Resolved {} classes to register with Kryo in {} ms", classes.size(), (System.currentTimeMillis() - t1));
+        return classes;
+    }
+
+    /**
+     * @return Size of the output-buffer kept by the current thread
+     */
+    static int getRetainedBufferSize() {
+        return outputBuffer.get().getBuffer().length;
+    }
+
     @Override
     public int getTypeId() {
         return 1;
@@ -86,4 +333,4 @@ public class KryoSerializer implements ByteArraySerializer {
     public void destroy() {
         //Ignore d
     }
-}
\ No newline at end of file
+}
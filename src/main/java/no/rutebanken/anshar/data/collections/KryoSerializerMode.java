@@ -0,0 +1,63 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data.collections;
+
+/**
+ * Defines how values are written by {@link KryoSerializer}.
+ *
+ * All modes are able to read data written by any other mode.
+ */
+public enum KryoSerializerMode {
+    /**
+     * Unregistered classes, always deflated - i.e. full classnames are included in every value
+     */
+    LEGACY((byte) -1),
+    /**
+     * Registered classes, uncompressed
+     */
+    NONE((byte) 1),
+    /**
+     * Registered classes, LZ4-compressed
+     */
+    LZ4((byte) 2),
+    /**
+     * Registered classes, deflated
+     */
+    DEFLATE((byte) 3);
+
+    private final byte marker;
+
+    KryoSerializerMode(byte marker) {
+        this.marker = marker;
+    }
+
+    /**
+     * @return First byte of values written in this mode
+     */
+    byte getMarker() {
+        return marker;
+    }
+
+    static KryoSerializerMode fromMarker(byte marker) {
+        for (KryoSerializerMode mode : values()) {
+            if (mode != LEGACY && mode.marker == marker) {
+                return mode;
+            }
+        }
+        // Legacy-values starts with zlib-header
+        return LEGACY;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data.hashing;
+
+import java.util.Set;
+
+public enum HasherType {
+    /**
+     * Walks the object graph, and feeds all values directly to a Murmur3-hash
+     */
+    STRUCTURAL,
+    /**
+     * MD5 of the Java-serialized object
+     */
+    SERIALIZATION;
+
+    /**
+     * @param ignoredFields names of fields on the root object that should not be included in the checksum
+     */
+    public ChangeDetectionHasher create(String... ignoredFields) {
+        switch (this) {
+            case SERIALIZATION:
+                return new SerializationHasher(Set.of(ignoredFields));
+            case STRUCTURAL:
+            default:
+                return new StructuralHasher(Set.of(ignoredFields));
+        }
+    }
+}
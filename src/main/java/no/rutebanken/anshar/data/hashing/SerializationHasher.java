@@ -0,0 +1,69 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data.hashing;
+
+import org.springframework.util.SerializationUtils;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Calculates checksum as MD5 of the Java-serialized object.
+ *
+ * Ignored fields are temporarily set to null while the object is serialized.
+ */
+public class SerializationHasher implements ChangeDetectionHasher {
+
+    private final Set<String> ignoredFields;
+
+    SerializationHasher(Set<String> ignoredFields) {
+        this.ignoredFields = ignoredFields;
+    }
+
+    @Override
+    public long hash(Object object) {
+        Map<Field, Object> ignoredValues = new HashMap<>();
+        try {
+            for (Field field : StructuralHasher.getFields(object.getClass())) {
+                if (ignoredFields.contains(field.getName())) {
+                    ignoredValues.put(field, field.get(object));
+                    field.set(object, null);
+                }
+            }
+
+            byte[] bytes = SerializationUtils.serialize(object);
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            return ByteBuffer.wrap(md.digest(bytes)).getLong();
+
+        } catch (IllegalAccessException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to calculate checksum", e);
+        } finally {
+            //Set original values back
+            for (Map.Entry<Field, Object> entry : ignoredValues.entrySet()) {
+                try {
+                    entry.getKey().set(object, entry.getValue());
+                } catch (IllegalAccessException e) {
+                    //Ignore - field has already been accessed
+                }
+            }
+        }
+    }
+}
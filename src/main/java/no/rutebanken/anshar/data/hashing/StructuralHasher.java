@@ -0,0 +1,194 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+package no.rutebanken.anshar.data.hashing;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.bind.JAXBElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Calculates checksum by walking the object graph, and feeding every value directly into a Murmur3-hash
+ * without serializing the object first.
+ *
+ * Fields listed as ignored are skipped on the root object only - e.g. RecordedAtTime on EstimatedVehicleJourney
+ * to avoid detecting "fake" updates where only the timestamp has changed.
+ */
+public class StructuralHasher implements ChangeDetectionHasher {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private static final Map<Class<?>, List<Field>> fieldCache = new ConcurrentHashMap<>();
+
+    // Markers separating values to avoid e.g. ["ab", "c"] and ["a", "bc"] producing the same hash
+    private static final byte NULL = 0;
+    private static final byte OBJECT = 1;
+    private static final byte STRING = 2;
+    private static final byte NUMBER = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte ENUM = 5;
+    private static final byte TIMESTAMP = 6;
+    private static final byte COLLECTION = 7;
+    private static final byte ELEMENT = 8;
+    private static final byte NODE = 9;
+    private static final byte OTHER = 10;
+
+    private final Set<String> ignoredFields;
+
+    StructuralHasher(Set<String> ignoredFields) {
+        this.ignoredFields = ignoredFields;
+    }
+
+    @Override
+    public long hash(Object object) {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        putObject(hasher, object, ignoredFields);
+        return hasher.hash().asLong();
+    }
+
+    private static void putValue(Hasher hasher, Object value) {
+        if (value == null) {
+            hasher.putByte(NULL);
+        } else if (value instanceof String) {
+            putString(hasher.putByte(STRING), (String) value);
+        } else if (value instanceof Boolean) {
+            hasher.putByte(BOOLEAN).putBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            hasher.putByte(NUMBER).putLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            hasher.putByte(NUMBER).putDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigInteger) {
+            putString(hasher.putByte(NUMBER), value.toString());
+        } else if (value instanceof BigDecimal) {
+            putString(hasher.putByte(NUMBER), ((BigDecimal) value).unscaledValue().toString())
+                    .putInt(((BigDecimal) value).scale());
+        } else if (value instanceof Enum) {
+            putString(hasher.putByte(ENUM), ((Enum<?>) value).name());
+        } else if (value instanceof ZonedDateTime) {
+            ZonedDateTime timestamp = (ZonedDateTime) value;
+            hasher.putByte(TIMESTAMP)
+                    .putLong(timestamp.toEpochSecond())
+                    .putInt(timestamp.getNano());
+            putString(hasher, timestamp.getZone().getId());
+        } else if (value instanceof Collection) {
+            Collection<?> collection = (Collection<?>) value;
+            hasher.putByte(COLLECTION).putInt(collection.size());
+            for (Object o : collection) {
+                putValue(hasher, o);
+            }
+        } else if (value instanceof JAXBElement) {
+            JAXBElement<?> element = (JAXBElement<?>) value;
+            putString(hasher.putByte(ELEMENT), element.getName().toString());
+            putValue(hasher, element.getValue());
+        } else if (value instanceof Node) {
+            putNode(hasher.putByte(NODE), (Node) value);
+        } else if (isJdkType(value.getClass())) {
+            // Remaining JDK-types, e.g. Duration, are represented by their String-value
+            putString(hasher.putByte(OTHER), value.toString());
+        } else {
+            putObject(hasher, value, Set.of());
+        }
+    }
+
+    private static void putObject(Hasher hasher, Object object, Set<String> ignoredFields) {
+        if (object == null) {
+            hasher.putByte(NULL);
+            return;
+        }
+        hasher.putByte(OBJECT).putInt(object.getClass().getName().hashCode());
+        for (Field field : getFields(object.getClass())) {
+            if (ignoredFields.contains(field.getName())) {
+                continue;
+            }
+            try {
+                final Object value = field.get(object);
+                if (value == null && Collection.class.isAssignableFrom(field.getType())) {
+                    // JAXB initializes lists lazily - treat uninitialized list as empty
+                    hasher.putByte(COLLECTION).putInt(0);
+                } else {
+                    putValue(hasher, value);
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Unable to read field " + field, e);
+            }
+        }
+    }
+
+    /**
+     * Extensions may contain arbitrary XML
+     */
+    private static void putNode(Hasher hasher, Node node) {
+        putString(hasher, node.getNodeName());
+        putString(hasher, node.getNodeValue() != null ? node.getNodeValue() : "");
+
+        NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            hasher.putInt(attributes.getLength());
+            for (int i = 0; i < attributes.getLength(); i++) {
+                putNode(hasher, attributes.item(i));
+            }
+        }
+        NodeList children = node.getChildNodes();
+        hasher.putInt(children.getLength());
+        for (int i = 0; i < children.getLength(); i++) {
+            putNode(hasher, children.item(i));
+        }
+    }
+
+    private static Hasher putString(Hasher hasher, String value) {
+        return hasher.putInt(value.length()).putUnencodedChars(value);
+    }
+
+    private static boolean isJdkType(Class<?> clazz) {
+        final String className = clazz.getName();
+        return className.startsWith("java.") || className.startsWith("javax.");
+    }
+
+    /**
+     * @return All non-static fields in class hierarchy
+     */
+    static List<Field> getFields(Class<?> clazz) {
+        return fieldCache.computeIfAbsent(clazz, c -> {
+            List<Field> fields = new ArrayList<>();
+            Class<?> current = c;
+            while (current != null && current != Object.class) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+                }
+                current = current.getSuperclass();
+            }
+            return fields;
+        });
+    }
+}
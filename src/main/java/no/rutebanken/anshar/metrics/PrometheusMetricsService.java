@@ -15,6 +15,8 @@
 
 package no.rutebanken.anshar.metrics;
 
+import com.hazelcast.map.IMap;
+import com.hazelcast.nearcache.NearCacheStats;
 import com.hazelcast.replicatedmap.ReplicatedMap;
 import io.micrometer.core.instrument.ImmutableTag;
 import io.micrometer.core.instrument.Meter;
@@ -24,6 +26,8 @@ import io.micrometer.prometheus.PrometheusMeterRegistry;
 import no.rutebanken.anshar.data.EstimatedTimetables;
 import no.rutebanken.anshar.data.Situations;
 import no.rutebanken.anshar.data.VehicleActivities;
+import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
+import no.rutebanken.anshar.routes.siri.InboundAdmissionController;
 import no.rutebanken.anshar.routes.siri.transformer.ApplicationContextHolder;
 import no.rutebanken.anshar.routes.siri.transformer.MappingNames;
 import no.rutebanken.anshar.routes.validation.ValidationType;
@@ -43,6 +47,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
 
 @Component
 public class PrometheusMetricsService extends PrometheusMeterRegistry {
@@ -61,7 +68,13 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
     private static final String VALIDATION_TYPE_TAG_NAME = "validationType";
     private static final String VALIDATION_RULE_TAG_NAME = "category";
     private static final String SCHEMA_VALID_TAG_NAME = "schema";
+    private static final String EXECUTOR_POOL_TAG_NAME = "pool";
+    private static final String MAP_NAME_TAG_NAME = "map";
+    private static final String RESPONSE_CACHE_RESULT_TAG_NAME = "result";
     private static final String PROFILE_VALID_TAG_NAME = "profile";
+    private static final String VALIDATION_SKIPPED_REASON_TAG_NAME = "reason";
+    private static final String SUBSCRIPTION_ID_TAG_NAME = "subscriptionId";
+    private static final String INBOUND_ADMISSION_TAG_NAME = "admission";
 
     @Autowired
     protected SubscriptionManager manager;
@@ -82,6 +95,26 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
 
     private static final String DATA_VALIDATION_COUNTER = METRICS_PREFIX + "data.validation";
     private static final String DATA_VALIDATION_RESULT_COUNTER = METRICS_PREFIX + "data.validation.result";
+    private static final String DATA_VALIDATION_SKIPPED_COUNTER = METRICS_PREFIX + "data.validation.skipped";
+
+    private static final String EXECUTOR_QUEUE_SIZE_GAUGE_NAME = METRICS_PREFIX + "executor.queue.size";
+    private static final String EXECUTOR_ACTIVE_GAUGE_NAME = METRICS_PREFIX + "executor.active";
+    private static final String EXECUTOR_REJECTED_COUNTER_NAME = METRICS_PREFIX + "executor.rejected";
+    private static final String EXECUTOR_COALESCED_COUNTER_NAME = METRICS_PREFIX + "executor.coalesced";
+
+    private static final String INBOUND_QUEUE_DEPTH_GAUGE_NAME = METRICS_PREFIX + "inbound.queue.depth";
+    private static final String INBOUND_QUEUE_AGE_GAUGE_NAME = METRICS_PREFIX + "inbound.queue.age.seconds";
+    private static final String INBOUND_ADMISSION_COUNTER_NAME = METRICS_PREFIX + "inbound.admission";
+
+    private static final String RESPONSE_CACHE_COUNTER_NAME = METRICS_PREFIX + "response.cache";
+
+    private static final String OUTBOUND_PUSH_FANOUT_NAME = METRICS_PREFIX + "outbound.push.fanout";
+    private static final String OUTBOUND_PUSH_PREPARATION_NAME = METRICS_PREFIX + "outbound.push.preparation";
+
+    private static final String NEAR_CACHE_HITS_GAUGE_NAME = METRICS_PREFIX + "hazelcast.nearcache.hits";
+    private static final String NEAR_CACHE_MISSES_GAUGE_NAME = METRICS_PREFIX + "hazelcast.nearcache.misses";
+    private static final String NEAR_CACHE_RATIO_GAUGE_NAME = METRICS_PREFIX + "hazelcast.nearcache.ratio";
+    private static final String NEAR_CACHE_ENTRIES_GAUGE_NAME = METRICS_PREFIX + "hazelcast.nearcache.entries";
 
     public PrometheusMetricsService() {
         super(PrometheusConfig.DEFAULT);
@@ -201,7 +234,85 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
         counter(DATA_VALIDATION_RESULT_COUNTER, counterTags).increment();
     }
 
-    private void countOutgoingData(SiriDataType dataType, SubscriptionSetup.SubscriptionMode mode, long objectCount) {
+    public void countSkippedValidation(SiriDataType dataType, String codespaceId, String reason) {
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType.name()));
+        counterTags.add(new ImmutableTag(CODESPACE_TAG_NAME, codespaceId));
+        counterTags.add(new ImmutableTag(VALIDATION_SKIPPED_REASON_TAG_NAME, reason));
+
+        counter(DATA_VALIDATION_SKIPPED_COUNTER, counterTags).increment();
+    }
+
+    public void registerExecutor(String poolName, ThreadPoolExecutor executor) {
+        List<Tag> gaugeTags = new ArrayList<>();
+        gaugeTags.add(new ImmutableTag(EXECUTOR_POOL_TAG_NAME, poolName));
+
+        gauge(EXECUTOR_QUEUE_SIZE_GAUGE_NAME, gaugeTags, executor, e -> e.getQueue().size());
+        gauge(EXECUTOR_ACTIVE_GAUGE_NAME, gaugeTags, executor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    public void registerNearCache(String mapName, IMap<?, ?> map) {
+        List<Tag> gaugeTags = new ArrayList<>();
+        gaugeTags.add(new ImmutableTag(MAP_NAME_TAG_NAME, mapName));
+
+        gauge(NEAR_CACHE_HITS_GAUGE_NAME, gaugeTags, map, m -> getNearCacheStat(m, NearCacheStats::getHits));
+        gauge(NEAR_CACHE_MISSES_GAUGE_NAME, gaugeTags, map, m -> getNearCacheStat(m, NearCacheStats::getMisses));
+        gauge(NEAR_CACHE_RATIO_GAUGE_NAME, gaugeTags, map, m -> getNearCacheStat(m, NearCacheStats::getRatio));
+        gauge(NEAR_CACHE_ENTRIES_GAUGE_NAME, gaugeTags, map, m -> getNearCacheStat(m, NearCacheStats::getOwnedEntryCount));
+    }
+
+    private static double getNearCacheStat(IMap<?, ?> map, ToDoubleFunction<NearCacheStats> stat) {
+        final NearCacheStats nearCacheStats = map.getLocalMapStats().getNearCacheStats();
+        return nearCacheStats != null ? stat.applyAsDouble(nearCacheStats) : 0;
+    }
+
+    public void countRejectedTask(String poolName) {
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag(EXECUTOR_POOL_TAG_NAME, poolName));
+
+        counter(EXECUTOR_REJECTED_COUNTER_NAME, counterTags).increment();
+    }
+
+    public void countCoalescedTask(String poolName) {
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag(EXECUTOR_POOL_TAG_NAME, poolName));
+
+        counter(EXECUTOR_COALESCED_COUNTER_NAME, counterTags).increment();
+    }
+
+    public void registerInboundQueue(String subscriptionId, InboundAdmissionController.FairQueue queue) {
+        List<Tag> gaugeTags = new ArrayList<>();
+        gaugeTags.add(new ImmutableTag(SUBSCRIPTION_ID_TAG_NAME, subscriptionId));
+
+        gauge(INBOUND_QUEUE_DEPTH_GAUGE_NAME, gaugeTags, queue, q -> q.getDepth(subscriptionId));
+        gauge(INBOUND_QUEUE_AGE_GAUGE_NAME, gaugeTags, queue, q -> q.getOldestAge(subscriptionId) / 1000.0);
+    }
+
+    public void countInboundAdmission(String subscriptionId, String admission) {
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag(SUBSCRIPTION_ID_TAG_NAME, subscriptionId));
+        counterTags.add(new ImmutableTag(INBOUND_ADMISSION_TAG_NAME, admission));
+
+        counter(INBOUND_ADMISSION_COUNTER_NAME, counterTags).increment();
+    }
+
+    public void countResponseCacheRequest(SiriDataType dataType, String result) {
+        List<Tag> counterTags = new ArrayList<>();
+        counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType.name()));
+        counterTags.add(new ImmutableTag(RESPONSE_CACHE_RESULT_TAG_NAME, result));
+
+        counter(RESPONSE_CACHE_COUNTER_NAME, counterTags).increment();
+    }
+
+    public void registerPushFanOut(SiriDataType dataType, int recipients, long preparationMillis) {
+        List<Tag> tags = new ArrayList<>();
+        tags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType.name()));
+
+        summary(OUTBOUND_PUSH_FANOUT_NAME, tags).record(recipients);
+        timer(OUTBOUND_PUSH_PREPARATION_NAME, tags).record(preparationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void countOutgoingData(SiriDataType dataType, SubscriptionSetup.SubscriptionMode mode, long objectCount) {
         if (dataType != null && objectCount > 0) {
             List<Tag> counterTags = new ArrayList<>();
             counterTags.add(new ImmutableTag(DATATYPE_TAG_NAME, dataType.name()));
@@ -257,6 +368,12 @@ public class PrometheusMetricsService extends PrometheusMeterRegistry {
             gaugeDataset(SiriDataType.VEHICLE_MONITORING, entry.getKey(), entry.getValue());
         }
 
+        ExtendedHazelcastService hazelcastService = ApplicationContextHolder.getContext().getBean(ExtendedHazelcastService.class);
+        for (String mapName : hazelcastService.getNearCachedMaps()) {
+            // Already registered gauges are reused
+            registerNearCache(mapName, hazelcastService.getHazelcastInstance().getMap(mapName));
+        }
+
         ReplicatedMap<String, SubscriptionSetup> subscriptions = manager.subscriptions;
         for (SubscriptionSetup subscription : subscriptions.values()) {
 
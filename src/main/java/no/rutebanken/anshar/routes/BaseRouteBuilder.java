@@ -71,14 +71,16 @@ public abstract class BaseRouteBuilder extends SpringRouteBuilder {
         this.isRunning = true;
     }
 
-    protected boolean requestData(String subscriptionId, String fromRouteId) {
+    /**
+     * Cluster-wide ownership of polling is handled by PollingSubscriptionScheduler - only checks state of subscription
+     */
+    protected boolean requestData(String subscriptionId) {
         SubscriptionSetup subscriptionSetup = subscriptionManager.get(subscriptionId);
 
         if (subscriptionSetup != null) { // In case subscription has been deleted
-            boolean isLeader = isLeader(fromRouteId);
-            log.debug("isActive: {}, isActivated {}, isLeader {}, isRunning {}: {}", subscriptionSetup.isActive(), subscriptionManager.isActiveSubscription(subscriptionId), isLeader, isRunning, subscriptionSetup);
+            log.debug("isActive: {}, isActivated {}, isRunning {}: {}", subscriptionSetup.isActive(), subscriptionManager.isActiveSubscription(subscriptionId), isRunning, subscriptionSetup);
 
-            if (isLeader && subscriptionSetup.isActive() && subscriptionManager.isActiveSubscription(subscriptionId)) {
+            if (subscriptionSetup.isActive() && subscriptionManager.isActiveSubscription(subscriptionId)) {
                 if (isRunning) {
                     log.debug("Previous request still running - ignore polling-trigger for {}", subscriptionSetup);
                     return false;
@@ -102,20 +104,6 @@ public abstract class BaseRouteBuilder extends SpringRouteBuilder {
         return false;
     }
 
-    protected void releaseLeadership(String routeId) {
-        List<RoutePolicy> routePolicyList = getContext().getRoute(routeId).getRoutePolicyList();
-        if (routePolicyList != null) {
-            for (RoutePolicy routePolicy : routePolicyList) {
-                if (routePolicy instanceof InterruptibleHazelcastRoutePolicy) {
-                    if (isLeader(routeId)) {
-                        ((InterruptibleHazelcastRoutePolicy) routePolicy).releaseLeadership();
-                        log.info("Leadership released: {}", routeId);
-                    }
-                }
-            }
-        }
-    }
-
 
     protected String getRequestUrl(SubscriptionSetup subscriptionSetup, String parameters) throws ServiceNotSupportedException {
         Map<RequestType, String> urlMap = subscriptionSetup.getUrlMap();
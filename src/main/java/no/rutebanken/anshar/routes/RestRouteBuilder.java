@@ -36,12 +36,14 @@ import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.MediaType;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.UnmarshalException;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 public class RestRouteBuilder extends RouteBuilder {
 
@@ -417,6 +419,43 @@ public class RestRouteBuilder extends RouteBuilder {
         p.getMessage().setBody(out.getOutputStream());
     }
 
+    /**
+     * Writes a precomputed response - or 304 Not Modified if the client already has the same response.
+     *
+     * @return true if the response content was written
+     */
+    protected boolean streamCachedOutput(Exchange p, SiriResponseCache.CachedResponse response, HttpServletResponse out) throws IOException {
+        out.setHeader(HttpHeaders.ETAG, response.getETag());
+        p.getMessage().setHeader(HttpHeaders.ETAG, response.getETag());
+
+        String ifNoneMatch = p.getIn().getHeader(HttpHeaders.IF_NONE_MATCH, String.class);
+        if (ifNoneMatch != null && ifNoneMatch.contains(response.getETag())) {
+            out.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            p.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, HttpServletResponse.SC_NOT_MODIFIED);
+            p.getMessage().setBody("");
+            return false;
+        }
+
+        out.setContentType(response.getFormat().getContentType());
+        p.getMessage().setHeader(HttpHeaders.CONTENT_TYPE, response.getFormat().getContentType());
+
+        String acceptEncoding = p.getIn().getHeader(HttpHeaders.ACCEPT_ENCODING, String.class);
+        if (!response.isGzipped() || (acceptEncoding != null && acceptEncoding.contains("gzip"))) {
+            if (response.isGzipped()) {
+                // Set on response only - Camel would otherwise compress the body again
+                out.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            out.setContentLength(response.getContent().length);
+            out.getOutputStream().write(response.getContent());
+        } else {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getContent()))) {
+                in.transferTo(out.getOutputStream());
+            }
+        }
+        p.getMessage().setBody(out.getOutputStream());
+        return true;
+    }
+
 }
 
 // To be removed according to task ROR-521
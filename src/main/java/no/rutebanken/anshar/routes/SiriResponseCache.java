@@ -0,0 +1,304 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import no.rutebanken.anshar.metrics.PrometheusMetricsService;
+import no.rutebanken.anshar.routes.siri.handlers.OutboundIdMappingPolicy;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.apache.camel.Exchange;
+import org.apache.http.HttpHeaders;
+import org.entur.protobuf.mapper.SiriMapper;
+import org.rutebanken.siri20.util.SiriJson;
+import org.rutebanken.siri20.util.SiriXml;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.org.siri.siri20.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri20.EstimatedVersionFrameStructure;
+import uk.org.siri.siri20.Siri;
+import uk.org.siri.siri20.SituationExchangeDeliveryStructure;
+import uk.org.siri.siri20.VehicleMonitoringDeliveryStructure;
+
+import javax.annotation.PostConstruct;
+import javax.ws.rs.core.MediaType;
+import javax.xml.bind.JAXBException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache of fully marshalled - and optionally gzipped - responses for requests that return the same data
+ * to all clients, i.e. requests without requestorId.
+ *
+ * Each response is created for a version of the data, and is recreated when the data-version has changed.
+ */
+@Service
+public class SiriResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiriResponseCache.class);
+
+    @Value("${anshar.rest.response.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${anshar.rest.response.cache.gzip:true}")
+    private boolean gzipEnabled;
+
+    @Value("${anshar.rest.response.cache.max.size.mb:256}")
+    private int maxSizeMb;
+
+    @Value("${anshar.rest.response.cache.expiry.seconds:300}")
+    private int expirySeconds;
+
+    @Autowired
+    private PrometheusMetricsService metrics;
+
+    private Cache<ResponseKey, CachedResponse> cache;
+
+    @PostConstruct
+    void init() {
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxSizeMb * 1024L * 1024L)
+                .weigher((ResponseKey key, CachedResponse response) -> response.getContent().length)
+                .expireAfterAccess(expirySeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns cached response for the given key. A new response is created if none exists, or if the
+     * data has changed since the cached response was created.
+     *
+     * @param key Identifies the request
+     * @param dataVersion Current version of the data used to create the response
+     * @param responseSupplier Creates the complete - transformed - response
+     * @return Marshalled response
+     * @throws ExecutionException when creating the response fails
+     */
+    public CachedResponse getResponse(ResponseKey key, long dataVersion, Callable<Siri> responseSupplier) throws ExecutionException {
+        CachedResponse response = cache.getIfPresent(key);
+        if (response != null && response.getDataVersion() >= dataVersion) {
+            metrics.countResponseCacheRequest(key.getDataType(), "hit");
+            return response;
+        }
+
+        if (response != null) {
+            // Outdated - only removed if not already replaced by another thread
+            cache.asMap().remove(key, response);
+        }
+        metrics.countResponseCacheRequest(key.getDataType(), "miss");
+
+        // Concurrent requests for the same key wait for the same response to be created
+        return cache.get(key, () -> createResponse(key, dataVersion, responseSupplier.call()));
+    }
+
+    private CachedResponse createResponse(ResponseKey key, long dataVersion, Siri siri) throws IOException, JAXBException {
+        long t1 = System.currentTimeMillis();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = gzipEnabled ? new GZIPOutputStream(bytes) : bytes) {
+            key.getFormat().write(siri, out);
+        }
+        byte[] content = bytes.toByteArray();
+
+        // Weak ETag since the same response may be served both with and without gzip-encoding
+        String eTag = "W/\"" + Hashing.murmur3_128().hashBytes(content) + "\"";
+
+        CachedResponse response = new CachedResponse(content, key.getFormat(), gzipEnabled, eTag, dataVersion, countElements(siri));
+
+        logger.info("Created cached response for {} in {} ms, {} bytes", key, (System.currentTimeMillis() - t1), content.length);
+        return response;
+    }
+
+    private static int countElements(Siri siri) {
+        int count = 0;
+        if (siri != null && siri.getServiceDelivery() != null) {
+            for (EstimatedTimetableDeliveryStructure delivery : siri.getServiceDelivery().getEstimatedTimetableDeliveries()) {
+                for (EstimatedVersionFrameStructure frame : delivery.getEstimatedJourneyVersionFrames()) {
+                    count += frame.getEstimatedVehicleJourneies().size();
+                }
+            }
+            for (VehicleMonitoringDeliveryStructure delivery : siri.getServiceDelivery().getVehicleMonitoringDeliveries()) {
+                count += delivery.getVehicleActivities().size();
+            }
+            for (SituationExchangeDeliveryStructure delivery : siri.getServiceDelivery().getSituationExchangeDeliveries()) {
+                if (delivery.getSituations() != null) {
+                    count += delivery.getSituations().getPtSituationElements().size();
+                }
+            }
+        }
+        return count;
+    }
+
+    public enum ResponseFormat {
+        XML(MediaType.APPLICATION_XML),
+        JSON(MediaType.APPLICATION_JSON),
+        PROTOBUF("application/x-protobuf");
+
+        private final String contentType;
+
+        ResponseFormat(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        /**
+         * Resolves requested format the same way as {@link RestRouteBuilder#streamOutput}
+         */
+        public static ResponseFormat resolve(Exchange p) {
+            if (JSON.contentType.equals(p.getIn().getHeader(HttpHeaders.CONTENT_TYPE)) |
+                    JSON.contentType.equals(p.getIn().getHeader(HttpHeaders.ACCEPT))) {
+                return JSON;
+            } else if (PROTOBUF.contentType.equals(p.getIn().getHeader(HttpHeaders.CONTENT_TYPE)) |
+                    PROTOBUF.contentType.equals(p.getIn().getHeader(HttpHeaders.ACCEPT))) {
+                return PROTOBUF;
+            }
+            return XML;
+        }
+
+        void write(Siri siri, OutputStream out) throws IOException, JAXBException {
+            switch (this) {
+                case JSON:
+                    SiriJson.toJson(siri, out);
+                    break;
+                case PROTOBUF:
+                    SiriMapper.mapToPbf(siri).writeTo(out);
+                    break;
+                default:
+                    SiriXml.toXml(siri, null, out);
+            }
+        }
+    }
+
+    public static class ResponseKey {
+        private final SiriDataType dataType;
+        private final String endpoint;
+        private final String datasetId;
+        private final OutboundIdMappingPolicy idMappingPolicy;
+        private final ResponseFormat format;
+        private final List<Object> parameters;
+
+        /**
+         * @param dataType
+         * @param endpoint Name of requested endpoint
+         * @param datasetId Requested datasetId - may be null
+         * @param idMappingPolicy
+         * @param format
+         * @param parameters Any other parameters that affect the response
+         */
+        public ResponseKey(SiriDataType dataType, String endpoint, String datasetId, OutboundIdMappingPolicy idMappingPolicy,
+                           ResponseFormat format, Object... parameters) {
+            this.dataType = dataType;
+            this.endpoint = endpoint;
+            this.datasetId = datasetId;
+            this.idMappingPolicy = idMappingPolicy;
+            this.format = format;
+            this.parameters = Arrays.asList(parameters);
+        }
+
+        public SiriDataType getDataType() {
+            return dataType;
+        }
+
+        public ResponseFormat getFormat() {
+            return format;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ResponseKey that = (ResponseKey) o;
+            return dataType == that.dataType &&
+                    endpoint.equals(that.endpoint) &&
+                    Objects.equals(datasetId, that.datasetId) &&
+                    idMappingPolicy == that.idMappingPolicy &&
+                    format == that.format &&
+                    parameters.equals(that.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(dataType, endpoint, datasetId, idMappingPolicy, format, parameters);
+        }
+
+        @Override
+        public String toString() {
+            return "[" + endpoint + ", datasetId=" + datasetId + ", idMappingPolicy=" + idMappingPolicy +
+                    ", format=" + format + ", parameters=" + parameters + "]";
+        }
+    }
+
+    public static class CachedResponse {
+        private final byte[] content;
+        private final ResponseFormat format;
+        private final boolean gzipped;
+        private final String eTag;
+        private final long dataVersion;
+        private final int elementCount;
+
+        CachedResponse(byte[] content, ResponseFormat format, boolean gzipped, String eTag, long dataVersion, int elementCount) {
+            this.content = content;
+            this.format = format;
+            this.gzipped = gzipped;
+            this.eTag = eTag;
+            this.dataVersion = dataVersion;
+            this.elementCount = elementCount;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+
+        public ResponseFormat getFormat() {
+            return format;
+        }
+
+        public boolean isGzipped() {
+            return gzipped;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public long getDataVersion() {
+            return dataVersion;
+        }
+
+        public int getElementCount() {
+            return elementCount;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes;
+
+import com.hazelcast.replicatedmap.ReplicatedMap;
+import no.rutebanken.anshar.routes.siri.transformer.ApplicationContextHolder;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.StreamCache;
+import org.apache.camel.support.MessageHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static no.rutebanken.anshar.routes.HttpParameter.PARAM_SUBSCRIPTION_ID;
+
+/**
+ * Tracing of traffic through routes - replaces logging of full messages with the log-component.
+ *
+ * By default only a summary of each message is logged (exchangeId, subscriptionId, type and size of body, and any
+ * caught exception). The body
+ * itself - limited to a max number of characters - is only logged for every Nth message per trace point, or for all
+ * messages for subscriptions where body capture has been enabled through the admin API.
+ *
+ * Sample rate per trace point is configured with anshar.tracing.body.sample.rate.[name], e.g.
+ * anshar.tracing.body.sample.rate.incoming=100
+ *
+ * Note that the max number of characters only limits what is logged - when a body is captured, it is converted to
+ * a String in full before it is truncated. Non-cached streams are never read.
+ */
+@Service
+public class TrafficTracer {
+
+    private static final String SAMPLE_RATE_PROPERTY_PREFIX = "anshar.tracing.body.sample.rate";
+
+    @Value("${anshar.tracing.body.sample.rate:0}")
+    private int defaultSampleRate;
+
+    @Value("${anshar.tracing.body.max.chars:10000}")
+    private int maxChars;
+
+    @Value("${anshar.tracing.subscription.default.minutes:30}")
+    private int defaultCaptureMinutes;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    @Qualifier("getTracedSubscriptionsMap")
+    private ReplicatedMap<String, Instant> tracedSubscriptions;
+
+    private final Map<String, Integer> sampleRates = new ConcurrentHashMap<>();
+
+    /**
+     * Creates processor that traces the current message
+     *
+     * @param name Trace point - also used as logger-name
+     * @param routeClass Route where message is traced
+     */
+    public static Processor trace(String name, Class<?> routeClass) {
+        return new TraceProcessor(name, routeClass.getSimpleName());
+    }
+
+    /**
+     * Enables body capture for all messages for the given subscription - across all instances
+     *
+     * @param minutes How long body capture should be enabled - disables body capture if 0
+     */
+    public void setBodyCapture(String subscriptionId, Integer minutes) {
+        if (subscriptionId == null || subscriptionId.isEmpty()) {
+            throw new IllegalArgumentException("subscriptionId must be set");
+        }
+        final int captureMinutes = minutes != null ? minutes : defaultCaptureMinutes;
+        if (captureMinutes <= 0) {
+            tracedSubscriptions.remove(subscriptionId);
+        } else {
+            tracedSubscriptions.put(subscriptionId, Instant.now().plusSeconds(captureMinutes * 60L), captureMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    public Set<String> getTracedSubscriptions() {
+        return new TreeSet<>(tracedSubscriptions.keySet());
+    }
+
+    private void trace(Exchange exchange, TraceProcessor point) {
+        final Message message = exchange.getMessage();
+
+        String subscriptionId = message.getHeader(PARAM_SUBSCRIPTION_ID, String.class);
+        if (subscriptionId == null) {
+            subscriptionId = MDC.get(PARAM_SUBSCRIPTION_ID);
+        }
+
+        final Object body = message.getBody();
+        final Exception caughtException = exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Exception.class);
+        final String bodyType = body != null ? body.getClass().getSimpleName() : null;
+
+        if (captureBody(subscriptionId, point)) {
+            point.logger.info("{} exchangeId: {}, subscriptionId: {}, bodyType: {}, size: {}, headers: {}\n{}",
+                    point.route, exchange.getExchangeId(), subscriptionId, bodyType, getSize(body), message.getHeaders(),
+                    MessageHelper.extractBodyForLogging(message, "", body instanceof StreamCache, false, maxChars), caughtException);
+        } else {
+            point.logger.info("{} exchangeId: {}, subscriptionId: {}, bodyType: {}, size: {}",
+                    point.route, exchange.getExchangeId(), subscriptionId, bodyType, getSize(body), caughtException);
+        }
+    }
+
+    boolean captureBody(String subscriptionId, TraceProcessor point) {
+        if (subscriptionId != null && !tracedSubscriptions.isEmpty() && tracedSubscriptions.containsKey(subscriptionId)) {
+            return true;
+        }
+        final int sampleRate = sampleRates.computeIfAbsent(point.name, name ->
+                environment.getProperty(SAMPLE_RATE_PROPERTY_PREFIX + "." + name, Integer.class, defaultSampleRate));
+
+        return sampleRate > 0 && point.counter.incrementAndGet() % sampleRate == 0;
+    }
+
+    /**
+     * @return Size of body if available without reading it, -1 otherwise
+     */
+    private static long getSize(Object body) {
+        if (body instanceof String) {
+            return ((String) body).length();
+        }
+        if (body instanceof byte[]) {
+            return ((byte[]) body).length;
+        }
+        if (body instanceof StreamCache) {
+            return ((StreamCache) body).length();
+        }
+        return -1;
+    }
+
+    static class TraceProcessor implements Processor {
+
+        private final String name;
+        private final String route;
+        private final Logger logger;
+        private final AtomicLong counter = new AtomicLong();
+
+        TrafficTracer tracer;
+
+        private TraceProcessor(String name, String route) {
+            this.name = name;
+            this.route = route;
+            this.logger = LoggerFactory.getLogger(name);
+        }
+
+        @Override
+        public void process(Exchange exchange) {
+            if (!logger.isInfoEnabled()) {
+                return;
+            }
+            if (tracer == null) {
+                tracer = ApplicationContextHolder.getContext().getBean(TrafficTracer.class);
+            }
+            tracer.trace(exchange, this);
+        }
+    }
+}
@@ -19,6 +19,7 @@ import com.google.common.net.HttpHeaders;
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
 import no.rutebanken.anshar.routes.RestRouteBuilder;
+import no.rutebanken.anshar.routes.TrafficTracer;
 import no.rutebanken.anshar.routes.admin.auth.BasicAuthService;
 import no.rutebanken.anshar.routes.health.HealthManager;
 import no.rutebanken.anshar.routes.outbound.ServerSubscriptionManager;
@@ -91,6 +92,9 @@ public class AdministrationRoute extends RestRouteBuilder {
     @Autowired
     private BasicAuthService basicAuthProcessor;
 
+    @Autowired
+    private TrafficTracer trafficTracer;
+
     @Override
     public void configure() throws Exception {
         super.configure();
@@ -263,6 +267,9 @@ public class AdministrationRoute extends RestRouteBuilder {
                 .when(header(operationHeaderName).isEqualTo("validateAll"))
                     .to("direct:validate.all.subscriptions")
                 .endChoice()
+                .when(header(operationHeaderName).isEqualTo("trace"))
+                    .to("direct:trace.subscription")
+                .endChoice()
             .end()
         ;
 
@@ -272,6 +279,13 @@ public class AdministrationRoute extends RestRouteBuilder {
                 .routeId("admin.stop")
         ;
 
+        //Enable/disable logging of full messages for subscription - optional header "minutes", 0 disables
+        from("direct:trace.subscription")
+                .process(basicAuthProcessor)
+                .bean(trafficTracer, "setBodyCapture(${header.subscriptionId}, ${header.minutes})")
+                .routeId("admin.trace.subscription")
+        ;
+
         //Start subscription
         from("direct:start")
                 .process(basicAuthProcessor)
@@ -1,6 +1,7 @@
 package no.rutebanken.anshar.routes.kafka;
 
 import no.rutebanken.anshar.config.AnsharConfiguration;
+import no.rutebanken.anshar.routes.TrafficTracer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -37,7 +38,7 @@ public class KafkaEnrichmentRoute extends KafkaConfig {
 
             from("direct:anshar.enrich.siri.et")
                     .log("Adding to kafka-enrichment topic")
-                    .to("log:kafka-producer:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                    .process(TrafficTracer.trace("kafka-producer", getClass()))
                     .setHeader("topic", simple(kafkaEnrichEtTopic))
                     .removeHeader(INTERNAL_PUBLISH_TO_KAFKA_FOR_APC_ENRICHMENT)
                     .to("xslt-saxon:xsl/split.xsl")
@@ -59,7 +60,7 @@ public class KafkaEnrichmentRoute extends KafkaConfig {
                             }
                         }
                     })
-                    .to("log:kafka-consume:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                    .process(TrafficTracer.trace("kafka-consume", getClass()))
                     .to("direct:send.to.queue")
                     .routeId("anshar.enrich.siri.et.kafka.consumer")
             ;
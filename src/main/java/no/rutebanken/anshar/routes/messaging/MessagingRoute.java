@@ -4,7 +4,9 @@ import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.metrics.PrometheusMetricsService;
 import no.rutebanken.anshar.routes.CamelRouteNames;
 import no.rutebanken.anshar.routes.RestRouteBuilder;
+import no.rutebanken.anshar.routes.TrafficTracer;
 import no.rutebanken.anshar.routes.admin.AdminRouteHelper;
+import no.rutebanken.anshar.routes.protobuf.ProtobufConverterRoute;
 import no.rutebanken.anshar.routes.siri.handlers.SiriHandler;
 import no.rutebanken.anshar.routes.siri.transformer.SiriValueTransformer;
 import no.rutebanken.anshar.routes.validation.SiriXmlValidator;
@@ -91,7 +93,7 @@ public class MessagingRoute extends RestRouteBuilder {
                             .setHeader("target_topic", simple("direct:"+CamelRouteNames.FETCHED_DELIVERY_QUEUE))
                         .endChoice()
                         .otherwise()
-                            .to("log:not_processed:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                            .process(TrafficTracer.trace("not_processed", getClass()))
                         .end()
                     .end()
                 .end()
@@ -113,6 +115,10 @@ public class MessagingRoute extends RestRouteBuilder {
                     .removeHeader(INTERNAL_PUBLISH_TO_KAFKA_FOR_APC_ENRICHMENT)
                     .log("Sending data to enrichment topic")
                     .to("direct:anshar.enrich.siri.et")
+                .when(body().isInstanceOf(Siri.class))
+                    .log("Sending binary data to topic ${header.target_topic}")
+                    .to("direct:compress.siri")
+                    .toD("${header.target_topic}")
                 .otherwise()
                     .log("Sending data to topic ${header.target_topic}")
                     .to("direct:compress.jaxb")
@@ -136,7 +142,11 @@ public class MessagingRoute extends RestRouteBuilder {
                 .endChoice()
                 .end()
                 .to("direct:process.mapping")
-                .to("direct:format.xml")
+                .choice()
+                    .when(body().isInstanceOf(String.class))
+                    .to("direct:format.xml")
+                .endChoice()
+                .end()
                 .to("direct:clear.mdc.subscriptionId")
         ;
 
@@ -145,12 +155,25 @@ public class MessagingRoute extends RestRouteBuilder {
                 .to("direct:set.mdc.subscriptionId")
                 .process(p -> {
                     SubscriptionSetup subscriptionSetup = subscriptionManager.get(p.getIn().getHeader("subscriptionId", String.class));
-                    Siri originalInput = siriXmlValidator.parseXml(subscriptionSetup, p.getIn().getBody(String.class));
+                    String xml = p.getIn().getBody(String.class);
+
+                    boolean binaryIngest = configuration.isBinaryIngestEnabled() && !subscriptionSetup.enrichSiriData();
+                    if (binaryIngest) {
+                        // Fixed here since the XML is not passed on to the queue
+                        xml = ProtobufConverterRoute.fixEncodingErrorsInXml(xml, subscriptionSetup.getSubscriptionId());
+                    }
+
+                    Siri originalInput = siriXmlValidator.parseXml(subscriptionSetup, xml);
 
                     Siri incoming = SiriValueTransformer.transform(originalInput, subscriptionSetup.getMappingAdapters(), false, true);
 
                     p.getMessage().setHeaders(p.getIn().getHeaders());
-                    p.getMessage().setBody(SiriXml.toXml(incoming));
+                    if (binaryIngest && incoming.getServiceDelivery() != null) {
+                        // Passed on as object - avoids marshalling and parsing the XML once more
+                        p.getMessage().setBody(incoming);
+                    } else {
+                        p.getMessage().setBody(SiriXml.toXml(incoming));
+                    }
                 })
                 .to("direct:clear.mdc.subscriptionId")
         ;
@@ -234,6 +257,12 @@ public class MessagingRoute extends RestRouteBuilder {
                     String subscriptionId = p.getIn().getHeader("subscriptionId", String.class);
                     String datasetId = null;
 
+                    if (p.getIn().getBody() instanceof Siri) {
+                        Integer receivedBytes = p.getIn().getHeader(Exchange.CONTENT_LENGTH, 0, Integer.class);
+                        handler.handleIncomingSiri(subscriptionId, p.getIn().getBody(Siri.class), receivedBytes);
+                        return;
+                    }
+
                     InputStream xml = p.getIn().getBody(InputStream.class);
                     String useOriginalId = p.getIn().getHeader(PARAM_USE_ORIGINAL_ID, String.class);
                     String clientTrackingName = p.getIn().getHeader(configuration.getTrackingHeaderName(), String.class);
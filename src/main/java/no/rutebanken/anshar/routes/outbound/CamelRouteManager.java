@@ -16,6 +16,11 @@
 package no.rutebanken.anshar.routes.outbound;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import no.rutebanken.anshar.metrics.PrometheusMetricsService;
+import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
+import no.rutebanken.anshar.routes.siri.transformer.ValueAdapter;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import no.rutebanken.anshar.subscription.SubscriptionSetup;
 import org.apache.camel.Produce;
 import org.apache.camel.ProducerTemplate;
 import org.slf4j.Logger;
@@ -33,8 +38,11 @@ import uk.org.siri.siri20.VehicleMonitoringDeliveryStructure;
 import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -57,9 +65,182 @@ public class CamelRouteManager {
     @Value("${anshar.default.max.threads.per.outbound.subscription:20}")
     private int maximumThreadsPerOutboundSubscription;
 
+    @Autowired
+    private PrometheusMetricsService metrics;
+
     @Produce(uri = "direct:send.to.external.subscription")
     protected ProducerTemplate siriSubscriptionProcessor;
 
+    @Produce(uri = "direct:prepare.push.to.external.subscription")
+    protected ProducerTemplate siriSubscriptionPreparer;
+
+    /**
+     * Pushes the same payload to multiple subscriptions.
+     *
+     * Recipients sharing filter, output-adapters and datasetId will receive identical data, so filtering,
+     * splitting, transformation and marshalling is only done once per group. The resulting bytes are then
+     * shared between all recipients in the group, and posted using each subscription's own executor.
+     *
+     * @param payload
+     * @param recipients
+     * @param logBody Logs full body for the first recipient
+     */
+    void pushSiriData(Siri payload, List<OutboundSubscriptionSetup> recipients, boolean logBody) {
+        Map<PushGroup, List<OutboundSubscriptionSetup>> groups = new LinkedHashMap<>();
+        for (OutboundSubscriptionSetup recipient : recipients) {
+            if (recipient.getAddress() == null) {
+                logger.info("ConsumerAddress is null - ignoring data.");
+                continue;
+            }
+            groups.computeIfAbsent(new PushGroup(recipient), g -> new ArrayList<>()).add(recipient);
+        }
+
+        if (groups.isEmpty()) {
+            return;
+        }
+
+        final String breadcrumbId = MDC.get("camel.breadcrumbId");
+        int remainingGroups = groups.size();
+        for (Map.Entry<PushGroup, List<OutboundSubscriptionSetup>> group : groups.entrySet()) {
+            remainingGroups--;
+            final PushGroup pushGroup = group.getKey();
+            final List<OutboundSubscriptionSetup> members = group.getValue();
+
+            List<byte[]> marshalledDeliveries = new ArrayList<>();
+            long t1 = System.currentTimeMillis();
+            try {
+                Siri filteredPayload = SiriHelper.filterSiriPayload(payload, pushGroup.filterMap);
+                if (filteredPayload == payload && remainingGroups > 0) {
+                    // Transformation is done in place - other groups still need the original
+                    filteredPayload = SiriObjectFactory.deepCopy(payload);
+                }
+
+                int deliverySize = this.maximumSizePerDelivery;
+                if (pushGroup.datasetId != null) {
+                    deliverySize = Integer.MAX_VALUE;
+                }
+
+                List<Siri> splitSiri = siriHelper.splitDeliveries(filteredPayload, deliverySize);
+
+                if (splitSiri.size() > 1) {
+                    logger.info("Object split into {} deliveries for {} subscriptions.", splitSiri.size(), members.size());
+                }
+
+                for (Siri siri : splitSiri) {
+                    if (serviceDeliveryContainsData(siri)) {
+                        for (int i = 0; i < members.size(); i++) {
+                            metrics.countOutgoingData(siri, SubscriptionSetup.SubscriptionMode.SUBSCRIBE);
+                        }
+                        marshalledDeliveries.add(siriSubscriptionPreparer.requestBodyAndHeader(siri,
+                                OUTPUT_ADAPTERS_HEADER_NAME, pushGroup.valueAdapters, byte[].class));
+                    }
+                }
+            } catch (Exception e) {
+                logger.info("Failed to prepare data for {} subscriptions: {}", members.size(), e);
+                // Report failure for every member - as it would have been if prepared separately for each subscription
+                for (OutboundSubscriptionSetup subscriptionRequest : members) {
+                    getOrCreateExecutorService(subscriptionRequest).submit(() -> {
+                        try {
+                            MDC.put("camel.breadcrumbId", breadcrumbId);
+                            if (subscriptionManager.subscriptions.containsKey(subscriptionRequest.getSubscriptionId())) {
+                                handlePushFailure(subscriptionRequest, e);
+                            }
+                        } finally {
+                            MDC.remove("camel.breadcrumbId");
+                        }
+                    });
+                }
+                continue;
+            }
+
+            SiriDataType dataType = members.get(0).getSubscriptionType();
+            metrics.registerPushFanOut(dataType, members.size(), System.currentTimeMillis() - t1);
+
+            for (OutboundSubscriptionSetup subscriptionRequest : members) {
+                final boolean showBody = logBody;
+                logBody = false;
+
+                ExecutorService executorService = getOrCreateExecutorService(subscriptionRequest);
+                executorService.submit(() -> {
+                    try {
+                        MDC.put("camel.breadcrumbId", breadcrumbId);
+                        if (!subscriptionManager.subscriptions.containsKey(subscriptionRequest.getSubscriptionId())) {
+                            // Short circuit if subscription has been terminated while waiting
+                            return;
+                        }
+
+                        for (byte[] marshalled : marshalledDeliveries) {
+                            siriSubscriptionProcessor.sendBodyAndHeaders(marshalled, createHeaders(subscriptionRequest, showBody));
+                        }
+                    } catch (Exception e) {
+                        handlePushFailure(subscriptionRequest, e);
+                    } finally {
+                        MDC.remove("camel.breadcrumbId");
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Filters, splits, transforms and marshals payload the same way as when pushed to the given subscription. The
+     * result can be shared between all subscriptions in the same {@link PushGroup}.
+     *
+     * @param payload
+     * @param subscription
+     * @return Marshalled deliveries - empty if filtered payload contains no data
+     */
+    List<byte[]> prepareDeliveries(Siri payload, OutboundSubscriptionSetup subscription) {
+        Siri filteredPayload = SiriHelper.filterSiriPayload(payload, subscription.getFilterMap());
+
+        int deliverySize = this.maximumSizePerDelivery;
+        if (subscription.getDatasetId() != null) {
+            deliverySize = Integer.MAX_VALUE;
+        }
+
+        List<byte[]> marshalledDeliveries = new ArrayList<>();
+        for (Siri siri : siriHelper.splitDeliveries(filteredPayload, deliverySize)) {
+            if (serviceDeliveryContainsData(siri)) {
+                marshalledDeliveries.add(siriSubscriptionPreparer.requestBodyAndHeader(siri,
+                        OUTPUT_ADAPTERS_HEADER_NAME, subscription.getValueAdapters(), byte[].class));
+            }
+        }
+        return marshalledDeliveries;
+    }
+
+    /**
+     * Pushes already marshalled deliveries - see {@link #prepareDeliveries(Siri, OutboundSubscriptionSetup)} - to
+     * external subscription
+     *
+     * @param marshalledDeliveries
+     * @param subscriptionRequest
+     * @param logBody
+     */
+    void pushMarshalledData(List<byte[]> marshalledDeliveries, OutboundSubscriptionSetup subscriptionRequest, boolean logBody) {
+        if (subscriptionRequest.getAddress() == null) {
+            logger.info("ConsumerAddress is null - ignoring data.");
+            return;
+        }
+        final String breadcrumbId = MDC.get("camel.breadcrumbId");
+        ExecutorService executorService = getOrCreateExecutorService(subscriptionRequest);
+        executorService.submit(() -> {
+            try {
+                MDC.put("camel.breadcrumbId", breadcrumbId);
+                if (!subscriptionManager.subscriptions.containsKey(subscriptionRequest.getSubscriptionId())) {
+                    // Short circuit if subscription has been terminated while waiting
+                    return;
+                }
+                for (byte[] marshalled : marshalledDeliveries) {
+                    siriSubscriptionProcessor.sendBodyAndHeaders(marshalled, createHeaders(subscriptionRequest, logBody));
+                }
+            } catch (Exception e) {
+                handlePushFailure(subscriptionRequest, e);
+            } finally {
+                MDC.remove("camel.breadcrumbId");
+            }
+        });
+    }
+
     /**
      * Splits SIRI-data if applicable, and pushes data to external subscription
      * @param payload
@@ -98,26 +279,30 @@ public class CamelRouteManager {
                     postDataToSubscription(siri, subscriptionRequest, logBody);
                 }
             } catch (Exception e) {
-                logger.info("Failed to push data for subscription {}: {}", subscriptionRequest, e);
-
-                if (e.getCause() instanceof SocketException) {
-                    logger.info("Recipient is unreachable - ignoring");
-                } else {
-                    String msg = e.getMessage();
-                    if (e.getCause() != null) {
-                        msg = e.getCause().getMessage();
-                    }
-                    logger.info("Exception caught when pushing SIRI-data: {}", msg);
-                }
-                subscriptionManager.pushFailedForSubscription(subscriptionRequest.getSubscriptionId());
-
-                removeDeadSubscriptionExecutors(subscriptionManager);
+                handlePushFailure(subscriptionRequest, e);
             } finally {
                 MDC.remove("camel.breadcrumbId");
             }
         });
     }
 
+    private void handlePushFailure(OutboundSubscriptionSetup subscriptionRequest, Exception e) {
+        logger.info("Failed to push data for subscription {}: {}", subscriptionRequest, e);
+
+        if (e.getCause() instanceof SocketException) {
+            logger.info("Recipient is unreachable - ignoring");
+        } else {
+            String msg = e.getMessage();
+            if (e.getCause() != null) {
+                msg = e.getCause().getMessage();
+            }
+            logger.info("Exception caught when pushing SIRI-data: {}", msg);
+        }
+        subscriptionManager.pushFailedForSubscription(subscriptionRequest.getSubscriptionId());
+
+        removeDeadSubscriptionExecutors(subscriptionManager);
+    }
+
     Map<String, ExecutorService> threadFactoryMap = new HashMap<>();
     private ExecutorService getOrCreateExecutorService(OutboundSubscriptionSetup subscriptionRequest) {
 
@@ -157,19 +342,22 @@ public class CamelRouteManager {
     private void postDataToSubscription(Siri payload, OutboundSubscriptionSetup subscription, boolean showBody) {
 
         if (serviceDeliveryContainsData(payload)) {
-            String remoteEndPoint = subscription.getAddress();
-
-            Map<String, Object> headers = new HashMap<>();
-            headers.put("breadcrumbId", MDC.get("camel.breadcrumbId"));
-            headers.put("endpoint", remoteEndPoint);
-            headers.put("SubscriptionId", subscription.getSubscriptionId());
-            headers.put("showBody", showBody);
+            Map<String, Object> headers = createHeaders(subscription, showBody);
             headers.put(OUTPUT_ADAPTERS_HEADER_NAME, subscription.getValueAdapters());
 
             siriSubscriptionProcessor.sendBodyAndHeaders(payload, headers);
         }
     }
 
+    private Map<String, Object> createHeaders(OutboundSubscriptionSetup subscription, boolean showBody) {
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("breadcrumbId", MDC.get("camel.breadcrumbId"));
+        headers.put("endpoint", subscription.getAddress());
+        headers.put("SubscriptionId", subscription.getSubscriptionId());
+        headers.put("showBody", showBody);
+        return headers;
+    }
+
     /**
      * Returns false if payload contains an empty ServiceDelivery (i.e. no actual SIRI-data), otherwise it returns false
      * @param payload
@@ -200,4 +388,36 @@ public class CamelRouteManager {
         }
         return true;
     }
+
+    /**
+     * Subscriptions that will receive identical data when pushed the same payload
+     */
+    static class PushGroup {
+        private final Map<Class, Set<String>> filterMap;
+        private final List<ValueAdapter> valueAdapters;
+        private final String datasetId;
+
+        PushGroup(OutboundSubscriptionSetup subscription) {
+            this.filterMap = subscription.getFilterMap();
+            this.valueAdapters = subscription.getValueAdapters();
+            this.datasetId = subscription.getDatasetId();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PushGroup)) return false;
+
+            PushGroup that = (PushGroup) o;
+
+            return Objects.equals(filterMap, that.filterMap) &&
+                    Objects.equals(valueAdapters, that.valueAdapters) &&
+                    Objects.equals(datasetId, that.datasetId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filterMap, valueAdapters, datasetId);
+        }
+    }
 }
@@ -0,0 +1,209 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.outbound;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import no.rutebanken.anshar.data.EstimatedTimetables;
+import no.rutebanken.anshar.data.Situations;
+import no.rutebanken.anshar.data.VehicleActivities;
+import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import uk.org.siri.siri20.Siri;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared, pre-marshalled initial deliveries for new outbound subscriptions.
+ *
+ * When many consumers subscribe at the same time - e.g. after a redeploy - all data is only fetched, split and
+ * marshalled once per data type and {@link CamelRouteManager.PushGroup}, instead of once per subscription.
+ *
+ * Each snapshot tracks changes from the time it was created, like a polling client. Subscriptions created after
+ * the snapshot receive the snapshot followed by all changes since, and live updates are pushed as before.
+ * Snapshots are recreated when older than the configured max age, and the change-tracker of the snapshot is
+ * removed when the snapshot is removed from the cache.
+ */
+@Service
+public class InitialDeliverySnapshots {
+
+    private static final Logger logger = LoggerFactory.getLogger(InitialDeliverySnapshots.class);
+
+    @Value("${anshar.outbound.initial.delivery.snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${anshar.outbound.initial.delivery.snapshot.max.age.seconds:60}")
+    private int maxAgeSeconds;
+
+    @Autowired
+    private EstimatedTimetables estimatedTimetables;
+
+    @Autowired
+    private Situations situations;
+
+    @Autowired
+    private VehicleActivities vehicleActivities;
+
+    @Autowired
+    private SiriObjectFactory siriObjectFactory;
+
+    @Autowired
+    private CamelRouteManager camelRouteManager;
+
+    private Cache<SnapshotKey, Snapshot> snapshots;
+
+    Ticker ticker = Ticker.systemTicker();
+
+    @PostConstruct
+    void init() {
+        snapshots = CacheBuilder.newBuilder()
+                .expireAfterWrite(maxAgeSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .removalListener((RemovalListener<SnapshotKey, Snapshot>) notification -> {
+                    if (notification.getKey() != null && notification.getValue() != null) {
+                        removeChangeTracker(notification.getKey().dataType, notification.getValue().trackingId);
+                    }
+                })
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns marshalled initial delivery for the subscription - all current data followed by changes since the
+     * snapshot was created.
+     *
+     * @param subscription
+     * @return Marshalled deliveries in the order they should be sent
+     * @throws ExecutionException when creating the snapshot fails
+     */
+    List<byte[]> getInitialDeliveries(OutboundSubscriptionSetup subscription) throws ExecutionException {
+        final SnapshotKey key = new SnapshotKey(subscription);
+
+        Snapshot snapshot = snapshots.getIfPresent(key);
+        if (snapshot != null) {
+            snapshot.addChanges(subscription);
+            logger.info("Reusing initial delivery snapshot for {}, created {} ms ago", subscription,
+                    System.currentTimeMillis() - snapshot.createdAt);
+            return snapshot.getDeliveries();
+        }
+
+        // Concurrent subscriptions wait for the same snapshot to be created
+        return snapshots.get(key, () -> createSnapshot(subscription)).getDeliveries();
+    }
+
+    private Snapshot createSnapshot(OutboundSubscriptionSetup subscription) {
+        long t1 = System.currentTimeMillis();
+
+        // All data is returned for a new requestorId, and changes are tracked from now on
+        final String trackingId = "initial-delivery-" + UUID.randomUUID();
+        Snapshot snapshot = new Snapshot(trackingId);
+        snapshot.deliveries.addAll(camelRouteManager.prepareDeliveries(getUpdates(subscription, trackingId), subscription));
+
+        logger.info("Created initial delivery snapshot for {} with {} deliveries in {} ms", subscription,
+                snapshot.deliveries.size(), System.currentTimeMillis() - t1);
+        return snapshot;
+    }
+
+    private void removeChangeTracker(SiriDataType dataType, String trackingId) {
+        switch (dataType) {
+            case SITUATION_EXCHANGE:
+                situations.removeChangeTracker(trackingId);
+                break;
+            case VEHICLE_MONITORING:
+                vehicleActivities.removeChangeTracker(trackingId);
+                break;
+            case ESTIMATED_TIMETABLE:
+                estimatedTimetables.removeChangeTracker(trackingId);
+                break;
+        }
+    }
+
+    private Siri getUpdates(OutboundSubscriptionSetup subscription, String trackingId) {
+        final String datasetId = subscription.getDatasetId();
+        switch (subscription.getSubscriptionType()) {
+            case SITUATION_EXCHANGE:
+                return siriObjectFactory.createSXServiceDelivery(situations.getAllUpdates(trackingId, datasetId));
+            case VEHICLE_MONITORING:
+                return siriObjectFactory.createVMServiceDelivery(vehicleActivities.getAllUpdates(trackingId, datasetId));
+            case ESTIMATED_TIMETABLE:
+                return siriObjectFactory.createETServiceDelivery(estimatedTimetables.getAllUpdates(trackingId, datasetId));
+            default:
+                throw new IllegalArgumentException("Unsupported subscription type " + subscription.getSubscriptionType());
+        }
+    }
+
+    private class Snapshot {
+        private final String trackingId;
+        private final long createdAt = System.currentTimeMillis();
+        private final List<byte[]> deliveries = new ArrayList<>();
+
+        private Snapshot(String trackingId) {
+            this.trackingId = trackingId;
+        }
+
+        /**
+         * Appends changes since previous call - deliveries already returned are never modified
+         */
+        private synchronized void addChanges(OutboundSubscriptionSetup subscription) {
+            deliveries.addAll(camelRouteManager.prepareDeliveries(getUpdates(subscription, trackingId), subscription));
+        }
+
+        private synchronized List<byte[]> getDeliveries() {
+            return new ArrayList<>(deliveries);
+        }
+    }
+
+    private static class SnapshotKey {
+        private final SiriDataType dataType;
+        private final CamelRouteManager.PushGroup pushGroup;
+
+        private SnapshotKey(OutboundSubscriptionSetup subscription) {
+            this.dataType = subscription.getSubscriptionType();
+            this.pushGroup = new CamelRouteManager.PushGroup(subscription);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SnapshotKey)) return false;
+
+            SnapshotKey that = (SnapshotKey) o;
+
+            return dataType == that.dataType && pushGroup.equals(that.pushGroup);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * dataType.hashCode() + pushGroup.hashCode();
+        }
+    }
+}
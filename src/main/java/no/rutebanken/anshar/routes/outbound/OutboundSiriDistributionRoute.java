@@ -7,6 +7,7 @@ import org.apache.camel.LoggingLevel;
 import org.apache.camel.builder.RouteBuilder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import uk.org.siri.siri20.Siri;
 
 import javax.ws.rs.core.MediaType;
 
@@ -36,9 +37,12 @@ public class OutboundSiriDistributionRoute extends RouteBuilder {
                 .log(LoggingLevel.INFO, "POST data to ${header.SubscriptionId}")
                 .setHeader("CamelHttpMethod", constant("POST"))
                 .setHeader(Exchange.CONTENT_TYPE, constant(MediaType.APPLICATION_XML))
-                .bean(metrics, "countOutgoingData(${body}, SUBSCRIBE)")
-                .to("direct:siri.transform.data")
-                .marshal(SiriDataFormatHelper.getSiriJaxbDataformat())
+                .choice()
+                .when(body().isInstanceOf(Siri.class))
+                    .bean(metrics, "countOutgoingData(${body}, SUBSCRIBE)")
+                    .to("direct:siri.transform.data")
+                    .marshal(SiriDataFormatHelper.getSiriJaxbDataformat())
+                .end()
                 .setHeader("httpClient.socketTimeout", constant(timeout))
                 .setHeader("httpClient.connectTimeout", constant(timeout))
                 .choice()
@@ -53,5 +57,11 @@ public class OutboundSiriDistributionRoute extends RouteBuilder {
                 .bean(subscriptionManager, "clearFailTracker(${header.SubscriptionId})")
                 .log(LoggingLevel.INFO, "POST complete ${header.SubscriptionId} - Response: [${header.CamelHttpResponseCode} ${header.CamelHttpResponseText}]");
 
+        // Transforms and marshals data once when shared between multiple subscriptions
+        from("direct:prepare.push.to.external.subscription")
+                .routeId("prepare.push.to.external.subscription")
+                .to("direct:siri.transform.data")
+                .marshal(SiriDataFormatHelper.getSiriJaxbDataformat());
+
     }
 }
@@ -20,6 +20,8 @@ import no.rutebanken.anshar.routes.siri.handlers.OutboundIdMappingPolicy;
 import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import no.rutebanken.anshar.subscription.helpers.MappingAdapterPresets;
+import no.rutebanken.anshar.util.ExecutorPool;
+import no.rutebanken.anshar.util.ManagedExecutors;
 import org.apache.camel.Produce;
 import org.apache.camel.ProducerTemplate;
 import org.json.simple.JSONArray;
@@ -52,8 +54,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import static java.time.temporal.ChronoUnit.MILLIS;
@@ -110,6 +111,12 @@ public class ServerSubscriptionManager {
     @Autowired
     private SiriHelper siriHelper;
 
+    @Autowired
+    private InitialDeliverySnapshots initialDeliverySnapshots;
+
+    @Autowired
+    private ManagedExecutors executors;
+
 
     public Collection getSubscriptions() {
         return Collections.unmodifiableCollection(subscriptions.values());
@@ -174,31 +181,37 @@ public class ServerSubscriptionManager {
 
             Siri subscriptionResponse = siriObjectFactory.createSubscriptionResponse(subscription.getSubscriptionId(), true, null);
 
-            final String breadcrumbId = MDC.get("camel.breadcrumbId");
-            Executors.newSingleThreadScheduledExecutor().execute(() -> {
-                try {
-                    MDC.put("camel.breadcrumbId", breadcrumbId);
-
-                    //Send initial ServiceDelivery
-                    logger.info("Find initial delivery for {}", subscription);
-                    Siri delivery = siriHelper.findInitialDeliveryData(subscription);
-
-                    if (delivery != null) {
-                        logger.info("Sending initial delivery to {}", subscription.getAddress());
-                        camelRouteManager.pushSiriData(delivery, subscription, false);
-                    } else {
-                        logger.info("No initial delivery found for {}", subscription);
-                    }
-                } finally {
-                    MDC.remove("camel.breadcrumbId");
-                }
-            });
+            executors.execute(ExecutorPool.INITIAL_DELIVERY, () -> sendInitialDelivery(subscription));
             return subscriptionResponse;
         }
     }
 
 
 
+    private void sendInitialDelivery(OutboundSubscriptionSetup subscription) {
+        logger.info("Find initial delivery for {}", subscription);
+
+        if (initialDeliverySnapshots.isEnabled()) {
+            try {
+                List<byte[]> deliveries = initialDeliverySnapshots.getInitialDeliveries(subscription);
+                logger.info("Sending {} initial deliveries to {}", deliveries.size(), subscription.getAddress());
+                camelRouteManager.pushMarshalledData(deliveries, subscription, false);
+                return;
+            } catch (ExecutionException e) {
+                logger.info("Failed to create initial delivery snapshot - creating delivery for {} only", subscription, e);
+            }
+        }
+
+        Siri delivery = siriHelper.findInitialDeliveryData(subscription);
+
+        if (delivery != null) {
+            logger.info("Sending initial delivery to {}", subscription.getAddress());
+            camelRouteManager.pushSiriData(delivery, subscription, false);
+        } else {
+            logger.info("No initial delivery found for {}", subscription);
+        }
+    }
+
     private OutboundSubscriptionSetup createSubscription(SubscriptionRequest subscriptionRequest, String datasetId, OutboundIdMappingPolicy outboundIdMappingPolicy, String clientTrackingName) {
 
         return new OutboundSubscriptionSetup(
@@ -341,16 +354,15 @@ public class ServerSubscriptionManager {
 
         final String breadcrumbId = MDC.get("camel.breadcrumbId");
 
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
         switch (datatype) {
             case ESTIMATED_TIMETABLE:
-                executorService.submit(() -> pushUpdatedEstimatedTimetables(updates, datasetId, breadcrumbId));
+                executors.execute(ExecutorPool.OUTBOUND_PUSH, () -> pushUpdatedEstimatedTimetables(updates, datasetId, breadcrumbId));
                 break;
             case SITUATION_EXCHANGE:
-                executorService.submit(() -> pushUpdatedSituations(updates, datasetId, breadcrumbId));
+                executors.execute(ExecutorPool.OUTBOUND_PUSH, () -> pushUpdatedSituations(updates, datasetId, breadcrumbId));
                 break;
             case VEHICLE_MONITORING:
-                executorService.submit(() -> pushUpdatedVehicleActivities(updates, datasetId, breadcrumbId));
+                executors.execute(ExecutorPool.OUTBOUND_PUSH, () -> pushUpdatedVehicleActivities(updates, datasetId, breadcrumbId));
                 break;
             default:
                 // Ignore
@@ -389,11 +401,7 @@ public class ServerSubscriptionManager {
             )
             .collect(Collectors.toList());
 
-        boolean logFullContents = false;
-        for (OutboundSubscriptionSetup recipient : recipients) {
-            camelRouteManager.pushSiriData(delivery, recipient, logFullContents);
-            logFullContents = false;
-        }
+        camelRouteManager.pushSiriData(delivery, recipients, false);
 
         MDC.remove("camel.breadcrumbId");
     }
@@ -430,11 +438,7 @@ public class ServerSubscriptionManager {
             )
             .collect(Collectors.toList());
 
-        boolean logFullContents = true;
-        for (OutboundSubscriptionSetup recipient : recipients) {
-            camelRouteManager.pushSiriData(delivery, recipient, logFullContents);
-            logFullContents = false;
-        }
+        camelRouteManager.pushSiriData(delivery, recipients, true);
 
         MDC.remove("camel.breadcrumbId");
     }
@@ -472,11 +476,7 @@ public class ServerSubscriptionManager {
 
         logger.info("Pushing {} ET updates to {} outbound subscriptions", addedOrUpdated.size(), recipients.size());
 
-        boolean logFullContents = true;
-        for (OutboundSubscriptionSetup recipient : recipients) {
-            camelRouteManager.pushSiriData(delivery, recipient, logFullContents);
-            logFullContents = false;
-        }
+        camelRouteManager.pushSiriData(delivery, recipients, true);
         MDC.remove("camel.breadcrumbId");
     }
 
@@ -0,0 +1,279 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.policy;
+
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hazelcast.cluster.Member;
+import com.hazelcast.cluster.MembershipEvent;
+import com.hazelcast.cluster.MembershipListener;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.replicatedmap.ReplicatedMap;
+import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
+import no.rutebanken.anshar.subscription.SubscriptionManager;
+import no.rutebanken.anshar.util.ExecutorPool;
+import no.rutebanken.anshar.util.ManagedExecutors;
+import org.apache.camel.ProducerTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Schedules polling of REQUEST_RESPONSE and POLLING_FETCHED_DELIVERY subscriptions.
+ *
+ * All members schedule all polling subscriptions, but a poll is only executed by the member owning the subscription.
+ * Owner is selected by rendezvous hashing of subscriptionId over current cluster members, so subscriptions are spread
+ * evenly, and only the subscriptions of a member that joins or leaves are moved.
+ *
+ * The scheduler only dispatches polls - they are executed in the bounded {@link ExecutorPool#POLLING} pool, and a poll
+ * is skipped while the previous poll of the same subscription is still running.
+ *
+ * A member that fails to poll may hand the subscription over to the next member in line for a period of time.
+ *
+ * Subscriptions are deleted on one member only - every member cancels its own schedule when the subscription is gone.
+ */
+@Service
+public class PollingSubscriptionScheduler implements MembershipListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PollingSubscriptionScheduler.class);
+
+    @Value("${anshar.polling.scheduler.threads:1}")
+    private int threads;
+
+    @Value("${anshar.polling.scheduler.failover.seconds:300}")
+    private int failoverSeconds;
+
+    @Autowired
+    private ExtendedHazelcastService hazelcastService;
+
+    @Autowired
+    private ManagedExecutors executors;
+
+    @Autowired
+    private SubscriptionManager subscriptionManager;
+
+    /**
+     * Shared by all polling subscriptions
+     */
+    @Autowired
+    private ProducerTemplate producerTemplate;
+
+    /**
+     * subscriptionId -> uuid of member that has handed over polling
+     */
+    @Autowired
+    @Qualifier("getPollingFailoverMap")
+    private ReplicatedMap<String, String> failovers;
+
+    private final Map<String, ScheduledFuture<?>> scheduledPolls = new ConcurrentHashMap<>();
+
+    /**
+     * Subscriptions with a poll dispatched or running
+     */
+    private final Set<String> runningPolls = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService scheduler;
+
+    private volatile List<UUID> members = List.of();
+
+    private UUID localMember;
+
+    @PostConstruct
+    void init() {
+        scheduler = Executors.newScheduledThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("anshar-polling-%d").setDaemon(true).build());
+
+        final HazelcastInstance hazelcast = hazelcastService.getHazelcastInstance();
+        localMember = hazelcast.getCluster().getLocalMember().getUuid();
+        hazelcast.getCluster().addMembershipListener(this);
+        updateMembers(hazelcast.getCluster().getMembers());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Schedules polling of subscription - replaces existing schedule for the same subscription
+     *
+     * @param requestData Checked before each poll
+     * @param pollEndpoint Endpoint triggering the request when requestData returns true
+     */
+    public void schedule(String subscriptionId, long intervalMillis, BooleanSupplier requestData, String pollEndpoint) {
+        schedule(subscriptionId, intervalMillis, () -> {
+            if (requestData.getAsBoolean()) {
+                producerTemplate.sendBody(pollEndpoint, null);
+            }
+        });
+    }
+
+    /**
+     * Schedules polling of subscription - replaces existing schedule for the same subscription
+     *
+     * @param poll Executed every interval when subscription is owned by this member
+     */
+    public void schedule(String subscriptionId, long intervalMillis, Runnable poll) {
+        // Random initial delay to avoid polling all subscriptions at the same time after startup
+        final long initialDelay = ThreadLocalRandom.current().nextLong(intervalMillis);
+
+        // Routes are started before the subscription is added - only cancelled when it has existed
+        final AtomicBoolean seen = new AtomicBoolean();
+
+        final ScheduledFuture<?> previous = scheduledPolls.put(subscriptionId, scheduler.scheduleWithFixedDelay(() -> {
+            if (subscriptionManager.get(subscriptionId) == null) {
+                if (seen.get()) {
+                    logger.info("Subscription {} has been deleted", subscriptionId);
+                    cancel(subscriptionId);
+                }
+                return;
+            }
+            seen.set(true);
+            if (isOwner(subscriptionId)) {
+                dispatch(subscriptionId, poll);
+            }
+        }, initialDelay, intervalMillis, TimeUnit.MILLISECONDS));
+
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        logger.info("Scheduled polling of subscription {} every {} ms - owned by this member: {}", subscriptionId,
+                intervalMillis, isOwner(subscriptionId));
+    }
+
+    /**
+     * Stops polling of subscription - a poll already running is completed
+     */
+    public void cancel(String subscriptionId) {
+        final ScheduledFuture<?> scheduled = scheduledPolls.remove(subscriptionId);
+        if (scheduled != null) {
+            scheduled.cancel(false);
+            logger.info("Cancelled polling of subscription {}", subscriptionId);
+        }
+    }
+
+    /**
+     * Executes poll in the polling pool - skipped if the previous poll has not completed, or the pool is full
+     */
+    void dispatch(String subscriptionId, Runnable poll) {
+        if (!runningPolls.add(subscriptionId)) {
+            logger.info("Skipping poll of subscription {} - previous poll is still running", subscriptionId);
+            return;
+        }
+        final boolean accepted = executors.tryExecute(ExecutorPool.POLLING, () -> {
+            try {
+                poll.run();
+            } catch (Exception e) {
+                logger.warn("Polling subscription {} failed", subscriptionId, e);
+            } finally {
+                runningPolls.remove(subscriptionId);
+            }
+        });
+        if (!accepted) {
+            runningPolls.remove(subscriptionId);
+            logger.warn("Skipping poll of subscription {} - polling pool is full", subscriptionId);
+        }
+    }
+
+    boolean isScheduled(String subscriptionId) {
+        return scheduledPolls.containsKey(subscriptionId);
+    }
+
+    /**
+     * Hands polling of subscription over to the next member for a period of time - if this member is the owner
+     */
+    public void failover(String subscriptionId) {
+        if (members.size() > 1 && isOwner(subscriptionId)) {
+            failovers.put(subscriptionId, localMember.toString(), failoverSeconds, TimeUnit.SECONDS);
+            logger.info("Handing polling of subscription {} over to {} for {} seconds", subscriptionId,
+                    getOwner(subscriptionId), failoverSeconds);
+        }
+    }
+
+    public boolean isOwner(String subscriptionId) {
+        return localMember.equals(getOwner(subscriptionId));
+    }
+
+    private UUID getOwner(String subscriptionId) {
+        final String excluded = failovers.get(subscriptionId);
+        return selectOwner(subscriptionId, members, excluded != null ? UUID.fromString(excluded) : null);
+    }
+
+    /**
+     * Selects the member with the highest hash of subscriptionId and member-uuid
+     *
+     * @param excluded Member that should not be selected unless it is the only one
+     */
+    static UUID selectOwner(String subscriptionId, List<UUID> members, UUID excluded) {
+        UUID owner = null;
+        long highestScore = Long.MIN_VALUE;
+        for (UUID member : members) {
+            if (member.equals(excluded) && members.size() > 1) {
+                continue;
+            }
+            final long score = Hashing.murmur3_128().newHasher()
+                    .putString(subscriptionId, StandardCharsets.UTF_8)
+                    .putLong(member.getMostSignificantBits())
+                    .putLong(member.getLeastSignificantBits())
+                    .hash().asLong();
+            if (owner == null || score > highestScore) {
+                owner = member;
+                highestScore = score;
+            }
+        }
+        return owner;
+    }
+
+    private void updateMembers(Collection<Member> clusterMembers) {
+        members = clusterMembers.stream().map(Member::getUuid).collect(Collectors.toUnmodifiableList());
+
+        final long owned = scheduledPolls.keySet().stream().filter(this::isOwner).count();
+        logger.info("Polling subscriptions rebalanced over {} members - {} of {} owned by this member", members.size(),
+                owned, scheduledPolls.size());
+    }
+
+    @Override
+    public void memberAdded(MembershipEvent membershipEvent) {
+        updateMembers(membershipEvent.getMembers());
+    }
+
+    @Override
+    public void memberRemoved(MembershipEvent membershipEvent) {
+        updateMembers(membershipEvent.getMembers());
+    }
+}
@@ -1,8 +1,11 @@
 package no.rutebanken.anshar.routes.protobuf;
 
 import no.rutebanken.anshar.data.collections.KryoSerializer;
+import no.rutebanken.anshar.data.collections.KryoSerializerMode;
 import org.apache.camel.builder.RouteBuilder;
 import org.entur.protobuf.mapper.SiriMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import uk.org.siri.siri20.Siri;
 import uk.org.siri.www.siri.SiriType;
@@ -12,8 +15,15 @@ import static org.apache.camel.Exchange.CONTENT_LENGTH;
 @Service
 public class ProtobufConverterRoute extends RouteBuilder {
 
+    private static final Logger logger = LoggerFactory.getLogger(ProtobufConverterRoute.class);
+
     KryoSerializer kryoSerializer = new KryoSerializer();
 
+    /**
+     * Used for SIRI-objects - classes are registered, so output is compact
+     */
+    KryoSerializer binaryKryoSerializer = new KryoSerializer(KryoSerializerMode.LZ4);
+
     @Override
     public void configure() {
 
@@ -29,13 +39,29 @@ public class ProtobufConverterRoute extends RouteBuilder {
                 .log("Compressing - done")
         ;
 
+        from("direct:compress.siri")
+                .bean(binaryKryoSerializer, "write")
+                .log("Compressing binary - done")
+        ;
+
         from("direct:decompress.jaxb")
+                .process(p -> {
+                    final byte[] bytes = p.getIn().getBody(byte[].class);
+                    p.getIn().setBody(bytes);
+                    p.getIn().setHeader(CONTENT_LENGTH, bytes.length);
+                })
                 .bean(kryoSerializer, "read")
                 .process(p -> {
-                    final String body = p.getIn().getBody(String.class);
-                    p.getOut().setBody(body);
+                    final Object decompressed = p.getIn().getBody();
                     p.getOut().setHeaders(p.getIn().getHeaders());
-                    p.getOut().setHeader(CONTENT_LENGTH, body.getBytes().length);
+                    if (decompressed instanceof Siri) {
+                        // Already transformed SIRI-object - CONTENT_LENGTH is the serialized size
+                        p.getOut().setBody(decompressed);
+                    } else {
+                        final String body = p.getIn().getBody(String.class);
+                        p.getOut().setBody(body);
+                        p.getOut().setHeader(CONTENT_LENGTH, body.getBytes().length);
+                    }
                 })
                 .log("Decompressing - done")
         ;
@@ -72,12 +98,12 @@ public class ProtobufConverterRoute extends RouteBuilder {
     /*
      * Temporarily replaces characters when receiving data created by wrong encoding - KOLDATA-479
      */
-    private String fixEncodingErrorsInXml(String body, String subscriptionId) {
+    public static String fixEncodingErrorsInXml(String body, String subscriptionId) {
 
         if (body == null) {
             // This should never happen (!), keeping it for now, but should be removed
             body = "";
-            log.warn("Body is null!!!");
+            logger.warn("Body is null!!!");
         }
 
         boolean replacedChars = false;
@@ -107,7 +133,7 @@ public class ProtobufConverterRoute extends RouteBuilder {
         }
 
         if (replacedChars) {
-            log.info("Fixed encoding errors for subscriptionId: {}", subscriptionId);
+            logger.info("Fixed encoding errors for subscriptionId: {}", subscriptionId);
         }
 
         return body;
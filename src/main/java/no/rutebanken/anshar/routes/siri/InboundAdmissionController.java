@@ -0,0 +1,310 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.siri;
+
+import no.rutebanken.anshar.metrics.PrometheusMetricsService;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import no.rutebanken.anshar.subscription.SubscriptionManager;
+import no.rutebanken.anshar.subscription.SubscriptionSetup;
+import no.rutebanken.anshar.util.ExecutorPool;
+import no.rutebanken.anshar.util.ManagedExecutors;
+import org.apache.camel.Exchange;
+import org.apache.camel.Produce;
+import org.apache.camel.ProducerTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import static no.rutebanken.anshar.routes.HttpParameter.PARAM_SUBSCRIPTION_ID;
+
+/**
+ * Admission control for pushed deliveries from data providers.
+ *
+ * Each subscription has a bounded queue, and queued deliveries are processed in weighted round-robin order across
+ * subscriptions, so that one provider sending large or frequent deliveries does not delay all others.
+ *
+ * Deliveries are rejected with 429 when the subscription's queue is full, and with 503 when the total size of all
+ * queues is exceeded - both with Retry-After. When enabled, a queued VM-delivery is replaced by a newer delivery
+ * from the same subscription instead of both being processed. Coalescing is off by default, as it is only safe when
+ * each delivery from the provider contains all vehicles - not for providers sending partial updates.
+ */
+@Service
+public class InboundAdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(InboundAdmissionController.class);
+
+    @Value("${anshar.inbound.queue.max.count.per.subscription:50}")
+    private int maxCountPerSubscription;
+
+    @Value("${anshar.inbound.queue.max.size.mb.per.subscription:64}")
+    private int maxSizeMbPerSubscription;
+
+    @Value("${anshar.inbound.queue.max.total.size.mb:512}")
+    private int maxTotalSizeMb;
+
+    @Value("${anshar.inbound.queue.coalesce.vm:false}")
+    private boolean coalesceVm;
+
+    @Value("${anshar.inbound.queue.default.weight:1}")
+    private int defaultWeight;
+
+    @Value("${anshar.inbound.queue.retry.after.seconds:10}")
+    private int retryAfterSeconds;
+
+    @Autowired
+    private SubscriptionManager subscriptionManager;
+
+    @Autowired
+    private ManagedExecutors executors;
+
+    @Autowired
+    private PrometheusMetricsService metrics;
+
+    @Produce(uri = "direct:async.process.request")
+    protected ProducerTemplate asyncProcessor;
+
+    private final FairQueue queue = new FairQueue();
+
+    /**
+     * Queues incoming delivery for async processing, and sets response code
+     */
+    void admit(Exchange p) {
+        final String subscriptionId = p.getIn().getHeader(PARAM_SUBSCRIPTION_ID, String.class);
+        final SubscriptionSetup subscriptionSetup = subscriptionManager.get(subscriptionId);
+
+        final InboundDelivery delivery = new InboundDelivery(subscriptionId,
+                subscriptionSetup != null ? subscriptionSetup.getSubscriptionType() : null,
+                p.getIn().getBody(String.class),
+                new HashMap<>(p.getIn().getHeaders()),
+                System.currentTimeMillis());
+
+        final Admission admission = queue.offer(delivery, maxCountPerSubscription, maxSizeMbPerSubscription * 1024L * 1024L,
+                maxTotalSizeMb * 1024L * 1024L, coalesceVm && delivery.dataType == SiriDataType.VEHICLE_MONITORING);
+
+        if (admission.isNewQueue()) {
+            metrics.registerInboundQueue(subscriptionId, queue);
+        }
+        metrics.countInboundAdmission(subscriptionId, admission.isNewQueue() ? Admission.ACCEPTED.name() : admission.name());
+
+        switch (admission) {
+            case ACCEPTED_NEW_QUEUE:
+            case ACCEPTED:
+                executors.execute(ExecutorPool.INBOUND, this::processNext);
+                // Fall through
+            case COALESCED:
+                p.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, "200");
+                p.getMessage().setBody(null);
+                break;
+            case REJECTED_SUBSCRIPTION:
+            case REJECTED_TOTAL:
+                logger.info("Rejecting incoming delivery - {}, queued: {}", admission, queue.getDepth(subscriptionId));
+                p.getMessage().removeHeaders("*");
+                p.getMessage().setHeader(Exchange.HTTP_RESPONSE_CODE, admission.getResponseCode());
+                p.getMessage().setHeader("Retry-After", "" + retryAfterSeconds);
+                p.getMessage().setBody("Too many pending deliveries - retry later");
+                break;
+        }
+    }
+
+    private void processNext() {
+        final InboundDelivery delivery = queue.poll(this::getWeight);
+        if (delivery == null) {
+            // Coalesced with another delivery that has already been processed
+            return;
+        }
+        try {
+            asyncProcessor.sendBodyAndHeaders(delivery.body, delivery.headers);
+        } catch (Exception e) {
+            logger.warn("Processing incoming delivery for subscription {} failed", delivery.subscriptionId, e);
+        }
+    }
+
+    private int getWeight(String subscriptionId) {
+        final SubscriptionSetup subscriptionSetup = subscriptionManager.get(subscriptionId);
+        if (subscriptionSetup != null && subscriptionSetup.getInboundWeight() != null) {
+            return subscriptionSetup.getInboundWeight();
+        }
+        return defaultWeight;
+    }
+
+    enum Admission {
+        ACCEPTED_NEW_QUEUE("200"),
+        ACCEPTED("200"),
+        COALESCED("200"),
+        REJECTED_SUBSCRIPTION("429"),
+        REJECTED_TOTAL("503");
+
+        private final String responseCode;
+
+        Admission(String responseCode) {
+            this.responseCode = responseCode;
+        }
+
+        String getResponseCode() {
+            return responseCode;
+        }
+
+        boolean isNewQueue() {
+            return this == ACCEPTED_NEW_QUEUE;
+        }
+    }
+
+    static class InboundDelivery {
+        private final String subscriptionId;
+        private final SiriDataType dataType;
+        private final String body;
+        private final Map<String, Object> headers;
+        private final long receivedAt;
+
+        InboundDelivery(String subscriptionId, SiriDataType dataType, String body, Map<String, Object> headers, long receivedAt) {
+            this.subscriptionId = subscriptionId;
+            this.dataType = dataType;
+            this.body = body;
+            this.headers = headers;
+            this.receivedAt = receivedAt;
+        }
+
+        /**
+         * @return Size in characters
+         */
+        long getSize() {
+            return body != null ? body.length() : 0;
+        }
+
+        String getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * Bounded queue per subscription, polled in weighted round-robin order
+     */
+    public static class FairQueue {
+
+        private final Map<String, ArrayDeque<InboundDelivery>> queues = new HashMap<>();
+        private final Map<String, Long> queuedSizes = new HashMap<>();
+
+        /**
+         * Subscriptions with queued deliveries, in the order they will be served
+         */
+        private final ArrayDeque<String> activeSubscriptions = new ArrayDeque<>();
+
+        /**
+         * Number of deliveries served from the subscription first in line in the current round
+         */
+        private int servedInTurn;
+
+        private long totalSize;
+
+        synchronized Admission offer(InboundDelivery delivery, int maxCount, long maxSize, long maxTotalSize, boolean coalesce) {
+            final ArrayDeque<InboundDelivery> existingQueue = queues.get(delivery.subscriptionId);
+            final boolean newQueue = existingQueue == null;
+            final ArrayDeque<InboundDelivery> subscriptionQueue = newQueue ? new ArrayDeque<>() : existingQueue;
+            final long queuedSize = queuedSizes.getOrDefault(delivery.subscriptionId, 0L);
+
+            if (coalesce && !subscriptionQueue.isEmpty()) {
+                // Newer delivery replaces the latest queued one - limits apply to the change in size
+                final long sizeDelta = delivery.getSize() - subscriptionQueue.peekLast().getSize();
+                if (queuedSize + sizeDelta > maxSize) {
+                    return Admission.REJECTED_SUBSCRIPTION;
+                }
+                if (totalSize + sizeDelta > maxTotalSize) {
+                    return Admission.REJECTED_TOTAL;
+                }
+                subscriptionQueue.pollLast();
+                subscriptionQueue.addLast(delivery);
+                updateSize(delivery.subscriptionId, sizeDelta);
+                return Admission.COALESCED;
+            }
+
+            if (subscriptionQueue.size() >= maxCount || queuedSize + delivery.getSize() > maxSize) {
+                return Admission.REJECTED_SUBSCRIPTION;
+            }
+            if (totalSize + delivery.getSize() > maxTotalSize) {
+                return Admission.REJECTED_TOTAL;
+            }
+
+            if (newQueue) {
+                queues.put(delivery.subscriptionId, subscriptionQueue);
+            }
+            if (subscriptionQueue.isEmpty()) {
+                activeSubscriptions.addLast(delivery.subscriptionId);
+            }
+            subscriptionQueue.addLast(delivery);
+            updateSize(delivery.subscriptionId, delivery.getSize());
+
+            return newQueue ? Admission.ACCEPTED_NEW_QUEUE : Admission.ACCEPTED;
+        }
+
+        /**
+         * @param weights Number of deliveries served in turn for each subscription
+         * @return Next delivery to process - null if all queues are empty
+         */
+        synchronized InboundDelivery poll(ToIntFunction<String> weights) {
+            final String subscriptionId = activeSubscriptions.peekFirst();
+            if (subscriptionId == null) {
+                return null;
+            }
+            final ArrayDeque<InboundDelivery> subscriptionQueue = queues.get(subscriptionId);
+            final InboundDelivery delivery = subscriptionQueue.pollFirst();
+            updateSize(subscriptionId, -delivery.getSize());
+            servedInTurn++;
+
+            if (subscriptionQueue.isEmpty()) {
+                activeSubscriptions.pollFirst();
+                servedInTurn = 0;
+            } else if (servedInTurn >= Math.max(1, weights.applyAsInt(subscriptionId))) {
+                // Next subscription's turn
+                activeSubscriptions.addLast(activeSubscriptions.pollFirst());
+                servedInTurn = 0;
+            }
+            return delivery;
+        }
+
+        private void updateSize(String subscriptionId, long delta) {
+            queuedSizes.merge(subscriptionId, delta, Long::sum);
+            totalSize += delta;
+        }
+
+        public synchronized int getDepth(String subscriptionId) {
+            final ArrayDeque<InboundDelivery> subscriptionQueue = queues.get(subscriptionId);
+            return subscriptionQueue != null ? subscriptionQueue.size() : 0;
+        }
+
+        /**
+         * @return Age in milliseconds of the oldest queued delivery for the subscription, 0 when nothing is queued
+         */
+        public synchronized long getOldestAge(String subscriptionId) {
+            final ArrayDeque<InboundDelivery> subscriptionQueue = queues.get(subscriptionId);
+            if (subscriptionQueue == null || subscriptionQueue.isEmpty()) {
+                return 0;
+            }
+            return System.currentTimeMillis() - subscriptionQueue.peekFirst().receivedAt;
+        }
+
+        synchronized long getTotalSize() {
+            return totalSize;
+        }
+    }
+}
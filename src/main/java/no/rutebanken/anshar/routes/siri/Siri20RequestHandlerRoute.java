@@ -17,6 +17,7 @@ package no.rutebanken.anshar.routes.siri;
 
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.routes.RestRouteBuilder;
+import no.rutebanken.anshar.routes.TrafficTracer;
 import no.rutebanken.anshar.routes.dataformat.SiriDataFormatHelper;
 import no.rutebanken.anshar.routes.siri.handlers.SiriHandler;
 import no.rutebanken.anshar.subscription.SubscriptionManager;
@@ -61,6 +62,9 @@ public class Siri20RequestHandlerRoute extends RestRouteBuilder {
     @Autowired
     private AnsharConfiguration configuration;
 
+    @Autowired
+    private InboundAdmissionController inboundAdmissionController;
+
     public static final String TRANSFORM_VERSION = "TRANSFORM_VERSION";
     public static final String TRANSFORM_SOAP = "TRANSFORM_SOAP";
 
@@ -130,13 +134,11 @@ public class Siri20RequestHandlerRoute extends RestRouteBuilder {
         from("direct:process.incoming.request")
                 .to("direct:set.mdc.subscriptionId")
                 .removeHeaders("<Siri*") //Since Camel 3, entire body is also included as header
-                .to("log:incoming:" + getClass().getSimpleName() + "?showAll=true&multiline=true&showStreams=true")
+                .process(TrafficTracer.trace("incoming", getClass()))
                 .choice()
                     .when(e -> subscriptionExistsAndIsActive(e))
-                        //Valid subscription
-                        .to("seda:async.process.request?waitForTaskToComplete=Never")
-                        .setHeader(Exchange.HTTP_RESPONSE_CODE, constant("200"))
-                        .setBody(constant(null))
+                        //Valid subscription - queued for async processing, or rejected when queue is full
+                        .process(p -> inboundAdmissionController.admit(p))
                     .endChoice()
                     .otherwise()
                         // Invalid subscription
@@ -150,7 +152,7 @@ public class Siri20RequestHandlerRoute extends RestRouteBuilder {
             .routeId("process.incoming")
                 ;
 
-        from("seda:async.process.request?concurrentConsumers=20")
+        from("direct:async.process.request")
             .to("direct:set.mdc.subscriptionId")
             .convertBodyTo(String.class)
             .process(p -> {
@@ -164,7 +166,7 @@ public class Siri20RequestHandlerRoute extends RestRouteBuilder {
         ;
 
         from("direct:process.subscription.request")
-                .to("log:subRequest:" + getClass().getSimpleName() + "?showAll=true&multiline=true&showStreams=true")
+                .process(TrafficTracer.trace("subRequest", getClass()))
                 .choice()
                 .when(e -> isTrackingHeaderBlocked(e))
                     .to("direct:anshar.blocked.tracking.header.response")
@@ -205,7 +207,7 @@ public class Siri20RequestHandlerRoute extends RestRouteBuilder {
 
                 })
                 .marshal(SiriDataFormatHelper.getSiriJaxbDataformat())
-                .to("log:subResponse:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                .process(TrafficTracer.trace("subResponse", getClass()))
         ;
 
         from("direct:process.service.request")
@@ -219,7 +221,7 @@ public class Siri20RequestHandlerRoute extends RestRouteBuilder {
                 .endChoice()
         ;
         from("direct:internal.process.service.request")
-                .to("log:serRequest:" + getClass().getSimpleName() + "?showAll=true&multiline=true&showStreams=true")
+                .process(TrafficTracer.trace("serRequest", getClass()))
                 .choice()
                 .when(e -> isTrackingHeaderAcceptable(e))
                     .process(p -> {
@@ -246,7 +248,7 @@ public class Siri20RequestHandlerRoute extends RestRouteBuilder {
                         }
                     })
                     .marshal(SiriDataFormatHelper.getSiriJaxbDataformat())
-                    .to("log:serResponse:" + getClass().getSimpleName() + "?showAll=true&multiline=true&showStreams=true")
+                    .process(TrafficTracer.trace("serResponse", getClass()))
                 .otherwise()
                     .to("direct:anshar.invalid.tracking.header.response")
                 .routeId("process.service")
@@ -264,7 +266,7 @@ public class Siri20RequestHandlerRoute extends RestRouteBuilder {
         ;
 
         from("direct:internal.process.service.request.cache")
-            .to("log:serRequest:" + getClass().getSimpleName() + "?showAll=true&multiline=true&showStreams=true")
+            .process(TrafficTracer.trace("serRequest", getClass()))
             .process(p -> {
                 Message msg = p.getIn();
 
@@ -279,7 +281,7 @@ public class Siri20RequestHandlerRoute extends RestRouteBuilder {
 
                 streamOutput(p, response, out);
             })
-            .to("log:serResponse:" + getClass().getSimpleName() + "?showAll=true&multiline=true&showStreams=true")
+            .process(TrafficTracer.trace("serResponse", getClass()))
             .routeId("process.service.cache")
         ;
 
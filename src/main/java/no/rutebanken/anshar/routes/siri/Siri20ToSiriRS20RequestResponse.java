@@ -16,7 +16,9 @@
 package no.rutebanken.anshar.routes.siri;
 
 import no.rutebanken.anshar.config.AnsharConfiguration;
+import no.rutebanken.anshar.routes.TrafficTracer;
 import no.rutebanken.anshar.routes.dataformat.SiriDataFormatHelper;
+import no.rutebanken.anshar.routes.policy.PollingSubscriptionScheduler;
 import no.rutebanken.anshar.routes.siri.helpers.SiriRequestFactory;
 import no.rutebanken.anshar.subscription.SubscriptionManager;
 import no.rutebanken.anshar.subscription.SubscriptionSetup;
@@ -32,9 +34,13 @@ import static no.rutebanken.anshar.routes.HttpParameter.PARAM_SUBSCRIPTION_ID;
 
 public class Siri20ToSiriRS20RequestResponse extends SiriSubscriptionRouteBuilder {
 
-    public Siri20ToSiriRS20RequestResponse(AnsharConfiguration config, SubscriptionSetup subscriptionSetup, SubscriptionManager subscriptionManager) {
+    private final PollingSubscriptionScheduler pollingScheduler;
+
+    public Siri20ToSiriRS20RequestResponse(AnsharConfiguration config, SubscriptionSetup subscriptionSetup, SubscriptionManager subscriptionManager,
+                    PollingSubscriptionScheduler pollingScheduler) {
         super(config, subscriptionManager);
         this.subscriptionSetup = subscriptionSetup;
+        this.pollingScheduler = pollingScheduler;
     }
 
     @Override
@@ -46,20 +52,15 @@ public class Siri20ToSiriRS20RequestResponse extends SiriSubscriptionRouteBuilde
 
         String httpOptions = getTimeout();
 
-        String monitoringRouteId = "monitor.rs.20." + subscriptionSetup.getSubscriptionType() + "." + subscriptionSetup.getVendor();
-        boolean releaseLeadershipOnError;
+        boolean failoverOnError;
         if (subscriptionSetup.getSubscriptionMode() == SubscriptionSetup.SubscriptionMode.REQUEST_RESPONSE |
                 subscriptionSetup.getSubscriptionMode() == SubscriptionSetup.SubscriptionMode.POLLING_FETCHED_DELIVERY) {
-            releaseLeadershipOnError = true;
-            singletonFrom("quartz://anshar/monitor_" + subscriptionSetup.getRequestResponseRouteName() + "?trigger.repeatInterval=" + heartbeatIntervalMillis,
-                    monitoringRouteId)
-                    .choice()
-                    .when(p -> requestData(subscriptionSetup.getSubscriptionId(), p.getFromRouteId()))
-                    .to("direct:" + subscriptionSetup.getServiceRequestRouteName())
-                    .endChoice()
-            ;
+            failoverOnError = true;
+            pollingScheduler.schedule(subscriptionSetup.getSubscriptionId(), heartbeatIntervalMillis,
+                    () -> requestData(subscriptionSetup.getSubscriptionId()),
+                    "direct:" + subscriptionSetup.getServiceRequestRouteName());
         } else {
-            releaseLeadershipOnError = false;
+            failoverOnError = false;
         }
 
         String routeId = "request.rs.20." + subscriptionSetup.getSubscriptionType() + "." + subscriptionSetup.getVendor();
@@ -74,21 +75,21 @@ public class Siri20ToSiriRS20RequestResponse extends SiriSubscriptionRouteBuilde
             .setHeader(Exchange.CONTENT_TYPE, constant(subscriptionSetup.getContentType())) // Necessary when talking to Microsoft web services
             .setHeader(Exchange.HTTP_METHOD, constant(HttpMethods.POST))
             .process(addCustomHeaders())
-            .to("log:request:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+            .process(TrafficTracer.trace("request", getClass()))
             .doTry()
                 .to(getRequestUrl(subscriptionSetup, httpOptions))
                 .setHeader("CamelHttpPath", constant("/appContext" + subscriptionSetup.buildUrl(false)))
                 .log("Got response " + subscriptionSetup.toString())
-                .to("log:response:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                .process(TrafficTracer.trace("response", getClass()))
                 .setHeader(PARAM_SUBSCRIPTION_ID, simple(subscriptionSetup.getSubscriptionId()))
                 .setHeader(INTERNAL_SIRI_DATA_TYPE, simple(subscriptionSetup.getSubscriptionType().name()))
                 .to("direct:enqueue.message")
             .doCatch(Exception.class)
-                .log("Caught exception -" + (releaseLeadershipOnError ? "":" NOT") + " releasing leadership: " + subscriptionSetup.toString())
-                .to("log:response:" + getClass().getSimpleName() + "?showCaughtException=true&showAll=true&multiline=true")
+                .log("Caught exception -" + (failoverOnError ? "":" NOT") + " handing over polling: " + subscriptionSetup.toString())
+                .process(TrafficTracer.trace("response", getClass()))
                 .process(p -> {
-                    if (releaseLeadershipOnError) {
-                        releaseLeadership(monitoringRouteId);
+                    if (failoverOnError) {
+                        pollingScheduler.failover(subscriptionSetup.getSubscriptionId());
                     }
                 })
             .doFinally()
@@ -103,9 +104,9 @@ public class Siri20ToSiriRS20RequestResponse extends SiriSubscriptionRouteBuilde
                     }
                     log.info("Processing data took {} ms.", elapsed);
                     if (elapsed > heartbeatIntervalMillis) {
-                        log.info("Processing took longer than {} ms - releasing leadership", heartbeatIntervalMillis);
-                        if (releaseLeadershipOnError) {
-                            releaseLeadership(monitoringRouteId);
+                        log.info("Processing took longer than {} ms - handing over polling", heartbeatIntervalMillis);
+                        if (failoverOnError) {
+                            pollingScheduler.failover(subscriptionSetup.getSubscriptionId());
                         }
                     }
                 })
@@ -16,6 +16,7 @@
 package no.rutebanken.anshar.routes.siri;
 
 import no.rutebanken.anshar.config.AnsharConfiguration;
+import no.rutebanken.anshar.routes.TrafficTracer;
 import no.rutebanken.anshar.routes.dataformat.SiriDataFormatHelper;
 import no.rutebanken.anshar.routes.siri.handlers.SiriHandler;
 import no.rutebanken.anshar.routes.siri.helpers.SiriRequestFactory;
@@ -90,10 +91,10 @@ public class Siri20ToSiriRS20Subscription extends SiriSubscriptionRouteBuilder {
                 .setHeader(Exchange.CONTENT_TYPE, constant(subscriptionSetup.getContentType())) // Necessary when talking to Microsoft web services
                 .setHeader(Exchange.HTTP_METHOD, constant(HttpMethods.POST))
                 .process(addCustomHeaders())
-                .to("log:sent request:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                .process(TrafficTracer.trace("sent", getClass()))
                 .doTry()
                     .to(getCamelUrl(urlMap.get(RequestType.SUBSCRIBE), getTimeout()))
-                    .to("log:received response:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                    .process(TrafficTracer.trace("received", getClass()))
                     .process(p -> {
 
                         String responseCode = p.getIn().getHeader(PARAM_RESPONSE_CODE, String.class);
@@ -177,9 +178,9 @@ public class Siri20ToSiriRS20Subscription extends SiriSubscriptionRouteBuilder {
                 .setHeader(Exchange.CONTENT_TYPE, constant(subscriptionSetup.getContentType())) // Necessary when talking to Microsoft web services
                 .setHeader(Exchange.HTTP_METHOD, constant(HttpMethods.POST))
                 .process(addCustomHeaders())
-                .to("log:sent request:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                .process(TrafficTracer.trace("sent", getClass()))
                 .to(getCamelUrl(urlMap.get(RequestType.DELETE_SUBSCRIPTION), getTimeout()))
-                .to("log:received response:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                .process(TrafficTracer.trace("received", getClass()))
                 .process(p -> {
                     InputStream body = p.getIn().getBody(InputStream.class);
                     if (body != null && body.available() >0) {
@@ -16,7 +16,9 @@
 package no.rutebanken.anshar.routes.siri;
 
 import no.rutebanken.anshar.config.AnsharConfiguration;
+import no.rutebanken.anshar.routes.TrafficTracer;
 import no.rutebanken.anshar.routes.dataformat.SiriDataFormatHelper;
+import no.rutebanken.anshar.routes.policy.PollingSubscriptionScheduler;
 import no.rutebanken.anshar.routes.siri.helpers.SiriRequestFactory;
 import no.rutebanken.anshar.subscription.SubscriptionManager;
 import no.rutebanken.anshar.subscription.SubscriptionSetup;
@@ -32,10 +34,14 @@ import static no.rutebanken.anshar.routes.siri.Siri20RequestHandlerRoute.TRANSFO
 
 public class Siri20ToSiriWS20RequestResponse extends SiriSubscriptionRouteBuilder {
 
-    public Siri20ToSiriWS20RequestResponse(AnsharConfiguration config, SubscriptionSetup subscriptionSetup, SubscriptionManager subscriptionManager) {
+    private final PollingSubscriptionScheduler pollingScheduler;
+
+    public Siri20ToSiriWS20RequestResponse(AnsharConfiguration config, SubscriptionSetup subscriptionSetup, SubscriptionManager subscriptionManager,
+                    PollingSubscriptionScheduler pollingScheduler) {
         super(config, subscriptionManager);
 
         this.subscriptionSetup = subscriptionSetup;
+        this.pollingScheduler = pollingScheduler;
     }
 
     @Override
@@ -47,21 +53,16 @@ public class Siri20ToSiriWS20RequestResponse extends SiriSubscriptionRouteBuilde
 
         String httpOptions = getTimeout();
 
-        String monitoringRouteId = "monitor.ws.20." + subscriptionSetup.getSubscriptionType() + "." + subscriptionSetup.getVendor();
-        boolean releaseLeadershipOnError;
+        boolean failoverOnError;
         if (subscriptionSetup.getSubscriptionMode() == SubscriptionSetup.SubscriptionMode.REQUEST_RESPONSE |
                 subscriptionSetup.getSubscriptionMode() == SubscriptionSetup.SubscriptionMode.POLLING_FETCHED_DELIVERY) {
 
-            releaseLeadershipOnError = true;
-            singletonFrom("quartz://anshar/monitor_" + subscriptionSetup.getRequestResponseRouteName() + "?trigger.repeatInterval=" + heartbeatIntervalMillis,
-                    monitoringRouteId)
-                    .choice()
-                    .when(p -> requestData(subscriptionSetup.getSubscriptionId(), p.getFromRouteId()))
-                    .to("direct:" + subscriptionSetup.getServiceRequestRouteName())
-                    .endChoice()
-            ;
+            failoverOnError = true;
+            pollingScheduler.schedule(subscriptionSetup.getSubscriptionId(), heartbeatIntervalMillis,
+                    () -> requestData(subscriptionSetup.getSubscriptionId()),
+                    "direct:" + subscriptionSetup.getServiceRequestRouteName());
         } else {
-            releaseLeadershipOnError = false;
+            failoverOnError = false;
         }
 
         String endpointUrl = getRequestUrl(subscriptionSetup, null);
@@ -83,10 +84,10 @@ public class Siri20ToSiriWS20RequestResponse extends SiriSubscriptionRouteBuilde
                 .setHeader(Exchange.CONTENT_TYPE, constant(subscriptionSetup.getContentType())) // Necessary when talking to Microsoft web services
                 .setHeader(Exchange.HTTP_METHOD, constant(org.apache.camel.component.http.HttpMethods.POST))
                 .process(addCustomHeaders())
-                .to("log:request:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                .process(TrafficTracer.trace("request", getClass()))
                 .doTry()
                     .to(getRequestUrl(subscriptionSetup, httpOptions))
-                    .to("log:response:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                    .process(TrafficTracer.trace("response", getClass()))
                     .setHeader("CamelHttpPath", constant("/appContext" + subscriptionSetup.buildUrl(false)))
                     .log("Got response " + subscriptionSetup.toString())
                     .setHeader(TRANSFORM_SOAP, constant(TRANSFORM_SOAP))
@@ -94,11 +95,11 @@ public class Siri20ToSiriWS20RequestResponse extends SiriSubscriptionRouteBuilde
                     .setHeader(INTERNAL_SIRI_DATA_TYPE, simple(subscriptionSetup.getSubscriptionType().name()))
                     .to("direct:process.message.synchronous")
                 .doCatch(Exception.class)
-                    .log("Caught exception - releasing leadership: " + subscriptionSetup.toString())
-                    .to("log:response:" + getClass().getSimpleName() + "?showCaughtException=true&showAll=true&multiline=true")
+                    .log("Caught exception - handing over polling: " + subscriptionSetup.toString())
+                    .process(TrafficTracer.trace("response", getClass()))
                     .process(p -> {
-                        if (releaseLeadershipOnError) {
-                            releaseLeadership(monitoringRouteId);
+                        if (failoverOnError) {
+                            pollingScheduler.failover(subscriptionSetup.getSubscriptionId());
                         }
                     })
                 .doFinally()
@@ -112,9 +113,9 @@ public class Siri20ToSiriWS20RequestResponse extends SiriSubscriptionRouteBuilde
                             }
                         }
                         if (elapsed > heartbeatIntervalMillis) {
-                            log.info("Processing took longer than {} ms - releasing leadership", heartbeatIntervalMillis);
-                            if (releaseLeadershipOnError) {
-                                releaseLeadership(monitoringRouteId);
+                            log.info("Processing took longer than {} ms - handing over polling", heartbeatIntervalMillis);
+                            if (failoverOnError) {
+                                pollingScheduler.failover(subscriptionSetup.getSubscriptionId());
                             }
                         }
                     })
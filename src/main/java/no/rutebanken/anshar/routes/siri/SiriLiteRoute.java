@@ -21,6 +21,10 @@ import no.rutebanken.anshar.data.Situations;
 import no.rutebanken.anshar.data.VehicleActivities;
 import no.rutebanken.anshar.metrics.PrometheusMetricsService;
 import no.rutebanken.anshar.routes.RestRouteBuilder;
+import no.rutebanken.anshar.routes.SiriResponseCache;
+import no.rutebanken.anshar.routes.SiriResponseCache.CachedResponse;
+import no.rutebanken.anshar.routes.SiriResponseCache.ResponseFormat;
+import no.rutebanken.anshar.routes.SiriResponseCache.ResponseKey;
 import no.rutebanken.anshar.routes.siri.handlers.OutboundIdMappingPolicy;
 import no.rutebanken.anshar.routes.siri.handlers.SiriHandler;
 import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
@@ -29,6 +33,7 @@ import no.rutebanken.anshar.routes.siri.transformer.ValueAdapter;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import no.rutebanken.anshar.subscription.SubscriptionSetup;
 import no.rutebanken.anshar.subscription.helpers.MappingAdapterPresets;
+import org.apache.camel.Exchange;
 import org.apache.camel.model.rest.RestParamType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +46,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import static no.rutebanken.anshar.routes.HttpParameter.PARAM_DATASET_ID;
 import static no.rutebanken.anshar.routes.HttpParameter.PARAM_EXCLUDED_DATASET_ID;
@@ -72,6 +78,9 @@ public class SiriLiteRoute extends RestRouteBuilder {
     @Autowired
     private SiriObjectFactory siriObjectFactory;
 
+    @Autowired
+    private SiriResponseCache responseCache;
+
     @Override
     public void configure() throws Exception {
         super.configure();
@@ -301,18 +310,18 @@ public class SiriLiteRoute extends RestRouteBuilder {
                         String datasetId = p.getIn().getHeader(PARAM_DATASET_ID, String.class);
                         String clientTrackingName = p.getIn().getHeader(configuration.getTrackingHeaderName(), String.class);
 
-                        logger.info("Fetching cached SX-data");
-                        Siri response = siriObjectFactory.createSXServiceDelivery(situations.getAllCachedUpdates(requestorId,
-                            datasetId, clientTrackingName
-                        ));
+                        if (requestorId == null && responseCache.isEnabled()) {
+                            // Same response for all clients
+                            ResponseKey key = new ResponseKey(SiriDataType.SITUATION_EXCHANGE, "sx-cache", datasetId,
+                                OutboundIdMappingPolicy.DEFAULT, ResponseFormat.resolve(p));
 
-                        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                                                                                        SiriDataType.SITUATION_EXCHANGE,
-                                                                                        OutboundIdMappingPolicy.DEFAULT
-                                                                                    );
+                            long dataVersion = situations.getDataVersion();
+                            streamCachedResponse(p, key, dataVersion, () -> createCachedSXResponse(null, datasetId, clientTrackingName));
+                            logger.info("Done processing cached SX-data");
+                            return;
+                        }
 
-                        logger.info("Transforming cached SX-data");
-                        response = SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                        Siri response = createCachedSXResponse(requestorId, datasetId, clientTrackingName);
 
                         metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
 
@@ -338,31 +347,20 @@ public class SiriLiteRoute extends RestRouteBuilder {
                         String datasetId = p.getIn().getHeader(PARAM_DATASET_ID, String.class);
                         String clientTrackingName = p.getIn().getHeader(configuration.getTrackingHeaderName(), String.class);
 
-                        logger.info("Fetching cached VM-data");
-                        final Collection<VehicleActivityStructure> cachedUpdates = vehicleActivities
-                            .getAllCachedUpdates(requestorId, datasetId, clientTrackingName);
                         List<String> excludedIdList = getParameterValuesAsList(p.getIn(), PARAM_EXCLUDED_DATASET_ID);
 
-                        if (excludedIdList != null && !excludedIdList.isEmpty()) {
-                            cachedUpdates.removeIf(vehicle -> {
-                                if (vehicle.getMonitoredVehicleJourney() != null &&
-                                    vehicle.getMonitoredVehicleJourney().getDataSource() != null) {
-                                    // Return 'true' if codespaceId should be excluded
-                                    return excludedIdList.contains(vehicle.getMonitoredVehicleJourney().getDataSource());
-                                }
-                                return false;
-                            });
-                        }
-
-                        Siri response = siriObjectFactory.createVMServiceDelivery(cachedUpdates);
+                        if (requestorId == null && responseCache.isEnabled()) {
+                            // Same response for all clients
+                            ResponseKey key = new ResponseKey(SiriDataType.VEHICLE_MONITORING, "vm-cache", datasetId,
+                                OutboundIdMappingPolicy.DEFAULT, ResponseFormat.resolve(p), excludedIdList);
 
-                        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                                                                                        SiriDataType.VEHICLE_MONITORING,
-                                                                                        OutboundIdMappingPolicy.DEFAULT
-                                                                                    );
+                            long dataVersion = vehicleActivities.getDataVersion();
+                            streamCachedResponse(p, key, dataVersion, () -> createCachedVMResponse(null, datasetId, clientTrackingName, excludedIdList));
+                            logger.info("Done processing cached VM-data");
+                            return;
+                        }
 
-                        logger.info("Transforming cached VM-data");
-                        response = SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                        Siri response = createCachedVMResponse(requestorId, datasetId, clientTrackingName, excludedIdList);
 
                         metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
 
@@ -389,18 +387,18 @@ public class SiriLiteRoute extends RestRouteBuilder {
                     Integer maxSize = p.getIn().getHeader(PARAM_MAX_SIZE, Integer.class);
                     String clientTrackingName = p.getIn().getHeader(configuration.getTrackingHeaderName(), String.class);
 
-                    logger.info("Fetching cached ET-data");
-                    Siri response = siriObjectFactory.createETServiceDelivery(estimatedTimetables.getAllCachedUpdates(requestorId,
-                            datasetId, clientTrackingName, maxSize
-                    ));
+                    if (requestorId == null && responseCache.isEnabled()) {
+                        // Same response for all clients
+                        ResponseKey key = new ResponseKey(SiriDataType.ESTIMATED_TIMETABLE, "et", datasetId,
+                            OutboundIdMappingPolicy.DEFAULT, ResponseFormat.resolve(p), maxSize);
 
-                    List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                            SiriDataType.ESTIMATED_TIMETABLE,
-                            OutboundIdMappingPolicy.DEFAULT
-                    );
+                        long dataVersion = estimatedTimetables.getDataVersion();
+                        streamCachedResponse(p, key, dataVersion, () -> createCachedETResponse(null, datasetId, clientTrackingName, maxSize, false));
+                        logger.info("Done processing cached ET-data");
+                        return;
+                    }
 
-                    logger.info("Transforming cached ET-data");
-                    response = SiriValueTransformer.transform(response, outboundAdapters, false, false);
+                    Siri response = createCachedETResponse(requestorId, datasetId, clientTrackingName, maxSize, false);
 
                     metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
 
@@ -424,19 +422,20 @@ public class SiriLiteRoute extends RestRouteBuilder {
             .when(e -> isTrackingHeaderAcceptable(e))
             .process(p -> {
 
-                logger.info("Fetching cached ET-data");
-
                 String clientTrackingName = p.getIn().getHeader(configuration.getTrackingHeaderName(), String.class);
 
-                Siri response = siriObjectFactory.createETServiceDelivery(estimatedTimetables.getAllCachedUpdates(null, null, clientTrackingName));
+                if (responseCache.isEnabled()) {
+                    // Same response for all clients
+                    ResponseKey key = new ResponseKey(SiriDataType.ESTIMATED_TIMETABLE, "et-monitored-cache", null,
+                        OutboundIdMappingPolicy.DEFAULT, ResponseFormat.resolve(p));
 
-                List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
-                    SiriDataType.ESTIMATED_TIMETABLE,
-                    OutboundIdMappingPolicy.DEFAULT
-                );
+                    long dataVersion = estimatedTimetables.getDataVersion();
+                    streamCachedResponse(p, key, dataVersion, () -> createCachedETResponse(null, null, clientTrackingName, null, true));
+                    logger.info("Done processing cached ET-data");
+                    return;
+                }
 
-                logger.info("Transforming cached ET-data");
-                response = SiriValueTransformer.transform(response, outboundAdapters, false, true);
+                Siri response = createCachedETResponse(null, null, clientTrackingName, null, true);
 
                 metrics.countOutgoingData(response, SubscriptionSetup.SubscriptionMode.LITE);
 
@@ -453,6 +452,78 @@ public class SiriLiteRoute extends RestRouteBuilder {
         ;
     }
 
+    private Siri createCachedSXResponse(String requestorId, String datasetId, String clientTrackingName) {
+        logger.info("Fetching cached SX-data");
+        Siri response = siriObjectFactory.createSXServiceDelivery(situations.getAllCachedUpdates(requestorId,
+            datasetId, clientTrackingName
+        ));
+
+        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                                                                        SiriDataType.SITUATION_EXCHANGE,
+                                                                        OutboundIdMappingPolicy.DEFAULT
+                                                                    );
+
+        logger.info("Transforming cached SX-data");
+        return SiriValueTransformer.transform(response, outboundAdapters, false, false);
+    }
+
+    private Siri createCachedVMResponse(String requestorId, String datasetId, String clientTrackingName, List<String> excludedIdList) {
+        logger.info("Fetching cached VM-data");
+        final Collection<VehicleActivityStructure> cachedUpdates = vehicleActivities
+            .getAllCachedUpdates(requestorId, datasetId, clientTrackingName);
+
+        if (excludedIdList != null && !excludedIdList.isEmpty()) {
+            cachedUpdates.removeIf(vehicle -> {
+                if (vehicle.getMonitoredVehicleJourney() != null &&
+                    vehicle.getMonitoredVehicleJourney().getDataSource() != null) {
+                    // Return 'true' if codespaceId should be excluded
+                    return excludedIdList.contains(vehicle.getMonitoredVehicleJourney().getDataSource());
+                }
+                return false;
+            });
+        }
+
+        Siri response = siriObjectFactory.createVMServiceDelivery(cachedUpdates);
+
+        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                                                                        SiriDataType.VEHICLE_MONITORING,
+                                                                        OutboundIdMappingPolicy.DEFAULT
+                                                                    );
+
+        logger.info("Transforming cached VM-data");
+        return SiriValueTransformer.transform(response, outboundAdapters, false, false);
+    }
+
+    private Siri createCachedETResponse(String requestorId, String datasetId, String clientTrackingName, Integer maxSize, boolean detailedLogging) {
+        logger.info("Fetching cached ET-data");
+        Siri response = siriObjectFactory.createETServiceDelivery(estimatedTimetables.getAllCachedUpdates(requestorId,
+                datasetId, clientTrackingName, maxSize
+        ));
+
+        List<ValueAdapter> outboundAdapters = MappingAdapterPresets.getOutboundAdapters(
+                SiriDataType.ESTIMATED_TIMETABLE,
+                OutboundIdMappingPolicy.DEFAULT
+        );
+
+        logger.info("Transforming cached ET-data");
+        return SiriValueTransformer.transform(response, outboundAdapters, false, detailedLogging);
+    }
+
+    /**
+     * Serves response from cache - the response is only recreated when data has changed
+     */
+    private void streamCachedResponse(Exchange p, ResponseKey key, long dataVersion, Callable<Siri> responseSupplier) throws Exception {
+        CachedResponse response = responseCache.getResponse(key, dataVersion, responseSupplier);
+
+        HttpServletResponse out = p.getIn().getBody(HttpServletResponse.class);
+
+        if (streamCachedOutput(p, response, out)) {
+            metrics.countOutgoingData(key.getDataType(), SubscriptionSetup.SubscriptionMode.LITE, response.getElementCount());
+        } else {
+            metrics.countResponseCacheRequest(key.getDataType(), "not_modified");
+        }
+    }
+
     /**
      * If http-parameter requestorId is not provided in request, it will be generated based on
      * client IP and requested resource for uniqueness
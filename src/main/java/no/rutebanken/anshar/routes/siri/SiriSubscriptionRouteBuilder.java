@@ -19,6 +19,7 @@ import com.sun.xml.bind.marshaller.NamespacePrefixMapper;
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.data.EstimatedTimetables;
 import no.rutebanken.anshar.routes.BaseRouteBuilder;
+import no.rutebanken.anshar.routes.TrafficTracer;
 import no.rutebanken.anshar.routes.siri.transformer.ApplicationContextHolder;
 import no.rutebanken.anshar.subscription.SubscriptionManager;
 import no.rutebanken.anshar.subscription.SubscriptionSetup;
@@ -105,7 +106,7 @@ public abstract class SiriSubscriptionRouteBuilder extends BaseRouteBuilder {
                     .setBody(simple(subscriptionSetup.getDataNotReceivedAction() != null ? subscriptionSetup.getDataNotReceivedAction().getJsonPostContent():""))
                     .setHeader(Exchange.CONTENT_TYPE, constant(MediaType.APPLICATION_JSON))
                     .setHeader(Exchange.HTTP_METHOD, constant(HttpMethods.POST))
-                    .to("log:datanotreceived:" + getClass().getSimpleName() + "?showAll=true&multiline=true")
+                    .process(TrafficTracer.trace("datanotreceived", getClass()))
                     .toD(subscriptionSetup.getDataNotReceivedAction() != null ? subscriptionSetup.getDataNotReceivedAction().getEndpoint():"empty", true)
                 .when(p -> shouldBeStarted(p.getFromRouteId()))
                     .log("Triggering start subscription: " + subscriptionSetup)
@@ -0,0 +1,212 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.siri.handlers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.org.siri.siri20.ServiceDeliveryErrorConditionElement;
+import uk.org.siri.siri20.Siri;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the elements of a SIRI ServiceDelivery one at a time, without building the complete Siri-object.
+ *
+ * Elements are handed over in batches of limited size, so memory usage depends on batch size instead of
+ * the size of the delivery.
+ */
+public class SiriDeliveryStreamReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiriDeliveryStreamReader.class);
+
+    private static final String SERVICE_DELIVERY = "ServiceDelivery";
+
+    private static final String ERROR_CONDITION = "ErrorCondition";
+
+    private static final String STATUS = "Status";
+
+    private static final String DELIVERY_SUFFIX = "Delivery";
+
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+    private static JAXBContext jaxbContext;
+
+    static {
+        try {
+            jaxbContext = JAXBContext.newInstance(Siri.class);
+        } catch (JAXBException e) {
+            logger.warn("Caught exception when initializing JAXBContext", e);
+        }
+    }
+
+    private SiriDeliveryStreamReader() {
+    }
+
+    /**
+     * Checks if the first element inside the root-element is a ServiceDelivery. Only the beginning of the
+     * document is read, the stream is not closed.
+     *
+     * @param xml SIRI-XML
+     * @return true if document contains a ServiceDelivery
+     * @throws XMLStreamException
+     */
+    public static boolean isServiceDelivery(InputStream xml) throws XMLStreamException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(xml);
+        try {
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    if (depth == 2) {
+                        return SERVICE_DELIVERY.equals(reader.getLocalName());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            return false;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads all elements with the given name, and passes them on in batches.
+     *
+     * Elements inside a delivery (e.g. EstimatedTimetableDelivery) with Status=false are skipped without being
+     * passed on - the same way they are ignored when the complete Siri-object is parsed. Status precedes the
+     * payload in the SIRI schema, so this is known before any of the delivery's elements are read.
+     *
+     * @param xml SIRI-XML
+     * @param elementName Local name of the elements to read - e.g. EstimatedVehicleJourney
+     * @param elementClass Class the elements are unmarshalled to
+     * @param batchSize Max number of elements in each batch
+     * @param batchConsumer Receives each batch of elements
+     * @param errorConsumer Receives any ErrorConditions found in the delivery
+     * @return Total number of elements passed on
+     * @throws XMLStreamException
+     * @throws JAXBException
+     */
+    public static <T> int read(InputStream xml, String elementName, Class<T> elementClass, int batchSize,
+                               Consumer<List<T>> batchConsumer,
+                               Consumer<ServiceDeliveryErrorConditionElement> errorConsumer)
+            throws XMLStreamException, JAXBException {
+
+        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(xml);
+
+        int count = 0;
+        int skipped = 0;
+        int depth = 0;
+        int deliveryDepth = -1;
+        boolean deliveryFailed = false;
+        List<T> batch = new ArrayList<>();
+        try {
+            while (reader.hasNext()) {
+                int event = reader.getEventType();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String localName = reader.getLocalName();
+                    if (elementName.equals(localName)) {
+
+                        if (deliveryFailed) {
+                            skipElement(reader);
+                            skipped++;
+                            continue;
+                        }
+
+                        // Reader is positioned after the element when unmarshalling is done
+                        batch.add(unmarshaller.unmarshal(reader, elementClass).getValue());
+                        count++;
+
+                        if (batch.size() >= batchSize) {
+                            batchConsumer.accept(batch);
+                            batch = new ArrayList<>();
+                        }
+                        continue;
+
+                    } else if (ERROR_CONDITION.equals(localName)) {
+                        errorConsumer.accept(unmarshaller.unmarshal(reader, ServiceDeliveryErrorConditionElement.class).getValue());
+                        continue;
+
+                    } else if (STATUS.equals(localName) && deliveryDepth >= 0 && depth == deliveryDepth) {
+                        // Reader is positioned at the end of Status after reading the text
+                        if (isFalse(reader.getElementText())) {
+                            deliveryFailed = true;
+                        }
+                        reader.next();
+                        continue;
+                    }
+
+                    depth++;
+                    if (localName.endsWith(DELIVERY_SUFFIX) && !SERVICE_DELIVERY.equals(localName)) {
+                        deliveryDepth = depth;
+                        deliveryFailed = false;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == deliveryDepth) {
+                        deliveryDepth = -1;
+                        deliveryFailed = false;
+                    }
+                    depth--;
+                }
+                reader.next();
+            }
+            if (!batch.isEmpty()) {
+                batchConsumer.accept(batch);
+            }
+        } finally {
+            reader.close();
+        }
+        if (skipped > 0) {
+            logger.info("Ignored {} {}-elements in delivery with Status=false", skipped, elementName);
+        }
+        return count;
+    }
+
+    /**
+     * Skips the current element including all children, and leaves the reader positioned after it - the same
+     * position as after unmarshalling the element.
+     */
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int level = 1;
+        while (level > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                level++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                level--;
+            }
+        }
+        reader.next();
+    }
+
+    private static boolean isFalse(String status) {
+        String value = status != null ? status.trim() : "";
+        return "false".equals(value) || "0".equals(value);
+    }
+}
@@ -59,6 +59,7 @@ import javax.xml.bind.JAXBException;
 import javax.xml.bind.UnmarshalException;
 import javax.xml.datatype.Duration;
 import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -69,6 +70,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import static no.rutebanken.anshar.routes.siri.transformer.impl.OutboundIdAdapter.getOriginalId;
 
@@ -77,6 +82,11 @@ public class SiriHandler {
 
     private final Logger logger = LoggerFactory.getLogger(SiriHandler.class);
 
+    /**
+     * Max number of bytes read when checking if incoming XML is a ServiceDelivery
+     */
+    private static final int STREAMING_PEEK_LIMIT = 1024 * 1024;
+
     @Autowired
     private ServerSubscriptionManager serverSubscriptionManager;
 
@@ -144,6 +154,23 @@ public class SiriHandler {
         return null;
     }
 
+    /**
+     * Handles SIRI-data that has already been parsed and transformed
+     *
+     * @param subscriptionId SubscriptionId
+     * @param incoming Parsed SIRI-data
+     * @param receivedBytes Size of received data
+     */
+    public void handleIncomingSiri(String subscriptionId, Siri incoming, int receivedBytes) {
+        SubscriptionSetup subscriptionSetup = subscriptionManager.get(subscriptionId);
+
+        if (subscriptionSetup != null) {
+            processSiriClientRequest(subscriptionSetup, incoming, receivedBytes);
+        } else {
+            logger.debug("ServiceDelivery for invalid subscriptionId [{}] ignored.", subscriptionId);
+        }
+    }
+
     public Siri handleSiriCacheRequest(
         InputStream body, String datasetId, String clientTrackingName
     ) throws XMLStreamException, JAXBException {
@@ -332,6 +359,25 @@ public class SiriHandler {
             } catch (IOException e) {
                 receivedBytes = 0;
             }
+
+            if (configuration.isStreamingIngestEnabled()) {
+                // Peek at the start of the document to decide if the delivery can be streamed
+                BufferedInputStream bufferedXml = new BufferedInputStream(xml);
+                bufferedXml.mark(STREAMING_PEEK_LIMIT);
+                boolean isServiceDelivery = SiriDeliveryStreamReader.isServiceDelivery(bufferedXml);
+                try {
+                    bufferedXml.reset();
+                } catch (IOException e) {
+                    throw new XMLStreamException("Unable to reset incoming XML", e);
+                }
+
+                if (isServiceDelivery) {
+                    processServiceDeliveryStreaming(subscriptionSetup, bufferedXml, receivedBytes);
+                    return;
+                }
+                xml = bufferedXml;
+            }
+
 long t1 = System.currentTimeMillis();
             Siri incoming = SiriXml.parseXml(xml);
 long t2 = System.currentTimeMillis();
@@ -340,6 +386,16 @@ long t2 = System.currentTimeMillis();
                 return;
             }
 
+            processSiriClientRequest(subscriptionSetup, incoming, receivedBytes);
+        } else {
+            logger.debug("ServiceDelivery for invalid subscriptionId [{}] ignored.", subscriptionId);
+        }
+    }
+
+    private void processSiriClientRequest(SubscriptionSetup subscriptionSetup, Siri incoming, int receivedBytes) {
+        final String subscriptionId = subscriptionSetup.getSubscriptionId();
+
+        if (incoming != null) {
             if (incoming.getHeartbeatNotification() != null) {
                 subscriptionManager.touchSubscription(subscriptionId);
                 logger.info("Heartbeat - {}", subscriptionSetup);
@@ -542,9 +598,106 @@ long t2 = System.currentTimeMillis();
                     //Ignore
                 }
             }
+        }
+    }
+
+    /**
+     * Handles ServiceDelivery without unmarshalling the entire document - elements are parsed, stored and
+     * pushed in batches.
+     *
+     * @param subscriptionSetup
+     * @param xml
+     * @param receivedBytes
+     * @throws XMLStreamException
+     * @throws JAXBException
+     */
+    private void processServiceDeliveryStreaming(SubscriptionSetup subscriptionSetup, InputStream xml, int receivedBytes)
+            throws XMLStreamException, JAXBException {
+        healthManager.dataReceived();
+
+        final SiriDataType dataType = subscriptionSetup.getSubscriptionType();
+        final int batchSize = configuration.getStreamingIngestBatchSize();
+        final AtomicInteger addedOrUpdatedCount = new AtomicInteger();
+        final Consumer<ServiceDeliveryErrorConditionElement> errorHandler = errorCondition -> logger.info(getErrorContents(errorCondition));
+
+        long t1 = System.currentTimeMillis();
+        int receivedCount = 0;
+        int activeCount = 0;
+        if (dataType.equals(SiriDataType.SITUATION_EXCHANGE)) {
+            receivedCount = SiriDeliveryStreamReader.read(xml, "PtSituationElement", PtSituationElement.class, batchSize,
+                    batch -> addedOrUpdatedCount.addAndGet(
+                            addBatch(subscriptionSetup, batch, situations::addAll, this::splitSituationsByCodespace, false)
+                    ),
+                    errorHandler);
+            activeCount = situations.getSize();
+
+        } else if (dataType.equals(SiriDataType.VEHICLE_MONITORING)) {
+            receivedCount = SiriDeliveryStreamReader.read(xml, "VehicleActivity", VehicleActivityStructure.class, batchSize,
+                    batch -> addedOrUpdatedCount.addAndGet(
+                            addBatch(subscriptionSetup, batch, vehicleActivities::addAll, this::splitVehicleMonitoringByCodespace, true)
+                    ),
+                    errorHandler);
+            activeCount = vehicleActivities.getSize();
+
+        } else if (dataType.equals(SiriDataType.ESTIMATED_TIMETABLE)) {
+            receivedCount = SiriDeliveryStreamReader.read(xml, "EstimatedVehicleJourney", EstimatedVehicleJourney.class, batchSize,
+                    batch -> addedOrUpdatedCount.addAndGet(
+                            addBatch(subscriptionSetup, batch, estimatedTimetables::addAll, this::splitEstimatedTimetablesByCodespace, true)
+                    ),
+                    errorHandler);
+            activeCount = estimatedTimetables.getSize();
+        }
+        long t2 = System.currentTimeMillis();
+
+        logger.info("Streaming {} elements took {} ms, {} bytes", receivedCount, (t2-t1), receivedBytes);
+
+        subscriptionManager.incrementObjectCounter(subscriptionSetup, addedOrUpdatedCount.get());
+
+        logger.info("Active {}-elements: {}, current delivery: {}, {}", dataType, activeCount, addedOrUpdatedCount.get(), subscriptionSetup);
+
+        if (addedOrUpdatedCount.get() > 0) {
+            subscriptionManager.dataReceived(subscriptionSetup.getSubscriptionId(), receivedBytes);
         } else {
-            logger.debug("ServiceDelivery for invalid subscriptionId [{}] ignored.", subscriptionId);
+            subscriptionManager.touchSubscription(subscriptionSetup.getSubscriptionId());
+        }
+    }
+
+    /**
+     * Adds one batch of streamed elements, and pushes the updates to subscribers.
+     *
+     * @param subscriptionSetup
+     * @param batch Elements to add
+     * @param addAll Adds elements to repository for the given datasetId
+     * @param splitByCodespace Groups elements by provided codespace
+     * @param pushToSubscriptionDataset Push all updates to subscription's datasetId when splitting by codespace
+     * @return Number of added or updated elements
+     */
+    private <T> int addBatch(SubscriptionSetup subscriptionSetup, List<T> batch,
+                             BiFunction<String, List<T>, Collection<T>> addAll,
+                             Function<List<T>, Map<String, List<T>>> splitByCodespace,
+                             boolean pushToSubscriptionDataset) {
+
+        final SiriDataType dataType = subscriptionSetup.getSubscriptionType();
+
+        List<T> addedOrUpdated = new ArrayList<>();
+        if (subscriptionSetup.isUseProvidedCodespaceId()) {
+            Map<String, List<T>> elementsByCodespace = splitByCodespace.apply(batch);
+            for (Map.Entry<String, List<T>> codespaceElements : elementsByCodespace.entrySet()) {
+                List<T> added = new ArrayList<>(addAll.apply(codespaceElements.getKey(), codespaceElements.getValue()));
+
+                // Push updates to subscribers on this codespace
+                serverSubscriptionManager.pushUpdatesAsync(dataType, added, codespaceElements.getKey());
+
+                addedOrUpdated.addAll(added);
+            }
+            if (pushToSubscriptionDataset) {
+                serverSubscriptionManager.pushUpdatesAsync(dataType, addedOrUpdated, subscriptionSetup.getDatasetId());
+            }
+        } else {
+            addedOrUpdated.addAll(addAll.apply(subscriptionSetup.getDatasetId(), batch));
+            serverSubscriptionManager.pushUpdatesAsync(dataType, addedOrUpdated, subscriptionSetup.getDatasetId());
         }
+        return addedOrUpdated.size();
     }
 
     private Map<String, List<PtSituationElement>> splitSituationsByCodespace(
@@ -104,4 +104,19 @@ public class CodespaceOutboundProcessor extends ValueAdapter implements PostProc
                 return getMappedId(text);
         }
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CodespaceOutboundProcessor)) return false;
+
+        CodespaceOutboundProcessor that = (CodespaceOutboundProcessor) o;
+
+        return outboundIdMappingPolicy == that.outboundIdMappingPolicy;
+    }
+
+    @Override
+    public int hashCode() {
+        return outboundIdMappingPolicy != null ? outboundIdMappingPolicy.hashCode() : 0;
+    }
 }
@@ -100,4 +100,19 @@ public class RemoveEmojiPostProcessor extends ValueAdapter implements PostProces
     private boolean keepCharacter(char c) {
         return (c > 30 && c <= 500) || specialCharactersToKeep.contains(c);
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RemoveEmojiPostProcessor)) return false;
+
+        RemoveEmojiPostProcessor that = (RemoveEmojiPostProcessor) o;
+
+        return outboundIdMappingPolicy == that.outboundIdMappingPolicy;
+    }
+
+    @Override
+    public int hashCode() {
+        return outboundIdMappingPolicy != null ? outboundIdMappingPolicy.hashCode() : 0;
+    }
 }
@@ -107,4 +107,11 @@ public class RuterOutboundDatedVehicleRefAdapter extends ValueAdapter implements
         return outboundIdMappingPolicy == that.outboundIdMappingPolicy;
 
     }
+
+    @Override
+    public int hashCode() {
+        int result = super.getClassToApply().hashCode();
+        result = 31 * result + (outboundIdMappingPolicy != null ? outboundIdMappingPolicy.hashCode() : 0);
+        return result;
+    }
 }
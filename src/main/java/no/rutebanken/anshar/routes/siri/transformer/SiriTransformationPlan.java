@@ -0,0 +1,375 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.siri.transformer;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import no.rutebanken.anshar.routes.siri.transformer.impl.OutboundIdAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static no.rutebanken.anshar.routes.siri.transformer.SiriValueTransformer.SEPARATOR;
+
+/**
+ * Precompiled plan for applying ValueAdapters to a SIRI-class.
+ *
+ * The plan for a class only contains the getters that return one of the adapted types, or that may lead to an
+ * object containing one of the adapted types. All adapters are applied in a single traversal of the object-graph,
+ * and all getters are invoked through cached MethodHandles.
+ *
+ * Plans are created per (class, set of adapted types), and are independent of the actual adapter-instances.
+ */
+class SiriTransformationPlan {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiriTransformationPlan.class);
+
+    private static final String SIRI_PACKAGE_PREFIX = "uk.org.siri";
+
+    private static final List<String> methodsToIgnore = Collections.singletonList("getMonitoringError");
+
+    private static final int MAX_CACHED_PLANS = 10000;
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, String.class);
+
+    private static final LoadingCache<Class<?>, List<Accessor>> accessorCache = CacheBuilder.newBuilder()
+            .build(new CacheLoader<Class<?>, List<Accessor>>() {
+                public List<Accessor> load(Class<?> clazz) throws IllegalAccessException {
+                    return resolveAccessors(clazz);
+                }
+            });
+
+    private static final LoadingCache<Class<?>, ValueAccessor> valueAccessorCache = CacheBuilder.newBuilder()
+            .build(new CacheLoader<Class<?>, ValueAccessor>() {
+                public ValueAccessor load(Class<?> clazz) throws NoSuchMethodException, IllegalAccessException {
+                    return new ValueAccessor(clazz);
+                }
+            });
+
+    private static final LoadingCache<PlanKey, Boolean> reachabilityCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_PLANS)
+            .build(new CacheLoader<PlanKey, Boolean>() {
+                public Boolean load(PlanKey key) {
+                    return mayContainTarget(key.clazz, key.targetTypes);
+                }
+            });
+
+    private static final LoadingCache<PlanKey, SiriTransformationPlan> planCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_PLANS)
+            .build(new CacheLoader<PlanKey, SiriTransformationPlan>() {
+                public SiriTransformationPlan load(PlanKey key) {
+                    return new SiriTransformationPlan(key.clazz, key.targetTypes);
+                }
+            });
+
+    private final List<Step> steps;
+
+    private SiriTransformationPlan(Class<?> clazz, Set<Class<?>> targetTypes) {
+        List<Step> planSteps = new ArrayList<>();
+        for (Accessor accessor : accessorCache.getUnchecked(clazz)) {
+            boolean apply = targetTypes.contains(accessor.returnType);
+            boolean traverse;
+            switch (accessor.kind) {
+                case DYNAMIC:
+                    traverse = true;
+                    break;
+                case STATIC:
+                    traverse = reachabilityCache.getUnchecked(new PlanKey(accessor.nodeType, targetTypes));
+                    break;
+                case SKIP:
+                default:
+                    traverse = false;
+            }
+            if (apply || traverse) {
+                planSteps.add(new Step(accessor, apply, traverse));
+            }
+        }
+        this.steps = planSteps;
+    }
+
+    /**
+     * Applies all adapters to the provided SIRI-object
+     */
+    static void applyAdapters(Object siri, List<ValueAdapter> adapters) throws Throwable {
+        Map<Class<?>, List<ValueAdapter>> adaptersByType = new LinkedHashMap<>();
+        for (ValueAdapter adapter : adapters) {
+            if (adapter.getClassToApply() != null) {
+                adaptersByType.computeIfAbsent(adapter.getClassToApply(), c -> new ArrayList<>()).add(adapter);
+            }
+        }
+        if (adaptersByType.isEmpty()) {
+            return;
+        }
+
+        final Set<Class<?>> targetTypes = Set.copyOf(adaptersByType.keySet());
+        visit(siri, targetTypes, adaptersByType, new HashSet<>());
+    }
+
+    private static void visit(Object obj, Set<Class<?>> targetTypes, Map<Class<?>, List<ValueAdapter>> adaptersByType, Set<ValueAdapter> failedAdapters) throws Throwable {
+        //Only apply to Siri-classes
+        if (obj == null || !isSiriClass(obj.getClass())) {
+            return;
+        }
+
+        final SiriTransformationPlan plan = planCache.getUnchecked(new PlanKey(obj.getClass(), targetTypes));
+        for (Step step : plan.steps) {
+            final Object value = (Object) step.accessor.getter.invokeExact(obj);
+            if (value == null) {
+                continue;
+            }
+            if (step.apply) {
+                for (ValueAdapter adapter : adaptersByType.get(step.accessor.returnType)) {
+                    applyAdapter(value, adapter, failedAdapters);
+                }
+            }
+            if (step.traverse) {
+                if (value instanceof List) {
+                    for (Object o : (List<?>) value) {
+                        visit(o, targetTypes, adaptersByType, failedAdapters);
+                    }
+                } else {
+                    visit(value, targetTypes, adaptersByType, failedAdapters);
+                }
+            }
+        }
+    }
+
+    /**
+     * Uses getValue()/setValue(...) to apply adapter
+     */
+    private static void applyAdapter(Object target, ValueAdapter adapter, Set<ValueAdapter> failedAdapters) {
+        try {
+            final ValueAccessor valueAccessor = valueAccessorCache.getUnchecked(target.getClass());
+
+            String value = valueAccessor.getValue(target);
+            if (value == null) {
+                return;
+            }
+            String alteredValue;
+
+            String originalId = value;
+
+            if (adapter instanceof OutboundIdAdapter) {
+                alteredValue = adapter.apply(value);
+            } else {
+                if (value.contains(SEPARATOR)) {
+                    originalId = value.substring(0, value.indexOf(SEPARATOR));
+                    alteredValue = adapter.apply(value.substring(value.indexOf(SEPARATOR) + SEPARATOR.length()));
+                } else {
+                    alteredValue = adapter.apply(value);
+                }
+                if (!originalId.equals(alteredValue)) { //No need to map already correct ids
+                    alteredValue = originalId + SEPARATOR + alteredValue;
+                }
+            }
+
+            valueAccessor.setValue(target, alteredValue);
+        } catch (Throwable t) {
+            // Only log first failure per adapter
+            if (failedAdapters.add(adapter)) {
+                logger.warn("Caught exception while transforming SIRI-object with adapter " + adapter, t);
+            }
+        }
+    }
+
+    /**
+     * Resolves whether an object of the given class may contain any of the target types - i.e. if any of the
+     * target types are reachable through getters.
+     */
+    private static boolean mayContainTarget(Class<?> clazz, Set<Class<?>> targetTypes) {
+        Set<Class<?>> visited = new HashSet<>();
+        Deque<Class<?>> queue = new ArrayDeque<>();
+        queue.add(clazz);
+        visited.add(clazz);
+
+        while (!queue.isEmpty()) {
+            for (Accessor accessor : accessorCache.getUnchecked(queue.poll())) {
+                if (targetTypes.contains(accessor.returnType) || accessor.kind == Kind.DYNAMIC) {
+                    // Actual type is resolved at runtime - must be included
+                    return true;
+                }
+                if (accessor.kind == Kind.STATIC && visited.add(accessor.nodeType)) {
+                    queue.add(accessor.nodeType);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<Accessor> resolveAccessors(Class<?> clazz) throws IllegalAccessException {
+        List<Accessor> accessors = new ArrayList<>();
+        for (Method method : clazz.getMethods()) {
+            if (method.getParameterCount() != 0 ||
+                    method.isBridge() ||
+                    void.class.equals(method.getReturnType()) ||
+                    Modifier.isStatic(method.getModifiers()) ||
+                    methodsToIgnore.contains(method.getName())) {
+                continue;
+            }
+
+            final Class<?> returnType = method.getReturnType();
+
+            Class<?> nodeType = returnType;
+            if (List.class.isAssignableFrom(returnType)) {
+                nodeType = resolveListElementType(method.getGenericReturnType());
+            }
+
+            final MethodHandle getter = MethodHandles.publicLookup().unreflect(method).asType(GETTER_TYPE);
+            accessors.add(new Accessor(getter, returnType, nodeType, resolveKind(nodeType)));
+        }
+        return accessors;
+    }
+
+    /**
+     * @return Element-type of List, or Object if it cannot be resolved
+     */
+    private static Class<?> resolveListElementType(Type genericType) {
+        if (genericType instanceof ParameterizedType) {
+            Type[] typeArguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            if (typeArguments.length == 1 && typeArguments[0] instanceof Class) {
+                return (Class<?>) typeArguments[0];
+            }
+        }
+        return Object.class;
+    }
+
+    private static Kind resolveKind(Class<?> type) {
+        if (isSiriClass(type)) {
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+                return Kind.DYNAMIC;
+            }
+            return Kind.STATIC;
+        }
+        if (type == Object.class || type == Serializable.class) {
+            return Kind.DYNAMIC;
+        }
+        return Kind.SKIP;
+    }
+
+    private static boolean isSiriClass(Class<?> clazz) {
+        return clazz.getName().startsWith(SIRI_PACKAGE_PREFIX);
+    }
+
+    private enum Kind {
+        /**
+         * SIRI-class - may be analyzed in advance
+         */
+        STATIC,
+        /**
+         * Actual type is only known at runtime - e.g. Object or abstract SIRI-classes
+         */
+        DYNAMIC,
+        /**
+         * Never a SIRI-object - e.g. String, enums and JDK-types
+         */
+        SKIP
+    }
+
+    private static class Accessor {
+        private final MethodHandle getter;
+        private final Class<?> returnType;
+        /**
+         * Return type, or element type for Lists
+         */
+        private final Class<?> nodeType;
+        private final Kind kind;
+
+        private Accessor(MethodHandle getter, Class<?> returnType, Class<?> nodeType, Kind kind) {
+            this.getter = getter;
+            this.returnType = returnType;
+            this.nodeType = nodeType;
+            this.kind = kind;
+        }
+    }
+
+    private static class Step {
+        private final Accessor accessor;
+        private final boolean apply;
+        private final boolean traverse;
+
+        private Step(Accessor accessor, boolean apply, boolean traverse) {
+            this.accessor = accessor;
+            this.apply = apply;
+            this.traverse = traverse;
+        }
+    }
+
+    private static class ValueAccessor {
+        private final MethodHandle getValue;
+        private final MethodHandle setValue;
+
+        private ValueAccessor(Class<?> clazz) throws NoSuchMethodException, IllegalAccessException {
+            getValue = MethodHandles.publicLookup().unreflect(clazz.getMethod("getValue")).asType(GETTER_TYPE);
+            setValue = MethodHandles.publicLookup().unreflect(clazz.getMethod("setValue", String.class)).asType(SETTER_TYPE);
+        }
+
+        private String getValue(Object obj) throws Throwable {
+            return (String) (Object) getValue.invokeExact(obj);
+        }
+
+        private void setValue(Object obj, String value) throws Throwable {
+            setValue.invokeExact(obj, value);
+        }
+    }
+
+    private static class PlanKey {
+        private final Class<?> clazz;
+        private final Set<Class<?>> targetTypes;
+
+        private PlanKey(Class<?> clazz, Set<Class<?>> targetTypes) {
+            this.clazz = clazz;
+            this.targetTypes = targetTypes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            PlanKey planKey = (PlanKey) o;
+            return clazz.equals(planKey.clazz) && targetTypes.equals(planKey.targetTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(clazz, targetTypes);
+        }
+    }
+}
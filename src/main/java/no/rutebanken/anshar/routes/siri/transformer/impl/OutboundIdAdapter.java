@@ -83,4 +83,11 @@ public class OutboundIdAdapter extends ValueAdapter {
         return outboundIdMappingPolicy == that.outboundIdMappingPolicy;
 
     }
+
+    @Override
+    public int hashCode() {
+        int result = super.getClassToApply().hashCode();
+        result = 31 * result + (outboundIdMappingPolicy != null ? outboundIdMappingPolicy.hashCode() : 0);
+        return result;
+    }
 }
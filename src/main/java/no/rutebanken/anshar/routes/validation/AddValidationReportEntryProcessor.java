@@ -0,0 +1,37 @@
+package no.rutebanken.anshar.routes.validation;
+
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.ExtendedMapEntry;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends report to the subscription's ring on the owning member, and refreshes the TTL of the entry
+ */
+public class AddValidationReportEntryProcessor implements EntryProcessor<String, ValidationReports, Integer> {
+
+    private final ValidationReport report;
+    private final long maxTotalSize;
+    private final int maxCount;
+    private final long ttlHours;
+
+    public AddValidationReportEntryProcessor(ValidationReport report, long maxTotalSize, int maxCount, long ttlHours) {
+        this.report = report;
+        this.maxTotalSize = maxTotalSize;
+        this.maxCount = maxCount;
+        this.ttlHours = ttlHours;
+    }
+
+    @Override
+    public Integer process(Map.Entry<String, ValidationReports> entry) {
+        ValidationReports reports = entry.getValue();
+        if (reports == null) {
+            reports = new ValidationReports();
+        }
+        final int evicted = reports.add(report, maxTotalSize, maxCount);
+
+        ((ExtendedMapEntry<String, ValidationReports>) entry).setValue(reports, ttlHours, TimeUnit.HOURS);
+        return evicted;
+    }
+}
@@ -0,0 +1,30 @@
+package no.rutebanken.anshar.routes.validation;
+
+import com.hazelcast.core.ReadOnly;
+import com.hazelcast.map.EntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Looks up a single report by reference - only the matching report is returned to the caller
+ */
+public class FindValidationReportEntryProcessor implements EntryProcessor<String, ValidationReports, ValidationReport>, ReadOnly {
+
+    private final String validationRef;
+
+    public FindValidationReportEntryProcessor(String validationRef) {
+        this.validationRef = validationRef;
+    }
+
+    @Override
+    public ValidationReport process(Map.Entry<String, ValidationReports> entry) {
+        final ValidationReports reports = entry.getValue();
+        return reports != null ? reports.getReport(validationRef) : null;
+    }
+
+    @Override
+    public EntryProcessor<String, ValidationReports, ValidationReport> getBackupProcessor() {
+        // Read-only
+        return null;
+    }
+}
@@ -20,9 +20,13 @@ import org.json.simple.JSONObject;
 
 import javax.xml.bind.ValidationEvent;
 import javax.xml.bind.ValidationEventHandler;
+import javax.xml.bind.ValidationEventLocator;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
 
 class SiriValidationEventHandler implements ValidationEventHandler {
 
@@ -53,50 +57,94 @@ class SiriValidationEventHandler implements ValidationEventHandler {
         categorizedEvents.put(categoryName, category);
     }
 
-    public JSONObject toJSON() {
-        JSONObject obj = new JSONObject();
-        obj.put("timestamp", timestamp);
+    /**
+     * Writes events in a compact binary layout - read back with {@link #readJSON(DataInput)}
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(timestamp);
+        out.writeInt(categorizedEvents.size());
+        for (Map.Entry<String, Map<String, ValidationEvent>> category : categorizedEvents.entrySet()) {
+            writeString(out, category.getKey());
+            out.writeInt(category.getValue().size());
+            for (ValidationEvent e : category.getValue().values()) {
+                final ValidationEventLocator locator = e.getLocator();
+                out.writeByte(e.getSeverity());
+                writeString(out, e.getMessage());
+                out.writeInt(getOccurrenceCount(e));
+                out.writeInt(locator != null ? locator.getLineNumber() : -1);
+                out.writeInt(locator != null ? locator.getColumnNumber() : -1);
+            }
+        }
+    }
 
-        AtomicInteger counter = new AtomicInteger();
+    /**
+     * Creates JSON-representation of events written with {@link #writeTo(DataOutput)}
+     */
+    static JSONObject readJSON(DataInput in) throws IOException {
+        JSONObject obj = new JSONObject();
+        obj.put("timestamp", in.readLong());
 
-        if (categorizedEvents.size() == 1 && categorizedEvents.containsKey(this.getClass().getSimpleName())) {
-            //Simple json without category
-            JSONArray eventList = new JSONArray();
+        int counter = 0;
 
-            categorizedEvents.get(this.getClass().getSimpleName())
-                    .values().forEach(e -> {
-                JSONObject event = createJsonValidationEvent(e);
-                counter.addAndGet(getOccurrenceCount(e));
-                eventList.add(event);
-            });
+        final int categoryCount = in.readInt();
+        JSONArray categories = new JSONArray();
+        JSONArray uncategorizedEvents = null;
+        for (int i = 0; i < categoryCount; i++) {
+            final String categoryName = readString(in);
 
-            obj.put("events", eventList);
-        } else {
-            JSONArray categories = new JSONArray();
+            JSONArray eventList = new JSONArray();
+            final int eventCount = in.readInt();
+            for (int j = 0; j < eventCount; j++) {
+                final int severity = in.readByte();
+                final String message = readString(in);
+                final int occurrences = in.readInt();
+                final int lineNumber = in.readInt();
+                final int columnNumber = in.readInt();
+
+                eventList.add(createJsonValidationEvent(severity, message, occurrences, lineNumber, columnNumber));
+                counter += occurrences;
+            }
 
-            categorizedEvents.keySet().forEach(cat -> {
-                final Map<String, ValidationEvent> eventMap = categorizedEvents.get(cat);
+            if (categoryCount == 1 && SiriValidationEventHandler.class.getSimpleName().equals(categoryName)) {
+                uncategorizedEvents = eventList;
+            } else {
                 JSONObject category = new JSONObject();
-                category.put("category", cat);
-
-                JSONArray eventList = new JSONArray();
-
-                eventMap.values().forEach(e -> {
-                    JSONObject event = createJsonValidationEvent(e);
-                    counter.addAndGet(getOccurrenceCount(e));
-                    eventList.add(event);
-                });
+                category.put("category", categoryName);
                 category.put("events", eventList);
-
                 categories.add(category);
-            });
+            }
+        }
 
+        if (uncategorizedEvents != null) {
+            //Simple json without category
+            obj.put("events", uncategorizedEvents);
+        } else {
             obj.put("categories", categories);
         }
-        obj.put("errorCount", counter.intValue());
+        obj.put("errorCount", counter);
         return obj;
     }
 
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     private Integer getOccurrenceCount(ValidationEvent e) {
         final String message = e.getMessage();
         if (message != null) {
@@ -108,21 +156,22 @@ class SiriValidationEventHandler implements ValidationEventHandler {
         return 0;
     }
 
-    private JSONObject createJsonValidationEvent(ValidationEvent e) {
+    private static JSONObject createJsonValidationEvent(int severity, String message, int occurrences,
+                                                        int lineNumber, int columnNumber) {
         JSONObject event = new JSONObject();
 
-        event.put("severity", resolveSeverity(e.getSeverity()));
-        event.put("message", wrapAsString(e.getMessage()));
-        event.put("numberOfOccurrences", wrapAsString(getOccurrenceCount(e)));
+        event.put("severity", resolveSeverity(severity));
+        event.put("message", message);
+        event.put("numberOfOccurrences", occurrences);
 
         JSONObject locator = new JSONObject();
-        locator.put("lineNumber", wrapAsString(e.getLocator().getLineNumber()));
-        locator.put("columnNumber", wrapAsString(e.getLocator().getColumnNumber()));
+        locator.put("lineNumber", lineNumber);
+        locator.put("columnNumber", columnNumber);
         event.put("locator", locator);
         return event;
     }
 
-    private String resolveSeverity(int severity) {
+    private static String resolveSeverity(int severity) {
         switch (severity) {
             case ValidationEvent.FATAL_ERROR:
                 return "FATAL_ERROR";
@@ -132,14 +181,4 @@ class SiriValidationEventHandler implements ValidationEventHandler {
                 return "WARNING";
         }
     }
-
-    private Object wrapAsString(Object o) {
-        if (o != null) {
-            if (! (o instanceof Integer)) {
-                return "" + o;
-            }
-            return o;
-        }
-        return null;
-    }
 }
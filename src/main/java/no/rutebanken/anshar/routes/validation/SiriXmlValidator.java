@@ -15,8 +15,6 @@
 
 package no.rutebanken.anshar.routes.validation;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import com.hazelcast.map.IMap;
 import com.hazelcast.replicatedmap.ReplicatedMap;
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.metrics.PrometheusMetricsService;
@@ -28,6 +26,8 @@ import no.rutebanken.anshar.routes.validation.validators.Validator;
 import no.rutebanken.anshar.subscription.SiriDataType;
 import no.rutebanken.anshar.subscription.SubscriptionManager;
 import no.rutebanken.anshar.subscription.SubscriptionSetup;
+import no.rutebanken.anshar.util.ExecutorPool;
+import no.rutebanken.anshar.util.ManagedExecutors;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.slf4j.Logger;
@@ -37,8 +37,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
-import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 import uk.org.siri.siri20.Siri;
 
@@ -47,39 +45,26 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.ValidationEvent;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.GZIPInputStream;
 
 import static no.rutebanken.anshar.routes.validation.ValidationType.PROFILE_VALIDATION;
 import static no.rutebanken.anshar.routes.validation.ValidationType.SCHEMA_VALIDATION;
-import static no.rutebanken.anshar.util.CompressionUtil.compress;
 
 @Component
 @Configuration
@@ -90,30 +75,13 @@ public class SiriXmlValidator extends ApplicationContextHolder {
     private static JAXBContext jaxbContext;
     private static Schema schema;
     private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
-    private static final DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
 
 
     @Autowired
     private AnsharConfiguration configuration;
 
-    /**
-     * Keeps a list of references to unique ids
-     */
     @Autowired
-    @Qualifier("getValidationResultRefMap")
-    private IMap<String, List<String>> validationResultRefs;
-
-    @Autowired
-    @Qualifier("getValidationResultSiriMap")
-    private IMap<String, byte[]> validatedSiri;
-
-    @Autowired
-    @Qualifier("getValidationSizeTracker")
-    private IMap<String, Long> validationSize;
-
-    @Autowired
-    @Qualifier("getValidationResultJsonMap")
-    private IMap<String, JSONObject> validationResults;
+    private ValidationReportStore validationReportStore;
 
     @Autowired
     @Qualifier("getSubscriptionsMap")
@@ -131,16 +99,13 @@ public class SiriXmlValidator extends ApplicationContextHolder {
 
     private final Map<SiriDataType, Set<CustomValidator>> validationRules = new EnumMap(SiriDataType.class);
 
-    private ExecutorService validationExecutorService;
+    private final Map<SiriDataType, StreamingProfileValidator> profileValidators = new EnumMap(SiriDataType.class);
 
-    public  SiriXmlValidator() {
-        ThreadFactory factory = new ThreadFactoryBuilder()
-            .setNameFormat("validation")
-            .setDaemon(true)
-            .build();
+    @Autowired
+    private ManagedExecutors executors;
 
-        validationExecutorService = Executors.newCachedThreadPool(factory);
-    }
+    @Autowired
+    private ValidationSampler validationSampler;
 
     static {
         if (jaxbContext == null) {
@@ -172,16 +137,55 @@ public class SiriXmlValidator extends ApplicationContextHolder {
                 }
             }
         }
+
+        for (Map.Entry<SiriDataType, Set<CustomValidator>> rules : validationRules.entrySet()) {
+            profileValidators.put(rules.getKey(), new StreamingProfileValidator(rules.getValue()));
+        }
     }
 
 
     public Siri parseXml(SubscriptionSetup subscriptionSetup, String xml)
         throws XMLStreamException {
-        ByteArrayInputStream stream = new ByteArrayInputStream(xml.getBytes());
-        return parseXml(subscriptionSetup, stream);
+        final byte[] bytes = xml.getBytes();
+        return parseXml(subscriptionSetup, new ByteArrayInputStream(bytes), shouldValidate(subscriptionSetup) ? bytes : null);
     }
 
     public Siri parseXml(SubscriptionSetup subscriptionSetup, InputStream xml)
+        throws XMLStreamException {
+        if (shouldValidate(subscriptionSetup)) {
+            final byte[] bytes;
+            try {
+                // Read once - used both for parsing and validation
+                bytes = xml.readAllBytes();
+            } catch (IOException e) {
+                logger.warn("Caught exception when reading XML", e);
+                return null;
+            }
+            return parseXml(subscriptionSetup, new ByteArrayInputStream(bytes), bytes);
+        }
+        return parseXml(subscriptionSetup, xml, null);
+    }
+
+    private boolean shouldValidate(SubscriptionSetup subscriptionSetup) {
+        if (configuration.isFullValidationEnabled() || subscriptionSetup.isValidation()) {
+            if (validationSampler.isSampled(subscriptionSetup)) {
+                return true;
+            }
+            metricsService.countSkippedValidation(subscriptionSetup.getSubscriptionType(),
+                subscriptionSetup.getDatasetId(), "sampled");
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param subscriptionSetup
+     * @param xml XML to parse
+     * @param xmlBytes Same XML as bytes - validation is only performed when set
+     * @return
+     * @throws XMLStreamException
+     */
+    private Siri parseXml(SubscriptionSetup subscriptionSetup, InputStream xml, byte[] xmlBytes)
         throws XMLStreamException {
         try {
             long parseStart = System.currentTimeMillis();
@@ -193,8 +197,7 @@ public class SiriXmlValidator extends ApplicationContextHolder {
             final SiriValidationEventHandler schemaValidationHandler = new SiriValidationEventHandler();
 
             boolean validate = false;
-            if (configuration.isFullValidationEnabled() || 
-                                    subscriptionSetup.isValidation()) {
+            if (xmlBytes != null) {
                 validate = true;
 
                 // Add schema to validate against
@@ -209,12 +212,17 @@ public class SiriXmlValidator extends ApplicationContextHolder {
             final String breadcrumbId = MDC.get("camel.breadcrumbId");
 
             if (siri.getServiceDelivery() != null && validate) {
-                validationExecutorService.execute(() -> {
+                final boolean queued = executors.tryExecute(ExecutorPool.VALIDATION, () -> {
                     MDC.put("subscriptionId", subscriptionSetup.getSubscriptionId());
                     MDC.put("camel.breadcrumbId", breadcrumbId);
-                    performProfileValidation(subscriptionSetup, xml, siri, schemaValidationHandler);
+                    performProfileValidation(subscriptionSetup, xmlBytes, siri, schemaValidationHandler);
                     MDC.remove("camel.breadcrumbId");
                 });
+                if (!queued) {
+                    logger.info("Validation queue is full - skipping validation for {}", subscriptionSetup);
+                    metricsService.countSkippedValidation(subscriptionSetup.getSubscriptionType(),
+                        subscriptionSetup.getDatasetId(), "dropped");
+                }
             }
 
             long parseDone = System.currentTimeMillis();
@@ -262,7 +270,7 @@ public class SiriXmlValidator extends ApplicationContextHolder {
 
     private static AtomicInteger concurrentValidationThreads = new AtomicInteger();
     private boolean performProfileValidation(
-        SubscriptionSetup subscriptionSetup, InputStream xml, Siri siri, SiriValidationEventHandler schemaValidationResults
+        SubscriptionSetup subscriptionSetup, byte[] xml, Siri siri, SiriValidationEventHandler schemaValidationResults
     ) {
         concurrentValidationThreads.incrementAndGet();
         long validationStart = System.currentTimeMillis();
@@ -277,36 +285,24 @@ public class SiriXmlValidator extends ApplicationContextHolder {
                 return false;
             }
 
-            /*
-             * Re-marshalling SIRI-data for filtering-purposes
-             */
-            xml.reset();
-
-            String originalXml = new String(xml.readAllBytes());
-
             SiriValidationEventHandler profileValidationResults = new SiriValidationEventHandler();
 
-            validateAttributes(originalXml, type, siri, profileValidationResults);
+            validateAttributes(xml, type, siri, profileValidationResults);
 
             if (subscriptionSetup.isValidation()) {
                 final long t1 = System.currentTimeMillis();
 
                 if (hasValidationFilter(subscriptionSetup) &&
-                    !originalXml.contains(subscriptionSetup.getValidationFilter())) {
+                    !new String(xml, StandardCharsets.UTF_8).contains(subscriptionSetup.getValidationFilter())) {
                     logger.info("Incoming XML does not contain \"{}\", skip validation-report for this request.",
                         subscriptionSetup.getValidationFilter()
                     );
                     return false;
                 }
 
-                JSONObject schemaEvents = schemaValidationResults.toJSON();
-                JSONObject profileEvents = profileValidationResults.toJSON();
-
-                JSONObject combinedEvents = new JSONObject();
-                combinedEvents.put("schema", schemaEvents);
-                combinedEvents.put("profile", profileEvents);
-
-                addResult(subscriptionSetup, originalXml, combinedEvents);
+                validationReportStore.addReport(subscriptionSetup.getSubscriptionId(),
+                    ValidationReport.create(UUID.randomUUID().toString(), xml, schemaValidationResults, profileValidationResults)
+                );
 
                 logger.info("Creating report took: {} ms",
                     (System.currentTimeMillis() - t1)
@@ -335,77 +331,47 @@ public class SiriXmlValidator extends ApplicationContextHolder {
     }
 
     private void validateAttributes(
-        String siriXml, SiriDataType type, Siri siri, SiriValidationEventHandler handler
-    ) throws XPathExpressionException, ParserConfigurationException, IOException, SAXException {
+        byte[] siriXml, SiriDataType type, Siri siri, SiriValidationEventHandler handler
+    ) throws XMLStreamException, ParserConfigurationException {
         if (validationRules.isEmpty()) {
             populateValidationRules();
         }
-        XPathFactory xpathFactory = XPathFactory.newInstance();
-        XPath xpath = xpathFactory.newXPath();
-        DocumentBuilder builder = builderFactory.newDocumentBuilder();
-
-        InputStream stream = new ByteArrayInputStream(siriXml.getBytes(StandardCharsets.UTF_8));
 
-        Document xmlDocument = builder.parse(stream);
-
-        int errorCounter = 0;
+        AtomicInteger errorCounter = new AtomicInteger();
         int ruleCounter = 0;
-        for (CustomValidator rule : validationRules.get(type)) {
+        for (CustomValidator rule : validationRules.getOrDefault(type, Set.of())) {
             if (rule instanceof SiriObjectValidator) {
                 ValidationEvent event = ((SiriObjectValidator)rule).isValid(siri);
                 ruleCounter++;
                 if (event != null) {
-                    if (event instanceof ProfileValidationEventOrList) {
-                        for (ValidationEvent validationEvent : ((ProfileValidationEventOrList) event).getEvents()) {
-                            handler.handleCategorizedEvent(rule.getCategoryName(), validationEvent);
-                            errorCounter++;
-                        }
-                    } else {
-                        handler.handleCategorizedEvent(rule.getCategoryName(), event);
-                        errorCounter++;
-                    }
-                }
-            } else {
-                NodeList nodes = (NodeList) xpath.evaluate(rule.getXpath(),
-                    xmlDocument,
-                    XPathConstants.NODESET
-                );
-                for (int i = 0; i < nodes.getLength(); i++) {
-                    ValidationEvent event = rule.isValid(nodes.item(i));
-                    ruleCounter++;
-                    if (event != null) {
-                        if (event instanceof ProfileValidationEventOrList) {
-                            for (ValidationEvent validationEvent : ((ProfileValidationEventOrList) event)
-                                .getEvents()) {
-                                handler.handleCategorizedEvent(rule.getCategoryName(),
-                                    validationEvent
-                                );
-                                errorCounter++;
-                            }
-                        }
-                        else {
-                            handler.handleCategorizedEvent(rule.getCategoryName(), event);
-                            errorCounter++;
-                        }
-                    }
+                    errorCounter.addAndGet(handleEvent(handler, rule, event));
                 }
             }
         }
-        logger.info("Found {} custom rule violations in SIRI XML, validated {} objects", errorCounter, ruleCounter);
-    }
 
-    public void clearValidationResults(String subscriptionId) {
-        List<String> validationRefs = validationResultRefs.get(subscriptionId);
+        final StreamingProfileValidator profileValidator = profileValidators.get(type);
+        if (profileValidator != null) {
+            ruleCounter += profileValidator.validate(new ByteArrayInputStream(siriXml),
+                (rule, event) -> errorCounter.addAndGet(handleEvent(handler, rule, event))
+            );
+        }
+        logger.info("Found {} custom rule violations in SIRI XML, validated {} objects", errorCounter.get(), ruleCounter);
+    }
 
-        if (validationRefs != null) {
-            for (String ref : validationRefs) {
-                validationResults.delete(ref);
-                validatedSiri.delete(ref);
+    private int handleEvent(SiriValidationEventHandler handler, CustomValidator rule, ValidationEvent event) {
+        if (event instanceof ProfileValidationEventOrList) {
+            final List<ValidationEvent> events = ((ProfileValidationEventOrList) event).getEvents();
+            for (ValidationEvent validationEvent : events) {
+                handler.handleCategorizedEvent(rule.getCategoryName(), validationEvent);
             }
-
-            validationSize.delete(subscriptionId);
-            validationResultRefs.delete(subscriptionId);
+            return events.size();
         }
+        handler.handleCategorizedEvent(rule.getCategoryName(), event);
+        return 1;
+    }
+
+    public void clearValidationResults(String subscriptionId) {
+        validationReportStore.clear(subscriptionId);
     }
 
     public void addFilter(String subscriptionId, String validationFilter) {
@@ -429,8 +395,6 @@ public class SiriXmlValidator extends ApplicationContextHolder {
             subscriptionId = internalIdStr;
         }
 
-        List<String> validationRefs = validationResultRefs.get(subscriptionId);
-
         SubscriptionSetup subscriptionSetup = subscriptions.get(subscriptionId);
         if (subscriptionSetup == null) {
             return null;
@@ -447,12 +411,11 @@ public class SiriXmlValidator extends ApplicationContextHolder {
         }
 
         JSONArray resultList = new JSONArray();
-        if (validationRefs != null) {
-            for (String ref : validationRefs) {
-                final JSONObject jsonValidationResults = getJsonValidationResults(ref);
-                if (jsonValidationResults != null) {
-                    resultList.add(jsonValidationResults);
-                }
+        for (ValidationReport report : validationReportStore.getReports(subscriptionId)) {
+            try {
+                resultList.add(report.toJSON());
+            } catch (IOException e) {
+                logger.warn("Caught exception when reading validation report", e);
             }
         }
         validationResult.put("validationRefs", resultList);
@@ -460,59 +423,7 @@ public class SiriXmlValidator extends ApplicationContextHolder {
         return validationResult;
     }
 
-    private JSONObject getJsonValidationResults(String validationRef) {
-        JSONObject jsonObject = validationResults.get(validationRef);
-        if (jsonObject == null) {
-            return null;
-        }
-        jsonObject.put("validationRef", validationRef);
-        return jsonObject;
-    }
-
-    public String getValidatedSiri(String validationRef) throws IOException {
-        return unzipString(validatedSiri.get(validationRef));
-    }
-
-    private String unzipString(byte[] compressed) throws IOException {
-        if (compressed != null) {
-            ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(compressed);
-            GZIPInputStream gzipIn = new GZIPInputStream(byteArrayInputStream);
-            try (ObjectInputStream objectIn = new ObjectInputStream(gzipIn)) {
-                return (String) objectIn.readObject();
-            } catch (ClassNotFoundException e) {
-                logger.warn("Caught exception when unzipping data", e);
-            }
-        }
-        return null;
-    }
-
-    private void addResult(SubscriptionSetup subscriptionSetup, String siriXml, JSONObject jsonObject) throws IOException {
-
-        List<String> subscriptionValidationRefs = validationResultRefs.getOrDefault(subscriptionSetup.getSubscriptionId(), new ArrayList<>());
-
-        String newUniqueReference = UUID.randomUUID().toString();
-
-        subscriptionValidationRefs.add(newUniqueReference);
-
-        // GZIP'ing contents to reduce memory-footprint
-        byte[] byteArray = compress(siriXml);
-
-        final Long totalXmlSize = (validationSize.getOrDefault(subscriptionSetup.getSubscriptionId(), 0L) + byteArray.length);
-
-        validatedSiri.set(newUniqueReference, byteArray);
-        validationResults.set(newUniqueReference, jsonObject);
-        validationResultRefs.set(subscriptionSetup.getSubscriptionId(), subscriptionValidationRefs);
-        validationSize.set(subscriptionSetup.getSubscriptionId(), totalXmlSize);
-
-        if (totalXmlSize > (configuration.getMaxTotalXmlSizeOfValidation() * 1024*1024)) {
-            subscriptionSetup.setValidation(false);
-            subscriptionManager.updateSubscription(subscriptionSetup);
-            logger.info("Reached max size - {}mb - for validations, validated {} deliveries,  disabling validation for {}", configuration.getMaxTotalXmlSizeOfValidation(), subscriptionValidationRefs.size(), subscriptionSetup);
-        }
-        if (subscriptionValidationRefs.size() >= configuration.getMaxNumberOfValidations()) {
-            subscriptionSetup.setValidation(false);
-            subscriptionManager.updateSubscription(subscriptionSetup);
-            logger.info("Reached max number of validations, validated {} deliveries, disabling validation for {}", subscriptionValidationRefs.size(), subscriptionSetup);
-        }
+    public String getValidatedSiri(String subscriptionId, String validationRef) throws IOException {
+        return validationReportStore.getXml(subscriptionId, validationRef);
     }
 }
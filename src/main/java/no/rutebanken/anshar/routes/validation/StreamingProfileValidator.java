@@ -0,0 +1,295 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.validation;
+
+import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.SiriObjectValidator;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import javax.xml.bind.ValidationEvent;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Evaluates all path-based profile-rules in a single streaming pass.
+ *
+ * The paths of all rules are registered in a trie. While reading the XML, only elements matched by a rule are
+ * built as DOM-elements - including their subtree - and handed to the rule when the element is complete. For
+ * rules that need access to siblings, the parent element is built instead.
+ *
+ * Elements only matched by rules that check which child elements are present - e.g. ServiceDelivery - are not built
+ * with their subtree. The names of their non-empty children are recorded from the stream instead, and the rules are
+ * given an element with one empty placeholder child per name.
+ */
+class StreamingProfileValidator {
+
+    private static final XMLInputFactory xmlInputFactory = createInputFactory();
+    private static final DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+
+    /**
+     * Used for all elements that are not part of any rule-path
+     */
+    private static final PathNode OFF_PATH = new PathNode();
+
+    private final PathNode root = new PathNode();
+
+    private final int ruleCount;
+
+    StreamingProfileValidator(Collection<CustomValidator> rules) {
+        int count = 0;
+        for (CustomValidator rule : rules) {
+            if (rule instanceof SiriObjectValidator || rule.getXpath() == null || rule.getXpath().isEmpty()) {
+                continue;
+            }
+            PathNode parent = null;
+            PathNode node = root;
+            for (String elementName : rule.getXpath().split("/")) {
+                parent = node;
+                node = node.children.computeIfAbsent(elementName, name -> new PathNode());
+            }
+            if (rule.isChildPresenceOnly()) {
+                node.childPresenceRules.add(rule);
+            } else {
+                node.rules.add(rule);
+            }
+            if (rule.isSiblingAccessRequired() && parent != root) {
+                parent.buildForChildren = true;
+            }
+            count++;
+        }
+        ruleCount = count;
+    }
+
+    int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @param xml XML to validate
+     * @param eventHandler Called for every event returned from a rule
+     * @return Number of validated elements
+     */
+    int validate(InputStream xml, BiConsumer<CustomValidator, ValidationEvent> eventHandler)
+        throws XMLStreamException, ParserConfigurationException {
+
+        final Document document = builderFactory.newDocumentBuilder().newDocument();
+        final Deque<Frame> path = new ArrayDeque<>();
+        final List<Match> pending = new ArrayList<>();
+
+        // Current element being built - null when outside matched elements
+        Element current = null;
+        int validatedCount = 0;
+
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(xml);
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        final Frame parentFrame = path.peek();
+                        if (parentFrame != null) {
+                            parentFrame.hasContent = true;
+                        }
+                        final PathNode parentNode = parentFrame == null ? root : parentFrame.node;
+                        final String name = getQualifiedName(reader);
+                        final Frame frame = new Frame(name, parentNode.children.getOrDefault(name, OFF_PATH));
+                        path.push(frame);
+
+                        final PathNode pathNode = frame.node;
+                        if (current != null || pathNode.buildForChildren || !pathNode.rules.isEmpty()) {
+                            Element element = createElement(document, reader);
+                            if (current != null) {
+                                current.appendChild(element);
+                            }
+                            current = element;
+                            for (CustomValidator rule : pathNode.rules) {
+                                pending.add(new Match(rule, element));
+                            }
+                            for (CustomValidator rule : pathNode.childPresenceRules) {
+                                pending.add(new Match(rule, element));
+                            }
+                        } else if (!pathNode.childPresenceRules.isEmpty()) {
+                            // Only names of children are needed
+                            frame.childPresenceElement = createElement(document, reader);
+                            frame.childNames = new HashSet<>();
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        if (!path.isEmpty()) {
+                            path.peek().hasContent = true;
+                        }
+                        if (current != null) {
+                            appendText(document, current, reader.getText());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        final Frame completed = path.pop();
+                        if (current != null) {
+                            final Node parent = current.getParentNode();
+                            if (parent == null) {
+                                // Outermost built element is complete - all matches within it can be validated
+                                validatedCount += evaluate(pending, eventHandler);
+                                pending.clear();
+                            }
+                            current = (Element) parent;
+                        }
+                        if (completed.childPresenceElement != null) {
+                            for (CustomValidator rule : completed.node.childPresenceRules) {
+                                report(rule, rule.isValid(completed.childPresenceElement), eventHandler);
+                            }
+                            validatedCount += completed.node.childPresenceRules.size();
+                        }
+                        final Frame parentOfCompleted = path.peek();
+                        if (parentOfCompleted != null && parentOfCompleted.childPresenceElement != null
+                            && completed.hasContent && parentOfCompleted.childNames.add(completed.name)) {
+                            // Rules only look up children with content
+                            Element child = document.createElement(completed.name);
+                            child.appendChild(document.createTextNode(""));
+                            parentOfCompleted.childPresenceElement.appendChild(child);
+                        }
+                        break;
+                    default:
+                        // Ignore
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return validatedCount;
+    }
+
+    private static int evaluate(List<Match> matches, BiConsumer<CustomValidator, ValidationEvent> eventHandler) {
+        for (Match match : matches) {
+            report(match.rule, match.rule.isValid(match.node), eventHandler);
+        }
+        return matches.size();
+    }
+
+    private static void report(CustomValidator rule, ValidationEvent event, BiConsumer<CustomValidator, ValidationEvent> eventHandler) {
+        if (event != null) {
+            eventHandler.accept(rule, event);
+        }
+    }
+
+    /**
+     * Element-names are matched including namespace-prefix, as when evaluating the paths as XPath
+     */
+    private static String getQualifiedName(XMLStreamReader reader) {
+        final String prefix = reader.getPrefix();
+        if (prefix == null || prefix.isEmpty()) {
+            return reader.getLocalName();
+        }
+        return prefix + ":" + reader.getLocalName();
+    }
+
+    private static Element createElement(Document document, XMLStreamReader reader) {
+        Element element = document.createElement(getQualifiedName(reader));
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String prefix = reader.getAttributePrefix(i);
+            final String name = prefix == null || prefix.isEmpty() ?
+                reader.getAttributeLocalName(i) :
+                prefix + ":" + reader.getAttributeLocalName(i);
+            element.setAttribute(name, reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    private static void appendText(Document document, Element element, String text) {
+        final Node lastChild = element.getLastChild();
+        if (lastChild instanceof Text) {
+            ((Text) lastChild).appendData(text);
+        } else {
+            element.appendChild(document.createTextNode(text));
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static class PathNode {
+        private final Map<String, PathNode> children = new HashMap<>();
+        private final List<CustomValidator> rules = new ArrayList<>();
+
+        /**
+         * Rules that only check which children are present
+         */
+        private final List<CustomValidator> childPresenceRules = new ArrayList<>();
+
+        /**
+         * Set when a rule on one of the children needs access to siblings
+         */
+        private boolean buildForChildren;
+    }
+
+    /**
+     * Element currently being read
+     */
+    private static class Frame {
+        private final String name;
+        private final PathNode node;
+
+        /**
+         * Set when the element has text or child elements
+         */
+        private boolean hasContent;
+
+        /**
+         * Element with placeholders for the names of non-empty children - only when needed by child presence rules
+         */
+        private Element childPresenceElement;
+        private Set<String> childNames;
+
+        private Frame(String name, PathNode node) {
+            this.name = name;
+            this.node = node;
+        }
+    }
+
+    private static class Match {
+        private final CustomValidator rule;
+        private final Node node;
+
+        private Match(CustomValidator rule, Node node) {
+            this.rule = rule;
+            this.node = node;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.validation;
+
+import org.json.simple.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A single validation report in a compact binary layout - gzipped XML and encoded validation events.
+ *
+ * The JSON-view used by the admin page is generated on request.
+ */
+public class ValidationReport implements Serializable {
+
+    private final String validationRef;
+    private final byte[] compressedXml;
+    private final byte[] events;
+
+    private ValidationReport(String validationRef, byte[] compressedXml, byte[] events) {
+        this.validationRef = validationRef;
+        this.compressedXml = compressedXml;
+        this.events = events;
+    }
+
+    static ValidationReport create(String validationRef, byte[] xml,
+                                   SiriValidationEventHandler schemaEvents,
+                                   SiriValidationEventHandler profileEvents) throws IOException {
+
+        ByteArrayOutputStream xmlBytes = new ByteArrayOutputStream(xml.length / 8);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(xmlBytes)) {
+            gzipOut.write(xml);
+        }
+
+        ByteArrayOutputStream eventBytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(eventBytes)) {
+            schemaEvents.writeTo(out);
+            profileEvents.writeTo(out);
+        }
+
+        return new ValidationReport(validationRef, xmlBytes.toByteArray(), eventBytes.toByteArray());
+    }
+
+    String getValidationRef() {
+        return validationRef;
+    }
+
+    /**
+     * @return Number of bytes used by this report
+     */
+    int getSize() {
+        return compressedXml.length + events.length + validationRef.length();
+    }
+
+    String getXml() throws IOException {
+        try (GZIPInputStream gzipIn = new GZIPInputStream(new ByteArrayInputStream(compressedXml))) {
+            return new String(gzipIn.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    JSONObject toJSON() throws IOException {
+        JSONObject report = new JSONObject();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(events))) {
+            report.put("schema", SiriValidationEventHandler.readJSON(in));
+            report.put("profile", SiriValidationEventHandler.readJSON(in));
+        }
+        report.put("validationRef", validationRef);
+        return report;
+    }
+}
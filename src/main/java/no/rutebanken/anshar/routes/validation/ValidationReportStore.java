@@ -0,0 +1,83 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.validation;
+
+import com.hazelcast.map.IMap;
+import no.rutebanken.anshar.config.AnsharConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores validation reports in a size-bounded ring per subscription. Reports are appended on the owning
+ * member, and oldest reports are evicted when the configured byte budget is exceeded.
+ */
+@Component
+public class ValidationReportStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ValidationReportStore.class);
+
+    @Autowired
+    @Qualifier("getValidationReportMap")
+    private IMap<String, ValidationReports> validationReports;
+
+    @Autowired
+    private AnsharConfiguration configuration;
+
+    void addReport(String subscriptionId, ValidationReport report) {
+        final long maxTotalSize = configuration.getMaxTotalXmlSizeOfValidation() * 1024L * 1024L;
+
+        final Integer evicted = validationReports.executeOnKey(subscriptionId,
+            new AddValidationReportEntryProcessor(report, maxTotalSize,
+                configuration.getMaxNumberOfValidations(),
+                configuration.getNumberOfHoursToKeepValidation()
+            )
+        );
+
+        if (evicted != null && evicted > 0) {
+            logger.info("Reached limit for validation reports, evicted {} oldest reports for {}", evicted, subscriptionId);
+        }
+    }
+
+    List<ValidationReport> getReports(String subscriptionId) {
+        final ValidationReports reports = validationReports.get(subscriptionId);
+        if (reports == null) {
+            return Collections.emptyList();
+        }
+        return reports.getReports();
+    }
+
+    String getXml(String subscriptionId, String validationRef) throws IOException {
+        if (subscriptionId == null || validationRef == null) {
+            return null;
+        }
+        final ValidationReport report = validationReports.executeOnKey(subscriptionId,
+            new FindValidationReportEntryProcessor(validationRef)
+        );
+        return report != null ? report.getXml() : null;
+    }
+
+    void clear(String subscriptionId) {
+        validationReports.delete(subscriptionId);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.validation;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Size-bounded ring of validation reports for a single subscription - oldest reports are evicted when
+ * either the byte budget or max number of reports is exceeded.
+ */
+public class ValidationReports implements Serializable {
+
+    private final Deque<ValidationReport> reports = new ArrayDeque<>();
+    private long totalSize;
+
+    /**
+     * @return Number of evicted reports
+     */
+    int add(ValidationReport report, long maxTotalSize, int maxCount) {
+        reports.addLast(report);
+        totalSize += report.getSize();
+
+        int evicted = 0;
+        // Newest report is always kept
+        while (reports.size() > 1 && (totalSize > maxTotalSize || reports.size() > maxCount)) {
+            totalSize -= reports.removeFirst().getSize();
+            evicted++;
+        }
+        return evicted;
+    }
+
+    List<ValidationReport> getReports() {
+        return new ArrayList<>(reports);
+    }
+
+    ValidationReport getReport(String validationRef) {
+        for (ValidationReport report : reports) {
+            if (report.getValidationRef().equals(validationRef)) {
+                return report;
+            }
+        }
+        return null;
+    }
+
+    long getTotalSize() {
+        return totalSize;
+    }
+}
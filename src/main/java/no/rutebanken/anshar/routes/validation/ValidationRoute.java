@@ -68,7 +68,7 @@ public class ValidationRoute extends RestRouteBuilder {
         ;
 
         from("direct:validation.siri")
-                .bean(siriXmlValidator, "getValidatedSiri(${header." + PARAM_VALIDATION_REF + "})")
+                .bean(siriXmlValidator, "getValidatedSiri(${header." + PARAM_SUBSCRIPTION_ID + "}, ${header." + PARAM_VALIDATION_REF + "})")
                 .to("direct:removeHeaders")
                 .setHeader("Content-Disposition", simple("attachment; filename=\"SIRI.xml\""))
                 .routeId("admin.validation.siri")
@@ -0,0 +1,76 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.routes.validation;
+
+import no.rutebanken.anshar.config.AnsharConfiguration;
+import no.rutebanken.anshar.subscription.SubscriptionSetup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which deliveries are validated for each subscription - every Nth delivery, and/or max number of
+ * validations per minute.
+ */
+@Component
+public class ValidationSampler {
+
+    @Autowired
+    private AnsharConfiguration configuration;
+
+    private final Map<String, SamplingState> samplingStates = new ConcurrentHashMap<>();
+
+    boolean isSampled(SubscriptionSetup subscriptionSetup) {
+        final int sampleRate = subscriptionSetup.getValidationSampleRate() != null ?
+            subscriptionSetup.getValidationSampleRate() : configuration.getValidationSampleRate();
+
+        final int maxPerMinute = subscriptionSetup.getValidationMaxPerMinute() != null ?
+            subscriptionSetup.getValidationMaxPerMinute() : configuration.getValidationMaxPerMinute();
+
+        return samplingStates
+            .computeIfAbsent(subscriptionSetup.getSubscriptionId(), id -> new SamplingState())
+            .sample(sampleRate, maxPerMinute, System.currentTimeMillis());
+    }
+
+    static class SamplingState {
+        private long deliveryCount;
+        private long currentMinute;
+        private int sampledInCurrentMinute;
+
+        synchronized boolean sample(int sampleRate, int maxPerMinute, long timestamp) {
+            deliveryCount++;
+            if (sampleRate > 1 && (deliveryCount - 1) % sampleRate != 0) {
+                return false;
+            }
+
+            if (maxPerMinute > 0) {
+                final long minute = timestamp / 60000;
+                if (minute != currentMinute) {
+                    currentMinute = minute;
+                    sampledInCurrentMinute = 0;
+                }
+                if (sampledInCurrentMinute >= maxPerMinute) {
+                    return false;
+                }
+                sampledInCurrentMinute++;
+            }
+            return true;
+        }
+    }
+}
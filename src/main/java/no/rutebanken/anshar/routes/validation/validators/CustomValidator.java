@@ -62,6 +62,25 @@ public abstract class CustomValidator {
     public abstract String getXpath();
     public abstract ValidationEvent isValid(Node node);
 
+    /**
+     * Rules that look up siblings of the validated node must return true - the parent-element will then be
+     * available during validation
+     * @return
+     */
+    public boolean isSiblingAccessRequired() {
+        return false;
+    }
+
+    /**
+     * Rules that only check which child elements are present - with verifyRequiredFields/verifyNonExistingFields -
+     * may return true. When validating a stream, the node is then given with empty placeholders for its non-empty
+     * children instead of the complete subtree
+     * @return
+     */
+    public boolean isChildPresenceOnly() {
+        return false;
+    }
+
     /**
      * General, default categoryname if implementing class does not override method
      * @return
@@ -37,6 +37,11 @@ public abstract class ServiceDeliveryInvalidFieldsValidator extends CustomValida
         return FIELDNAME + " for this SubscriptionType";
     }
 
+    @Override
+    public boolean isChildPresenceOnly() {
+        return true;
+    }
+
     /**
      * Verifies that the string-value of the provided node is built up using the pattern defined
      * @param node
@@ -46,6 +46,11 @@ public class EstimatedCallInvalidFieldsValidator extends CustomValidator {
         return path;
     }
 
+    @Override
+    public boolean isChildPresenceOnly() {
+        return true;
+    }
+
     @Override
     public ValidationEvent isValid(Node node) {
         return verifyNonExistingFields(node, FIELDNAME,"EarliestExpectedDepartureTime", "VisitNumber");
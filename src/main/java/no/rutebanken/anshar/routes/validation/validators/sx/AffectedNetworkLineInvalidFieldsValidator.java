@@ -48,6 +48,11 @@ public class AffectedNetworkLineInvalidFieldsValidator extends CustomValidator {
         return FIELDNAME;
     }
 
+    @Override
+    public boolean isChildPresenceOnly() {
+        return true;
+    }
+
     @Override
     public ValidationEvent isValid(Node node) {
         return verifyNonExistingFields(node, FIELDNAME,"AffectedOperator");
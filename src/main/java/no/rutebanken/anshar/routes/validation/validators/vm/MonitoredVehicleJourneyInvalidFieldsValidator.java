@@ -45,6 +45,11 @@ public class MonitoredVehicleJourneyInvalidFieldsValidator extends NsrQuayValida
         return FIELDNAME;
     }
 
+    @Override
+    public boolean isChildPresenceOnly() {
+        return true;
+    }
+
     @Override
     public ValidationEvent isValid(Node node) {
         return verifyNonExistingFields(node, FIELDNAME,
@@ -60,6 +60,11 @@ public class MonitoredVehicleJourneyValidator extends NsrQuayValidator {
         return FIELDNAME;
     }
 
+    @Override
+    public boolean isChildPresenceOnly() {
+        return true;
+    }
+
     @Override
     public ValidationEvent isValid(Node node) {
         return verifyRequiredFields(node, FIELDNAME,
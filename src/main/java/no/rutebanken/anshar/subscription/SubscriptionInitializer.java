@@ -17,6 +17,7 @@ package no.rutebanken.anshar.subscription;
 
 import com.google.common.base.Preconditions;
 import no.rutebanken.anshar.config.AnsharConfiguration;
+import no.rutebanken.anshar.routes.policy.PollingSubscriptionScheduler;
 import no.rutebanken.anshar.routes.siri.Siri20ToSiriRS14Subscription;
 import no.rutebanken.anshar.routes.siri.Siri20ToSiriRS20RequestResponse;
 import no.rutebanken.anshar.routes.siri.Siri20ToSiriRS20Subscription;
@@ -75,6 +76,9 @@ public class SubscriptionInitializer implements CamelContextAware {
     @Autowired
     private AnsharConfiguration configuration;
 
+    @Autowired
+    private PollingSubscriptionScheduler pollingScheduler;
+
     @Value("${anshar.reduced.logging.override.names}")
     List<String> reducedLoggingOverrideNames = new ArrayList<>();
 
@@ -266,10 +270,10 @@ public class SubscriptionInitializer implements CamelContextAware {
                 if (isSubscription || isFetchedDelivery) {
                     routeBuilders.add(new Siri20ToSiriWS14Subscription(configuration, handler, subscriptionSetup, subscriptionManager));
                 } else {
-                    routeBuilders.add(new Siri20ToSiriWS14RequestResponse(configuration, subscriptionSetup, subscriptionManager));
+                    routeBuilders.add(new Siri20ToSiriWS14RequestResponse(configuration, subscriptionSetup, subscriptionManager, pollingScheduler));
                 }
                 if (isFetchedDelivery) {
-                    routeBuilders.add(new Siri20ToSiriWS14RequestResponse(configuration, subscriptionSetup, subscriptionManager));
+                    routeBuilders.add(new Siri20ToSiriWS14RequestResponse(configuration, subscriptionSetup, subscriptionManager, pollingScheduler));
                 }
             } else {
                 routeBuilders.add(new Siri20ToSiriRS14Subscription(configuration, handler, subscriptionSetup, subscriptionManager));
@@ -280,20 +284,20 @@ public class SubscriptionInitializer implements CamelContextAware {
                     routeBuilders.add(new Siri20ToSiriWS20Subscription(configuration, handler, subscriptionSetup, subscriptionManager));
 
                     if (isFetchedDelivery || subscriptionSetup.isDataSupplyRequestForInitialDelivery()) {
-                        routeBuilders.add(new Siri20ToSiriWS20RequestResponse(configuration, subscriptionSetup, subscriptionManager));
+                        routeBuilders.add(new Siri20ToSiriWS20RequestResponse(configuration, subscriptionSetup, subscriptionManager, pollingScheduler));
                     }
                 } else {
-                    routeBuilders.add(new Siri20ToSiriWS20RequestResponse(configuration, subscriptionSetup, subscriptionManager));
+                    routeBuilders.add(new Siri20ToSiriWS20RequestResponse(configuration, subscriptionSetup, subscriptionManager, pollingScheduler));
                 }
             } else {
                 if (isSubscription || isFetchedDelivery) {
                     routeBuilders.add(new Siri20ToSiriRS20Subscription(configuration, handler, subscriptionSetup, subscriptionManager));
 
                     if (isFetchedDelivery || subscriptionSetup.isDataSupplyRequestForInitialDelivery()) {
-                        routeBuilders.add(new Siri20ToSiriRS20RequestResponse(configuration, subscriptionSetup, subscriptionManager));
+                        routeBuilders.add(new Siri20ToSiriRS20RequestResponse(configuration, subscriptionSetup, subscriptionManager, pollingScheduler));
                     }
                 } else {
-                    routeBuilders.add(new Siri20ToSiriRS20RequestResponse(configuration, subscriptionSetup, subscriptionManager));
+                    routeBuilders.add(new Siri20ToSiriRS20RequestResponse(configuration, subscriptionSetup, subscriptionManager, pollingScheduler));
                 }
             }
         }
@@ -21,6 +21,7 @@ import com.hazelcast.replicatedmap.ReplicatedMap;
 import no.rutebanken.anshar.config.AnsharConfiguration;
 import no.rutebanken.anshar.data.*;
 import no.rutebanken.anshar.routes.health.HealthManager;
+import no.rutebanken.anshar.routes.policy.PollingSubscriptionScheduler;
 import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
 import no.rutebanken.anshar.subscription.helpers.RequestType;
 import org.apache.commons.io.FileUtils;
@@ -114,6 +115,9 @@ public class SubscriptionManager {
     @Autowired
     private RequestorRefRepository requestorRefRepository;
 
+    @Autowired
+    private PollingSubscriptionScheduler pollingScheduler;
+
     public void addSubscription(String subscriptionId, SubscriptionSetup setup) {
 
         subscriptions.put(subscriptionId, setup);
@@ -129,12 +133,14 @@ public class SubscriptionManager {
     }
 
     public boolean removeSubscription(String subscriptionId, boolean force) {
-        SubscriptionSetup setup = subscriptions.remove(subscriptionId);
+        // Only removed when forced - polling is cancelled on all members when the subscription is gone
+        SubscriptionSetup setup = force ? subscriptions.remove(subscriptionId) : subscriptions.get(subscriptionId);
 
         boolean found = (setup != null);
 
         if (force) {
             logger.info("Completely deleting subscription by request.");
+            pollingScheduler.cancel(subscriptionId);
             activatedTimestamp.remove(subscriptionId);
             lastActivity.remove(subscriptionId);
             hitcount.remove(subscriptionId);
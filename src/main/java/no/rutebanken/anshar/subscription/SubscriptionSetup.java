@@ -76,6 +76,17 @@ public class SubscriptionSetup implements Serializable {
     private DataNotReceivedAction dataNotReceivedAction;
     private String validationFilter;
 
+    /*
+     * Sampling of validation - overrides configured defaults when set
+     */
+    private Integer validationSampleRate;
+    private Integer validationMaxPerMinute;
+
+    /*
+     * Share of inbound processing compared to other subscriptions - overrides configured default when set
+     */
+    private Integer inboundWeight;
+
     private boolean forwardPositionData;
 
     private boolean useProvidedCodespaceId = false;
@@ -418,6 +429,39 @@ public class SubscriptionSetup implements Serializable {
         return validationFilter;
     }
 
+    /**
+     * Validate every Nth delivery
+     */
+    public Integer getValidationSampleRate() {
+        return validationSampleRate;
+    }
+
+    public void setValidationSampleRate(Integer validationSampleRate) {
+        this.validationSampleRate = validationSampleRate;
+    }
+
+    /**
+     * Max number of validated deliveries per minute
+     */
+    public Integer getValidationMaxPerMinute() {
+        return validationMaxPerMinute;
+    }
+
+    public void setValidationMaxPerMinute(Integer validationMaxPerMinute) {
+        this.validationMaxPerMinute = validationMaxPerMinute;
+    }
+
+    /**
+     * Number of queued deliveries processed in turn before other subscriptions
+     */
+    public Integer getInboundWeight() {
+        return inboundWeight;
+    }
+
+    public void setInboundWeight(Integer inboundWeight) {
+        this.inboundWeight = inboundWeight;
+    }
+
     public boolean enrichSiriData() {
         return enrichSiriData;
     }
@@ -0,0 +1,83 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.util;
+
+/**
+ * Named thread-pools used for async tasks
+ */
+public enum ExecutorPool {
+    /**
+     * Updates change-trackers for polling clients after each request
+     */
+    CHANGE_TRACKER("change-tracker", 4, 10000),
+    /**
+     * Pushes updated data to outbound subscriptions
+     */
+    OUTBOUND_PUSH("outbound-push", 8, 1000),
+    /**
+     * Sends initial delivery to new outbound subscriptions
+     */
+    INITIAL_DELIVERY("initial-delivery", 2, 100),
+    /**
+     * Processes incoming deliveries from the inbound admission queues
+     */
+    INBOUND("inbound", 20, 10000),
+    /**
+     * Reads values for cache updates published by other members
+     */
+    CACHE_UPDATE("cache-update", 2, 10000),
+    /**
+     * Polls REQUEST_RESPONSE and POLLING_FETCHED_DELIVERY subscriptions - polls are skipped when the queue is full
+     */
+    POLLING("polling", 16, 1000, true),
+    /**
+     * Validates incoming data - tasks are dropped when the queue is full
+     */
+    VALIDATION("validation", 2, 20, true);
+
+    private final String poolName;
+    private final int defaultThreads;
+    private final int defaultQueueSize;
+    private final boolean dropWhenFull;
+
+    ExecutorPool(String poolName, int defaultThreads, int defaultQueueSize) {
+        this(poolName, defaultThreads, defaultQueueSize, false);
+    }
+
+    ExecutorPool(String poolName, int defaultThreads, int defaultQueueSize, boolean dropWhenFull) {
+        this.poolName = poolName;
+        this.defaultThreads = defaultThreads;
+        this.defaultQueueSize = defaultQueueSize;
+        this.dropWhenFull = dropWhenFull;
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    int getDefaultThreads() {
+        return defaultThreads;
+    }
+
+    int getDefaultQueueSize() {
+        return defaultQueueSize;
+    }
+
+    boolean isDropWhenFull() {
+        return dropWhenFull;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed under the EUPL, Version 1.2 or – as soon they will be approved by
+ * the European Commission - subsequent versions of the EUPL (the "Licence");
+ * You may not use this work except in compliance with the Licence.
+ * You may obtain a copy of the Licence at:
+ *
+ *   https://joinup.ec.europa.eu/software/page/eupl
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the Licence is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the Licence for the specific language governing permissions and
+ * limitations under the Licence.
+ */
+
+
+package no.rutebanken.anshar.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import no.rutebanken.anshar.metrics.PrometheusMetricsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded, named thread-pools for async tasks - replaces creating a new thread for every task.
+ *
+ * Pool-size and queue-size are configured per pool with
+ *   anshar.executor.[pool-name].threads
+ *   anshar.executor.[pool-name].queue.size
+ *
+ * When the queue is full, the task is executed by the calling thread - i.e. the caller is slowed down instead
+ * of the task being lost. Pools marked as dropWhenFull drop the task instead.
+ */
+@Service
+public class ManagedExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManagedExecutors.class);
+
+    private static final String BREADCRUMB_ID = "camel.breadcrumbId";
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private PrometheusMetricsService metrics;
+
+    private final Map<ExecutorPool, ThreadPoolExecutor> executors = new EnumMap<>(ExecutorPool.class);
+
+    /**
+     * Latest pending task per key for coalesced tasks
+     */
+    private final Map<String, Runnable> pendingTasks = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        for (ExecutorPool pool : ExecutorPool.values()) {
+            int threads = environment.getProperty("anshar.executor." + pool.getPoolName() + ".threads", Integer.class, pool.getDefaultThreads());
+            int queueSize = environment.getProperty("anshar.executor." + pool.getPoolName() + ".queue.size", Integer.class, pool.getDefaultQueueSize());
+
+            RejectedExecutionHandler rejectionHandler = (task, executor) -> {
+                metrics.countRejectedTask(pool.getPoolName());
+                if (pool.isDropWhenFull()) {
+                    throw new RejectedExecutionException("Queue is full for pool " + pool.getPoolName());
+                }
+                if (!executor.isShutdown()) {
+                    task.run();
+                }
+            };
+
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueSize),
+                    new ThreadFactoryBuilder().setNameFormat("anshar-" + pool.getPoolName() + "-%d").setDaemon(true).build(),
+                    rejectionHandler
+            );
+            executor.allowCoreThreadTimeOut(true);
+
+            metrics.registerExecutor(pool.getPoolName(), executor);
+            executors.put(pool, executor);
+
+            logger.info("Initialized executor {} with {} threads, queue size {}", pool.getPoolName(), threads, queueSize);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executors.values().forEach(ThreadPoolExecutor::shutdown);
+    }
+
+    /**
+     * Executes task async in the given pool. MDC-breadcrumbId of the calling thread is kept.
+     */
+    public void execute(ExecutorPool pool, Runnable task) {
+        tryExecute(pool, task);
+    }
+
+    /**
+     * Executes task async in the given pool.
+     *
+     * @return false if the task was dropped because the queue is full
+     */
+    public boolean tryExecute(ExecutorPool pool, Runnable task) {
+        try {
+            executors.get(pool).execute(withBreadcrumbId(task));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Executes task async in the given pool. If a task with the same key is already waiting to be executed, that
+     * task is replaced, and only the latest submitted task is executed.
+     */
+    public void executeCoalesced(ExecutorPool pool, String key, Runnable task) {
+        final String taskKey = pool.getPoolName() + ":" + key;
+
+        if (pendingTasks.put(taskKey, withBreadcrumbId(task)) != null) {
+            // Previous task not started yet - will execute this task instead
+            metrics.countCoalescedTask(pool.getPoolName());
+            return;
+        }
+        executors.get(pool).execute(() -> {
+            final Runnable latestTask = pendingTasks.remove(taskKey);
+            if (latestTask != null) {
+                latestTask.run();
+            }
+        });
+    }
+
+    private static Runnable withBreadcrumbId(Runnable task) {
+        final String breadcrumbId = MDC.get(BREADCRUMB_ID);
+        return () -> {
+            // Rejected tasks are executed by the calling thread - restore its MDC afterwards
+            final String previousBreadcrumbId = MDC.get(BREADCRUMB_ID);
+            try {
+                if (breadcrumbId != null) {
+                    MDC.put(BREADCRUMB_ID, breadcrumbId);
+                }
+                task.run();
+            } catch (Exception e) {
+                //Catch everything to avoid thread being killed
+                logger.warn("Exception caught when executing async task", e);
+            } finally {
+                if (previousBreadcrumbId != null) {
+                    MDC.put(BREADCRUMB_ID, previousBreadcrumbId);
+                } else {
+                    MDC.remove(BREADCRUMB_ID);
+                }
+            }
+        };
+    }
+}
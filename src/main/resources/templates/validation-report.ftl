@@ -34,7 +34,7 @@
                     <td data-toggle="collapse" data-target="#accordion${validation?counter}" >${validation.schema.timestamp?number_to_datetime}</td>
                     <td data-toggle="collapse" data-target="#accordion${validation?counter}" >${validation.schema.errorCount?c}</td>
                     <td data-toggle="collapse" data-target="#accordion${validation?counter}" >${validation.profile.errorCount?c}</td>
-                    <td><a href="siri?validationRef=${validation.validationRef}">XML <span class="glyphicon glyphicon-download"></span></a></td>
+                    <td><a href="siri?subscriptionId=${body.subscription.subscriptionId?url}&validationRef=${validation.validationRef}">XML <span class="glyphicon glyphicon-download"></span></a></td>
                 </tr>
                 <tr id="accordion${validation?counter}" class="collapse">
                     <td colspan="5">
@@ -160,7 +160,7 @@
         <sup><span class="glyphicon glyphicon-info-sign text-info"></span></sup>
         Switching on validation will remove all previous validation reports, and start validation of all incoming ServiceDeliveries<br />
         If the optional filter has been provided before switching on the report it will only validate ServiceDeliveries that contain the given string.<br />
-        Validation will automatically be disabled when size limit has been reached.<br />
+        Oldest reports are removed when size limit has been reached.<br />
         Validationresults will be kept for ${body.config.persistPeriodHours} hours.
     </div>
 </div>
@@ -0,0 +1,148 @@
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChangeLogTrackerTest extends SpringBootBaseTest {
+
+    @Autowired
+    private ExtendedHazelcastService hazelcastService;
+
+    private ChangeTracker tracker;
+
+    @BeforeEach
+    public void init() {
+        tracker = createTracker();
+    }
+
+    /**
+     * Separate structures to avoid interference with the repositories - shared by all trackers, as on other members
+     */
+    private ChangeTracker createTracker() {
+        HazelcastInstance hazelcast = hazelcastService.getHazelcastInstance();
+        IMap<String, Set<SiriObjectStorageKey>> pendingChanges = hazelcast.getMap("anshar.test.changelog.pending");
+        Ringbuffer<Set<SiriObjectStorageKey>> changeLog = hazelcast.getRingbuffer("anshar.test.changelog");
+        IMap<String, Long> cursors = hazelcast.getMap("anshar.test.changelog.cursors");
+
+        return new ChangeLogTracker(pendingChanges, changeLog, cursors);
+    }
+
+    @Test
+    public void testUntrackedRequestor() {
+        assertNull(tracker.getChanges(UUID.randomUUID().toString()));
+    }
+
+    @Test
+    public void testChangesAfterCursorAreReturned() {
+        String requestorId = UUID.randomUUID().toString();
+
+        SiriObjectStorageKey before = createKey();
+        tracker.commit(Set.of(before));
+
+        assertNull(tracker.getChanges(requestorId));
+        tracker.update(requestorId, new HashSet<>(), 1, TimeUnit.MINUTES);
+
+        SiriObjectStorageKey first = createKey();
+        SiriObjectStorageKey second = createKey();
+        tracker.commit(Set.of(first));
+        tracker.commit(Set.of(first, second));
+
+        Set<SiriObjectStorageKey> changes = tracker.getChanges(requestorId);
+        assertEquals(Set.of(first, second), changes);
+
+        tracker.update(requestorId, new HashSet<>(), 1, TimeUnit.MINUTES);
+        assertTrue(tracker.getChanges(requestorId).isEmpty());
+    }
+
+    @Test
+    public void testRemainingChangesAreKept() {
+        String requestorId = UUID.randomUUID().toString();
+
+        assertNull(tracker.getChanges(requestorId));
+        tracker.update(requestorId, new HashSet<>(), 1, TimeUnit.MINUTES);
+
+        SiriObjectStorageKey first = createKey();
+        SiriObjectStorageKey second = createKey();
+        tracker.commit(Set.of(first, second));
+
+        Set<SiriObjectStorageKey> changes = tracker.getChanges(requestorId);
+        assertEquals(2, changes.size());
+
+        // Only first is returned to requestor
+        changes.remove(first);
+        tracker.update(requestorId, changes, 1, TimeUnit.MINUTES);
+
+        SiriObjectStorageKey third = createKey();
+        tracker.commit(Set.of(third));
+
+        assertEquals(Set.of(second, third), tracker.getChanges(requestorId));
+    }
+
+    @Test
+    public void testRequestorsAreIndependent() {
+        String requestorA = UUID.randomUUID().toString();
+        String requestorB = UUID.randomUUID().toString();
+
+        tracker.getChanges(requestorA);
+        tracker.update(requestorA, new HashSet<>(), 1, TimeUnit.MINUTES);
+        tracker.getChanges(requestorB);
+        tracker.update(requestorB, new HashSet<>(), 1, TimeUnit.MINUTES);
+
+        SiriObjectStorageKey first = createKey();
+        tracker.commit(Set.of(first));
+
+        assertEquals(Set.of(first), tracker.getChanges(requestorA));
+        tracker.update(requestorA, new HashSet<>(), 1, TimeUnit.MINUTES);
+
+        SiriObjectStorageKey second = createKey();
+        tracker.commit(Set.of(second));
+
+        assertEquals(Set.of(second), tracker.getChanges(requestorA));
+        assertEquals(Set.of(first, second), tracker.getChanges(requestorB));
+    }
+
+    @Test
+    public void testUpdateWithoutReadKeepsCursor() {
+        String requestorId = UUID.randomUUID().toString();
+
+        assertNull(tracker.getChanges(requestorId));
+        tracker.update(requestorId, new HashSet<>(), 1, TimeUnit.MINUTES);
+
+        SiriObjectStorageKey first = createKey();
+        tracker.commit(Set.of(first));
+
+        // Changes have not been read through this tracker
+        createTracker().update(requestorId, new HashSet<>(), 1, TimeUnit.MINUTES);
+
+        assertEquals(Set.of(first), tracker.getChanges(requestorId));
+    }
+
+    @Test
+    public void testUpdateWithoutReadForUntrackedRequestor() {
+        String requestorId = UUID.randomUUID().toString();
+
+        createTracker().update(requestorId, new HashSet<>(), 1, TimeUnit.MINUTES);
+
+        // Still untracked - full resync
+        assertNull(tracker.getChanges(requestorId));
+    }
+
+    private static SiriObjectStorageKey createKey() {
+        return new SiriObjectStorageKey("TST", "TST:Line:1", UUID.randomUUID().toString());
+    }
+}
@@ -0,0 +1,91 @@
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.AbstractMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LimitedKeysAggregatorTest {
+
+    private final SiriObjectStorageKey first = new SiriObjectStorageKey("AAA", "AAA:Line:1", "1");
+    private final SiriObjectStorageKey second = new SiriObjectStorageKey("AAA", "AAA:Line:1", "2");
+    private final SiriObjectStorageKey third = new SiriObjectStorageKey("BBB", "BBB:Line:1", "3");
+    private final SiriObjectStorageKey fourth = new SiriObjectStorageKey("BBB", "BBB:Line:1", "4");
+
+    private final InternalSerializationService serializationService = new DefaultSerializationServiceBuilder()
+        .setConfig(new SerializationConfig().addSerializerConfig(new SerializerConfig()
+            .setTypeClass(SiriObjectStorageKey.class)
+            .setImplementation(new SiriObjectStorageKeySerializer())))
+        .build();
+
+    @Test
+    public void testSizeIsLimitedOnEachMember() {
+        LimitedKeysAggregator<SiriObjectStorageKey, String> member1 = new LimitedKeysAggregator<>(2);
+        member1.accumulate(entry(first));
+        member1.accumulate(entry(second));
+        member1.accumulate(entry(third));
+
+        LimitedKeysAggregator<SiriObjectStorageKey, String> member2 = new LimitedKeysAggregator<>(2);
+        member2.accumulate(entry(fourth));
+
+        // Only the limited keys are sent from each member
+        LimitedKeysAggregator<SiriObjectStorageKey, String> caller = roundtrip(member1);
+        caller.combine(roundtrip(member2));
+
+        LimitedKeysAggregator.Result<SiriObjectStorageKey> result = caller.aggregate();
+
+        assertEquals(2, result.getKeys().size());
+        assertEquals(4, result.getMatchCount());
+        assertTrue(Set.of(first, second, third, fourth).containsAll(result.getKeys()));
+    }
+
+    @Test
+    public void testAllMatchesAreReturnedWithinLimit() {
+        LimitedKeysAggregator<SiriObjectStorageKey, String> member1 = new LimitedKeysAggregator<>(10);
+        member1.accumulate(entry(first));
+
+        LimitedKeysAggregator<SiriObjectStorageKey, String> member2 = new LimitedKeysAggregator<>(10);
+        member2.accumulate(entry(third));
+
+        LimitedKeysAggregator<SiriObjectStorageKey, String> caller = roundtrip(member1);
+        caller.combine(roundtrip(member2));
+
+        LimitedKeysAggregator.Result<SiriObjectStorageKey> result = caller.aggregate();
+
+        assertEquals(Set.of(first, third), result.getKeys());
+        assertEquals(2, result.getMatchCount());
+    }
+
+    @Test
+    public void testPredicateFiltersByDataset() {
+        DatasetKeyPredicate<String> all = roundtrip(new DatasetKeyPredicate<>(null, null));
+        assertTrue(all.apply(entry(first)));
+        assertTrue(all.apply(entry(third)));
+
+        DatasetKeyPredicate<String> dataset = roundtrip(new DatasetKeyPredicate<>("AAA", null));
+        assertTrue(dataset.apply(entry(first)));
+        assertFalse(dataset.apply(entry(third)));
+
+        DatasetKeyPredicate<String> excluded = roundtrip(new DatasetKeyPredicate<>("AAA", List.of("AAA")));
+        assertFalse(excluded.apply(entry(first)));
+        assertTrue(excluded.apply(entry(third)));
+    }
+
+    private <T> T roundtrip(T object) {
+        return serializationService.toObject(serializationService.toData(object));
+    }
+
+    private static Map.Entry<SiriObjectStorageKey, String> entry(SiriObjectStorageKey key) {
+        return new AbstractMap.SimpleEntry<>(key, key.getKey());
+    }
+}
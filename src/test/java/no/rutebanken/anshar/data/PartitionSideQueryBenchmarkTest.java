@@ -0,0 +1,175 @@
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.internal.serialization.SerializationService;
+import com.hazelcast.internal.serialization.SerializationServiceSupport;
+import com.hazelcast.map.IMap;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the remote payload per ET-request on a local two-member cluster - fetching size-limited values for a change
+ * set, and filtering on the owning members when there is no change set.
+ *
+ * Network bytes are estimated as the serialized size of keys and values sent between the members for each approach,
+ * excluding protocol overhead. Hazelcast does not expose per-request network counters through public API.
+ */
+public class PartitionSideQueryBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionSideQueryBenchmarkTest.class);
+
+    private static final int NUMBER_OF_ENTRIES = 20000;
+    private static final int CHANGE_SET_SIZE = 200;
+    private static final int MAX_SIZE = 500;
+    private static final String[] CODESPACES = {"AAA", "BBB", "CCC", "DDD"};
+    private static final String PAYLOAD = "x".repeat(2000);
+
+    private static HazelcastInstance caller;
+    private static HazelcastInstance other;
+    private static IMap<SiriObjectStorageKey, String> map;
+    private static SerializationService serializationService;
+
+    @BeforeAll
+    public static void startCluster() {
+        final String clusterName = "benchmark-" + UUID.randomUUID();
+        caller = Hazelcast.newHazelcastInstance(createConfig(clusterName));
+        other = Hazelcast.newHazelcastInstance(createConfig(clusterName));
+        serializationService = ((SerializationServiceSupport) caller).getSerializationService();
+
+        map = caller.getMap("benchmark.et");
+        Map<SiriObjectStorageKey, String> entries = new HashMap<>();
+        for (int i = 0; i < NUMBER_OF_ENTRIES; i++) {
+            final String codespace = CODESPACES[i % CODESPACES.length];
+            entries.put(new SiriObjectStorageKey(codespace, codespace + ":Line:" + (i % 200),
+                codespace + ":ServiceJourney:" + i), PAYLOAD + i);
+        }
+        map.putAll(entries);
+        assertEquals(NUMBER_OF_ENTRIES, other.getMap("benchmark.et").size());
+    }
+
+    @AfterAll
+    public static void stopCluster() {
+        other.shutdown();
+        caller.shutdown();
+    }
+
+    private static Config createConfig(String clusterName) {
+        Config config = new Config();
+        config.setClusterName(clusterName);
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.getNetworkConfig().setPort(5901).setPortCount(100).setPortAutoIncrement(true);
+
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(true).addMember("127.0.0.1");
+
+        config.getSerializationConfig().addSerializerConfig(new SerializerConfig()
+            .setTypeClass(SiriObjectStorageKey.class)
+            .setImplementation(new SiriObjectStorageKeySerializer()));
+        return config;
+    }
+
+    @Test
+    public void testChangeSetRequest() {
+        final Set<SiriObjectStorageKey> changes = map.keySet().stream()
+            .limit(CHANGE_SET_SIZE)
+            .collect(Collectors.toSet());
+
+        // Keys are filtered on the caller, and only the requested values are fetched from their owners
+        final Set<SiriObjectStorageKey> requested = changes.stream()
+            .filter(key -> key.getCodespaceId().equals("AAA"))
+            .limit(MAX_SIZE)
+            .collect(Collectors.toSet());
+        final Map<SiriObjectStorageKey, String> fetched = map.getAll(requested);
+        assertEquals(requested, fetched.keySet());
+
+        long getAllBytes = 0;
+        for (SiriObjectStorageKey key : requested) {
+            if (isRemote(key)) {
+                getAllBytes += sizeOf(key) + sizeOf(fetched.get(key));
+            }
+        }
+
+        // Shipping the change set to every member in a predicate, and returning matching values
+        long predicateBytes = sizeOf(new HashSet<>(changes));
+        for (SiriObjectStorageKey key : requested) {
+            if (isRemote(key)) {
+                predicateBytes += sizeOf(key) + sizeOf(fetched.get(key));
+            }
+        }
+
+        logger.info("Change set of {} keys among {} entries, {} requested - getAll: ~{} remote bytes, " +
+                "predicate with change set: ~{} remote bytes", changes.size(), NUMBER_OF_ENTRIES, requested.size(),
+            getAllBytes, predicateBytes);
+
+        assertTrue(getAllBytes < predicateBytes);
+    }
+
+    @Test
+    public void testRequestWithoutChangeSet() {
+        final String datasetId = "BBB";
+
+        // Only size-limited keys are returned from each member, values are fetched for the globally limited keys
+        final LimitedKeysAggregator.Result<SiriObjectStorageKey> result = map.aggregate(
+            new LimitedKeysAggregator<>(MAX_SIZE), new DatasetKeyPredicate<>(datasetId, null));
+        assertEquals(MAX_SIZE, result.getKeys().size());
+        assertEquals(NUMBER_OF_ENTRIES / CODESPACES.length, result.getMatchCount());
+
+        final Map<SiriObjectStorageKey, String> fetched = map.getAll(result.getKeys());
+        assertEquals(result.getKeys(), fetched.keySet());
+
+        final List<SiriObjectStorageKey> remoteMatches = map.keySet().stream()
+            .filter(key -> key.getCodespaceId().equals(datasetId))
+            .filter(PartitionSideQueryBenchmarkTest::isRemote)
+            .collect(Collectors.toList());
+
+        // Keys returned by the remote member, and values fetched from it
+        long twoPhaseBytes = 0;
+        for (SiriObjectStorageKey key : remoteMatches.subList(0, Math.min(MAX_SIZE, remoteMatches.size()))) {
+            twoPhaseBytes += sizeOf(key);
+        }
+        for (SiriObjectStorageKey key : result.getKeys()) {
+            if (isRemote(key)) {
+                twoPhaseBytes += sizeOf(key) + sizeOf(fetched.get(key));
+            }
+        }
+
+        // Returning up to maxSize values from the remote member, before limiting on the caller
+        long entriesBytes = 0;
+        for (SiriObjectStorageKey key : remoteMatches.subList(0, Math.min(MAX_SIZE, remoteMatches.size()))) {
+            entriesBytes += sizeOf(key) + sizeOf(PAYLOAD);
+        }
+
+        logger.info("No change set, {} matches among {} entries, max size {} - keys then values: ~{} remote bytes, " +
+                "values from all members: ~{} remote bytes", result.getMatchCount(), NUMBER_OF_ENTRIES, MAX_SIZE,
+            twoPhaseBytes, entriesBytes);
+
+        assertTrue(twoPhaseBytes < entriesBytes);
+    }
+
+    private static boolean isRemote(SiriObjectStorageKey key) {
+        return !caller.getPartitionService().getPartition(key).getOwner().localMember();
+    }
+
+    private static long sizeOf(Object object) {
+        return serializationService.toData(object).totalSize();
+    }
+}
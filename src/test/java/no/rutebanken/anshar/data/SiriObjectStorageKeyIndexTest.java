@@ -0,0 +1,129 @@
+package no.rutebanken.anshar.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SiriObjectStorageKeyIndexTest {
+
+    @Test
+    public void testLookupByCodespace() {
+        SiriObjectStorageKeyIndex index = new SiriObjectStorageKeyIndex();
+        SiriObjectStorageKey keyA = new SiriObjectStorageKey("TST", "TST:Line:1", UUID.randomUUID().toString());
+        SiriObjectStorageKey keyB = new SiriObjectStorageKey("TST", "TST:Line:2", UUID.randomUUID().toString());
+        SiriObjectStorageKey keyC = new SiriObjectStorageKey("ABC", "ABC:Line:1", UUID.randomUUID().toString());
+
+        index.add(keyA);
+        index.add(keyB);
+        index.add(keyC);
+
+        assertEquals(Set.of(keyA, keyB), index.getByCodespaceId("TST"));
+        assertEquals(Set.of(keyC), index.getByCodespaceId("ABC"));
+        assertTrue(index.getByCodespaceId("XYZ").isEmpty());
+    }
+
+    @Test
+    public void testLookupByMappedLineRef() {
+        SiriObjectStorageKeyIndex index = new SiriObjectStorageKeyIndex();
+        SiriObjectStorageKey key = new SiriObjectStorageKey("TST", "1234$TST:Line:1234", UUID.randomUUID().toString());
+
+        index.add(key);
+
+        assertEquals(Set.of(key), index.getByLineRef("1234"));
+        assertEquals(Set.of(key), index.getByLineRef("TST:Line:1234"));
+        assertEquals(Set.of(key), index.getByLineRef("1234$tst:line:1234"));
+        assertTrue(index.getByLineRef("TST:Line").isEmpty());
+        assertTrue(index.getByLineRef("tst:line:1234").isEmpty());
+    }
+
+    @Test
+    public void testLookupByUnmappedLineRefIgnoresCase() {
+        SiriObjectStorageKeyIndex index = new SiriObjectStorageKeyIndex();
+        SiriObjectStorageKey key = new SiriObjectStorageKey("TST", "TST:Line:1234", UUID.randomUUID().toString());
+
+        index.add(key);
+
+        assertEquals(Set.of(key), index.getByLineRef("TST:Line:1234"));
+        assertEquals(Set.of(key), index.getByLineRef("tst:line:1234"));
+    }
+
+    @Test
+    public void testRemove() {
+        SiriObjectStorageKeyIndex index = new SiriObjectStorageKeyIndex();
+        SiriObjectStorageKey keyA = new SiriObjectStorageKey("TST", "1234$TST:Line:1234", UUID.randomUUID().toString());
+        SiriObjectStorageKey keyB = new SiriObjectStorageKey("TST", "1234$TST:Line:1234", UUID.randomUUID().toString());
+
+        index.add(keyA);
+        index.add(keyB);
+        index.remove(keyA);
+
+        assertEquals(Set.of(keyB), index.getByCodespaceId("TST"));
+        assertEquals(Set.of(keyB), index.getByLineRef("1234"));
+
+        index.remove(keyB);
+
+        assertTrue(index.getByCodespaceId("TST").isEmpty());
+        assertTrue(index.getByLineRef("TST:Line:1234").isEmpty());
+    }
+
+    @Test
+    public void testNullLineRef() {
+        SiriObjectStorageKeyIndex index = new SiriObjectStorageKeyIndex();
+        SiriObjectStorageKey key = new SiriObjectStorageKey("TST", null, UUID.randomUUID().toString());
+
+        index.add(key);
+
+        assertEquals(Set.of(key), index.getByCodespaceId("TST"));
+        assertTrue(index.getByLineRef("null").isEmpty());
+
+        index.remove(key);
+        assertTrue(index.getByCodespaceId("TST").isEmpty());
+    }
+
+    /**
+     * Index lookup must return the same keys as a full scan of all keys - as done by the previous Predicate-based lookup
+     */
+    @Test
+    public void testIndexLookupMatchesScan() {
+        int numberOfKeys = 20_000;
+        int numberOfCodespaces = 20;
+        int numberOfLines = 200;
+
+        List<SiriObjectStorageKey> keys = new ArrayList<>(numberOfKeys);
+        SiriObjectStorageKeyIndex index = new SiriObjectStorageKeyIndex();
+        for (int i = 0; i < numberOfKeys; i++) {
+            String codespace = "C" + (i % numberOfCodespaces);
+            String line = (i % numberOfLines) + "$" + codespace + ":Line:" + (i % numberOfLines);
+            SiriObjectStorageKey key = new SiriObjectStorageKey(codespace, line, UUID.randomUUID().toString());
+            keys.add(key);
+            index.add(key);
+        }
+
+        for (int i = 0; i < numberOfLines; i++) {
+            String line = "C" + (i % numberOfCodespaces) + ":Line:" + i;
+            Set<SiriObjectStorageKey> scanResult = keys.stream()
+                    .filter(key -> SiriObjectStorageKeyIndex.matchesLineRef(key.getLineRef(), line))
+                    .collect(Collectors.toSet());
+
+            assertEquals(numberOfKeys / numberOfLines, scanResult.size());
+            assertEquals(scanResult, index.getByLineRef(line));
+        }
+
+        for (int i = 0; i < numberOfCodespaces; i++) {
+            String codespace = "C" + i;
+            Set<SiriObjectStorageKey> scanResult = keys.stream()
+                    .filter(key -> codespace.equals(key.getCodespaceId()))
+                    .collect(Collectors.toSet());
+
+            assertEquals(numberOfKeys / numberOfCodespaces, scanResult.size());
+            assertEquals(scanResult, index.getByCodespaceId(codespace));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.internal.serialization.SerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.SerializationUtils;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SiriObjectStorageKeySerializerTest {
+
+    private SerializationService serializationService;
+
+    @BeforeEach
+    public void init() {
+        SerializationConfig config = new SerializationConfig();
+        config.addSerializerConfig(new SerializerConfig()
+                .setTypeClass(SiriObjectStorageKey.class)
+                .setImplementation(new SiriObjectStorageKeySerializer()));
+
+        serializationService = new DefaultSerializationServiceBuilder().setConfig(config).build();
+    }
+
+    @Test
+    public void testRoundtrip() {
+        SiriObjectStorageKey key = new SiriObjectStorageKey("TST", "TST:Line:1234", UUID.randomUUID().toString());
+
+        final Data data = serializationService.toData(key);
+
+        assertEquals(key, serializationService.toObject(data));
+    }
+
+    @Test
+    public void testRoundtripNullValues() {
+        SiriObjectStorageKey key = new SiriObjectStorageKey("TST", null, UUID.randomUUID().toString());
+
+        assertEquals(key, serializationService.toObject(serializationService.toData(key)));
+    }
+
+    @Test
+    public void testRoundtripSet() {
+        Set<SiriObjectStorageKey> keys = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(new SiriObjectStorageKey("TST", "TST:Line:" + i, UUID.randomUUID().toString()));
+        }
+
+        assertEquals(keys, serializationService.toObject(serializationService.toData(keys)));
+    }
+
+    @Test
+    public void testSharedValuesAreInterned() {
+        SiriObjectStorageKey keyA = new SiriObjectStorageKey("TST", "TST:Line:1234", UUID.randomUUID().toString());
+        SiriObjectStorageKey keyB = new SiriObjectStorageKey("TST", "TST:Line:1234", UUID.randomUUID().toString());
+
+        SiriObjectStorageKey copyA = serializationService.toObject(serializationService.toData(keyA));
+        SiriObjectStorageKey copyB = serializationService.toObject(serializationService.toData(keyB));
+
+        assertSame(copyA.getCodespaceId(), copyB.getCodespaceId());
+        assertSame(copyA.getLineRef(), copyB.getLineRef());
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() {
+        SiriObjectStorageKey key = new SiriObjectStorageKey("TST", "TST:Line:1234", UUID.randomUUID().toString());
+
+        int javaSerializedSize = SerializationUtils.serialize(key).length;
+        int serializedSize = serializationService.toData(key).totalSize();
+
+        assertTrue(serializedSize < javaSerializedSize / 2,
+                "Expected less than half of " + javaSerializedSize + " bytes, got " + serializedSize);
+    }
+}
@@ -0,0 +1,114 @@
+package no.rutebanken.anshar.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StartTimeIndexTest {
+
+    private final SiriObjectStorageKey first = new SiriObjectStorageKey("TST", "TST:Line:1", "1");
+    private final SiriObjectStorageKey second = new SiriObjectStorageKey("TST", "TST:Line:1", "2");
+    private final SiriObjectStorageKey third = new SiriObjectStorageKey("TST", "TST:Line:2", "3");
+
+    @Test
+    public void testRangeRead() {
+        StartTimeIndex index = new StartTimeIndex();
+        final long now = 1_700_000_000L;
+
+        index.put(first, now + 10);
+        index.put(second, now + 600);
+        index.put(third, now + 3600);
+
+        assertEquals(Set.of(first), index.getStartingBeforeOrWithPatternChanges(now + 300));
+        assertEquals(Set.of(first, second), index.getStartingBeforeOrWithPatternChanges(now + 3600));
+        assertEquals(Set.of(first, second, third), index.getStartingBeforeOrWithPatternChanges(now + 3601));
+    }
+
+    @Test
+    public void testPartialMinuteIsFiltered() {
+        StartTimeIndex index = new StartTimeIndex();
+        final long minuteStart = 1_700_000_040L;
+
+        index.put(first, minuteStart + 5);
+        index.put(second, minuteStart + 50);
+
+        assertEquals(Set.of(first), index.getStartingBeforeOrWithPatternChanges(minuteStart + 30));
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        StartTimeIndex index = new StartTimeIndex();
+        final long now = 1_700_000_000L;
+
+        index.put(first, now + 3600);
+        assertFalse(index.getStartingBeforeOrWithPatternChanges(now + 60).contains(first));
+
+        // Start time changed
+        index.put(first, now);
+        assertTrue(index.getStartingBeforeOrWithPatternChanges(now + 60).contains(first));
+        assertEquals(1, index.size());
+
+        index.remove(first);
+        assertTrue(index.getStartingBeforeOrWithPatternChanges(now + 7200).isEmpty());
+    }
+
+    @Test
+    public void testPatternChangesAreIncluded() {
+        StartTimeIndex index = new StartTimeIndex();
+        final long now = 1_700_000_000L;
+
+        index.put(first, now + 3600);
+        index.addPatternChange(first);
+
+        assertEquals(Set.of(first), index.getStartingBeforeOrWithPatternChanges(now));
+
+        index.removePatternChange(first);
+        assertTrue(index.getStartingBeforeOrWithPatternChanges(now).isEmpty());
+    }
+
+    @Test
+    public void testClearDuringConcurrentUpdates() {
+        StartTimeIndex index = new StartTimeIndex();
+        final long now = 1_700_000_000L;
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                Future<?> writer = executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        SiriObjectStorageKey key = new SiriObjectStorageKey("TST", "TST:Line:1", "" + (i % 100));
+                        index.put(key, now + i);
+                        if (i % 3 == 0) {
+                            index.remove(key);
+                        }
+                    }
+                });
+                Future<?> clearer = executor.submit(() -> {
+                    for (int i = 0; i < 1_000; i++) {
+                        index.clearStartTimes();
+                        index.getStartingBeforeOrWithPatternChanges(now + i * 60L);
+                    }
+                });
+                writer.get();
+                clearer.get();
+            } finally {
+                executor.shutdownNow();
+            }
+        });
+
+        // Buckets are consistent with start times after concurrent clears
+        index.clearStartTimes();
+        index.put(first, now);
+        assertEquals(Set.of(first), index.getStartingBeforeOrWithPatternChanges(now + 200_000));
+        assertEquals(1, index.size());
+    }
+}
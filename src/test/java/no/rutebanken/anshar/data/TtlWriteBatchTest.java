@@ -0,0 +1,96 @@
+package no.rutebanken.anshar.data;
+
+import com.hazelcast.map.IMap;
+import no.rutebanken.anshar.data.collections.ExtendedHazelcastService;
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TtlWriteBatchTest extends SpringBootBaseTest {
+
+    @Autowired
+    private ExtendedHazelcastService hazelcastService;
+
+    private IMap<SiriObjectStorageKey, String> values;
+    private IMap<SiriObjectStorageKey, Long> linked;
+
+    private final SiriObjectStorageKey first = new SiriObjectStorageKey("TST", "TST:Line:1", "1");
+    private final SiriObjectStorageKey second = new SiriObjectStorageKey("TST", "TST:Line:1", "2");
+
+    @BeforeEach
+    public void init() {
+        values = hazelcastService.getHazelcastInstance().getMap("test.ttl.values." + UUID.randomUUID());
+        linked = hazelcastService.getHazelcastInstance().getMap("test.ttl.linked." + UUID.randomUUID());
+    }
+
+    @AfterEach
+    public void cleanup() {
+        values.destroy();
+        linked.destroy();
+    }
+
+    @Test
+    public void testTtlIsSetOnAllMaps() {
+        Map<SiriObjectStorageKey, Long> expirations = Map.of(first, 60_000L, second, 120_000L);
+
+        new TtlWriteBatch(hazelcastService.getHazelcastInstance().getPartitionService(), expirations)
+            .setAll(values, Map.of(first, "first", second, "second"))
+            .setAll(linked, Map.of(first, 1L, second, 2L))
+            .await();
+
+        assertEquals("first", values.get(first));
+        assertEquals(2L, linked.get(second));
+
+        assertEquals(60_000L, values.getEntryView(first).getTtl());
+        assertEquals(120_000L, values.getEntryView(second).getTtl());
+        assertEquals(60_000L, linked.getEntryView(first).getTtl());
+        assertEquals(120_000L, linked.getEntryView(second).getTtl());
+    }
+
+    @Test
+    public void testLargeBatchIsWrittenWithTtlPerEntry() {
+        Map<SiriObjectStorageKey, Long> expirations = new HashMap<>();
+        Map<SiriObjectStorageKey, String> batch = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            SiriObjectStorageKey key = new SiriObjectStorageKey("TST", "TST:Line:" + (i % 10), "" + i);
+            expirations.put(key, 60_000L + i);
+            batch.put(key, "value-" + i);
+        }
+
+        new TtlWriteBatch(hazelcastService.getHazelcastInstance().getPartitionService(), expirations)
+            .setAll(values, batch)
+            .await();
+
+        assertEquals(batch.size(), values.size());
+        for (Map.Entry<SiriObjectStorageKey, String> entry : batch.entrySet()) {
+            assertEquals(entry.getValue(), values.get(entry.getKey()));
+            assertEquals(expirations.get(entry.getKey()), values.getEntryView(entry.getKey()).getTtl());
+        }
+    }
+
+    @Test
+    public void testMissingExpirationIsRejected() {
+        Map<SiriObjectStorageKey, String> batch = new LinkedHashMap<>();
+        batch.put(first, "first");
+        batch.put(second, "second");
+
+        TtlWriteBatch writeBatch = new TtlWriteBatch(hazelcastService.getHazelcastInstance().getPartitionService(), Map.of(first, 60_000L));
+
+        assertThrows(IllegalArgumentException.class, () -> writeBatch.setAll(values, batch));
+
+        // Nothing is written when any expiration is missing
+        writeBatch.await();
+        assertTrue(values.isEmpty());
+    }
+}
@@ -0,0 +1,114 @@
+package no.rutebanken.anshar.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VersionedCacheTest {
+
+    private final SiriObjectStorageKey key = new SiriObjectStorageKey("TST", "TST:Line:1", "1");
+
+    private final Map<SiriObjectStorageKey, String> values = new HashMap<>();
+
+    private final VersionedCache<String> cache = new VersionedCache<>(values);
+
+    @Test
+    public void testReorderedUpdateIsIgnored() {
+        assertTrue(cache.put(key, 200, "newest"));
+
+        // Older update arrives late
+        assertTrue(cache.isOutdated(key, 100));
+        assertFalse(cache.put(key, 100, "older"));
+
+        assertEquals("newest", values.get(key));
+    }
+
+    @Test
+    public void testSameVersionIsApplied() {
+        assertTrue(cache.put(key, 100, "first"));
+        assertFalse(cache.isOutdated(key, 100));
+        assertTrue(cache.put(key, 100, "changed"));
+
+        assertEquals("changed", values.get(key));
+    }
+
+    @Test
+    public void testRemovalIsNotOverwrittenByOlderUpdate() {
+        assertTrue(cache.put(key, 100, "cached"));
+        assertTrue(cache.remove(key, 200));
+        assertNull(values.get(key));
+
+        assertTrue(cache.isOutdated(key, 150));
+        assertFalse(cache.put(key, 150, "older"));
+        assertNull(values.get(key));
+
+        // Newer version is cached again
+        assertTrue(cache.put(key, 300, "newer"));
+        assertEquals("newer", values.get(key));
+    }
+
+    @Test
+    public void testRemovalOfOlderVersionKeepsNewerValue() {
+        assertTrue(cache.put(key, 200, "newest"));
+
+        assertFalse(cache.remove(key, 100));
+        assertEquals("newest", values.get(key));
+    }
+
+    @Test
+    public void testExpiredValueIsAddedAgainWithSameVersion() {
+        assertTrue(cache.put(key, 100, "cached"));
+
+        // Expired/evicted from map - version is unknown
+        assertTrue(cache.remove(key));
+        assertNull(values.get(key));
+
+        // Delayed update for an older version
+        assertTrue(cache.isOutdated(key, 50));
+        assertFalse(cache.put(key, 50, "older"));
+        assertNull(values.get(key));
+
+        // Element is written again without version change - e.g. extended validity
+        assertFalse(cache.isOutdated(key, 100));
+        assertTrue(cache.put(key, 100, "cached again"));
+        assertEquals("cached again", values.get(key));
+    }
+
+    @Test
+    public void testRemovalAtVersionRejectsSameVersion() {
+        assertTrue(cache.put(key, 100, "cached"));
+        assertTrue(cache.remove(key, 100));
+
+        assertTrue(cache.isOutdated(key, 100));
+        assertFalse(cache.put(key, 100, "cached"));
+        assertNull(values.get(key));
+    }
+
+    @Test
+    public void testValuesWithoutVersionAreAlwaysApplied() {
+        assertTrue(cache.put(key, VersionedCache.NO_VERSION, "first"));
+        assertTrue(cache.put(key, VersionedCache.NO_VERSION, "second"));
+        assertEquals("second", values.get(key));
+
+        assertTrue(cache.remove(key));
+        assertFalse(cache.isOutdated(key, VersionedCache.NO_VERSION));
+        assertTrue(cache.put(key, VersionedCache.NO_VERSION, "third"));
+        assertEquals("third", values.get(key));
+    }
+
+    @Test
+    public void testClear() {
+        cache.put(key, 100, "cached");
+        cache.remove(key);
+        cache.clear();
+
+        assertTrue(values.isEmpty());
+        assertFalse(cache.isOutdated(key, 100));
+    }
+}
@@ -0,0 +1,121 @@
+package no.rutebanken.anshar.data.collections;
+
+import org.json.simple.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.rutebanken.siri20.util.SiriXml;
+import uk.org.siri.siri20.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri20.EstimatedVehicleJourney;
+import uk.org.siri.siri20.EstimatedVersionFrameStructure;
+import uk.org.siri.siri20.ServiceDelivery;
+import uk.org.siri.siri20.Siri;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KryoSerializerTest {
+
+    @Test
+    public void testRoundtripAllModes() throws Exception {
+        List<EstimatedVehicleJourney> journeys = readJourneys();
+        assertFalse(journeys.isEmpty());
+
+        EstimatedVehicleJourney journey = journeys.get(0);
+        for (KryoSerializerMode mode : KryoSerializerMode.values()) {
+            KryoSerializer serializer = new KryoSerializer(mode);
+            EstimatedVehicleJourney result = (EstimatedVehicleJourney) serializer.read(serializer.write(journey));
+
+            assertEquals(SiriXml.toXml(wrap(journey)), SiriXml.toXml(wrap(result)), "Roundtrip failed for mode " + mode);
+        }
+    }
+
+    @Test
+    public void testReadValuesWrittenByOtherModes() {
+        JSONObject json = new JSONObject();
+        json.put("key", "value");
+        json.put("count", 42L);
+
+        for (KryoSerializerMode writeMode : KryoSerializerMode.values()) {
+            byte[] bytes = new KryoSerializer(writeMode).write(json);
+            for (KryoSerializerMode readMode : KryoSerializerMode.values()) {
+                assertEquals(json, new KryoSerializer(readMode).read(bytes), "Written as " + writeMode + ", read as " + readMode);
+            }
+        }
+    }
+
+    @Test
+    public void testDefaultConstructorUsesLegacyFormat() {
+        JSONObject json = new JSONObject();
+        json.put("key", "value");
+
+        byte[] bytes = new KryoSerializer().write(json);
+
+        // zlib-header
+        assertEquals(0x78, bytes[0]);
+        assertEquals(json, new KryoSerializer(KryoSerializerMode.LZ4).read(bytes));
+    }
+
+    @Test
+    public void testRoundtripAllElementsAllModes() throws Exception {
+        List<EstimatedVehicleJourney> journeys = readJourneys();
+
+        for (KryoSerializerMode mode : KryoSerializerMode.values()) {
+            KryoSerializer serializer = new KryoSerializer(mode);
+            for (EstimatedVehicleJourney journey : journeys) {
+                EstimatedVehicleJourney result = (EstimatedVehicleJourney) serializer.read(serializer.write(journey));
+                assertEquals(SiriXml.toXml(wrap(journey)), SiriXml.toXml(wrap(result)), "Roundtrip failed for mode " + mode);
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedModesAreSmaller() throws Exception {
+        EstimatedVehicleJourney journey = readJourneys().get(0);
+
+        int uncompressed = new KryoSerializer(KryoSerializerMode.NONE).write(journey).length;
+
+        assertTrue(new KryoSerializer(KryoSerializerMode.LZ4).write(journey).length < uncompressed);
+        assertTrue(new KryoSerializer(KryoSerializerMode.DEFLATE).write(journey).length < uncompressed);
+    }
+
+    @Test
+    public void testLargeOutputBufferIsNotRetained() {
+        JSONObject json = new JSONObject();
+        json.put("value", "x".repeat(KryoSerializer.MAX_RETAINED_BUFFER_SIZE * 2));
+
+        KryoSerializer serializer = new KryoSerializer(KryoSerializerMode.LZ4);
+        assertEquals(json, serializer.read(serializer.write(json)));
+
+        assertTrue(KryoSerializer.getRetainedBufferSize() <= KryoSerializer.MAX_RETAINED_BUFFER_SIZE);
+    }
+
+    private static Siri wrap(EstimatedVehicleJourney journey) {
+        EstimatedVersionFrameStructure frame = new EstimatedVersionFrameStructure();
+        frame.getEstimatedVehicleJourneies().add(journey);
+
+        EstimatedTimetableDeliveryStructure delivery = new EstimatedTimetableDeliveryStructure();
+        delivery.getEstimatedJourneyVersionFrames().add(frame);
+
+        Siri siri = new Siri();
+        siri.setServiceDelivery(new ServiceDelivery());
+        siri.getServiceDelivery().getEstimatedTimetableDeliveries().add(delivery);
+        return siri;
+    }
+
+    private static List<EstimatedVehicleJourney> readJourneys() throws Exception {
+        List<EstimatedVehicleJourney> journeys = new ArrayList<>();
+        try (InputStream xml = KryoSerializerTest.class.getResourceAsStream("/siri-et-from-bnr.xml")) {
+            Siri siri = SiriXml.parseXml(xml);
+            for (EstimatedTimetableDeliveryStructure delivery : siri.getServiceDelivery().getEstimatedTimetableDeliveries()) {
+                for (EstimatedVersionFrameStructure frame : delivery.getEstimatedJourneyVersionFrames()) {
+                    journeys.addAll(frame.getEstimatedVehicleJourneies());
+                }
+            }
+        }
+        return journeys;
+    }
+}
@@ -0,0 +1,116 @@
+package no.rutebanken.anshar.data.hashing;
+
+import org.junit.jupiter.api.Test;
+import uk.org.siri.siri20.EstimatedCall;
+import uk.org.siri.siri20.EstimatedVehicleJourney;
+import uk.org.siri.siri20.LineRef;
+import uk.org.siri.siri20.StopPointRef;
+
+import java.math.BigInteger;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class StructuralHasherTest {
+
+    private final ChangeDetectionHasher hasher = HasherType.STRUCTURAL.create("recordedAtTime");
+
+    private final ZonedDateTime aimedTime = ZonedDateTime.now().plusHours(1);
+
+    @Test
+    public void testEqualObjectsHaveEqualHash() {
+        assertEquals(hasher.hash(createJourney("TST:Line:1", 10)), hasher.hash(createJourney("TST:Line:1", 10)));
+    }
+
+    @Test
+    public void testIgnoredFieldIsExcluded() {
+        EstimatedVehicleJourney journey = createJourney("TST:Line:1", 10);
+        long hash = hasher.hash(journey);
+
+        journey.setRecordedAtTime(ZonedDateTime.now().plusMinutes(5));
+
+        assertEquals(hash, hasher.hash(journey));
+    }
+
+    @Test
+    public void testIgnoredFieldIsIncludedByOtherHasher() {
+        ChangeDetectionHasher otherHasher = HasherType.STRUCTURAL.create();
+
+        EstimatedVehicleJourney journey = createJourney("TST:Line:1", 10);
+        long hash = otherHasher.hash(journey);
+
+        journey.setRecordedAtTime(ZonedDateTime.now().plusMinutes(5));
+
+        assertNotEquals(hash, otherHasher.hash(journey));
+    }
+
+    @Test
+    public void testNestedChangeIsDetected() {
+        EstimatedVehicleJourney journey = createJourney("TST:Line:1", 10);
+        long hash = hasher.hash(journey);
+
+        journey.getEstimatedCalls().getEstimatedCalls().get(5).setExpectedDepartureTime(aimedTime.plusMinutes(2));
+
+        assertNotEquals(hash, hasher.hash(journey));
+    }
+
+    @Test
+    public void testChangedValueIsDetected() {
+        assertNotEquals(hasher.hash(createJourney("TST:Line:1", 10)), hasher.hash(createJourney("TST:Line:2", 10)));
+        assertNotEquals(hasher.hash(createJourney("TST:Line:1", 10)), hasher.hash(createJourney("TST:Line:1", 11)));
+    }
+
+    @Test
+    public void testUninitializedListEqualsEmptyList() {
+        EstimatedVehicleJourney journey = createJourney("TST:Line:1", 10);
+        long hash = hasher.hash(journey);
+
+        // JAXB-getter initializes list
+        journey.getPublishedLineNames();
+
+        assertEquals(hash, hasher.hash(journey));
+    }
+
+    @Test
+    public void testSerializationHasherIgnoresField() {
+        ChangeDetectionHasher serializationHasher = HasherType.SERIALIZATION.create("recordedAtTime");
+
+        EstimatedVehicleJourney journey = createJourney("TST:Line:1", 10);
+        long hash = serializationHasher.hash(journey);
+        ZonedDateTime recordedAtTime = journey.getRecordedAtTime();
+
+        journey.setRecordedAtTime(ZonedDateTime.now().plusMinutes(5));
+        assertEquals(hash, serializationHasher.hash(journey));
+
+        journey.setRecordedAtTime(recordedAtTime);
+        journey.getEstimatedCalls().getEstimatedCalls().get(5).setExpectedDepartureTime(aimedTime.plusMinutes(2));
+        assertNotEquals(hash, serializationHasher.hash(journey));
+
+        // Ignored field is restored
+        assertEquals(recordedAtTime, journey.getRecordedAtTime());
+    }
+
+    private EstimatedVehicleJourney createJourney(String line, int callCount) {
+        EstimatedVehicleJourney journey = new EstimatedVehicleJourney();
+        LineRef lineRef = new LineRef();
+        lineRef.setValue(line);
+        journey.setLineRef(lineRef);
+        journey.setRecordedAtTime(ZonedDateTime.now());
+
+        EstimatedVehicleJourney.EstimatedCalls estimatedCalls = new EstimatedVehicleJourney.EstimatedCalls();
+        for (int i = 0; i < callCount; i++) {
+            StopPointRef stopPointRef = new StopPointRef();
+            stopPointRef.setValue("NSR:Quay:" + i);
+
+            EstimatedCall call = new EstimatedCall();
+            call.setStopPointRef(stopPointRef);
+            call.setOrder(BigInteger.valueOf(i));
+            call.setAimedDepartureTime(aimedTime);
+            call.setExpectedDepartureTime(aimedTime);
+            estimatedCalls.getEstimatedCalls().add(call);
+        }
+        journey.setEstimatedCalls(estimatedCalls);
+        return journey;
+    }
+}
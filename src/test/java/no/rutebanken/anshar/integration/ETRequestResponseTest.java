@@ -121,6 +121,38 @@ public class ETRequestResponseTest extends BaseHttpTest {
         ;
     }
 
+    @Test
+    public void testLiteETRequestNotModified() throws Exception {
+
+        String eTag = given()
+                .when()
+                    .get("anshar/rest/et")
+                .then()
+                    .statusCode(200)
+                    .extract().header("ETag");
+
+        given()
+                .when()
+                    .header("If-None-Match", eTag)
+                    .get("anshar/rest/et")
+                .then()
+                    .statusCode(304)
+        ;
+
+        // Updated data gives new response
+        repo.add(dataSource, createEstimatedVehicleJourney("5678", 0, callCount, ZonedDateTime.now().plusMinutes(30), Boolean.TRUE));
+        sleep(250);
+
+        given()
+                .when()
+                    .header("If-None-Match", eTag)
+                    .get("anshar/rest/et")
+                .then()
+                    .statusCode(200)
+                    .header("ETag", not(equalTo(eTag)))
+        ;
+    }
+
     @Test
     public void testLiteETRequestWithExcludedDatasetIds() throws Exception {
 
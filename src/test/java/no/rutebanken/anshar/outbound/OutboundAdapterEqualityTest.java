@@ -0,0 +1,37 @@
+package no.rutebanken.anshar.outbound;
+
+import no.rutebanken.anshar.routes.siri.handlers.OutboundIdMappingPolicy;
+import no.rutebanken.anshar.routes.siri.transformer.ValueAdapter;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import no.rutebanken.anshar.subscription.helpers.MappingAdapterPresets;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Outbound push groups subscriptions by their adapters - identical configuration must produce equal adapters
+ */
+public class OutboundAdapterEqualityTest {
+
+    @Test
+    public void testSamePolicyGivesEqualAdapters() {
+        for (OutboundIdMappingPolicy policy : OutboundIdMappingPolicy.values()) {
+            List<ValueAdapter> first = MappingAdapterPresets.getOutboundAdapters(SiriDataType.ESTIMATED_TIMETABLE, policy);
+            List<ValueAdapter> second = MappingAdapterPresets.getOutboundAdapters(SiriDataType.ESTIMATED_TIMETABLE, policy);
+
+            assertEquals(first, second);
+            assertEquals(first.hashCode(), second.hashCode());
+        }
+    }
+
+    @Test
+    public void testDifferentPolicyGivesDifferentAdapters() {
+        assertNotEquals(
+                MappingAdapterPresets.getOutboundAdapters(SiriDataType.ESTIMATED_TIMETABLE, OutboundIdMappingPolicy.DEFAULT),
+                MappingAdapterPresets.getOutboundAdapters(SiriDataType.ESTIMATED_TIMETABLE, OutboundIdMappingPolicy.ORIGINAL_ID)
+        );
+    }
+}
@@ -0,0 +1,115 @@
+package no.rutebanken.anshar.routes;
+
+import com.hazelcast.replicatedmap.ReplicatedMap;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.time.Instant;
+
+import static no.rutebanken.anshar.routes.HttpParameter.PARAM_SUBSCRIPTION_ID;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TrafficTracerTest {
+
+    private MockEnvironment environment;
+    private ReplicatedMap<String, Instant> tracedSubscriptions;
+    private TrafficTracer tracer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init() {
+        environment = new MockEnvironment();
+        tracedSubscriptions = Mockito.mock(ReplicatedMap.class);
+        Mockito.when(tracedSubscriptions.isEmpty()).thenReturn(true);
+
+        tracer = new TrafficTracer();
+        ReflectionTestUtils.setField(tracer, "environment", environment);
+        ReflectionTestUtils.setField(tracer, "tracedSubscriptions", tracedSubscriptions);
+        ReflectionTestUtils.setField(tracer, "maxChars", 100);
+    }
+
+    @Test
+    public void testOnlySummaryByDefault() {
+        TrafficTracer.TraceProcessor point = createPoint("test.default");
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(tracer.captureBody("sub", point));
+        }
+    }
+
+    @Test
+    public void testBodyIsSampled() {
+        environment.setProperty("anshar.tracing.body.sample.rate.test.sampled", "10");
+        TrafficTracer.TraceProcessor sampled = createPoint("test.sampled");
+        TrafficTracer.TraceProcessor other = createPoint("test.other");
+
+        int captured = 0;
+        for (int i = 0; i < 100; i++) {
+            if (tracer.captureBody("sub", sampled)) {
+                captured++;
+            }
+            // Sample rate is configured per trace point
+            assertFalse(tracer.captureBody("sub", other));
+        }
+        assertEquals(10, captured);
+    }
+
+    @Test
+    public void testBodyIsCapturedForTracedSubscription() {
+        Mockito.when(tracedSubscriptions.isEmpty()).thenReturn(false);
+        Mockito.when(tracedSubscriptions.containsKey("traced")).thenReturn(true);
+        TrafficTracer.TraceProcessor point = createPoint("test.subscription");
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(tracer.captureBody("traced", point));
+            assertFalse(tracer.captureBody("other", point));
+            assertFalse(tracer.captureBody(null, point));
+        }
+    }
+
+    @Test
+    public void testStreamIsNotReadWithoutBodyCapture() throws Exception {
+        TrafficTracer.TraceProcessor point = createPoint("test.stream");
+
+        ReadTrackingInputStream body = new ReadTrackingInputStream();
+        Exchange exchange = new DefaultExchange(new DefaultCamelContext());
+        exchange.getIn().setHeader(PARAM_SUBSCRIPTION_ID, "sub");
+        exchange.getIn().setBody(body);
+
+        point.process(exchange);
+
+        assertFalse(body.read, "Stream should not be read when only summary is logged");
+        assertSame(body, exchange.getMessage().getBody());
+    }
+
+    private TrafficTracer.TraceProcessor createPoint(String name) {
+        TrafficTracer.TraceProcessor point = (TrafficTracer.TraceProcessor) TrafficTracer.trace(name, getClass());
+        point.tracer = tracer;
+        return point;
+    }
+
+    private static class ReadTrackingInputStream extends InputStream {
+        private boolean read;
+
+        @Override
+        public int read() {
+            read = true;
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            read = true;
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package no.rutebanken.anshar.routes.outbound;
+
+import com.google.common.base.Ticker;
+import no.rutebanken.anshar.data.EstimatedTimetables;
+import no.rutebanken.anshar.data.Situations;
+import no.rutebanken.anshar.data.VehicleActivities;
+import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+import uk.org.siri.siri20.Siri;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class InitialDeliverySnapshotsTest {
+
+    private static final int MAX_AGE_SECONDS = 60;
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private Situations situations;
+    private CamelRouteManager camelRouteManager;
+    private InitialDeliverySnapshots snapshots;
+
+    @BeforeEach
+    public void init() {
+        situations = Mockito.mock(Situations.class);
+        camelRouteManager = Mockito.mock(CamelRouteManager.class);
+
+        SiriObjectFactory siriObjectFactory = Mockito.mock(SiriObjectFactory.class);
+        Mockito.when(siriObjectFactory.createSXServiceDelivery(Mockito.any())).thenReturn(new Siri());
+
+        // Every call returns a new delivery
+        Mockito.when(camelRouteManager.prepareDeliveries(Mockito.any(), Mockito.any()))
+            .thenAnswer(invocation -> List.of(new byte[0]));
+
+        snapshots = new InitialDeliverySnapshots();
+        ReflectionTestUtils.setField(snapshots, "maxAgeSeconds", MAX_AGE_SECONDS);
+        ReflectionTestUtils.setField(snapshots, "situations", situations);
+        ReflectionTestUtils.setField(snapshots, "vehicleActivities", Mockito.mock(VehicleActivities.class));
+        ReflectionTestUtils.setField(snapshots, "estimatedTimetables", Mockito.mock(EstimatedTimetables.class));
+        ReflectionTestUtils.setField(snapshots, "siriObjectFactory", siriObjectFactory);
+        ReflectionTestUtils.setField(snapshots, "camelRouteManager", camelRouteManager);
+        snapshots.ticker = new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        };
+        snapshots.init();
+    }
+
+    @Test
+    public void testSnapshotIsShared() throws Exception {
+        List<byte[]> first = snapshots.getInitialDeliveries(createSubscription("1"));
+        List<byte[]> second = snapshots.getInitialDeliveries(createSubscription("2"));
+
+        // Second subscription gets the same snapshot, followed by changes since
+        assertEquals(1, first.size());
+        assertEquals(2, second.size());
+        assertSame(first.get(0), second.get(0));
+
+        // Same requestor is used to track changes for both
+        List<String> trackingIds = captureTrackingIds(2);
+        assertEquals(trackingIds.get(0), trackingIds.get(1));
+
+        Mockito.verify(situations, Mockito.never()).removeChangeTracker(Mockito.anyString());
+    }
+
+    @Test
+    public void testChangeTrackerIsRemovedWhenSnapshotExpires() throws Exception {
+        List<byte[]> first = snapshots.getInitialDeliveries(createSubscription("1"));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(MAX_AGE_SECONDS + 1));
+
+        List<byte[]> second = snapshots.getInitialDeliveries(createSubscription("2"));
+
+        // New snapshot is created, and tracking for the expired snapshot is stopped
+        assertEquals(1, second.size());
+        assertNotEquals(first.get(0), second.get(0));
+
+        List<String> trackingIds = captureTrackingIds(2);
+        assertNotEquals(trackingIds.get(0), trackingIds.get(1));
+
+        Mockito.verify(situations).removeChangeTracker(trackingIds.get(0));
+        Mockito.verify(situations, Mockito.never()).removeChangeTracker(trackingIds.get(1));
+    }
+
+    private List<String> captureTrackingIds(int expectedCalls) {
+        ArgumentCaptor<String> trackingIds = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(situations, Mockito.times(expectedCalls)).getAllUpdates(trackingIds.capture(), Mockito.any());
+        return new ArrayList<>(trackingIds.getAllValues());
+    }
+
+    private static OutboundSubscriptionSetup createSubscription(String subscriptionId) {
+        return new OutboundSubscriptionSetup(SiriDataType.SITUATION_EXCHANGE, "http://localhost/" + subscriptionId,
+            0, new ArrayList<>(), subscriptionId);
+    }
+}
@@ -0,0 +1,225 @@
+package no.rutebanken.anshar.routes.policy;
+
+import com.hazelcast.replicatedmap.ReplicatedMap;
+import no.rutebanken.anshar.subscription.SubscriptionManager;
+import no.rutebanken.anshar.subscription.SubscriptionSetup;
+import no.rutebanken.anshar.util.ExecutorPool;
+import no.rutebanken.anshar.util.ManagedExecutors;
+import org.apache.camel.ProducerTemplate;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PollingSubscriptionSchedulerTest {
+
+    private static final int SUBSCRIPTIONS = 1000;
+
+    @Test
+    public void testSubscriptionsAreSpreadOverMembers() {
+        List<UUID> members = createMembers(4);
+
+        Map<UUID, Integer> owned = new HashMap<>();
+        for (int i = 0; i < SUBSCRIPTIONS; i++) {
+            owned.merge(PollingSubscriptionScheduler.selectOwner("subscription-" + i, members, null), 1, Integer::sum);
+        }
+
+        assertEquals(members.size(), owned.size());
+        for (Integer count : owned.values()) {
+            assertTrue(count > SUBSCRIPTIONS / members.size() * 0.7, "Uneven distribution: " + owned);
+        }
+    }
+
+    @Test
+    public void testOnlySubscriptionsOfRemovedMemberAreMoved() {
+        List<UUID> members = createMembers(4);
+        List<UUID> remaining = new ArrayList<>(members);
+        UUID removed = remaining.remove(2);
+
+        for (int i = 0; i < SUBSCRIPTIONS; i++) {
+            String subscriptionId = "subscription-" + i;
+            UUID before = PollingSubscriptionScheduler.selectOwner(subscriptionId, members, null);
+            UUID after = PollingSubscriptionScheduler.selectOwner(subscriptionId, remaining, null);
+            if (!before.equals(removed)) {
+                assertEquals(before, after);
+            }
+        }
+    }
+
+    @Test
+    public void testExcludedMemberIsSkipped() {
+        List<UUID> members = createMembers(3);
+        UUID owner = PollingSubscriptionScheduler.selectOwner("subscription", members, null);
+
+        assertNotEquals(owner, PollingSubscriptionScheduler.selectOwner("subscription", members, owner));
+
+        // Only member keeps polling
+        assertEquals(owner, PollingSubscriptionScheduler.selectOwner("subscription", List.of(owner), owner));
+    }
+
+    @Test
+    public void testOverlappingPollIsSkipped() {
+        ManagedExecutors executors = Mockito.mock(ManagedExecutors.class);
+        Mockito.when(executors.tryExecute(Mockito.eq(ExecutorPool.POLLING), Mockito.any())).thenReturn(true);
+        PollingSubscriptionScheduler scheduler = createScheduler(executors);
+
+        AtomicInteger polls = new AtomicInteger();
+        scheduler.dispatch("subscription", polls::incrementAndGet);
+        scheduler.dispatch("subscription", polls::incrementAndGet);
+
+        // Other subscriptions are not affected
+        scheduler.dispatch("other", polls::incrementAndGet);
+
+        ArgumentCaptor<Runnable> dispatched = ArgumentCaptor.forClass(Runnable.class);
+        Mockito.verify(executors, Mockito.times(2)).tryExecute(Mockito.eq(ExecutorPool.POLLING), dispatched.capture());
+
+        dispatched.getAllValues().get(0).run();
+        assertEquals(1, polls.get());
+
+        // Previous poll has completed
+        scheduler.dispatch("subscription", polls::incrementAndGet);
+        Mockito.verify(executors, Mockito.times(3)).tryExecute(Mockito.eq(ExecutorPool.POLLING), Mockito.any());
+    }
+
+    @Test
+    public void testPollIsRetriedWhenPoolIsFull() {
+        ManagedExecutors executors = Mockito.mock(ManagedExecutors.class);
+        Mockito.when(executors.tryExecute(Mockito.eq(ExecutorPool.POLLING), Mockito.any())).thenReturn(false);
+        PollingSubscriptionScheduler scheduler = createScheduler(executors);
+
+        scheduler.dispatch("subscription", () -> {});
+        scheduler.dispatch("subscription", () -> {});
+
+        Mockito.verify(executors, Mockito.times(2)).tryExecute(Mockito.eq(ExecutorPool.POLLING), Mockito.any());
+    }
+
+    @Test
+    public void testFailedPollDoesNotBlockNextPoll() {
+        ManagedExecutors executors = Mockito.mock(ManagedExecutors.class);
+        Mockito.when(executors.tryExecute(Mockito.eq(ExecutorPool.POLLING), Mockito.any())).thenAnswer(invocation -> {
+            invocation.getArgument(1, Runnable.class).run();
+            return true;
+        });
+        PollingSubscriptionScheduler scheduler = createScheduler(executors);
+
+        scheduler.dispatch("subscription", () -> {
+            throw new IllegalStateException("Poll failed");
+        });
+        scheduler.dispatch("subscription", () -> {});
+
+        Mockito.verify(executors, Mockito.times(2)).tryExecute(Mockito.eq(ExecutorPool.POLLING), Mockito.any());
+    }
+
+    @Test
+    public void testCancelledSubscriptionIsNotPolled() {
+        PollingSubscriptionScheduler scheduler = createScheduler(Mockito.mock(ManagedExecutors.class));
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        ReflectionTestUtils.setField(scheduler, "scheduler", executorService);
+        try {
+            scheduler.schedule("subscription", 3600000, () -> {});
+            assertTrue(scheduler.isScheduled("subscription"));
+
+            scheduler.cancel("subscription");
+            assertFalse(scheduler.isScheduled("subscription"));
+
+            // Unknown subscriptions are ignored
+            scheduler.cancel("unknown");
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDeletedSubscriptionIsCancelledOnEveryMember() throws Exception {
+        ManagedExecutors executors = Mockito.mock(ManagedExecutors.class);
+        Mockito.when(executors.tryExecute(Mockito.eq(ExecutorPool.POLLING), Mockito.any())).thenReturn(true);
+        PollingSubscriptionScheduler scheduler = createScheduler(executors);
+        SubscriptionManager subscriptionManager = Mockito.mock(SubscriptionManager.class);
+        ReflectionTestUtils.setField(scheduler, "subscriptionManager", subscriptionManager);
+
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        ReflectionTestUtils.setField(scheduler, "scheduler", executorService);
+        try {
+            scheduler.schedule("subscription", 10, () -> {});
+
+            // Not cancelled before the subscription has been added
+            Thread.sleep(50);
+            assertTrue(scheduler.isScheduled("subscription"));
+
+            Mockito.when(subscriptionManager.get("subscription")).thenReturn(new SubscriptionSetup());
+            Mockito.verify(executors, Mockito.timeout(1000).atLeastOnce()).tryExecute(Mockito.eq(ExecutorPool.POLLING), Mockito.any());
+
+            // Deleted by another member
+            Mockito.when(subscriptionManager.get("subscription")).thenReturn(null);
+            long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(1);
+            while (scheduler.isScheduled("subscription") && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertFalse(scheduler.isScheduled("subscription"));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPollIsSentWithSharedTemplate() {
+        ManagedExecutors executors = Mockito.mock(ManagedExecutors.class);
+        PollingSubscriptionScheduler scheduler = createScheduler(executors);
+        ProducerTemplate producerTemplate = Mockito.mock(ProducerTemplate.class);
+        ReflectionTestUtils.setField(scheduler, "producerTemplate", producerTemplate);
+        SubscriptionManager subscriptionManager = Mockito.mock(SubscriptionManager.class);
+        Mockito.when(subscriptionManager.get(Mockito.anyString())).thenReturn(new SubscriptionSetup());
+        ReflectionTestUtils.setField(scheduler, "subscriptionManager", subscriptionManager);
+
+        Mockito.when(executors.tryExecute(Mockito.eq(ExecutorPool.POLLING), Mockito.any())).thenAnswer(invocation -> {
+            invocation.getArgument(1, Runnable.class).run();
+            return true;
+        });
+
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        ReflectionTestUtils.setField(scheduler, "scheduler", executorService);
+        try {
+            scheduler.schedule("active", 10, () -> true, "direct:active");
+            scheduler.schedule("inactive", 10, () -> false, "direct:inactive");
+
+            Mockito.verify(producerTemplate, Mockito.timeout(1000).atLeastOnce()).sendBody("direct:active", null);
+            Mockito.verify(producerTemplate, Mockito.never()).sendBody(Mockito.eq("direct:inactive"), Mockito.any());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PollingSubscriptionScheduler createScheduler(ManagedExecutors executors) {
+        UUID localMember = UUID.randomUUID();
+        PollingSubscriptionScheduler scheduler = new PollingSubscriptionScheduler();
+        ReflectionTestUtils.setField(scheduler, "executors", executors);
+        ReflectionTestUtils.setField(scheduler, "failovers", Mockito.mock(ReplicatedMap.class));
+        ReflectionTestUtils.setField(scheduler, "localMember", localMember);
+        ReflectionTestUtils.setField(scheduler, "members", List.of(localMember));
+        return scheduler;
+    }
+
+    private static List<UUID> createMembers(int count) {
+        List<UUID> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            members.add(UUID.randomUUID());
+        }
+        return members;
+    }
+}
@@ -0,0 +1,131 @@
+package no.rutebanken.anshar.routes.siri;
+
+import no.rutebanken.anshar.routes.siri.InboundAdmissionController.Admission;
+import no.rutebanken.anshar.routes.siri.InboundAdmissionController.FairQueue;
+import no.rutebanken.anshar.routes.siri.InboundAdmissionController.InboundDelivery;
+import no.rutebanken.anshar.subscription.SiriDataType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class InboundAdmissionControllerTest {
+
+    private static final int MAX_COUNT = 5;
+    private static final long MAX_SIZE = 1000;
+
+    @Test
+    public void testSubscriptionsAreServedInTurn() {
+        FairQueue queue = new FairQueue();
+        for (int i = 0; i < 3; i++) {
+            offer(queue, "busy", "busy-" + i);
+        }
+        offer(queue, "quiet", "quiet-0");
+
+        List<String> processed = pollAll(queue, Map.of());
+
+        assertEquals(List.of("busy-0", "quiet-0", "busy-1", "busy-2"), processed);
+    }
+
+    @Test
+    public void testWeightIsRespected() {
+        FairQueue queue = new FairQueue();
+        for (int i = 0; i < 4; i++) {
+            offer(queue, "heavy", "heavy-" + i);
+            offer(queue, "light", "light-" + i);
+        }
+
+        List<String> processed = pollAll(queue, Map.of("heavy", 2));
+
+        assertEquals(List.of("heavy-0", "heavy-1", "light-0", "heavy-2", "heavy-3", "light-1", "light-2", "light-3"), processed);
+    }
+
+    @Test
+    public void testSubscriptionQueueIsBounded() {
+        FairQueue queue = new FairQueue();
+        assertEquals(Admission.ACCEPTED_NEW_QUEUE, offer(queue, "sub", "0"));
+        for (int i = 1; i < MAX_COUNT; i++) {
+            assertEquals(Admission.ACCEPTED, offer(queue, "sub", "" + i));
+        }
+        assertEquals(Admission.REJECTED_SUBSCRIPTION, offer(queue, "sub", "" + MAX_COUNT));
+
+        // Other subscriptions are not affected
+        assertEquals(Admission.ACCEPTED_NEW_QUEUE, offer(queue, "other", "1"));
+
+        queue.poll(id -> 1);
+        assertEquals(Admission.ACCEPTED, offer(queue, "sub", "" + MAX_COUNT));
+    }
+
+    @Test
+    public void testTotalSizeIsBounded() {
+        FairQueue queue = new FairQueue();
+        String body = "x".repeat(600);
+        assertEquals(Admission.ACCEPTED_NEW_QUEUE, queue.offer(delivery("first", SiriDataType.ESTIMATED_TIMETABLE, body), 2, MAX_SIZE, MAX_SIZE, false));
+        assertEquals(Admission.REJECTED_TOTAL, queue.offer(delivery("second", SiriDataType.ESTIMATED_TIMETABLE, body), 2, MAX_SIZE, MAX_SIZE, false));
+        assertEquals(600, queue.getTotalSize());
+        assertEquals(0, queue.getDepth("second"));
+
+        queue.poll(id -> 1);
+        assertEquals(0, queue.getTotalSize());
+        assertEquals(Admission.ACCEPTED_NEW_QUEUE, queue.offer(delivery("second", SiriDataType.ESTIMATED_TIMETABLE, body), 2, MAX_SIZE, MAX_SIZE, false));
+    }
+
+    @Test
+    public void testVmDeliveriesAreCoalesced() {
+        FairQueue queue = new FairQueue();
+        assertEquals(Admission.ACCEPTED_NEW_QUEUE, queue.offer(delivery("vm", SiriDataType.VEHICLE_MONITORING, "1"), 2, MAX_SIZE, MAX_SIZE, true));
+        assertEquals(Admission.COALESCED, queue.offer(delivery("vm", SiriDataType.VEHICLE_MONITORING, "22"), 2, MAX_SIZE, MAX_SIZE, true));
+        assertEquals(1, queue.getDepth("vm"));
+        assertEquals(2, queue.getTotalSize());
+
+        assertEquals("22", queue.poll(id -> 1).getBody());
+        assertNull(queue.poll(id -> 1));
+    }
+
+    @Test
+    public void testCoalescedDeliveryIsBoundedBySizeDelta() {
+        FairQueue queue = new FairQueue();
+        String small = "x".repeat(400);
+        String large = "x".repeat(700);
+        assertEquals(Admission.ACCEPTED_NEW_QUEUE, queue.offer(delivery("vm", SiriDataType.VEHICLE_MONITORING, small), 2, MAX_SIZE, MAX_SIZE * 10, true));
+        assertEquals(Admission.ACCEPTED_NEW_QUEUE, queue.offer(delivery("other", SiriDataType.VEHICLE_MONITORING, small), 2, MAX_SIZE, MAX_SIZE, true));
+
+        // Replacing 400 with 700 would exceed total size of 1000
+        assertEquals(Admission.REJECTED_TOTAL, queue.offer(delivery("vm", SiriDataType.VEHICLE_MONITORING, large), 2, MAX_SIZE, MAX_SIZE, true));
+        assertEquals(800, queue.getTotalSize());
+
+        // Replacing 400 with 1100 would exceed subscription size of 1000
+        assertEquals(Admission.REJECTED_SUBSCRIPTION, queue.offer(delivery("vm", SiriDataType.VEHICLE_MONITORING, "x".repeat(1100)), 2, MAX_SIZE, MAX_SIZE * 10, true));
+        assertEquals(800, queue.getTotalSize());
+
+        // Accepted when within limits, queued size is updated with the change in size
+        assertEquals(Admission.COALESCED, queue.offer(delivery("vm", SiriDataType.VEHICLE_MONITORING, large), 2, MAX_SIZE, MAX_SIZE * 10, true));
+        assertEquals(1100, queue.getTotalSize());
+        assertEquals(1, queue.getDepth("vm"));
+        assertEquals(large, queue.poll(id -> 1).getBody());
+        assertEquals(small, queue.poll(id -> 1).getBody());
+        assertEquals(0, queue.getTotalSize());
+    }
+
+    private static Admission offer(FairQueue queue, String subscriptionId, String body) {
+        return queue.offer(delivery(subscriptionId, SiriDataType.ESTIMATED_TIMETABLE, body), MAX_COUNT, MAX_SIZE, MAX_SIZE * 10, false);
+    }
+
+    private static InboundDelivery delivery(String subscriptionId, SiriDataType dataType, String body) {
+        return new InboundDelivery(subscriptionId, dataType, body, new HashMap<>(), System.currentTimeMillis());
+    }
+
+    private static List<String> pollAll(FairQueue queue, Map<String, Integer> weights) {
+        List<String> processed = new ArrayList<>();
+        InboundDelivery delivery;
+        while ((delivery = queue.poll(id -> weights.getOrDefault(id, 1))) != null) {
+            processed.add(delivery.getBody());
+        }
+        return processed;
+    }
+}
@@ -0,0 +1,274 @@
+package no.rutebanken.anshar.routes.validation;
+
+import no.rutebanken.anshar.routes.validation.validators.CustomValidator;
+import no.rutebanken.anshar.routes.validation.validators.ProfileValidationEventOrList;
+import no.rutebanken.anshar.routes.validation.validators.et.EstimatedCallInvalidFieldsValidator;
+import no.rutebanken.anshar.routes.validation.validators.et.EtServiceDeliveryInvalidFieldsValidator;
+import no.rutebanken.anshar.routes.validation.validators.et.RecordedCallInvalidFieldsValidator;
+import no.rutebanken.anshar.routes.validation.validators.vm.VmServiceDeliveryInvalidFieldsValidator;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.bind.ValidationEvent;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMATED_CALL;
+import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMATED_CALLS;
+import static no.rutebanken.anshar.routes.validation.validators.Constants.ESTIMATED_VEHICLE_JOURNEY;
+import static no.rutebanken.anshar.routes.validation.validators.Constants.SERVICE_DELIVERY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares streaming validation with the previous implementation - one XPath per rule over a DOM
+ */
+public class StreamingProfileValidatorTest {
+
+    @Test
+    public void testSameMatchesAsXpath() throws Exception {
+        byte[] xml = readEt();
+        List<CustomValidator> rules = createRules();
+
+        List<String> expected = validateWithXpath(xml, rules);
+
+        List<String> actual = new ArrayList<>();
+        int validatedCount = new StreamingProfileValidator(rules)
+            .validate(new ByteArrayInputStream(xml), (rule, event) -> actual.add(event.getMessage()));
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), validatedCount);
+
+        // XPath-implementation validated rule by rule, streaming validates in document-order
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testUnmatchedPathIsIgnored() throws Exception {
+        List<CustomValidator> rules = List.of(new DescribingValidator(SERVICE_DELIVERY + "/Unknown", false));
+
+        int validatedCount = new StreamingProfileValidator(rules)
+            .validate(new ByteArrayInputStream(readEt()), (rule, event) -> {});
+
+        assertEquals(0, validatedCount);
+    }
+
+    @Test
+    public void testValidatorIsReusable() throws Exception {
+        byte[] xml = readEt();
+        StreamingProfileValidator streamingValidator = new StreamingProfileValidator(createRules());
+
+        List<String> first = new ArrayList<>();
+        streamingValidator.validate(new ByteArrayInputStream(xml), (rule, event) -> first.add(event.getMessage()));
+
+        List<String> second = new ArrayList<>();
+        streamingValidator.validate(new ByteArrayInputStream(xml), (rule, event) -> second.add(event.getMessage()));
+
+        assertFalse(first.isEmpty());
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void testChildPresenceRulesGiveSameEventsAsXpath() throws Exception {
+        byte[] xml = readEt();
+        List<CustomValidator> rules = List.of(
+            new EtServiceDeliveryInvalidFieldsValidator(),
+            new VmServiceDeliveryInvalidFieldsValidator(),
+            new EstimatedCallInvalidFieldsValidator(),
+            new RecordedCallInvalidFieldsValidator()
+        );
+
+        List<String> expected = new ArrayList<>();
+        int expectedCount = validateWithXpath(xml, rules, expected);
+
+        List<String> actual = new ArrayList<>();
+        int validatedCount = new StreamingProfileValidator(rules)
+            .validate(new ByteArrayInputStream(xml), (rule, event) -> actual.add(describe(event)));
+
+        // ET-delivery is invalid for VM
+        assertFalse(expected.isEmpty());
+        assertEquals(expectedCount, validatedCount);
+
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testChildPresenceRuleIsGivenNamesOfNonEmptyChildrenOnly() throws Exception {
+        String xml = "<Siri><ServiceDelivery>" +
+            "<ResponseTimestamp>2024-01-01T00:00:00Z</ResponseTimestamp>" +
+            "<EstimatedTimetableDelivery><EstimatedJourneyVersionFrame>" +
+            "<EstimatedVehicleJourney><LineRef>TST:Line:1</LineRef></EstimatedVehicleJourney>" +
+            "</EstimatedJourneyVersionFrame></EstimatedTimetableDelivery>" +
+            "<EstimatedTimetableDelivery/>" +
+            "<VehicleMonitoringDelivery/>" +
+            "</ServiceDelivery></Siri>";
+
+        List<Node> validated = new ArrayList<>();
+        CustomValidator rule = new ChildPresenceValidator(SERVICE_DELIVERY, validated);
+
+        List<String> events = new ArrayList<>();
+        int validatedCount = new StreamingProfileValidator(List.of(rule))
+            .validate(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), (r, event) -> events.add(describe(event)));
+
+        assertEquals(1, validatedCount);
+        assertEquals(1, validated.size());
+
+        // Subtree is not built - only one placeholder per non-empty child
+        Node node = validated.get(0);
+        assertEquals("", node.getTextContent());
+        assertEquals(Set.of("ResponseTimestamp", "EstimatedTimetableDelivery"), childNames(node));
+
+        // Empty VehicleMonitoringDelivery is not reported, as with the DOM
+        assertEquals(1, events.size());
+        assertTrue(events.get(0).contains("ResponseTimestamp"));
+        assertFalse(events.get(0).contains("VehicleMonitoringDelivery"));
+    }
+
+    private static List<CustomValidator> createRules() {
+        List<CustomValidator> rules = new ArrayList<>();
+        rules.add(new DescribingValidator(SERVICE_DELIVERY, false));
+        rules.add(new DescribingValidator(ESTIMATED_VEHICLE_JOURNEY, false));
+        rules.add(new DescribingValidator(ESTIMATED_VEHICLE_JOURNEY + "/LineRef", false));
+        rules.add(new DescribingValidator(ESTIMATED_VEHICLE_JOURNEY + "/DatedVehicleJourneyRef", true));
+        rules.add(new DescribingValidator(ESTIMATED_CALLS, true));
+        rules.add(new DescribingValidator(ESTIMATED_CALL, false));
+        rules.add(new DescribingValidator(ESTIMATED_CALL + "/StopPointRef", false));
+        rules.add(new DescribingValidator(ESTIMATED_CALL + "/AimedArrivalTime", true));
+        rules.add(new DescribingValidator(ESTIMATED_CALL + "/AimedDepartureTime", true));
+        return rules;
+    }
+
+    private static List<String> validateWithXpath(byte[] xml, List<CustomValidator> rules) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        XPath xpath = XPathFactory.newInstance().newXPath();
+
+        List<String> events = new ArrayList<>();
+        for (CustomValidator rule : rules) {
+            NodeList nodes = (NodeList) xpath.evaluate(rule.getXpath(), document, XPathConstants.NODESET);
+            for (int i = 0; i < nodes.getLength(); i++) {
+                events.add(rule.isValid(nodes.item(i)).getMessage());
+            }
+        }
+        return events;
+    }
+
+    private static int validateWithXpath(byte[] xml, List<CustomValidator> rules, List<String> events) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        XPath xpath = XPathFactory.newInstance().newXPath();
+
+        int count = 0;
+        for (CustomValidator rule : rules) {
+            NodeList nodes = (NodeList) xpath.evaluate(rule.getXpath(), document, XPathConstants.NODESET);
+            for (int i = 0; i < nodes.getLength(); i++) {
+                ValidationEvent event = rule.isValid(nodes.item(i));
+                if (event != null) {
+                    events.add(describe(event));
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String describe(ValidationEvent event) {
+        if (event instanceof ProfileValidationEventOrList) {
+            return ((ProfileValidationEventOrList) event).getEvents().stream()
+                .map(ValidationEvent::getMessage)
+                .collect(Collectors.joining(", "));
+        }
+        return event.getMessage();
+    }
+
+    private static Set<String> childNames(Node node) {
+        Set<String> names = new TreeSet<>();
+        for (int i = 0; i < node.getChildNodes().getLength(); i++) {
+            names.add(node.getChildNodes().item(i).getNodeName());
+        }
+        return names;
+    }
+
+    private static byte[] readEt() throws Exception {
+        try (InputStream xml = StreamingProfileValidatorTest.class.getResourceAsStream("/siri-et-from-bnr.xml")) {
+            return xml.readAllBytes();
+        }
+    }
+
+    /**
+     * Reports an event describing the validated node - and its siblings when requested
+     */
+    private static class DescribingValidator extends CustomValidator {
+        private final String path;
+        private final boolean siblingAccessRequired;
+
+        private DescribingValidator(String path, boolean siblingAccessRequired) {
+            this.path = path;
+            this.siblingAccessRequired = siblingAccessRequired;
+        }
+
+        @Override
+        public String getXpath() {
+            return path;
+        }
+
+        @Override
+        public boolean isSiblingAccessRequired() {
+            return siblingAccessRequired;
+        }
+
+        @Override
+        public ValidationEvent isValid(Node node) {
+            String description = path + " " + getNodeValue(node) + " " + node.getChildNodes().getLength();
+            if (siblingAccessRequired) {
+                description += " " + getSiblingNodeValue(node, "LineRef") + " " + node.getParentNode().getChildNodes().getLength();
+            }
+            return createCustomFieldEvent(node, description, ValidationEvent.WARNING);
+        }
+    }
+
+    /**
+     * Reports the names of the children of the validated node
+     */
+    private static class ChildPresenceValidator extends CustomValidator {
+        private final String path;
+        private final List<Node> validated;
+
+        private ChildPresenceValidator(String path, List<Node> validated) {
+            this.path = path;
+            this.validated = validated;
+        }
+
+        @Override
+        public String getXpath() {
+            return path;
+        }
+
+        @Override
+        public boolean isChildPresenceOnly() {
+            return true;
+        }
+
+        @Override
+        public ValidationEvent isValid(Node node) {
+            validated.add(node);
+            return verifyNonExistingFields(node, "ServiceDelivery", "ResponseTimestamp", "VehicleMonitoringDelivery");
+        }
+    }
+}
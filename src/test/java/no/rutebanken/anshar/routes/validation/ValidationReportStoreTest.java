@@ -0,0 +1,48 @@
+package no.rutebanken.anshar.routes.validation;
+
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ValidationReportStoreTest extends SpringBootBaseTest {
+
+    @Autowired
+    private ValidationReportStore validationReportStore;
+
+    @Test
+    public void testXmlIsFoundForSubscription() throws IOException {
+        String subscriptionId = UUID.randomUUID().toString();
+        String otherSubscriptionId = UUID.randomUUID().toString();
+
+        String xml = "<Siri xmlns=\"http://www.siri.org.uk/siri\"><ServiceDelivery/></Siri>";
+        String otherXml = "<Siri xmlns=\"http://www.siri.org.uk/siri\"><HeartbeatNotification/></Siri>";
+
+        validationReportStore.addReport(subscriptionId, createReport("ref-1", xml));
+        validationReportStore.addReport(otherSubscriptionId, createReport("ref-2", otherXml));
+
+        assertEquals(xml, validationReportStore.getXml(subscriptionId, "ref-1"));
+        assertEquals(otherXml, validationReportStore.getXml(otherSubscriptionId, "ref-2"));
+
+        // Reports are only looked up on the given subscription
+        assertNull(validationReportStore.getXml(subscriptionId, "ref-2"));
+        assertNull(validationReportStore.getXml(null, "ref-1"));
+
+        validationReportStore.clear(subscriptionId);
+        validationReportStore.clear(otherSubscriptionId);
+
+        assertNull(validationReportStore.getXml(subscriptionId, "ref-1"));
+    }
+
+    private static ValidationReport createReport(String validationRef, String xml) throws IOException {
+        return ValidationReport.create(validationRef, xml.getBytes(StandardCharsets.UTF_8),
+            new SiriValidationEventHandler(), new SiriValidationEventHandler()
+        );
+    }
+}
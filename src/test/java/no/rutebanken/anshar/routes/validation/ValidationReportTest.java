@@ -0,0 +1,92 @@
+package no.rutebanken.anshar.routes.validation;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.bind.ValidationEvent;
+import javax.xml.bind.helpers.ValidationEventImpl;
+import javax.xml.bind.helpers.ValidationEventLocatorImpl;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ValidationReportTest {
+
+    private static final String XML = "<Siri xmlns=\"http://www.siri.org.uk/siri\"><ServiceDelivery/></Siri>";
+
+    @Test
+    public void testReportRoundtrip() throws IOException {
+        SiriValidationEventHandler schemaEvents = new SiriValidationEventHandler();
+        schemaEvents.handleEvent(createEvent(ValidationEvent.ERROR, "Invalid content", 12));
+        schemaEvents.handleEvent(createEvent(ValidationEvent.ERROR, "Invalid content", 14));
+
+        SiriValidationEventHandler profileEvents = new SiriValidationEventHandler();
+        profileEvents.handleCategorizedEvent("LineRef", createEvent(ValidationEvent.WARNING, "Missing LineRef", 3));
+        profileEvents.handleCategorizedEvent("StopPointRef", createEvent(ValidationEvent.FATAL_ERROR, "Unknown stop", 5));
+
+        ValidationReport report = ValidationReport.create("ref-1", XML.getBytes(StandardCharsets.UTF_8), schemaEvents, profileEvents);
+
+        assertEquals(XML, report.getXml());
+
+        JSONObject json = report.toJSON();
+        assertEquals("ref-1", json.get("validationRef"));
+
+        JSONObject schema = (JSONObject) json.get("schema");
+        assertEquals(2, schema.get("errorCount"));
+        JSONArray schemaEventList = (JSONArray) schema.get("events");
+        assertEquals(1, schemaEventList.size());
+        JSONObject event = (JSONObject) schemaEventList.get(0);
+        assertEquals("ERROR", event.get("severity"));
+        assertEquals("Invalid content", event.get("message"));
+        assertEquals(2, event.get("numberOfOccurrences"));
+        assertEquals(12, ((JSONObject) event.get("locator")).get("lineNumber"));
+
+        JSONObject profile = (JSONObject) json.get("profile");
+        assertEquals(2, profile.get("errorCount"));
+        assertNull(profile.get("events"));
+        assertEquals(2, ((JSONArray) profile.get("categories")).size());
+    }
+
+    @Test
+    public void testOldestReportsAreEvicted() throws IOException {
+        ValidationReports reports = new ValidationReports();
+
+        ValidationReport first = createReport("ref-1");
+        final int reportSize = first.getSize();
+
+        assertEquals(0, reports.add(first, reportSize * 2, 10));
+        assertEquals(0, reports.add(createReport("ref-2"), reportSize * 2, 10));
+        assertEquals(1, reports.add(createReport("ref-3"), reportSize * 2, 10));
+
+        assertEquals(2, reports.getReports().size());
+        assertNull(reports.getReport("ref-1"));
+        assertNotNull(reports.getReport("ref-3"));
+        assertTrue(reports.getTotalSize() <= reportSize * 2);
+
+        // Max count
+        assertEquals(1, reports.add(createReport("ref-4"), Long.MAX_VALUE, 2));
+        assertEquals("ref-3", reports.getReports().get(0).getValidationRef());
+
+        // Newest report is kept even if it exceeds the budget alone
+        assertEquals(2, reports.add(createReport("ref-5"), 1, 10));
+        assertEquals(1, reports.getReports().size());
+        assertNotNull(reports.getReport("ref-5"));
+    }
+
+    private static ValidationReport createReport(String ref) throws IOException {
+        return ValidationReport.create(ref, XML.getBytes(StandardCharsets.UTF_8),
+            new SiriValidationEventHandler(), new SiriValidationEventHandler());
+    }
+
+    private static ValidationEvent createEvent(int severity, String message, int lineNumber) {
+        ValidationEventLocatorImpl locator = new ValidationEventLocatorImpl();
+        locator.setLineNumber(lineNumber);
+        locator.setColumnNumber(1);
+        return new ValidationEventImpl(severity, message, locator);
+    }
+}
@@ -0,0 +1,43 @@
+package no.rutebanken.anshar.routes.validation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ValidationSamplerTest {
+
+    @Test
+    public void testEveryDeliveryIsSampledByDefault() {
+        ValidationSampler.SamplingState state = new ValidationSampler.SamplingState();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(state.sample(1, 0, 0));
+        }
+    }
+
+    @Test
+    public void testEveryNthDeliveryIsSampled() {
+        ValidationSampler.SamplingState state = new ValidationSampler.SamplingState();
+        int sampled = 0;
+        for (int i = 0; i < 20; i++) {
+            if (state.sample(5, 0, 0)) {
+                sampled++;
+            }
+        }
+        assertEquals(4, sampled);
+    }
+
+    @Test
+    public void testMaxPerMinute() {
+        ValidationSampler.SamplingState state = new ValidationSampler.SamplingState();
+        long minute = 60000 * 1000L;
+
+        assertTrue(state.sample(1, 2, minute));
+        assertTrue(state.sample(1, 2, minute + 1000));
+        assertFalse(state.sample(1, 2, minute + 2000));
+
+        // New minute
+        assertTrue(state.sample(1, 2, minute + 60000));
+    }
+}
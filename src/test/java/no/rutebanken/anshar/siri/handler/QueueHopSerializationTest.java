@@ -0,0 +1,119 @@
+package no.rutebanken.anshar.siri.handler;
+
+import no.rutebanken.anshar.data.collections.KryoSerializer;
+import no.rutebanken.anshar.data.collections.KryoSerializerMode;
+import org.junit.jupiter.api.Test;
+import org.rutebanken.siri20.util.SiriXml;
+import uk.org.siri.siri20.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri20.EstimatedVehicleJourney;
+import uk.org.siri.siri20.EstimatedVersionFrameStructure;
+import uk.org.siri.siri20.Siri;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the queue hop on the ingest path - transformed SIRI as XML vs. binary SIRI-object
+ */
+public class QueueHopSerializationTest {
+
+    /**
+     * Written with the same serializers as used in ProtobufConverterRoute
+     */
+    private final KryoSerializer xmlSerializer = new KryoSerializer();
+    private final KryoSerializer binarySerializer = new KryoSerializer(KryoSerializerMode.LZ4);
+
+    @Test
+    public void testBinaryHopGivesSameResult() throws Exception {
+        Siri siri = readEt();
+
+        Siri viaXml = xmlHop(siri);
+        Siri viaBinary = binaryHop(siri);
+
+        assertEquals(SiriXml.toXml(viaXml), SiriXml.toXml(viaBinary));
+    }
+
+    @Test
+    public void testDecompressHandlesBothFormats() throws Exception {
+        Siri siri = readEt();
+
+        // Consumer always reads with the default serializer
+        assertTrue(xmlSerializer.read(binarySerializer.write(siri)) instanceof Siri);
+        assertTrue(xmlSerializer.read(xmlSerializer.write(SiriXml.toXml(siri))) instanceof String);
+    }
+
+    @Test
+    public void testBinaryHopPreservesJourneys() throws Exception {
+        Siri siri = readEt();
+        Siri viaBinary = binaryHop(siri);
+
+        List<EstimatedVehicleJourney> expected = journeys(siri);
+        List<EstimatedVehicleJourney> actual = journeys(viaBinary);
+
+        assertTrue(expected.size() > 0);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDatedVehicleJourneyRef().getValue(), actual.get(i).getDatedVehicleJourneyRef().getValue());
+            assertEquals(expected.get(i).getRecordedAtTime(), actual.get(i).getRecordedAtTime());
+            assertEquals(expected.get(i).getEstimatedCalls().getEstimatedCalls().size(), actual.get(i).getEstimatedCalls().getEstimatedCalls().size());
+        }
+    }
+
+    @Test
+    public void testRepeatedBinaryHopsAreStable() throws Exception {
+        Siri siri = readEt();
+        String expected = SiriXml.toXml(siri);
+
+        // Serializers are reused between deliveries - each hop must give the same result
+        Siri current = siri;
+        for (int i = 0; i < 5; i++) {
+            current = binaryHop(current);
+            assertEquals(expected, SiriXml.toXml(current));
+        }
+    }
+
+    @Test
+    public void testBinaryHopDoesNotShareInstances() throws Exception {
+        Siri siri = readEt();
+        Siri viaBinary = binaryHop(siri);
+
+        assertNotSame(siri, viaBinary);
+        assertNotSame(journeys(siri).get(0), journeys(viaBinary).get(0));
+    }
+
+    /**
+     * Previous path: marshal, write as String, read and parse once more
+     */
+    private Siri xmlHop(Siri siri) throws Exception {
+        byte[] bytes = xmlSerializer.write(SiriXml.toXml(siri));
+        String xml = (String) xmlSerializer.read(bytes);
+        return SiriXml.parseXml(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Siri binaryHop(Siri siri) {
+        return (Siri) xmlSerializer.read(binarySerializer.write(siri));
+    }
+
+    private static List<EstimatedVehicleJourney> journeys(Siri siri) {
+        List<EstimatedVehicleJourney> journeys = new ArrayList<>();
+        for (EstimatedTimetableDeliveryStructure delivery : siri.getServiceDelivery().getEstimatedTimetableDeliveries()) {
+            for (EstimatedVersionFrameStructure frame : delivery.getEstimatedJourneyVersionFrames()) {
+                journeys.addAll(frame.getEstimatedVehicleJourneies());
+            }
+        }
+        return journeys;
+    }
+
+    private static Siri readEt() throws Exception {
+        try (InputStream xml = QueueHopSerializationTest.class.getResourceAsStream("/siri-et-from-bnr.xml")) {
+            return SiriXml.parseXml(xml);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package no.rutebanken.anshar.siri.handler;
+
+import no.rutebanken.anshar.routes.siri.handlers.SiriDeliveryStreamReader;
+import org.junit.jupiter.api.Test;
+import org.rutebanken.siri20.util.SiriXml;
+import uk.org.siri.siri20.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri20.EstimatedVehicleJourney;
+import uk.org.siri.siri20.EstimatedVersionFrameStructure;
+import uk.org.siri.siri20.ServiceDeliveryErrorConditionElement;
+import uk.org.siri.siri20.Siri;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SiriDeliveryStreamReaderTest {
+
+    @Test
+    public void testDetectServiceDelivery() throws Exception {
+        try (InputStream xml = getClass().getResourceAsStream("/siri-et-from-bnr.xml")) {
+            assertTrue(SiriDeliveryStreamReader.isServiceDelivery(xml));
+        }
+
+        String heartbeat = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<Siri xmlns=\"http://www.siri.org.uk/siri\" version=\"2.0\">\n" +
+                "  <HeartbeatNotification>\n" +
+                "    <RequestTimestamp>2016-11-10T04:27:15.9028457+01:00</RequestTimestamp>\n" +
+                "  </HeartbeatNotification>\n" +
+                "</Siri>\n";
+        assertFalse(SiriDeliveryStreamReader.isServiceDelivery(new ByteArrayInputStream(heartbeat.getBytes())));
+    }
+
+    @Test
+    public void testStreamedElementsMatchFullParse() throws Exception {
+        List<EstimatedVehicleJourney> expected = new ArrayList<>();
+        try (InputStream xml = getClass().getResourceAsStream("/siri-et-from-bnr.xml")) {
+            Siri siri = SiriXml.parseXml(xml);
+            for (EstimatedTimetableDeliveryStructure delivery : siri.getServiceDelivery().getEstimatedTimetableDeliveries()) {
+                for (EstimatedVersionFrameStructure frame : delivery.getEstimatedJourneyVersionFrames()) {
+                    expected.addAll(frame.getEstimatedVehicleJourneies());
+                }
+            }
+        }
+        assertTrue(expected.size() > 3);
+
+        int batchSize = 3;
+        List<List<EstimatedVehicleJourney>> batches = new ArrayList<>();
+        int count;
+        try (InputStream xml = getClass().getResourceAsStream("/siri-et-from-bnr.xml")) {
+            count = SiriDeliveryStreamReader.read(xml, "EstimatedVehicleJourney", EstimatedVehicleJourney.class, batchSize,
+                    batches::add, error -> {});
+        }
+
+        assertEquals(expected.size(), count);
+
+        List<EstimatedVehicleJourney> streamed = new ArrayList<>();
+        for (List<EstimatedVehicleJourney> batch : batches) {
+            assertTrue(batch.size() <= batchSize);
+            streamed.addAll(batch);
+        }
+
+        assertEquals(expected.size(), streamed.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDatedVehicleJourneyRef().getValue(), streamed.get(i).getDatedVehicleJourneyRef().getValue());
+            assertEquals(expected.get(i).getEstimatedCalls().getEstimatedCalls().size(), streamed.get(i).getEstimatedCalls().getEstimatedCalls().size());
+        }
+    }
+
+    @Test
+    public void testErrorConditionIsReported() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<siri:Siri xmlns:siri=\"http://www.siri.org.uk/siri\">\n" +
+                "  <siril:ServiceDelivery xmlns:siril=\"http://www.siri.org.uk/siri\">\n" +
+                "    <ResponseTimestamp xmlns=\"http://www.siri.org.uk/siri\">2016-11-10T04:27:15.9028457+01:00</ResponseTimestamp>\n" +
+                "    <EstimatedTimetableDelivery xmlns=\"http://www.siri.org.uk/siri\" version=\"2.0\">\n" +
+                "      <ResponseTimestamp>2016-11-10T04:27:15.9028457+01:00</ResponseTimestamp>\n" +
+                "      <Status>false</Status>\n" +
+                "      <ErrorCondition>\n" +
+                "        <NoInfoForTopicError/>\n" +
+                "        <Description>Unable to connect to the remote server</Description>\n" +
+                "      </ErrorCondition>\n" +
+                "    </EstimatedTimetableDelivery>\n" +
+                "  </siril:ServiceDelivery>\n" +
+                "</siri:Siri>\n";
+
+        List<ServiceDeliveryErrorConditionElement> errors = new ArrayList<>();
+        int count = SiriDeliveryStreamReader.read(new ByteArrayInputStream(xml.getBytes()), "EstimatedVehicleJourney",
+                EstimatedVehicleJourney.class, 10, batch -> {}, errors::add);
+
+        assertEquals(0, count);
+        assertEquals(1, errors.size());
+        assertNotNull(errors.get(0).getNoInfoForTopicError());
+    }
+
+    @Test
+    public void testElementsInFailedDeliveryAreIgnored() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<Siri xmlns=\"http://www.siri.org.uk/siri\" version=\"2.0\">\n" +
+                "  <ServiceDelivery>\n" +
+                "    <ResponseTimestamp>2016-11-10T04:27:15.9028457+01:00</ResponseTimestamp>\n" +
+                "    <EstimatedTimetableDelivery version=\"2.0\">\n" +
+                "      <ResponseTimestamp>2016-11-10T04:27:15.9028457+01:00</ResponseTimestamp>\n" +
+                "      <Status>false</Status>\n" +
+                "      <ErrorCondition>\n" +
+                "        <OtherError/>\n" +
+                "        <Description>Partial data</Description>\n" +
+                "      </ErrorCondition>\n" +
+                "      <EstimatedJourneyVersionFrame>\n" +
+                "        <RecordedAtTime>2016-11-10T04:27:15.9028457+01:00</RecordedAtTime>\n" +
+                "        <EstimatedVehicleJourney>\n" +
+                "          <DatedVehicleJourneyRef>failed-1</DatedVehicleJourneyRef>\n" +
+                "        </EstimatedVehicleJourney>\n" +
+                "        <EstimatedVehicleJourney>\n" +
+                "          <DatedVehicleJourneyRef>failed-2</DatedVehicleJourneyRef>\n" +
+                "        </EstimatedVehicleJourney>\n" +
+                "      </EstimatedJourneyVersionFrame>\n" +
+                "    </EstimatedTimetableDelivery>\n" +
+                "    <EstimatedTimetableDelivery version=\"2.0\">\n" +
+                "      <ResponseTimestamp>2016-11-10T04:27:15.9028457+01:00</ResponseTimestamp>\n" +
+                "      <Status>true</Status>\n" +
+                "      <EstimatedJourneyVersionFrame>\n" +
+                "        <RecordedAtTime>2016-11-10T04:27:15.9028457+01:00</RecordedAtTime>\n" +
+                "        <EstimatedVehicleJourney>\n" +
+                "          <DatedVehicleJourneyRef>ok-1</DatedVehicleJourneyRef>\n" +
+                "        </EstimatedVehicleJourney>\n" +
+                "      </EstimatedJourneyVersionFrame>\n" +
+                "    </EstimatedTimetableDelivery>\n" +
+                "  </ServiceDelivery>\n" +
+                "</Siri>\n";
+
+        // Full parse is the reference - only journeys from deliveries without Status=false are used
+        List<String> expected = new ArrayList<>();
+        Siri siri = SiriXml.parseXml(new ByteArrayInputStream(xml.getBytes()));
+        for (EstimatedTimetableDeliveryStructure delivery : siri.getServiceDelivery().getEstimatedTimetableDeliveries()) {
+            if (delivery.isStatus() != null && !delivery.isStatus()) {
+                continue;
+            }
+            for (EstimatedVersionFrameStructure frame : delivery.getEstimatedJourneyVersionFrames()) {
+                for (EstimatedVehicleJourney journey : frame.getEstimatedVehicleJourneies()) {
+                    expected.add(journey.getDatedVehicleJourneyRef().getValue());
+                }
+            }
+        }
+
+        List<String> streamed = new ArrayList<>();
+        List<ServiceDeliveryErrorConditionElement> errors = new ArrayList<>();
+        int count = SiriDeliveryStreamReader.read(new ByteArrayInputStream(xml.getBytes()), "EstimatedVehicleJourney",
+                EstimatedVehicleJourney.class, 10,
+                batch -> batch.forEach(journey -> streamed.add(journey.getDatedVehicleJourneyRef().getValue())),
+                errors::add);
+
+        assertEquals(1, count);
+        assertEquals(expected, streamed);
+        assertEquals(List.of("ok-1"), streamed);
+        assertEquals(1, errors.size());
+        assertNotNull(errors.get(0).getOtherError());
+    }
+}
@@ -0,0 +1,127 @@
+package no.rutebanken.anshar.siri.transformer;
+
+import no.rutebanken.anshar.routes.siri.helpers.SiriObjectFactory;
+import no.rutebanken.anshar.routes.siri.transformer.SiriValueTransformer;
+import no.rutebanken.anshar.routes.siri.transformer.impl.LeftPaddingAdapter;
+import org.junit.jupiter.api.Test;
+import org.rutebanken.siri20.util.SiriXml;
+import uk.org.siri.siri20.BlockRefStructure;
+import uk.org.siri.siri20.DestinationRef;
+import uk.org.siri.siri20.DirectionRefStructure;
+import uk.org.siri.siri20.JourneyPlaceRefStructure;
+import uk.org.siri.siri20.LineRef;
+import uk.org.siri.siri20.OperatorRefStructure;
+import uk.org.siri.siri20.Siri;
+import uk.org.siri.siri20.StopPointRef;
+import uk.org.siri.siri20.VehicleRef;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import static no.rutebanken.anshar.routes.siri.transformer.SiriValueTransformer.SEPARATOR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Compares the single-pass transformation with the previous implementation - a reflective walk of the
+ * entire object-graph per adapter.
+ */
+public class SiriTransformationPlanTest {
+
+    @Test
+    public void testSameResultAsReflectiveWalk() throws Exception {
+        Siri siri = readEt();
+        List<LeftPaddingAdapter> adapters = createAdapters();
+
+        Siri expected = SiriObjectFactory.deepCopy(siri);
+        for (LeftPaddingAdapter adapter : adapters) {
+            applyReflective(expected, adapter);
+        }
+
+        Siri transformed = SiriValueTransformer.transform(siri, new ArrayList<>(adapters));
+
+        assertNotEquals(SiriXml.toXml(siri), SiriXml.toXml(transformed), "Adapters should alter data");
+        assertEquals(SiriXml.toXml(expected), SiriXml.toXml(transformed));
+    }
+
+    @Test
+    public void testInPlaceTransformSameResultAsReflectiveWalk() throws Exception {
+        Siri siri = readEt();
+        List<LeftPaddingAdapter> adapters = createAdapters();
+
+        Siri expected = SiriObjectFactory.deepCopy(siri);
+        for (LeftPaddingAdapter adapter : adapters) {
+            applyReflective(expected, adapter);
+        }
+
+        // Input is altered when not deep-copied
+        SiriValueTransformer.transform(siri, new ArrayList<>(adapters), false, false);
+
+        assertEquals(SiriXml.toXml(expected), SiriXml.toXml(siri));
+    }
+
+    private static List<LeftPaddingAdapter> createAdapters() {
+        List<LeftPaddingAdapter> adapters = new ArrayList<>();
+        adapters.add(new LeftPaddingAdapter(LineRef.class, 8, '0'));
+        adapters.add(new LeftPaddingAdapter(LineRef.class, 10, '1'));
+        adapters.add(new LeftPaddingAdapter(StopPointRef.class, 12, '0'));
+        adapters.add(new LeftPaddingAdapter(OperatorRefStructure.class, 6, '0'));
+        adapters.add(new LeftPaddingAdapter(DirectionRefStructure.class, 6, '0'));
+        adapters.add(new LeftPaddingAdapter(DestinationRef.class, 6, '0'));
+        adapters.add(new LeftPaddingAdapter(JourneyPlaceRefStructure.class, 6, '0'));
+        adapters.add(new LeftPaddingAdapter(BlockRefStructure.class, 6, '0'));
+        adapters.add(new LeftPaddingAdapter(VehicleRef.class, 6, '0'));
+        adapters.add(new LeftPaddingAdapter(DirectionRefStructure.class, 8, '2'));
+        return adapters;
+    }
+
+    private static Siri readEt() throws Exception {
+        try (InputStream xml = SiriTransformationPlanTest.class.getResourceAsStream("/siri-et-from-bnr.xml")) {
+            return SiriXml.parseXml(xml);
+        }
+    }
+
+    /**
+     * Previous implementation - walks all getters reflectively for every adapter
+     */
+    private static void applyReflective(Object obj, LeftPaddingAdapter adapter) throws Exception {
+        if (obj == null || !obj.getClass().getName().startsWith("uk.org.siri")) {
+            return;
+        }
+        for (Method method : obj.getClass().getMethods()) {
+            if (method.getParameterCount() != 0 || "void".equals(method.getReturnType().getName()) ||
+                    "getMonitoringError".equals(method.getName())) {
+                continue;
+            }
+            if (method.getReturnType().equals(adapter.getClassToApply())) {
+                Object previousValue = method.invoke(obj);
+                if (previousValue != null) {
+                    String value = (String) previousValue.getClass().getMethod("getValue").invoke(previousValue);
+                    String originalId = value;
+                    String alteredValue;
+                    if (value.contains(SEPARATOR)) {
+                        originalId = value.substring(0, value.indexOf(SEPARATOR));
+                        alteredValue = adapter.apply(value.substring(value.indexOf(SEPARATOR) + SEPARATOR.length()));
+                    } else {
+                        alteredValue = adapter.apply(value);
+                    }
+                    if (!originalId.equals(alteredValue)) {
+                        alteredValue = originalId + SEPARATOR + alteredValue;
+                    }
+                    previousValue.getClass().getMethod("setValue", String.class).invoke(previousValue, alteredValue);
+                }
+            } else {
+                Object currentValue = method.invoke(obj);
+                if (currentValue instanceof List) {
+                    for (Object o : (List<?>) currentValue) {
+                        applyReflective(o, adapter);
+                    }
+                } else {
+                    applyReflective(currentValue, adapter);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package no.rutebanken.anshar.util;
+
+import no.rutebanken.anshar.integration.SpringBootBaseTest;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ManagedExecutorsTest extends SpringBootBaseTest {
+
+    @Autowired
+    private ManagedExecutors executors;
+
+    @Test
+    public void testTaskIsExecuted() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        executors.execute(ExecutorPool.OUTBOUND_PUSH, latch::countDown);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPendingTasksAreCoalesced() throws InterruptedException {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch blockedStarted = new CountDownLatch(ExecutorPool.INITIAL_DELIVERY.getDefaultThreads());
+
+        // Occupy all threads in pool
+        for (int i = 0; i < ExecutorPool.INITIAL_DELIVERY.getDefaultThreads(); i++) {
+            executors.execute(ExecutorPool.INITIAL_DELIVERY, () -> {
+                blockedStarted.countDown();
+                try {
+                    blocker.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(blockedStarted.await(5, TimeUnit.SECONDS));
+
+        List<Integer> executed = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 5; i++) {
+            final int value = i;
+            executors.executeCoalesced(ExecutorPool.INITIAL_DELIVERY, "requestor", () -> {
+                executed.add(value);
+                done.countDown();
+            });
+        }
+
+        blocker.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        // Only latest task is executed
+        assertEquals(List.of(4), executed);
+    }
+}